@@ -1,3 +1,54 @@
+package com.atproto.api;
+
+import com.atproto.api.sync.Firehose;
+import com.atproto.api.xrpc.XrpcClient;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Entry point for talking to a PDS on behalf of one account.
+ */
 public class AtpAgent {
-    
+    private final XrpcClient client;
+
+    public AtpAgent(String serviceUrl) {
+        this(new XrpcClient(serviceUrl));
+    }
+
+    public AtpAgent(XrpcClient client) {
+        this.client = Objects.requireNonNull(client, "client");
+    }
+
+    public XrpcClient getClient() {
+        return client;
+    }
+
+    /**
+     * Batch record writes to a repository into {@code com.atproto.repo.applyWrites} calls, with
+     * the default batch size and linger time
+     * @param repo DID or handle of the repository
+     * @return a batcher that should be closed to send its last writes
+     */
+    public WriteBatcher newWriteBatcher(String repo) {
+        return writeBatcher(repo).build();
+    }
+
+    /**
+     * @param repo DID or handle of the repository
+     * @return a builder for a write batcher sending through this agent's client
+     */
+    public WriteBatcher.Builder writeBatcher(String repo) {
+        return new WriteBatcher.Builder().withClient(client).withRepo(repo);
+    }
+
+    /**
+     * Subscribe to the repository event stream of this agent's service
+     * @param cursor sequence number to resume after, or null to start with live events
+     * @param handler receives the events
+     * @return future completed with the open subscription, which should be closed when done
+     */
+    public CompletableFuture<Firehose> subscribeRepos(Long cursor, Firehose.Handler handler) {
+        return new Firehose.Builder().withClient(client).withCursor(cursor).withHandler(handler).build().connect();
+    }
 }
@@ -0,0 +1,352 @@
+package com.atproto.api;
+
+import com.atproto.api.common.Cid;
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.XrpcException;
+import com.atproto.api.xrpc.XrpcRequest;
+import com.atproto.api.xrpc.XrpcResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects record creates, updates and deletes for one repository and sends them as
+ * {@code com.atproto.repo.applyWrites} calls.
+ * <p>
+ * A batch is sent once it holds the maximum number of writes, or when the linger time has passed
+ * since its first write, whichever comes first. Batches are sent one at a time in the order they
+ * were filled, so writes to the same record are applied in the order they were made. Each write
+ * gets its own future, completed with the record's URI and CID from the batch result. The server
+ * applies a batch atomically, so if it fails every write in it fails with the same exception.
+ */
+public final class WriteBatcher implements AutoCloseable {
+    /**
+     * Largest batch the reference PDS accepts.
+     */
+    public static final int MAX_BATCH_SIZE = 200;
+    public static final Duration DEFAULT_LINGER = Duration.ofMillis(50);
+
+    private static final String APPLY_WRITES = "com.atproto.repo.applyWrites";
+    private static final String CREATE = APPLY_WRITES + "#create";
+    private static final String UPDATE = APPLY_WRITES + "#update";
+    private static final String DELETE = APPLY_WRITES + "#delete";
+
+    private final XrpcClient client;
+    private final String repo;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Boolean validate;
+
+    private final Object lock = new Object();
+    private List<Write> pending = new ArrayList<>();
+    // Incremented whenever a batch is taken, so a linger timer for an earlier batch does nothing
+    private long generation;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private boolean closed;
+
+    private WriteBatcher(Builder builder) {
+        this.client = Objects.requireNonNull(builder.client, "client");
+        this.repo = Objects.requireNonNull(builder.repo, "repo");
+        this.maxBatchSize = builder.maxBatchSize;
+        this.lingerNanos = builder.linger.toNanos();
+        this.validate = builder.validate;
+    }
+
+    /**
+     * Result of one write in an applied batch.
+     */
+    public static final class Result {
+        private final String uri;
+        private final Cid cid;
+        private final String validationStatus;
+
+        Result(String uri, Cid cid, String validationStatus) {
+            this.uri = uri;
+            this.cid = cid;
+            this.validationStatus = validationStatus;
+        }
+
+        /**
+         * @return AT URI of the record
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return CID of the record as written, or null for deletes
+         */
+        public Cid getCid() {
+            return cid;
+        }
+
+        /**
+         * @return lexicon validation status reported by the server, or null
+         */
+        public String getValidationStatus() {
+            return validationStatus;
+        }
+    }
+
+    private record Write(Map<String, Object> operation, String collection, String rkey,
+                         CompletableFuture<Result> result) {
+    }
+
+    /**
+     * Create a record with a key chosen by the server
+     * @param collection NSID of the collection
+     * @param record the record value, including its {@code $type}
+     * @return future completed with the new record's URI and CID
+     */
+    public CompletableFuture<Result> create(String collection, Map<String, Object> record) {
+        return create(collection, null, record);
+    }
+
+    /**
+     * @param rkey record key, or null to let the server choose
+     */
+    public CompletableFuture<Result> create(String collection, String rkey, Map<String, Object> record) {
+        return add(CREATE, collection, rkey, Objects.requireNonNull(record, "record"));
+    }
+
+    public CompletableFuture<Result> update(String collection, String rkey, Map<String, Object> record) {
+        return add(UPDATE, collection, Objects.requireNonNull(rkey, "rkey"), Objects.requireNonNull(record, "record"));
+    }
+
+    /**
+     * @return future completed with the deleted record's URI once the batch is applied
+     */
+    public CompletableFuture<Result> delete(String collection, String rkey) {
+        return add(DELETE, collection, Objects.requireNonNull(rkey, "rkey"), null);
+    }
+
+    private CompletableFuture<Result> add(String type, String collection, String rkey, Map<String, Object> value) {
+        Objects.requireNonNull(collection, "collection");
+        Map<String, Object> operation = new LinkedHashMap<>();
+        operation.put("$type", type);
+        operation.put("collection", collection);
+        if (rkey != null) {
+            operation.put("rkey", rkey);
+        }
+        if (value != null) {
+            operation.put("value", value);
+        }
+        Write write = new Write(operation, collection, rkey, new CompletableFuture<>());
+        Runnable batch = null;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Write batcher is closed");
+            }
+            pending.add(write);
+            if (pending.size() >= maxBatchSize) {
+                batch = take();
+            } else if (pending.size() == 1) {
+                long armed = generation;
+                CompletableFuture.delayedExecutor(lingerNanos, TimeUnit.NANOSECONDS).execute(() -> linger(armed));
+            }
+        }
+        if (batch != null) {
+            batch.run();
+        }
+        return write.result();
+    }
+
+    private void linger(long armed) {
+        Runnable batch = null;
+        synchronized (lock) {
+            if (generation == armed && !pending.isEmpty()) {
+                batch = take();
+            }
+        }
+        if (batch != null) {
+            batch.run();
+        }
+    }
+
+    /**
+     * Send the writes collected so far without waiting for the linger time
+     * @return future completed once every batch sent so far has been applied or failed
+     */
+    public CompletableFuture<Void> flush() {
+        Runnable batch = null;
+        CompletableFuture<Void> done;
+        synchronized (lock) {
+            if (!pending.isEmpty()) {
+                batch = take();
+            }
+            done = tail;
+        }
+        if (batch != null) {
+            batch.run();
+        }
+        return done;
+    }
+
+    /**
+     * @return number of writes waiting to be sent
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Send any pending writes, wait for all batches to finish and reject further writes
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush().join();
+    }
+
+    /**
+     * Take the pending writes as a batch, queued behind the batch before it. Called with the lock
+     * held; the returned action sends it and must be run after the lock is released, so that
+     * callbacks on the writes' futures never run under the lock.
+     */
+    private Runnable take() {
+        List<Write> batch = pending;
+        pending = new ArrayList<>();
+        generation++;
+        CompletableFuture<Void> previous = tail;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        tail = done;
+        return () -> previous.thenCompose(ignored -> apply(batch)).whenComplete((ignored, failure) -> done.complete(null));
+    }
+
+    private CompletableFuture<Void> apply(List<Write> batch) {
+        List<Object> writes = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            writes.add(write.operation());
+        }
+        Map<String, Object> input = new LinkedHashMap<>();
+        input.put("repo", repo);
+        if (validate != null) {
+            input.put("validate", validate);
+        }
+        input.put("writes", writes);
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod(APPLY_WRITES)
+            .withType(XrpcRequest.Type.PROCEDURE)
+            .withBody(input)
+            .build();
+        CompletableFuture<XrpcResponse> sent;
+        try {
+            sent = client.sendAsync(request);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        // The next batch waits for this one whether it succeeds or not
+        return sent.handle((response, failure) -> {
+            if (failure != null) {
+                fail(batch, failure);
+            } else {
+                complete(batch, response);
+            }
+            return null;
+        });
+    }
+
+    private void complete(List<Write> batch, XrpcResponse response) {
+        Object results;
+        try {
+            results = response.at("/results");
+        } catch (RuntimeException e) {
+            fail(batch, e);
+            return;
+        }
+        List<?> list = results instanceof List<?> l ? l : List.of();
+        for (int i = 0; i < batch.size(); i++) {
+            Write write = batch.get(i);
+            Map<?, ?> result = i < list.size() && list.get(i) instanceof Map<?, ?> m ? m : Map.of();
+            try {
+                String uri = result.get("uri") instanceof String s ? s
+                    : write.rkey() != null ? "at://" + repo + "/" + write.collection() + "/" + write.rkey() : null;
+                if (uri == null) {
+                    throw new XrpcException("applyWrites returned no result for write " + i);
+                }
+                Cid cid = result.get("cid") instanceof String s ? Cid.parse(s) : null;
+                String status = result.get("validationStatus") instanceof String s ? s : null;
+                write.result().complete(new Result(uri, cid, status));
+            } catch (RuntimeException e) {
+                write.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void fail(List<Write> batch, Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        for (Write write : batch) {
+            write.result().completeExceptionally(cause);
+        }
+    }
+
+    public static class Builder {
+        private XrpcClient client;
+        private String repo;
+        private int maxBatchSize = MAX_BATCH_SIZE;
+        private Duration linger = DEFAULT_LINGER;
+        private Boolean validate;
+
+        public Builder withClient(XrpcClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * @param repo DID or handle of the repository to write to
+         */
+        public Builder withRepo(String repo) {
+            this.repo = repo;
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize writes per applyWrites call, at most {@link #MAX_BATCH_SIZE}
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            if (maxBatchSize <= 0 || maxBatchSize > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param linger longest a write waits for its batch to fill before it is sent
+         */
+        public Builder withLinger(Duration linger) {
+            if (linger.isNegative()) {
+                throw new IllegalArgumentException("Linger time must not be negative");
+            }
+            this.linger = linger;
+            return this;
+        }
+
+        /**
+         * @param validate whether the server should validate records against their lexicon;
+         *     null leaves it to the server
+         */
+        public Builder withValidate(Boolean validate) {
+            this.validate = validate;
+            return this;
+        }
+
+        public WriteBatcher build() {
+            return new WriteBatcher(this);
+        }
+    }
+}
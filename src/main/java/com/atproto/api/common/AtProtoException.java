@@ -1,3 +1,14 @@
-public class AtProtoException {
-    
+package com.atproto.api.common;
+
+/**
+ * Base class for errors raised by the AT Protocol client.
+ */
+public class AtProtoException extends RuntimeException {
+    public AtProtoException(String message) {
+        super(message);
+    }
+
+    public AtProtoException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,66 @@
+package com.atproto.api.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reference to an uploaded blob, as embedded in records.
+ */
+public final class BlobRef {
+    private final Cid cid;
+    private final String mimeType;
+    private final long size;
+
+    public BlobRef(Cid cid, String mimeType, long size) {
+        this.cid = Objects.requireNonNull(cid, "cid");
+        this.mimeType = Objects.requireNonNull(mimeType, "mimeType");
+        this.size = size;
+    }
+
+    public Cid getCid() {
+        return cid;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the JSON form: {@code {"$type":"blob","ref":{"$link":cid},"mimeType":...,"size":...}}
+     */
+    public Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("$type", "blob");
+        json.put("ref", Map.of("$link", cid.toString()));
+        json.put("mimeType", mimeType);
+        json.put("size", size);
+        return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BlobRef)) return false;
+        BlobRef blobRef = (BlobRef) o;
+        return size == blobRef.size && cid.equals(blobRef.cid) && mimeType.equals(blobRef.mimeType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cid, mimeType, size);
+    }
+
+    @Override
+    public String toString() {
+        return "BlobRef{" +
+                "cid=" + cid +
+                ", mimeType='" + mimeType + '\'' +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -1,3 +1,238 @@
-public class Cid {
-    
+package com.atproto.api.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A version 1 content identifier with a sha2-256 multihash, as used for blobs and records.
+ * <p>
+ * The text form is the multibase base32 encoding ({@code b...}) used throughout the protocol.
+ */
+public final class Cid {
+    /** Multicodec for raw bytes, used for blobs */
+    public static final int RAW = 0x55;
+    /** Multicodec for DAG-CBOR, used for records and commits */
+    public static final int DAG_CBOR = 0x71;
+
+    private static final int SHA2_256 = 0x12;
+    private static final int DIGEST_LENGTH = 32;
+    private static final char[] BASE32 = "abcdefghijklmnopqrstuvwxyz234567".toCharArray();
+
+    private final int codec;
+    private final byte[] digest;
+    private String text;
+
+    private Cid(int codec, byte[] digest) {
+        this.codec = codec;
+        this.digest = digest;
+    }
+
+    /**
+     * Create a CID from a sha2-256 digest
+     * @param codec multicodec of the content, e.g. {@link #RAW}
+     * @param sha256 32-byte digest of the content
+     * @return the CID
+     */
+    public static Cid of(int codec, byte[] sha256) {
+        if (sha256.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Expected a 32-byte sha2-256 digest, got " + sha256.length + " bytes");
+        }
+        return new Cid(codec, sha256.clone());
+    }
+
+    /**
+     * Hash content and create its CID
+     * @param codec multicodec of the content
+     * @param content the bytes to hash
+     * @return the CID
+     */
+    public static Cid hash(int codec, byte[] content) {
+        return new Cid(codec, newDigest().digest(content));
+    }
+
+    /**
+     * @return a new sha2-256 digest for hashing content incrementally
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Parse the base32 text form of a CIDv1
+     * @param text CID string starting with {@code b}
+     * @return the CID
+     * @throws IllegalArgumentException if the text is not a base32 CIDv1 with a sha2-256 hash
+     */
+    public static Cid parse(String text) {
+        if (text == null || text.length() < 2 || text.charAt(0) != 'b') {
+            throw new IllegalArgumentException("Not a base32 CIDv1: " + text);
+        }
+        return decode(decodeBase32(text, 1));
+    }
+
+    /**
+     * Decode the binary form of a CIDv1
+     * @param bytes version, codec and multihash as varints followed by the digest
+     * @return the CID
+     */
+    public static Cid decode(byte[] bytes) {
+        int[] position = {0};
+        long version = readVarint(bytes, position);
+        long codec = readVarint(bytes, position);
+        long hash = readVarint(bytes, position);
+        long length = readVarint(bytes, position);
+        if (version != 1 || hash != SHA2_256 || length != DIGEST_LENGTH || bytes.length - position[0] != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Unsupported CID: version " + version + ", hash 0x" + Long.toHexString(hash));
+        }
+        return new Cid((int) codec, Arrays.copyOfRange(bytes, position[0], bytes.length));
+    }
+
+    /**
+     * Decode the binary form of a CIDv1 from the remaining bytes of a buffer, copying only the
+     * digest. The buffer's position is moved to its limit.
+     * @param buffer version, codec and multihash as varints followed by the digest
+     * @return the CID
+     */
+    public static Cid decode(ByteBuffer buffer) {
+        long version = readVarint(buffer);
+        long codec = readVarint(buffer);
+        long hash = readVarint(buffer);
+        long length = readVarint(buffer);
+        if (version != 1 || hash != SHA2_256 || length != DIGEST_LENGTH || buffer.remaining() != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Unsupported CID: version " + version + ", hash 0x" + Long.toHexString(hash));
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        buffer.get(digest);
+        return new Cid((int) codec, digest);
+    }
+
+    public int getCodec() {
+        return codec;
+    }
+
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * @return the binary form: version, codec and multihash
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(36);
+        writeVarint(out, 1);
+        writeVarint(out, codec);
+        writeVarint(out, SHA2_256);
+        writeVarint(out, DIGEST_LENGTH);
+        out.write(digest, 0, digest.length);
+        return out.toByteArray();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Cid)) return false;
+        Cid cid = (Cid) o;
+        return codec == cid.codec && Arrays.equals(digest, cid.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * codec + Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            result = text = encodeBase32(toBytes());
+        }
+        return result;
+    }
+
+    private static String encodeBase32(byte[] bytes) {
+        StringBuilder out = new StringBuilder(1 + (bytes.length * 8 + 4) / 5).append('b');
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : bytes) {
+            buffer = (buffer << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                out.append(BASE32[(buffer >>> (bits - 5)) & 31]);
+                bits -= 5;
+            }
+        }
+        if (bits > 0) {
+            out.append(BASE32[(buffer << (5 - bits)) & 31]);
+        }
+        return out.toString();
+    }
+
+    private static byte[] decodeBase32(String text, int start) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((text.length() - start) * 5 / 8);
+        int buffer = 0;
+        int bits = 0;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int value;
+            if (c >= 'a' && c <= 'z') {
+                value = c - 'a';
+            } else if (c >= '2' && c <= '7') {
+                value = c - '2' + 26;
+            } else {
+                throw new IllegalArgumentException("Invalid base32 character '" + c + "' in CID " + text);
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8) {
+                out.write((buffer >>> (bits - 8)) & 0xff);
+                bits -= 8;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated CID");
+            }
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long in CID");
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Truncated CID");
+            }
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long in CID");
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
 }
@@ -1,3 +1,209 @@
-public class Nsid {
-    
+package com.atproto.api.common;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Namespaced identifier of a lexicon, such as {@code app.bsky.feed.getTimeline}.
+ * <p>
+ * An NSID is a reversed domain authority followed by a name. It has at least three segments.
+ * Authority segments are 1-63 letters, digits or inner hyphens, and the first cannot start with
+ * a digit. The name is 1-63 letters or digits and cannot start with a digit. The authority is at
+ * most 253 characters and the whole NSID at most 317. {@link #isValid} checks this in a single
+ * pass without allocating.
+ * <p>
+ * NSIDs of known methods are interned in a global table that assigns each a small, dense int
+ * id. Routing tables, metrics and caches can then index arrays by id instead of hashing
+ * strings. Only intern names that come from lexicons or registered handlers, never raw request
+ * input; the table is capped at {@link #MAX_INTERNED} entries and never shrinks.
+ */
+public final class Nsid {
+    public static final int MAX_LENGTH = 317;
+    public static final int MAX_INTERNED = 1 << 16;
+
+    private static final int MAX_AUTHORITY_LENGTH = 253;
+    private static final int MAX_SEGMENT_LENGTH = 63;
+
+    private static final Map<String, Nsid> INTERNED = new ConcurrentHashMap<>();
+    private static volatile Nsid[] byId = new Nsid[64];
+    private static int internedCount;
+
+    private final String value;
+    private final int id;
+
+    private Nsid(String value, int id) {
+        this.value = value;
+        this.id = id;
+    }
+
+    /**
+     * Check NSID syntax without allocating
+     * @param nsid candidate NSID, may be null
+     * @return true if the text is a syntactically valid NSID
+     */
+    public static boolean isValid(CharSequence nsid) {
+        if (nsid == null) {
+            return false;
+        }
+        int length = nsid.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return false;
+        }
+        int segments = 1;
+        int segmentStart = 0;
+        int lastDot = -1;
+        for (int i = 0; i < length; i++) {
+            char c = nsid.charAt(i);
+            if (c == '.') {
+                if (!isValidAuthoritySegment(nsid, segmentStart, i, segments == 1)) {
+                    return false;
+                }
+                lastDot = i;
+                segmentStart = i + 1;
+                segments++;
+            } else if (!isLetterOrDigit(c) && c != '-') {
+                return false;
+            }
+        }
+        return segments >= 3 && lastDot <= MAX_AUTHORITY_LENGTH && isValidName(nsid, segmentStart, length);
+    }
+
+    private static boolean isValidAuthoritySegment(CharSequence s, int start, int end, boolean first) {
+        int length = end - start;
+        if (length == 0 || length > MAX_SEGMENT_LENGTH) {
+            return false;
+        }
+        if (s.charAt(start) == '-' || s.charAt(end - 1) == '-') {
+            return false;
+        }
+        return !(first && isDigit(s.charAt(start)));
+    }
+
+    private static boolean isValidName(CharSequence s, int start, int end) {
+        int length = end - start;
+        if (length == 0 || length > MAX_SEGMENT_LENGTH || isDigit(s.charAt(start))) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isLetterOrDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c);
+    }
+
+    /**
+     * Intern an NSID, assigning it the next id on first use
+     * @param nsid a valid NSID
+     * @return the interned instance
+     * @throws IllegalArgumentException if the NSID is invalid
+     * @throws IllegalStateException if the intern table is full
+     */
+    public static Nsid intern(String nsid) {
+        Nsid existing = INTERNED.get(nsid);
+        if (existing != null) {
+            return existing;
+        }
+        if (!isValid(nsid)) {
+            throw new IllegalArgumentException("Invalid NSID: " + nsid);
+        }
+        synchronized (Nsid.class) {
+            existing = INTERNED.get(nsid);
+            if (existing != null) {
+                return existing;
+            }
+            if (internedCount >= MAX_INTERNED) {
+                throw new IllegalStateException("NSID intern table is full");
+            }
+            Nsid created = new Nsid(nsid, internedCount);
+            Nsid[] table = byId;
+            if (created.id == table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            table[created.id] = created;
+            byId = table;
+            internedCount++;
+            INTERNED.put(nsid, created);
+            return created;
+        }
+    }
+
+    /**
+     * Find an interned NSID without interning it
+     * @param nsid method name, possibly untrusted
+     * @return the interned instance, or null if the name was never interned
+     */
+    public static Nsid lookup(String nsid) {
+        return nsid == null ? null : INTERNED.get(nsid);
+    }
+
+    /**
+     * @param id id returned by {@link #id()}
+     * @return the interned NSID with that id
+     * @throws IndexOutOfBoundsException if no NSID has that id
+     */
+    public static Nsid byId(int id) {
+        Nsid[] table = byId;
+        Nsid nsid = id >= 0 && id < table.length ? table[id] : null;
+        if (nsid == null) {
+            throw new IndexOutOfBoundsException("No NSID with id " + id);
+        }
+        return nsid;
+    }
+
+    /**
+     * @return number of interned NSIDs; ids are 0 to this value exclusive
+     */
+    public static int internedCount() {
+        synchronized (Nsid.class) {
+            return internedCount;
+        }
+    }
+
+    /**
+     * @return dense id of this NSID in the intern table
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return the authority part in reversed domain order, e.g. {@code app.bsky.feed}
+     */
+    public String getAuthority() {
+        return value.substring(0, value.lastIndexOf('.'));
+    }
+
+    /**
+     * @return the name part, e.g. {@code getTimeline}
+     */
+    public String getName() {
+        return value.substring(value.lastIndexOf('.') + 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Nsid)) return false;
+        return value.equals(((Nsid) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
 }
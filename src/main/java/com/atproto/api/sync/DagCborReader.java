@@ -0,0 +1,358 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.common.Cid;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader for DAG-CBOR, the CBOR subset used for records, commits and firehose frames.
+ * <p>
+ * Items are read one at a time straight from a {@link ByteBuffer}. The buffer's position and
+ * limit are not changed. Byte strings are returned as read-only slices of the buffer, and map keys
+ * can be matched against a table of expected keys in place. Only CIDs and text strings allocate.
+ * A slice is only valid for as long as the buffer's content is.
+ * <p>
+ * DAG-CBOR allows definite lengths only, tag 42 (CID) as the only tag, and no undefined or
+ * simple values. Anything else is rejected with an {@link IllegalArgumentException}.
+ */
+public final class DagCborReader {
+    public static final int UNSIGNED = 0;
+    public static final int NEGATIVE = 1;
+    public static final int BYTES = 2;
+    public static final int TEXT = 3;
+    public static final int ARRAY = 4;
+    public static final int MAP = 5;
+    public static final int TAG = 6;
+    public static final int SIMPLE = 7;
+
+    private static final int CID_TAG = 42;
+    private static final int MAX_DEPTH = 64;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    // Only needed to decode text from buffers without a backing array
+    private byte[] scratch;
+
+    /**
+     * @param buffer bytes to read, from its position to its limit
+     */
+    public DagCborReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * @return absolute buffer index of the next item
+     */
+    public int position() {
+        return position;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * @return major type of the next item, one of the constants of this class
+     */
+    public int peekType() {
+        return (at(position) & 0xff) >>> 5;
+    }
+
+    /**
+     * @return true if the next item is null
+     */
+    public boolean peekNull() {
+        return position < limit && (buffer.get(position) & 0xff) == 0xf6;
+    }
+
+    /**
+     * @return number of entries of the map that follows
+     */
+    public int readMapHeader() {
+        return (int) header(MAP, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return number of elements of the array that follows
+     */
+    public int readArrayHeader() {
+        return (int) header(ARRAY, Integer.MAX_VALUE);
+    }
+
+    public long readLong() {
+        int type = peekType();
+        if (type == NEGATIVE) {
+            return -1 - header(NEGATIVE, Long.MAX_VALUE);
+        }
+        return header(UNSIGNED, Long.MAX_VALUE);
+    }
+
+    public boolean readBoolean() {
+        int initial = at(position) & 0xff;
+        if (initial != 0xf4 && initial != 0xf5) {
+            throw malformed("Expected a boolean");
+        }
+        position++;
+        return initial == 0xf5;
+    }
+
+    /**
+     * Consume a null if one is next
+     * @return true if a null was consumed
+     */
+    public boolean readNull() {
+        if (peekNull()) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    public double readDouble() {
+        int initial = at(position) & 0xff;
+        if (initial != 0xfb) {
+            throw malformed("Expected a 64-bit float");
+        }
+        require(9);
+        double value = buffer.getDouble(position + 1);
+        position += 9;
+        return value;
+    }
+
+    public String readText() {
+        int length = (int) header(TEXT, Integer.MAX_VALUE);
+        require(length);
+        String text;
+        if (buffer.hasArray()) {
+            text = new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        } else {
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[Math.max(length, 64)];
+            }
+            buffer.get(position, scratch, 0, length);
+            text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        position += length;
+        return text;
+    }
+
+    /**
+     * @return the byte string that follows as a read-only slice of the buffer, without copying
+     */
+    public ByteBuffer readBytes() {
+        int length = (int) header(BYTES, Integer.MAX_VALUE);
+        require(length);
+        ByteBuffer slice = buffer.slice(position, length).asReadOnlyBuffer();
+        position += length;
+        return slice;
+    }
+
+    /**
+     * @return the CID link (tag 42) that follows
+     */
+    public Cid readCid() {
+        if (header(TAG, Long.MAX_VALUE) != CID_TAG) {
+            throw malformed("Expected a CID link");
+        }
+        ByteBuffer bytes = readBytes();
+        if (!bytes.hasRemaining() || bytes.get() != 0) {
+            throw malformed("CID link without the identity multibase prefix");
+        }
+        return Cid.decode(bytes);
+    }
+
+    /**
+     * Read a text key and find it in a table, comparing bytes in place
+     * @param keys expected keys as UTF-8 bytes
+     * @return index of the key in the table, or -1 if it is not there
+     */
+    public int readKey(byte[][] keys) {
+        int length = (int) header(TEXT, Integer.MAX_VALUE);
+        require(length);
+        int start = position;
+        position += length;
+        for (int i = 0; i < keys.length; i++) {
+            byte[] key = keys[i];
+            if (key.length == length && matches(key, start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(byte[] key, int start) {
+        for (int j = 0; j < key.length; j++) {
+            if (buffer.get(start + j) != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skip the next item, including everything nested in it
+     */
+    public void skip() {
+        skip(0);
+    }
+
+    private void skip(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw malformed("Nesting too deep");
+        }
+        int type = peekType();
+        switch (type) {
+            case UNSIGNED, NEGATIVE -> header(type, Long.MAX_VALUE);
+            case BYTES, TEXT -> {
+                int length = (int) header(type, Integer.MAX_VALUE);
+                require(length);
+                position += length;
+            }
+            case ARRAY -> {
+                int count = readArrayHeader();
+                for (int i = 0; i < count; i++) {
+                    skip(depth + 1);
+                }
+            }
+            case MAP -> {
+                int count = readMapHeader();
+                for (int i = 0; i < count * 2; i++) {
+                    skip(depth + 1);
+                }
+            }
+            case TAG -> readCid();
+            default -> readSimple();
+        }
+    }
+
+    /**
+     * Read the next item as a plain value: maps become {@code Map<String, Object>}, arrays
+     * {@code List}, integers {@code Long}, byte strings {@code byte[]} copies and links {@link Cid}
+     * @return the value
+     */
+    public Object readValue() {
+        return readValue(0);
+    }
+
+    private Object readValue(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw malformed("Nesting too deep");
+        }
+        switch (peekType()) {
+            case UNSIGNED, NEGATIVE:
+                return readLong();
+            case BYTES: {
+                ByteBuffer bytes = readBytes();
+                byte[] copy = new byte[bytes.remaining()];
+                bytes.get(copy);
+                return copy;
+            }
+            case TEXT:
+                return readText();
+            case ARRAY: {
+                int count = readArrayHeader();
+                List<Object> list = new ArrayList<>(Math.min(count, 1024));
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(depth + 1));
+                }
+                return list;
+            }
+            case MAP: {
+                int count = readMapHeader();
+                Map<String, Object> map = new LinkedHashMap<>((int) (Math.min(count, 1024) / 0.75f) + 1);
+                for (int i = 0; i < count; i++) {
+                    if (peekType() != TEXT) {
+                        throw malformed("Map keys must be strings");
+                    }
+                    map.put(readText(), readValue(depth + 1));
+                }
+                return map;
+            }
+            case TAG:
+                return readCid();
+            default:
+                return readSimple();
+        }
+    }
+
+    private Object readSimple() {
+        int initial = at(position) & 0xff;
+        switch (initial) {
+            case 0xf4, 0xf5:
+                return readBoolean();
+            case 0xf6:
+                position++;
+                return null;
+            case 0xfb:
+                return readDouble();
+            default:
+                throw malformed("Unsupported simple value 0x" + Integer.toHexString(initial));
+        }
+    }
+
+    // Read an item's head, returning its argument: a length, count, tag or integer value
+    private long header(int expectedType, long max) {
+        int initial = at(position) & 0xff;
+        int type = initial >>> 5;
+        if (type != expectedType) {
+            throw malformed("Expected major type " + expectedType + ", found " + type);
+        }
+        int info = initial & 0x1f;
+        long value;
+        if (info < 24) {
+            value = info;
+            position += 1;
+        } else if (info == 24) {
+            require(2);
+            value = buffer.get(position + 1) & 0xffL;
+            position += 2;
+        } else if (info == 25) {
+            require(3);
+            value = buffer.getShort(position + 1) & 0xffffL;
+            position += 3;
+        } else if (info == 26) {
+            require(5);
+            value = buffer.getInt(position + 1) & 0xffffffffL;
+            position += 5;
+        } else if (info == 27) {
+            require(9);
+            value = buffer.getLong(position + 1);
+            position += 9;
+            if (value < 0) {
+                throw malformed("Integer out of range");
+            }
+        } else {
+            throw malformed("Indefinite lengths are not allowed in DAG-CBOR");
+        }
+        if (value > max) {
+            throw malformed("Length out of range: " + value);
+        }
+        return value;
+    }
+
+    private byte at(int index) {
+        if (index >= limit) {
+            throw malformed("Unexpected end of input");
+        }
+        return buffer.get(index);
+    }
+
+    // Lengths are checked against the buffer before they are used
+    private void require(long bytes) {
+        if (bytes > limit - position) {
+            throw malformed("Unexpected end of input");
+        }
+    }
+
+    private IllegalArgumentException malformed(String message) {
+        return new IllegalArgumentException("Malformed DAG-CBOR at " + position + ": " + message);
+    }
+}
@@ -0,0 +1,221 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.model.Params;
+
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Consumer of the {@code com.atproto.sync.subscribeRepos} stream over a WebSocket.
+ * <p>
+ * Each binary frame is decoded where it arrived, in the buffer handed over by the WebSocket, and
+ * the resulting event is passed to the {@link Handler} before the next frame is requested. Frames
+ * split across several WebSocket messages are assembled in one buffer that is kept and reused for
+ * the life of the connection, so in the steady state the only allocations per event are the
+ * event's own strings and CIDs.
+ * <p>
+ * The handler is called on the HTTP client's executor, one frame at a time. Since the next frame
+ * is only requested once the handler returns, a slow handler slows down the stream rather than
+ * letting frames queue up in memory; a relay disconnects consumers that fall too far behind.
+ */
+public final class Firehose implements AutoCloseable {
+    public static final String SUBSCRIBE_REPOS = "com.atproto.sync.subscribeRepos";
+
+    private static final int INITIAL_FRAME_BUFFER = 64 * 1024;
+
+    private final XrpcClient client;
+    private final Long cursor;
+    private final Handler handler;
+    private final FirehoseDecoder decoder = new FirehoseDecoder();
+    private volatile WebSocket webSocket;
+    private volatile long lastSeq = -1;
+
+    private Firehose(Builder builder) {
+        this.client = Objects.requireNonNull(builder.client, "client");
+        this.cursor = builder.cursor;
+        this.handler = Objects.requireNonNull(builder.handler, "handler");
+    }
+
+    /**
+     * Receives the events of a firehose connection.
+     */
+    public interface Handler {
+        /**
+         * Handle an event. Slices of the frame held by the event are only valid until this returns.
+         * @param event the event
+         */
+        void onEvent(FirehoseEvent event);
+
+        /**
+         * Called for error frames sent by the server, as an
+         * {@link com.atproto.api.xrpc.XrpcException} with the error name as its code, for frames
+         * that could not be decoded, for exceptions thrown by {@link #onEvent}, and for failures
+         * of the connection. Only a connection failure ends the stream.
+         * @param error the error
+         */
+        default void onError(Throwable error) {
+        }
+
+        /**
+         * Called once the server has closed the stream
+         * @param statusCode WebSocket close code
+         * @param reason close reason sent by the server
+         */
+        default void onClose(int statusCode, String reason) {
+        }
+    }
+
+    /**
+     * Open the connection and start delivering events
+     * @return future completed once the connection is open
+     */
+    public CompletableFuture<Firehose> connect() {
+        if (webSocket != null) {
+            throw new IllegalStateException("Firehose is already connected");
+        }
+        Params params = cursor != null ? new Params.Builder().withParam("cursor", cursor).build() : Params.empty();
+        return client.connectWebSocket(SUBSCRIBE_REPOS, params, new Listener())
+            .thenApply(ws -> {
+                webSocket = ws;
+                return this;
+            });
+    }
+
+    /**
+     * @return sequence number of the last event handled without an exception, or -1 if none has
+     *     been; resuming from it as a cursor replays the events after it
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Close the connection. Events already received may still be delivered.
+     */
+    @Override
+    public void close() {
+        WebSocket ws = webSocket;
+        if (ws != null && !ws.isOutputClosed()) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "");
+        }
+    }
+
+    private void frame(ByteBuffer frame) {
+        FirehoseFrameEvent event = new FirehoseFrameEvent();
+        event.begin();
+        int size = frame.remaining();
+        FirehoseEvent decoded = null;
+        try {
+            decoded = decoder.decode(frame);
+            if (decoded != null) {
+                handler.onEvent(decoded);
+                if (decoded.getSeq() >= 0) {
+                    lastSeq = decoded.getSeq();
+                }
+            }
+        } catch (RuntimeException e) {
+            handler.onError(e);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.type = decoded != null ? decoded.getClass().getSimpleName() : "";
+                event.seq = decoded != null ? decoded.getSeq() : -1;
+                event.bytes = size;
+                event.commit();
+            }
+        }
+    }
+
+    private final class Listener implements WebSocket.Listener {
+        // Frames split across messages are assembled here; grown as needed and then reused
+        private ByteBuffer assembly;
+        private boolean assembling;
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            if (last && !assembling) {
+                frame(data);
+            } else {
+                append(data);
+                assembling = !last;
+                if (last) {
+                    assembly.flip();
+                    frame(assembly);
+                    assembly.clear();
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        private void append(ByteBuffer data) {
+            if (assembly == null) {
+                assembly = ByteBuffer.allocate(Math.max(INITIAL_FRAME_BUFFER, data.remaining()));
+            } else if (assembly.remaining() < data.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(assembly.capacity() * 2, assembly.position() + data.remaining()));
+                assembly.flip();
+                grown.put(assembly);
+                assembly = grown;
+            }
+            assembly.put(data);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            // Not part of the protocol
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            handler.onClose(statusCode, reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            handler.onError(error);
+        }
+    }
+
+    public static class Builder {
+        private XrpcClient client;
+        private Long cursor;
+        private Handler handler;
+
+        /**
+         * @param client client for the relay or PDS to subscribe to
+         */
+        public Builder withClient(XrpcClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * @param cursor sequence number to resume after, or null to start with live events
+         */
+        public Builder withCursor(Long cursor) {
+            this.cursor = cursor;
+            return this;
+        }
+
+        public Builder withHandler(Handler handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        public Firehose build() {
+            return new Firehose(this);
+        }
+    }
+}
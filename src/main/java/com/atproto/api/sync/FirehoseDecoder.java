@@ -0,0 +1,270 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.common.Cid;
+import com.atproto.api.xrpc.XrpcException;
+import com.atproto.api.xrpc.XrpcParseException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes binary frames of the {@code com.atproto.sync.subscribeRepos} stream into
+ * {@link FirehoseEvent}s.
+ * <p>
+ * A frame is two DAG-CBOR objects back to back: a header {@code {op, t}} naming the message type,
+ * then the message body. Fields are matched by their UTF-8 bytes in place, unknown fields are
+ * skipped, and the CAR blocks of a commit are returned as a slice of the frame rather than copied.
+ * Stateless and safe to share.
+ */
+public final class FirehoseDecoder {
+    private static final int OP_MESSAGE = 1;
+    private static final int OP_ERROR = -1;
+
+    private static final byte[][] HEADER_KEYS = keys("op", "t");
+    private static final byte[][] TYPES = keys("#commit", "#sync", "#identity", "#account", "#info");
+    private static final int COMMIT = 0;
+    private static final int SYNC = 1;
+    private static final int IDENTITY = 2;
+    private static final int ACCOUNT = 3;
+    private static final int INFO = 4;
+
+    private static final byte[][] COMMIT_KEYS =
+        keys("seq", "time", "repo", "commit", "rev", "since", "tooBig", "blocks", "ops", "blobs", "prevData");
+    private static final byte[][] SYNC_KEYS = keys("seq", "time", "did", "rev", "blocks");
+    private static final byte[][] IDENTITY_KEYS = keys("seq", "time", "did", "handle");
+    private static final byte[][] ACCOUNT_KEYS = keys("seq", "time", "did", "active", "status");
+    private static final byte[][] INFO_KEYS = keys("name", "message");
+    private static final byte[][] ERROR_KEYS = keys("error", "message");
+    private static final byte[][] OP_KEYS = keys("action", "path", "cid", "prev");
+    private static final byte[][] ACTIONS = keys("create", "update", "delete");
+    private static final FirehoseEvent.RepoOp.Action[] ACTION_VALUES = FirehoseEvent.RepoOp.Action.values();
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private static byte[][] keys(String... names) {
+        byte[][] keys = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return keys;
+    }
+
+    /**
+     * Decode one frame
+     * @param frame the frame, from its position to its limit; its position is not changed
+     * @return the event, or null for message types this decoder does not know, which clients are
+     *     expected to ignore
+     * @throws XrpcException if the frame is an error frame sent by the server before it closes
+     *     the stream, with the error name as its code
+     * @throws XrpcParseException if the frame is malformed
+     */
+    public FirehoseEvent decode(ByteBuffer frame) throws XrpcException {
+        try {
+            DagCborReader reader = new DagCborReader(frame);
+            long op = 0;
+            int type = -1;
+            int fields = reader.readMapHeader();
+            for (int i = 0; i < fields; i++) {
+                switch (reader.readKey(HEADER_KEYS)) {
+                    case 0 -> op = reader.readLong();
+                    case 1 -> type = reader.readKey(TYPES);
+                    default -> reader.skip();
+                }
+            }
+            if (op == OP_ERROR) {
+                throw error(reader);
+            }
+            if (op != OP_MESSAGE) {
+                throw new IllegalArgumentException("Unknown frame op " + op);
+            }
+            return switch (type) {
+                case COMMIT -> commit(reader);
+                case SYNC -> sync(reader);
+                case IDENTITY -> identity(reader);
+                case ACCOUNT -> account(reader);
+                case INFO -> info(reader);
+                default -> null;
+            };
+        } catch (IllegalArgumentException e) {
+            throw new XrpcParseException("Malformed firehose frame: " + e.getMessage(), e);
+        }
+    }
+
+    private static FirehoseEvent.Commit commit(DagCborReader reader) {
+        long seq = -1;
+        String time = null;
+        String repo = null;
+        Cid commit = null;
+        String rev = null;
+        String since = null;
+        boolean tooBig = false;
+        ByteBuffer blocks = EMPTY;
+        List<FirehoseEvent.RepoOp> ops = List.of();
+        List<Cid> blobs = List.of();
+        Cid prevData = null;
+        int fields = reader.readMapHeader();
+        for (int i = 0; i < fields; i++) {
+            int key = reader.readKey(COMMIT_KEYS);
+            if (key >= 0 && reader.readNull()) {
+                continue;
+            }
+            switch (key) {
+                case 0 -> seq = reader.readLong();
+                case 1 -> time = reader.readText();
+                case 2 -> repo = reader.readText();
+                case 3 -> commit = reader.readCid();
+                case 4 -> rev = reader.readText();
+                case 5 -> since = reader.readText();
+                case 6 -> tooBig = reader.readBoolean();
+                case 7 -> blocks = reader.readBytes();
+                case 8 -> ops = ops(reader);
+                case 9 -> blobs = cids(reader);
+                case 10 -> prevData = reader.readCid();
+                default -> reader.skip();
+            }
+        }
+        if (repo == null || commit == null) {
+            throw new IllegalArgumentException("Commit without repo or commit CID");
+        }
+        return new FirehoseEvent.Commit(seq, time, repo, commit, rev, since, tooBig, blocks, ops, blobs, prevData);
+    }
+
+    private static List<FirehoseEvent.RepoOp> ops(DagCborReader reader) {
+        int count = reader.readArrayHeader();
+        List<FirehoseEvent.RepoOp> ops = new ArrayList<>(Math.min(count, 1024));
+        for (int n = 0; n < count; n++) {
+            int action = -1;
+            String path = null;
+            Cid cid = null;
+            Cid prev = null;
+            int fields = reader.readMapHeader();
+            for (int i = 0; i < fields; i++) {
+                int key = reader.readKey(OP_KEYS);
+                if (key >= 0 && reader.readNull()) {
+                    continue;
+                }
+                switch (key) {
+                    case 0 -> action = reader.readKey(ACTIONS);
+                    case 1 -> path = reader.readText();
+                    case 2 -> cid = reader.readCid();
+                    case 3 -> prev = reader.readCid();
+                    default -> reader.skip();
+                }
+            }
+            if (action < 0 || path == null) {
+                throw new IllegalArgumentException("Repo op without a known action or path");
+            }
+            ops.add(new FirehoseEvent.RepoOp(ACTION_VALUES[action], path, cid, prev));
+        }
+        return ops;
+    }
+
+    private static List<Cid> cids(DagCborReader reader) {
+        int count = reader.readArrayHeader();
+        List<Cid> cids = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            cids.add(reader.readCid());
+        }
+        return cids;
+    }
+
+    private static FirehoseEvent.Sync sync(DagCborReader reader) {
+        long seq = -1;
+        String time = null;
+        String did = null;
+        String rev = null;
+        ByteBuffer blocks = EMPTY;
+        int fields = reader.readMapHeader();
+        for (int i = 0; i < fields; i++) {
+            switch (reader.readKey(SYNC_KEYS)) {
+                case 0 -> seq = reader.readLong();
+                case 1 -> time = reader.readText();
+                case 2 -> did = reader.readText();
+                case 3 -> rev = reader.readText();
+                case 4 -> blocks = reader.readBytes();
+                default -> reader.skip();
+            }
+        }
+        return new FirehoseEvent.Sync(seq, time, required(did), rev, blocks);
+    }
+
+    private static FirehoseEvent.Identity identity(DagCborReader reader) {
+        long seq = -1;
+        String time = null;
+        String did = null;
+        String handle = null;
+        int fields = reader.readMapHeader();
+        for (int i = 0; i < fields; i++) {
+            int key = reader.readKey(IDENTITY_KEYS);
+            if (key >= 0 && reader.readNull()) {
+                continue;
+            }
+            switch (key) {
+                case 0 -> seq = reader.readLong();
+                case 1 -> time = reader.readText();
+                case 2 -> did = reader.readText();
+                case 3 -> handle = reader.readText();
+                default -> reader.skip();
+            }
+        }
+        return new FirehoseEvent.Identity(seq, time, required(did), handle);
+    }
+
+    private static FirehoseEvent.Account account(DagCborReader reader) {
+        long seq = -1;
+        String time = null;
+        String did = null;
+        boolean active = false;
+        String status = null;
+        int fields = reader.readMapHeader();
+        for (int i = 0; i < fields; i++) {
+            int key = reader.readKey(ACCOUNT_KEYS);
+            if (key >= 0 && reader.readNull()) {
+                continue;
+            }
+            switch (key) {
+                case 0 -> seq = reader.readLong();
+                case 1 -> time = reader.readText();
+                case 2 -> did = reader.readText();
+                case 3 -> active = reader.readBoolean();
+                case 4 -> status = reader.readText();
+                default -> reader.skip();
+            }
+        }
+        return new FirehoseEvent.Account(seq, time, required(did), active, status);
+    }
+
+    private static FirehoseEvent.Info info(DagCborReader reader) {
+        String[] values = strings(reader, INFO_KEYS);
+        return new FirehoseEvent.Info(values[0], values[1]);
+    }
+
+    private static XrpcException error(DagCborReader reader) {
+        String[] values = strings(reader, ERROR_KEYS);
+        String code = values[0] != null ? values[0] : "Unknown";
+        return new XrpcException(0, code, values[1] != null ? values[1] : code);
+    }
+
+    private static String[] strings(DagCborReader reader, byte[][] keys) {
+        String[] values = new String[keys.length];
+        int fields = reader.readMapHeader();
+        for (int i = 0; i < fields; i++) {
+            int key = reader.readKey(keys);
+            if (key >= 0 && !reader.readNull()) {
+                values[key] = reader.readText();
+            } else if (key < 0) {
+                reader.skip();
+            }
+        }
+        return values;
+    }
+
+    private static String required(String did) {
+        if (did == null) {
+            throw new IllegalArgumentException("Event without a DID");
+        }
+        return did;
+    }
+}
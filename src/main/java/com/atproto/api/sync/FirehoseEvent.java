@@ -0,0 +1,489 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.common.Cid;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An event from the {@code com.atproto.sync.subscribeRepos} stream.
+ * <p>
+ * Events are decoded straight from the frame they arrived in. Fields that can be large, such as
+ * the CAR blocks of a commit, are read-only slices of the frame and are only valid until the
+ * handler returns; copy them, or {@link #detach()} the event, to keep them.
+ */
+public abstract class FirehoseEvent {
+    // Type tags of the binary form
+    private static final int COMMIT = 0;
+    private static final int SYNC = 1;
+    private static final int IDENTITY = 2;
+    private static final int ACCOUNT = 3;
+    private static final int INFO = 4;
+
+    private final long seq;
+    private final String time;
+
+    FirehoseEvent(long seq, String time) {
+        this.seq = seq;
+        this.time = time;
+    }
+
+    /**
+     * @return sequence number of the event in the stream, usable as a cursor, or -1 for info
+     *     messages, which are not sequenced
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return when the event was emitted, as an RFC 3339 datetime, or null
+     */
+    public String getTime() {
+        return time;
+    }
+
+    /**
+     * @return this event, or a copy of it that does not refer to the frame, so it stays valid after
+     *     the handler returns
+     */
+    public FirehoseEvent detach() {
+        return this;
+    }
+
+    static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate()).flip();
+        return copy.asReadOnlyBuffer();
+    }
+
+    /**
+     * Write the event in a compact binary form private to this library, e.g. to hold it on disk
+     * for a while; read it back with {@link #readFrom}
+     * @param out the output
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type());
+        out.writeLong(seq);
+        writeString(out, time);
+        writeBody(out);
+    }
+
+    /**
+     * Read an event written by {@link #writeTo}
+     * @param in the input
+     * @return the event, which does not refer to any frame
+     */
+    public static FirehoseEvent readFrom(DataInput in) throws IOException {
+        int type = in.readByte();
+        long seq = in.readLong();
+        String time = readString(in);
+        return switch (type) {
+            case COMMIT -> Commit.readBody(in, seq, time);
+            case SYNC -> new Sync(seq, time, in.readUTF(), readString(in), readBlocks(in));
+            case IDENTITY -> new Identity(seq, time, in.readUTF(), readString(in));
+            case ACCOUNT -> new Account(seq, time, in.readUTF(), in.readBoolean(), readString(in));
+            case INFO -> new Info(readString(in), readString(in));
+            default -> throw new IOException("Unknown event type " + type);
+        };
+    }
+
+    abstract int type();
+
+    abstract void writeBody(DataOutput out) throws IOException;
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeCid(DataOutput out, Cid cid) throws IOException {
+        byte[] bytes = cid != null ? cid.toBytes() : new byte[0];
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Cid readCid(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return bytes.length > 0 ? Cid.decode(bytes) : null;
+    }
+
+    private static void writeBlocks(DataOutput out, ByteBuffer blocks) throws IOException {
+        ByteBuffer data = blocks.duplicate();
+        out.writeInt(data.remaining());
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    private static ByteBuffer readBlocks(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * A new commit to a repository: {@code #commit}.
+     */
+    public static final class Commit extends FirehoseEvent {
+        private final String repo;
+        private final Cid commit;
+        private final String rev;
+        private final String since;
+        private final boolean tooBig;
+        private final ByteBuffer blocks;
+        private final List<RepoOp> ops;
+        private final List<Cid> blobs;
+        private final Cid prevData;
+
+        Commit(long seq, String time, String repo, Cid commit, String rev, String since, boolean tooBig,
+               ByteBuffer blocks, List<RepoOp> ops, List<Cid> blobs, Cid prevData) {
+            super(seq, time);
+            this.repo = repo;
+            this.commit = commit;
+            this.rev = rev;
+            this.since = since;
+            this.tooBig = tooBig;
+            this.blocks = blocks;
+            this.ops = ops;
+            this.blobs = blobs;
+            this.prevData = prevData;
+        }
+
+        /**
+         * @return DID of the repository
+         */
+        public String getRepo() {
+            return repo;
+        }
+
+        /**
+         * @return CID of the commit object
+         */
+        public Cid getCommit() {
+            return commit;
+        }
+
+        /**
+         * @return revision of the commit
+         */
+        public String getRev() {
+            return rev;
+        }
+
+        /**
+         * @return revision of the previous commit, or null
+         */
+        public String getSince() {
+            return since;
+        }
+
+        /**
+         * @return true if the diff was too large to send and the repository must be fetched
+         */
+        public boolean isTooBig() {
+            return tooBig;
+        }
+
+        /**
+         * @return the diff as a CAR file; a slice of the frame, valid only during the callback
+         */
+        public ByteBuffer getBlocks() {
+            return blocks.duplicate();
+        }
+
+        public List<RepoOp> getOps() {
+            return ops;
+        }
+
+        /**
+         * @return CIDs of blobs referenced by the records in this commit
+         */
+        public List<Cid> getBlobs() {
+            return blobs;
+        }
+
+        /**
+         * @return root CID of the data tree before this commit, or null if not sent
+         */
+        public Cid getPrevData() {
+            return prevData;
+        }
+
+        @Override
+        public Commit detach() {
+            return new Commit(getSeq(), getTime(), repo, commit, rev, since, tooBig, copy(blocks), ops, blobs,
+                prevData);
+        }
+
+        @Override
+        int type() {
+            return COMMIT;
+        }
+
+        @Override
+        void writeBody(DataOutput out) throws IOException {
+            out.writeUTF(repo);
+            writeCid(out, commit);
+            writeString(out, rev);
+            writeString(out, since);
+            out.writeBoolean(tooBig);
+            writeBlocks(out, blocks);
+            out.writeInt(ops.size());
+            for (RepoOp op : ops) {
+                out.writeByte(op.getAction().ordinal());
+                out.writeUTF(op.getPath());
+                writeCid(out, op.getCid());
+                writeCid(out, op.getPrev());
+            }
+            out.writeInt(blobs.size());
+            for (Cid blob : blobs) {
+                writeCid(out, blob);
+            }
+            writeCid(out, prevData);
+        }
+
+        static Commit readBody(DataInput in, long seq, String time) throws IOException {
+            String repo = in.readUTF();
+            Cid commit = readCid(in);
+            String rev = readString(in);
+            String since = readString(in);
+            boolean tooBig = in.readBoolean();
+            ByteBuffer blocks = readBlocks(in);
+            int opCount = in.readInt();
+            List<RepoOp> ops = new ArrayList<>(opCount);
+            for (int i = 0; i < opCount; i++) {
+                RepoOp.Action action = RepoOp.Action.values()[in.readByte()];
+                ops.add(new RepoOp(action, in.readUTF(), readCid(in), readCid(in)));
+            }
+            int blobCount = in.readInt();
+            List<Cid> blobs = new ArrayList<>(blobCount);
+            for (int i = 0; i < blobCount; i++) {
+                blobs.add(readCid(in));
+            }
+            return new Commit(seq, time, repo, commit, rev, since, tooBig, blocks, List.copyOf(ops),
+                List.copyOf(blobs), readCid(in));
+        }
+    }
+
+    /**
+     * A record operation within a commit.
+     */
+    public static final class RepoOp {
+        public enum Action {
+            CREATE, UPDATE, DELETE
+        }
+
+        private final Action action;
+        private final String path;
+        private final Cid cid;
+        private final Cid prev;
+
+        RepoOp(Action action, String path, Cid cid, Cid prev) {
+            this.action = action;
+            this.path = path;
+            this.cid = cid;
+            this.prev = prev;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * @return collection and record key, e.g. {@code app.bsky.feed.post/3k2a}
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return CID of the new record, or null for deletes
+         */
+        public Cid getCid() {
+            return cid;
+        }
+
+        /**
+         * @return CID of the record before the operation, or null
+         */
+        public Cid getPrev() {
+            return prev;
+        }
+    }
+
+    /**
+     * The current state of a repository, sent instead of a commit diff: {@code #sync}.
+     */
+    public static final class Sync extends FirehoseEvent {
+        private final String did;
+        private final String rev;
+        private final ByteBuffer blocks;
+
+        Sync(long seq, String time, String did, String rev, ByteBuffer blocks) {
+            super(seq, time);
+            this.did = did;
+            this.rev = rev;
+            this.blocks = blocks;
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        public String getRev() {
+            return rev;
+        }
+
+        /**
+         * @return CAR file with the signed commit; a slice of the frame, valid only during the callback
+         */
+        public ByteBuffer getBlocks() {
+            return blocks.duplicate();
+        }
+
+        @Override
+        public Sync detach() {
+            return new Sync(getSeq(), getTime(), did, rev, copy(blocks));
+        }
+
+        @Override
+        int type() {
+            return SYNC;
+        }
+
+        @Override
+        void writeBody(DataOutput out) throws IOException {
+            out.writeUTF(did);
+            writeString(out, rev);
+            writeBlocks(out, blocks);
+        }
+    }
+
+    /**
+     * An account's identity, such as its handle or DID document, may have changed: {@code #identity}.
+     */
+    public static final class Identity extends FirehoseEvent {
+        private final String did;
+        private final String handle;
+
+        Identity(long seq, String time, String did, String handle) {
+            super(seq, time);
+            this.did = did;
+            this.handle = handle;
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        /**
+         * @return the current handle, or null if not sent
+         */
+        public String getHandle() {
+            return handle;
+        }
+
+        @Override
+        int type() {
+            return IDENTITY;
+        }
+
+        @Override
+        void writeBody(DataOutput out) throws IOException {
+            out.writeUTF(did);
+            writeString(out, handle);
+        }
+    }
+
+    /**
+     * An account's hosting status changed: {@code #account}.
+     */
+    public static final class Account extends FirehoseEvent {
+        private final String did;
+        private final boolean active;
+        private final String status;
+
+        Account(long seq, String time, String did, boolean active, String status) {
+            super(seq, time);
+            this.did = did;
+            this.active = active;
+            this.status = status;
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * @return why the account is inactive, e.g. {@code takendown} or {@code deactivated}, or null
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        @Override
+        int type() {
+            return ACCOUNT;
+        }
+
+        @Override
+        void writeBody(DataOutput out) throws IOException {
+            out.writeUTF(did);
+            out.writeBoolean(active);
+            writeString(out, status);
+        }
+    }
+
+    /**
+     * An informational message about the stream itself, e.g. {@code OutdatedCursor}: {@code #info}.
+     */
+    public static final class Info extends FirehoseEvent {
+        private final String name;
+        private final String message;
+
+        Info(String name, String message) {
+            super(-1, null);
+            this.name = name;
+            this.message = message;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        int type() {
+            return INFO;
+        }
+
+        @Override
+        void writeBody(DataOutput out) throws IOException {
+            writeString(out, name);
+            writeString(out, message);
+        }
+    }
+}
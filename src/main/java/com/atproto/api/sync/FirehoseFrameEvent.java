@@ -0,0 +1,35 @@
+package com.atproto.api.sync;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one firehose frame, covering its decoding and the handler call, so a
+ * consumer that falls behind the stream can be traced to slow frames.
+ * <p>
+ * Disabled by default; enable {@code com.atproto.FirehoseFrame} in a recording's settings.
+ */
+@Name("com.atproto.FirehoseFrame")
+@Label("Firehose Frame")
+@Category({"AT Protocol", "Sync"})
+@Description("Firehose frame decoded and handed to the handler")
+@Enabled(false)
+@StackTrace(false)
+final class FirehoseFrameEvent extends Event {
+    @Label("Type")
+    @Description("Event class, or empty for frames that were skipped or failed to decode")
+    String type;
+
+    @Label("Sequence")
+    long seq;
+
+    @Label("Frame Size")
+    @DataAmount
+    long bytes;
+}
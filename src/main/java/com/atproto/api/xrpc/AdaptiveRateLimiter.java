@@ -0,0 +1,266 @@
+package com.atproto.api.xrpc;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Client-side pacing driven by the server's {@code ratelimit-*} response headers.
+ * <p>
+ * Each host and account has its own bucket. The bucket learns the quota from
+ * {@code ratelimit-limit}, {@code ratelimit-remaining} and {@code ratelimit-reset}, then spreads
+ * the remaining requests evenly until the reset, allowing a small burst (the generic cell rate
+ * algorithm). Calls over the pace are delayed without blocking a thread. A 429 makes the bucket
+ * wait for the reset (or {@code retry-after}) and the call is sent again. Calls fail only when
+ * the wait would exceed the configured maximum. Buckets with no headers seen yet do not pace.
+ */
+public final class AdaptiveRateLimiter {
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMinutes(1);
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final int MAX_BURST = 8;
+    private static final int IDLE_SWEEP_THRESHOLD = 1024;
+    private static final long DEFAULT_PENALTY = TimeUnit.SECONDS.toNanos(1);
+
+    private final long maxDelayNanos;
+    private final int maxRetries;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    public AdaptiveRateLimiter() {
+        this(DEFAULT_MAX_DELAY, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * @param maxDelay longest a call may be held back before it fails instead
+     * @param maxRetries how often a call rejected with 429 is sent again
+     */
+    public AdaptiveRateLimiter(Duration maxDelay, int maxRetries) {
+        if (maxDelay.isNegative() || maxRetries < 0) {
+            throw new IllegalArgumentException("Max delay and retries must not be negative");
+        }
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Send a call once its bucket allows it
+     * @param host service host the call goes to
+     * @param account credentials the call is made with, or null for unauthenticated calls
+     * @param request the call
+     * @param transport sends the call
+     * @return a future for the response
+     */
+    public CompletableFuture<XrpcResponse> execute(String host, String account, XrpcRequest request,
+                                                   Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        CompletableFuture<XrpcResponse> result = new CompletableFuture<>();
+        attempt(bucket(host, account), request, transport, 0, result);
+        return result;
+    }
+
+    // Completes result; cancelling it cancels the send in flight, or stops a held-back call being sent
+    private void attempt(Bucket bucket, XrpcRequest request,
+                         Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport,
+                         int attempt, CompletableFuture<XrpcResponse> result) {
+        long delay = bucket.reserve(System.nanoTime(), maxDelayNanos);
+        if (delay > maxDelayNanos) {
+            result.completeExceptionally(new XrpcRateLimitException("RateLimitExceeded",
+                "Rate limit for " + request.getMethod() + " resets in " + TimeUnit.NANOSECONDS.toMillis(delay) + " ms"));
+            return;
+        }
+        CompletableFuture<XrpcResponse> sent;
+        if (delay <= 0) {
+            sent = send(request, transport);
+        } else {
+            delayed.increment();
+            CompletableFuture<XrpcResponse> held = new CompletableFuture<>();
+            Executor later = CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS);
+            later.execute(() -> {
+                if (!held.isDone()) {
+                    Futures.relay(send(request, transport), held);
+                }
+            });
+            sent = held;
+        }
+        Futures.cancelling(result, sent);
+        sent.whenComplete((response, failure) -> {
+            if (failure == null) {
+                bucket.update(response::getHeader, System.nanoTime());
+                result.complete(response);
+                return;
+            }
+            Throwable cause = XrpcClient.unwrap(failure);
+            if (cause instanceof XrpcRateLimitException limited) {
+                throttled.increment();
+                bucket.penalize(limited.getHeaders()::get, System.nanoTime());
+                if (attempt < maxRetries && !result.isDone()) {
+                    attempt(bucket, request, transport, attempt + 1, result);
+                    return;
+                }
+            }
+            result.completeExceptionally(cause);
+        });
+    }
+
+    private static CompletableFuture<XrpcResponse> send(XrpcRequest request,
+                                                        Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        try {
+            return transport.apply(request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Bucket bucket(String host, String account) {
+        String key = account != null ? host + '\n' + account : host;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= IDLE_SWEEP_THRESHOLD) {
+                // Tokens rotate, so drop buckets that have had no calls and hold no penalty
+                long now = System.nanoTime();
+                buckets.values().removeIf(b -> b.isIdle(now));
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        }
+        return bucket;
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * @return calls that were held back before being sent
+     */
+    public long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    /**
+     * @return 429 responses received
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * Time at which a rate limit window resets, from a {@code ratelimit-reset} or
+     * {@code retry-after} value. Values that look like epoch seconds are absolute, smaller values
+     * are a number of seconds from now.
+     * @return the reset time on the {@link System#nanoTime} scale, or 0 if the value is absent
+     */
+    static long resetAt(String value, long now) {
+        if (value == null) {
+            return 0;
+        }
+        long seconds;
+        try {
+            seconds = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        if (seconds > 1_000_000_000L) {
+            long millis = Math.max(0, seconds * 1000 - System.currentTimeMillis());
+            return now + TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        return now + TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Theoretical-arrival-time bucket. A call may go at {@code tat - tolerance}; each call that is
+     * sent advances {@code tat} by one interval.
+     */
+    static final class Bucket {
+        private long interval;
+        private long tolerance;
+        // nanoTime values, compared by their difference because they may be negative or wrap
+        private long tat;
+        private long lastUsed;
+
+        Bucket() {
+            this(System.nanoTime());
+        }
+
+        Bucket(long now) {
+            this.tat = now;
+            this.lastUsed = now;
+        }
+
+        /**
+         * Reserve the next slot, unless it is more than {@code maxDelay} away
+         * @return how long to wait before sending; the slot is only taken if this is at most
+         *     {@code maxDelay}, so rejected calls do not push the schedule out
+         */
+        synchronized long reserve(long now, long maxDelay) {
+            lastUsed = now;
+            long start = later(tat, now);
+            long delay = Math.max(0, start - tolerance - now);
+            if (delay <= maxDelay) {
+                tat = start + interval;
+            }
+            return delay;
+        }
+
+        synchronized void update(Function<String, String> headers, long now) {
+            long limit = parseLong(headers.apply("ratelimit-limit"));
+            long remaining = parseLong(headers.apply("ratelimit-remaining"));
+            long reset = resetAt(headers.apply("ratelimit-reset"), now);
+            if (limit <= 0 || remaining < 0 || reset == 0) {
+                return;
+            }
+            long untilReset = Math.max(reset - now, TimeUnit.MILLISECONDS.toNanos(1));
+            if (remaining == 0) {
+                interval = untilReset / limit;
+                tolerance = 0;
+                tat = later(tat, reset);
+                return;
+            }
+            // Spread what is left evenly, keeping part of it back for the burst allowance
+            long burst = Math.min(MAX_BURST, remaining / 2);
+            interval = untilReset / Math.max(1, remaining - burst);
+            tolerance = interval * burst;
+            // The server has quota now, so a schedule pushed out by an earlier exhausted window or
+            // penalty no longer applies; keep only the pacing of the next call
+            long next = now + interval;
+            tat = tat - next < 0 ? tat : next;
+        }
+
+        synchronized void penalize(Function<String, String> headers, long now) {
+            update(headers, now);
+            long reset = resetAt(headers.apply("ratelimit-reset"), now);
+            if (reset == 0) {
+                reset = resetAt(headers.apply("retry-after"), now);
+            }
+            if (reset == 0) {
+                reset = now + DEFAULT_PENALTY;
+            }
+            tolerance = 0;
+            tat = later(tat, reset);
+        }
+
+        synchronized boolean isIdle(long now) {
+            return tat - now <= 0 && now - lastUsed > TimeUnit.MINUTES.toNanos(10);
+        }
+
+        private static long later(long a, long b) {
+            return a - b > 0 ? a : b;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.common.Cid;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Request and response bodies that compute the blob CID from the buffers passing through them,
+ * so blobs are hashed while they stream and never held in memory as a whole.
+ */
+final class BlobStreams {
+
+    private BlobStreams() {
+    }
+
+    /**
+     * Publishes the delegate's buffers unchanged while hashing them. The CID and size refer to
+     * the last complete subscription, since the client may resubscribe to resend the body.
+     */
+    static final class HashingPublisher implements HttpRequest.BodyPublisher {
+        private final HttpRequest.BodyPublisher delegate;
+        private volatile Cid cid;
+        private volatile long size;
+
+        HashingPublisher(HttpRequest.BodyPublisher delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            MessageDigest digest = Cid.newDigest();
+            delegate.subscribe(new Flow.Subscriber<>() {
+                private long count;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(subscription);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    count += item.remaining();
+                    digest.update(item.duplicate());
+                    subscriber.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    cid = Cid.of(Cid.RAW, digest.digest());
+                    size = count;
+                    subscriber.onComplete();
+                }
+            });
+        }
+
+        /**
+         * @return CID of the published content, or null before the body was fully sent
+         */
+        Cid cid() {
+            return cid;
+        }
+
+        long size() {
+            return size;
+        }
+    }
+
+    /**
+     * Passes received buffers to the delegate while hashing them. The CID is set before the
+     * delegate completes, so it is available once the delegate's body is.
+     */
+    static final class HashingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final MessageDigest digest = Cid.newDigest();
+        private long size;
+        private volatile Cid cid;
+
+        HashingSubscriber(HttpResponse.BodySubscriber<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            for (ByteBuffer buffer : item) {
+                size += buffer.remaining();
+                digest.update(buffer.duplicate());
+            }
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            cid = Cid.of(Cid.RAW, digest.digest());
+            delegate.onComplete();
+        }
+
+        Cid cid() {
+            return cid;
+        }
+
+        long size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.atproto.api.xrpc;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of calls in progress, rejecting calls over the limit at once instead of
+ * queueing them.
+ * <p>
+ * A fixed limiter never changes its limit. An adaptive limiter adjusts it by additive increase,
+ * multiplicative decrease (AIMD) against a latency target. A call completing within the target
+ * while at least half the limit is in use raises the limit by one. A call slower than the target
+ * cuts it by a tenth, at most once per target interval so one slow burst does not collapse it.
+ * The limit thus settles where latency stays at the target and callers beyond it are turned away
+ * before they pile up.
+ */
+public final class ConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+    private final LongAdder rejected = new LongAdder();
+
+    private ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetNanos) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = targetNanos;
+        this.limit = new AtomicInteger(initialLimit);
+    }
+
+    /**
+     * @param limit maximum calls in progress
+     * @return a limiter with a constant limit
+     */
+    public static ConcurrencyLimiter fixed(int limit) {
+        return new ConcurrencyLimiter(limit, limit, limit, 0);
+    }
+
+    /**
+     * @param initialLimit limit to start from
+     * @param minLimit lowest the limit may fall
+     * @param maxLimit highest the limit may rise
+     * @param latencyTarget call latency above which the limit is reduced
+     * @return a limiter that adapts its limit to observed latency
+     */
+    public static ConcurrencyLimiter adaptive(int initialLimit, int minLimit, int maxLimit, Duration latencyTarget) {
+        if (latencyTarget.isNegative() || latencyTarget.isZero()) {
+            throw new IllegalArgumentException("Latency target must be positive");
+        }
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, latencyTarget.toNanos());
+    }
+
+    /**
+     * Admit a call if the limit allows it. Every admitted call must be followed by
+     * {@link #release(long)}, or by {@link #cancel()} if it never ran.
+     * @return true if the call was admitted
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Complete an admitted call
+     * @param latencyNanos how long the call took
+     */
+    public void release(long latencyNanos) {
+        int before = inFlight.getAndDecrement();
+        if (targetNanos == 0) {
+            return;
+        }
+        if (latencyNanos > targetNanos) {
+            long now = System.nanoTime();
+            long last = lastDecrease.get();
+            if (now - last >= targetNanos && lastDecrease.compareAndSet(last, now)) {
+                limit.updateAndGet(current -> Math.max(minLimit, current - Math.max(1, current / 10)));
+            }
+        } else if (before * 2 >= limit.get()) {
+            limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+        }
+    }
+
+    /**
+     * Give back an admitted call that never ran, e.g. because a later limit turned it away,
+     * without taking a latency sample
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return number of calls turned away so far
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,162 @@
+package com.atproto.api.xrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable string-keyed table with a perfect hash, built once from a fixed key set.
+ * <p>
+ * The hash has two levels, after the hash-and-displace (CHD) scheme: a key's hash picks a bucket,
+ * and the bucket's displacement, found at construction, remixes the hash into a slot that no other
+ * key uses. Buckets are placed largest first, so the few keys of the last ones find free slots
+ * easily, and the table needs only a little more than one slot per key. A lookup hashes the key
+ * once, reads one displacement, probes one slot and confirms with a single comparison. Keys are
+ * looked up as a region of a larger string, so a request path needs no substring to find its
+ * route.
+ */
+final class DispatchTable<T> {
+    // Average keys per bucket; more keys per bucket means fewer displacements but a longer search
+    private static final int KEYS_PER_BUCKET = 4;
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+    private static final int SEEDS_PER_SIZE = 16;
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] displacements;
+    private final int mask;
+    private final int bucketMask;
+    private final int seed;
+
+    DispatchTable(Map<String, T> entries) {
+        int n = entries.size();
+        // At most 80% full, so the last buckets to be placed still find free slots quickly
+        int size = Integer.highestOneBit(Math.max(1, n + n / 4)) << 1;
+        int buckets = Integer.highestOneBit(Math.max(1, n / KEYS_PER_BUCKET)) << 1;
+        String[] names = entries.keySet().toArray(new String[0]);
+        while (true) {
+            for (int candidate = 1; candidate <= SEEDS_PER_SIZE; candidate++) {
+                String[] slots = new String[size];
+                int[] displaced = place(names, slots, buckets, candidate);
+                if (displaced != null) {
+                    this.keys = slots;
+                    this.values = new Object[size];
+                    this.displacements = displaced;
+                    this.mask = size - 1;
+                    this.bucketMask = buckets - 1;
+                    this.seed = candidate;
+                    for (int i = 0; i < size; i++) {
+                        if (slots[i] != null) {
+                            values[i] = entries.get(slots[i]);
+                        }
+                    }
+                    return;
+                }
+            }
+            size <<= 1;
+        }
+    }
+
+    /**
+     * Find a displacement for every bucket that sends its keys to free slots
+     * @return the displacements, or null if some bucket has none under this seed
+     */
+    private static int[] place(String[] names, String[] slots, int buckets, int seed) {
+        int mask = slots.length - 1;
+        // Indexes of the keys in each bucket
+        List<List<Integer>> byBucket = new ArrayList<>(buckets);
+        for (int b = 0; b < buckets; b++) {
+            byBucket.add(new ArrayList<>());
+        }
+        int[] hashes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            hashes[i] = hash(names[i], 0, names[i].length(), seed);
+            byBucket.get(hashes[i] & (buckets - 1)).add(i);
+        }
+        Integer[] order = new Integer[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer b) -> byBucket.get(b).size()).reversed());
+
+        int[] displacements = new int[buckets];
+        int[] taken = new int[KEYS_PER_BUCKET * 4];
+        for (int b : order) {
+            List<Integer> bucket = byBucket.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            if (taken.length < bucket.size()) {
+                taken = new int[bucket.size()];
+            }
+            int displacement = 0;
+            search:
+            while (true) {
+                if (++displacement > MAX_DISPLACEMENT) {
+                    return null;
+                }
+                for (int k = 0; k < bucket.size(); k++) {
+                    int slot = displace(hashes[bucket.get(k)], displacement) & mask;
+                    if (slots[slot] != null) {
+                        continue search;
+                    }
+                    for (int j = 0; j < k; j++) {
+                        if (taken[j] == slot) {
+                            continue search;
+                        }
+                    }
+                    taken[k] = slot;
+                }
+                break;
+            }
+            for (int k = 0; k < bucket.size(); k++) {
+                slots[taken[k]] = names[bucket.get(k)];
+            }
+            displacements[b] = displacement;
+        }
+        return displacements;
+    }
+
+    /**
+     * @return number of slots in the table
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param text string containing the key
+     * @param start start of the key in the string
+     * @return the value for the key {@code text[start, text.length())}, or null
+     */
+    @SuppressWarnings("unchecked")
+    T get(String text, int start) {
+        int length = text.length() - start;
+        int h = hash(text, start, text.length(), seed);
+        int slot = displace(h, displacements[h & bucketMask]) & mask;
+        String key = keys[slot];
+        if (key != null && key.length() == length && text.startsWith(key, start)) {
+            return (T) values[slot];
+        }
+        return null;
+    }
+
+    private static int hash(String text, int start, int end, int seed) {
+        int h = seed * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private static int displace(int h, int displacement) {
+        h ^= displacement * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 15);
+    }
+}
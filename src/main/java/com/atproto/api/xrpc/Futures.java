@@ -0,0 +1,46 @@
+package com.atproto.api.xrpc;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Cancellation across chained futures.
+ * <p>
+ * Cancelling a {@link CompletableFuture} made by {@code thenCompose}, {@code handle} and the like
+ * does not reach the future it depends on, so a cancelled call would keep its HTTP exchange open.
+ * These helpers pass the cancellation down explicitly.
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Cancel {@code source} when {@code stage} is cancelled
+     * @return {@code stage}
+     */
+    static <T> CompletableFuture<T> cancelling(CompletableFuture<T> stage, Future<?> source) {
+        stage.whenComplete((value, failure) -> {
+            if (failure instanceof CancellationException) {
+                source.cancel(true);
+            }
+        });
+        return stage;
+    }
+
+    /**
+     * Complete {@code target} with the outcome of {@code source}, cancelling {@code source} if
+     * {@code target} is cancelled first
+     */
+    static <T> void relay(CompletableFuture<T> source, CompletableFuture<T> target) {
+        source.whenComplete((value, failure) -> {
+            if (failure == null) {
+                target.complete(value);
+            } else {
+                target.completeExceptionally(failure);
+            }
+        });
+        cancelling(target, source);
+    }
+}
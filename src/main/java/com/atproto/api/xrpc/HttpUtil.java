@@ -1,3 +1,174 @@
-public class HttpUtil {
-    
+package com.atproto.api.xrpc;
+
+import com.atproto.api.xrpc.model.Params;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HTTP helpers for the XRPC client: endpoint URIs, query-string encoding and a pool of shared
+ * {@link HttpClient} instances.
+ */
+public final class HttpUtil {
+    public static final String XRPC_PATH = "/xrpc/";
+
+    // One client per origin and connect timeout, so connections (and HTTP/2 streams) are reused.
+    // Counted by the XrpcClients holding them and shut down when the last one is released.
+    private static final Map<String, SharedClient> CLIENTS = new HashMap<>();
+
+    private static final class SharedClient {
+        final HttpClient client;
+        int references;
+
+        SharedClient(HttpClient client) {
+            this.client = client;
+        }
+    }
+
+    private HttpUtil() {
+    }
+
+    /**
+     * Get the shared HTTP/2 client for a service origin, creating it on first use. Every call must
+     * be paired with a {@link #releaseClient} once the client is no longer used.
+     * @param service service URI; only scheme, host and port are significant
+     * @param connectTimeout connect timeout for new connections
+     * @return a client shared by all callers with the same origin and timeout
+     */
+    public static HttpClient acquireClient(URI service, Duration connectTimeout) {
+        String key = clientKey(service, connectTimeout);
+        synchronized (CLIENTS) {
+            SharedClient shared = CLIENTS.computeIfAbsent(key, k -> new SharedClient(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build()));
+            shared.references++;
+            return shared.client;
+        }
+    }
+
+    /**
+     * Release a client from {@link #acquireClient}. The last release shuts the client down; calls
+     * already in flight are allowed to finish.
+     * @param service service URI the client was acquired for
+     * @param connectTimeout connect timeout the client was acquired with
+     */
+    public static void releaseClient(URI service, Duration connectTimeout) {
+        String key = clientKey(service, connectTimeout);
+        HttpClient unused;
+        synchronized (CLIENTS) {
+            SharedClient shared = CLIENTS.get(key);
+            if (shared == null || --shared.references > 0) {
+                return;
+            }
+            CLIENTS.remove(key);
+            unused = shared.client;
+        }
+        unused.shutdown();
+    }
+
+    private static String clientKey(URI service, Duration connectTimeout) {
+        return service.getScheme() + "://" + service.getHost() + ":" + port(service) + "#" + connectTimeout.toMillis();
+    }
+
+    /**
+     * Build the endpoint URI for an XRPC method
+     * @param service service URI, e.g. https://bsky.social
+     * @param method NSID of the method
+     * @param params query parameters; iterable and array values become repeated keys, and
+     *     {@link Params} contribute their cached encoding
+     * @param queryParams additional raw query parameters
+     * @return the endpoint URI
+     */
+    public static URI xrpcUri(URI service, String method, Map<String, ?> params, Map<String, String> queryParams) {
+        StringBuilder uri = new StringBuilder(64).append(service.getScheme()).append("://").append(service.getRawAuthority());
+        String path = service.getRawPath();
+        if (path != null && !path.isEmpty()) {
+            uri.append(path, 0, path.endsWith("/") ? path.length() - 1 : path.length());
+        }
+        uri.append(XRPC_PATH).append(method);
+        int start = uri.length();
+        appendQuery(uri, params);
+        appendQuery(uri, queryParams);
+        if (uri.length() > start) {
+            uri.setCharAt(start, '?');
+        }
+        return URI.create(uri.toString());
+    }
+
+    /**
+     * Encode parameters as an application/x-www-form-urlencoded query string
+     * @param params parameters; null values are skipped
+     * @return the query string without a leading '?'
+     */
+    public static String encodeQuery(Map<String, ?> params) {
+        StringBuilder query = new StringBuilder();
+        appendQuery(query, params);
+        return query.length() == 0 ? "" : query.substring(1);
+    }
+
+    /**
+     * Flatten response headers to their first values, keyed by lower-case name
+     */
+    static Map<String, String> firstValues(HttpHeaders headers) {
+        Map<String, List<String>> all = headers.map();
+        Map<String, String> result = new HashMap<>((int) (all.size() / 0.75f) + 1);
+        for (Map.Entry<String, List<String>> entry : all.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                result.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue().get(0));
+            }
+        }
+        return result;
+    }
+
+    private static void appendQuery(StringBuilder query, Map<String, ?> params) {
+        if (params == null) {
+            return;
+        }
+        if (params instanceof Params typed) {
+            if (typed.encodedLength() > 0) {
+                query.append('&').append(typed.toQueryString());
+            }
+            return;
+        }
+        for (Map.Entry<String, ?> entry : params.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Iterable<?> values) {
+                for (Object element : values) {
+                    appendPair(query, entry.getKey(), element);
+                }
+            } else if (value instanceof Object[] values) {
+                for (Object element : values) {
+                    appendPair(query, entry.getKey(), element);
+                }
+            } else {
+                appendPair(query, entry.getKey(), value);
+            }
+        }
+    }
+
+    // Every pair is prefixed with '&'; the caller replaces the first one with '?'
+    private static void appendPair(StringBuilder query, String name, Object value) {
+        if (value == null) {
+            return;
+        }
+        query.append('&').append(URLEncoder.encode(name, StandardCharsets.UTF_8))
+            .append('=').append(URLEncoder.encode(value.toString(), StandardCharsets.UTF_8));
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "http".equalsIgnoreCase(uri.getScheme()) ? 80 : 443;
+    }
 }
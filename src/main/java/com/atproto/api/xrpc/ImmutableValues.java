@@ -0,0 +1,204 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.xrpc.model.Params;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Deeply immutable JSON-like value trees shared between requests without copying.
+ * <p>
+ * {@link #freeze} copies a caller-owned tree once; trees that are already frozen are returned as
+ * is, so handing a request's maps to another request costs nothing. {@link Params} are immutable
+ * and count as frozen. {@link #adopt} wraps a
+ * freshly decoded tree in place when the caller is known to hold the only reference.
+ */
+final class ImmutableValues {
+
+    private ImmutableValues() {
+    }
+
+    static <V> Map<String, V> emptyMap() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Freeze a caller-owned map, copying it and any mutable containers nested inside it.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> Map<String, V> freezeMap(Map<String, ? extends V> map) {
+        if (map == null || map.isEmpty()) {
+            return emptyMap();
+        }
+        if (map instanceof FrozenMap<?> || map instanceof Params) {
+            return (Map<String, V>) map;
+        }
+        Map<String, V> copy = new LinkedHashMap<>(capacity(map.size()));
+        for (Map.Entry<String, ? extends V> entry : map.entrySet()) {
+            copy.put(entry.getKey(), (V) freeze(entry.getValue()));
+        }
+        return new FrozenMap<>(copy);
+    }
+
+    /**
+     * Wrap a map whose values are already frozen and which no one else references.
+     */
+    static <V> Map<String, V> wrapOwned(Map<String, V> map) {
+        if (map.isEmpty()) {
+            return emptyMap();
+        }
+        return new FrozenMap<>(map);
+    }
+
+    /**
+     * Freeze a single value. Maps, collections and arrays are copied into frozen containers;
+     * strings, numbers, booleans and other objects are assumed immutable and kept as is.
+     */
+    @SuppressWarnings("unchecked")
+    static Object freeze(Object value) {
+        if (value == null || value instanceof String || value instanceof FrozenMap<?> || value instanceof FrozenList
+                || value instanceof Params) {
+            return value;
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new LinkedHashMap<>(capacity(map.size()));
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object key = entry.getKey();
+                copy.put(key instanceof String s ? s : String.valueOf(key), freeze(entry.getValue()));
+            }
+            return new FrozenMap<>(copy);
+        }
+        if (value instanceof Collection<?> collection) {
+            Object[] elements = collection.toArray();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = freeze(elements[i]);
+            }
+            return new FrozenList(elements);
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object[] elements = new Object[length];
+            for (int i = 0; i < length; i++) {
+                elements[i] = freeze(Array.get(value, i));
+            }
+            return new FrozenList(elements);
+        }
+        return value;
+    }
+
+    /**
+     * Freeze a tree in place, wrapping its containers without copying their contents. Only valid
+     * for trees that nothing else references, such as those returned by {@link JsonReader}.
+     */
+    @SuppressWarnings("unchecked")
+    static Object adopt(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> owned = (Map<String, Object>) map;
+            owned.replaceAll((k, v) -> adopt(v));
+            return wrapOwned(owned);
+        }
+        if (value instanceof List<?> list) {
+            Object[] elements = list.toArray();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = adopt(elements[i]);
+            }
+            return new FrozenList(elements);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> adoptMap(Map<String, Object> map) {
+        return map == null ? emptyMap() : (Map<String, Object>) adopt(map);
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    /**
+     * Read-only map over a backing map that is never exposed.
+     */
+    static final class FrozenMap<V> extends AbstractMap<String, V> {
+        private final Map<String, V> view;
+
+        FrozenMap(Map<String, V> map) {
+            this.view = Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public V get(Object key) {
+            return view.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return view.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return view.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return view.isEmpty();
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return view.entrySet();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return view.keySet();
+        }
+
+        @Override
+        public Collection<V> values() {
+            return view.values();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super V> action) {
+            view.forEach(action);
+        }
+    }
+
+    /**
+     * Read-only list over an array that is never exposed.
+     */
+    static final class FrozenList extends AbstractList<Object> implements RandomAccess {
+        private final Object[] elements;
+
+        FrozenList(Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Object get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return elements.clone();
+        }
+    }
+}
@@ -0,0 +1,661 @@
+package com.atproto.api.xrpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Single-pass, pull-style JSON tokenizer over UTF-8 input.
+ * <p>
+ * Reads from a {@code byte[]}, a {@link ByteBuffer} or an {@link InputStream} without regular
+ * expressions or intermediate strings for the document. Integral numbers are decoded as
+ * {@code long}; only numbers with a fraction, an exponent or out of {@code long} range are
+ * parsed as {@code double}. Malformed input is reported as an {@link IOException} carrying the
+ * byte offset of the problem. Instances are not thread-safe.
+ */
+public final class JsonReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final int MAX_DEPTH = 512;
+
+    private static final byte EMPTY_ARRAY = 1;
+    private static final byte NONEMPTY_ARRAY = 2;
+    private static final byte EMPTY_OBJECT = 3;
+    private static final byte DANGLING_NAME = 4;
+    private static final byte NONEMPTY_OBJECT = 5;
+    private static final byte EMPTY_DOCUMENT = 6;
+    private static final byte NONEMPTY_DOCUMENT = 7;
+
+    private final InputStream in;
+    private final ByteBuffer source;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private long consumed;
+
+    private byte[] stack = new byte[16];
+    private int depth;
+
+    private Token peeked;
+    private boolean peekedBoolean;
+
+    private char[] chars = new char[64];
+    private byte[] number = new byte[32];
+
+    /**
+     * Read a complete document held in a byte array.
+     * @param bytes UTF-8 encoded JSON
+     */
+    public JsonReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Read a complete document held in a slice of a byte array. The array is not copied.
+     * @param bytes array holding UTF-8 encoded JSON
+     * @param offset start of the document
+     * @param length length of the document in bytes
+     */
+    public JsonReader(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        this.in = null;
+        this.source = null;
+        this.buf = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.consumed = -offset;
+        this.stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Read the remaining bytes of a buffer. Heap buffers are read in place; direct buffers are
+     * drained through a small staging array. The buffer position is not modified.
+     * @param buffer buffer holding UTF-8 encoded JSON
+     */
+    public JsonReader(ByteBuffer buffer) {
+        this.in = null;
+        if (buffer.hasArray()) {
+            this.source = null;
+            this.buf = buffer.array();
+            this.pos = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+            this.consumed = -pos;
+        } else {
+            this.source = buffer.duplicate();
+            this.buf = new byte[Math.min(DEFAULT_BUFFER_SIZE, Math.max(16, buffer.remaining()))];
+        }
+        this.stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Read a document from a stream, buffering as needed.
+     * @param in stream of UTF-8 encoded JSON; closed by {@link #close()}
+     */
+    public JsonReader(InputStream in) {
+        this.in = Objects.requireNonNull(in, "in");
+        this.source = null;
+        this.buf = new byte[DEFAULT_BUFFER_SIZE];
+        this.stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return the type of the next token without consuming it
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * @return true if the current array or object has another element
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    public String nextString() throws IOException {
+        expect(Token.STRING);
+        return readString();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedBoolean;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * @return the next number, which must be integral and within {@code long} range
+     */
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        int length = readNumber();
+        if (length < 0) {
+            throw syntaxError("Expected an integer");
+        }
+        return parseLong(length);
+    }
+
+    public double nextDouble() throws IOException {
+        expect(Token.NUMBER);
+        int length = readNumber();
+        return Double.parseDouble(new String(number, 0, Math.abs(length), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return the next number as a {@link Long} when integral and in range, else as a {@link Double}
+     */
+    public Number nextNumber() throws IOException {
+        expect(Token.NUMBER);
+        int length = readNumber();
+        if (length > 0 && fitsInLong(length)) {
+            return parseLong(length);
+        }
+        return Double.parseDouble(new String(number, 0, Math.abs(length), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Skip the next value, including any nested arrays or objects, without decoding it.
+     */
+    public void skipValue() throws IOException {
+        int open = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    open++;
+                }
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    open++;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    open--;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    open--;
+                }
+                case NAME, STRING -> {
+                    peeked = null;
+                    skipString();
+                }
+                case NUMBER -> {
+                    peeked = null;
+                    readNumber();
+                }
+                case BOOLEAN, NULL -> peeked = null;
+                case END_DOCUMENT -> throw syntaxError("Unexpected end of input");
+            }
+        } while (open > 0);
+    }
+
+    /**
+     * Read the next value as a tree: objects become {@link LinkedHashMap}s, arrays become
+     * {@link ArrayList}s, and scalars become {@link String}, {@link Long}, {@link Double},
+     * {@link Boolean} or {@code null}.
+     * @return the decoded value
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT -> {
+                return readObject();
+            }
+            case BEGIN_ARRAY -> {
+                beginArray();
+                List<Object> list = new ArrayList<>();
+                while (hasNext()) {
+                    list.add(readValue());
+                }
+                endArray();
+                return list;
+            }
+            case STRING -> {
+                return nextString();
+            }
+            case NUMBER -> {
+                return nextNumber();
+            }
+            case BOOLEAN -> {
+                return nextBoolean();
+            }
+            case NULL -> {
+                nextNull();
+                return null;
+            }
+            default -> throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    /**
+     * Read the next value, which must be an object, as a map tree.
+     * @return the decoded object with members in document order
+     */
+    public Map<String, Object> readObject() throws IOException {
+        beginObject();
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (hasNext()) {
+            String name = nextName();
+            map.put(name, readValue());
+        }
+        endObject();
+        return map;
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = Token.END_DOCUMENT;
+        depth = 1;
+        stack[0] = NONEMPTY_DOCUMENT;
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private Token doPeek() throws IOException {
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY -> {
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+            }
+            case NONEMPTY_ARRAY -> {
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                c = nextNonWhitespace();
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                boolean empty = stack[depth - 1] == EMPTY_OBJECT;
+                stack[depth - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (!empty) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a member name");
+                }
+                return Token.NAME;
+            }
+            case DANGLING_NAME -> {
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                c = nextNonWhitespace();
+            }
+            case EMPTY_DOCUMENT -> {
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                c = nextNonWhitespace();
+            }
+            default -> {
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Trailing data after document");
+                }
+                return Token.END_DOCUMENT;
+            }
+        }
+        return peekValue(c);
+    }
+
+    private Token peekValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+                expectLiteral("rue");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                expectLiteral("alse");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                expectLiteral("ull");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void expect(Token token) throws IOException {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("Expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    private void push(byte scope) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw syntaxError("Nesting too deep");
+        }
+        if (depth == stack.length) {
+            byte[] grown = new byte[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = scope;
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            byte b = buf[pos++];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b & 0xFF;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null && source == null) {
+            return false;
+        }
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        if (in != null) {
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) {
+                return false;
+            }
+            limit = n;
+        } else {
+            int n = Math.min(buf.length, source.remaining());
+            if (n == 0) {
+                return false;
+            }
+            source.get(buf, 0, n);
+            limit = n;
+        }
+        return true;
+    }
+
+    /**
+     * Decode a string whose opening quote has been consumed.
+     */
+    private String readString() throws IOException {
+        // Fast path: the whole string is plain ASCII within the current buffer
+        for (int i = pos; i < limit; i++) {
+            byte b = buf[i];
+            if (b == '"') {
+                String s = new String(buf, pos, i - pos, StandardCharsets.ISO_8859_1);
+                pos = i + 1;
+                return s;
+            }
+            if (b == '\\' || b < 0x20) {
+                break;
+            }
+        }
+        int length = 0;
+        while (true) {
+            int b = read();
+            if (b == '"') {
+                return new String(chars, 0, length);
+            }
+            if (length + 2 > chars.length) {
+                char[] grown = new char[chars.length * 2];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+            if (b == '\\') {
+                chars[length++] = readEscape();
+            } else if (b < 0x20) {
+                throw syntaxError(b == -1 ? "Unterminated string" : "Unescaped control character in string");
+            } else if (b < 0x80) {
+                chars[length++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | continuation());
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[length++] = (char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation());
+            } else if ((b & 0xF8) == 0xF0) {
+                int cp = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                chars[length++] = Character.highSurrogate(cp);
+                chars[length++] = Character.lowSurrogate(cp);
+            } else {
+                throw syntaxError("Invalid UTF-8 byte");
+            }
+        }
+    }
+
+    private int continuation() throws IOException {
+        int b = read();
+        if ((b & 0xC0) != 0x80) {
+            throw syntaxError("Invalid UTF-8 continuation byte");
+        }
+        return b & 0x3F;
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int b = read();
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                read();
+            } else if (b == -1) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Copy the next number token into {@link #number}, validating its grammar.
+     * @return the token length, negated when the number has a fraction or exponent
+     */
+    private int readNumber() throws IOException {
+        int length = 0;
+        boolean integral = true;
+        int c = read();
+        if (c == '-') {
+            length = appendNumber(length, c);
+            c = read();
+        }
+        if (c == '0') {
+            length = appendNumber(length, c);
+            c = read();
+        } else if (c >= '1' && c <= '9') {
+            while (c >= '0' && c <= '9') {
+                length = appendNumber(length, c);
+                c = read();
+            }
+        } else {
+            throw syntaxError("Invalid number");
+        }
+        if (c == '.') {
+            integral = false;
+            length = appendNumber(length, c);
+            c = read();
+            if (c < '0' || c > '9') {
+                throw syntaxError("Invalid number");
+            }
+            while (c >= '0' && c <= '9') {
+                length = appendNumber(length, c);
+                c = read();
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            integral = false;
+            length = appendNumber(length, c);
+            c = read();
+            if (c == '+' || c == '-') {
+                length = appendNumber(length, c);
+                c = read();
+            }
+            if (c < '0' || c > '9') {
+                throw syntaxError("Invalid number");
+            }
+            while (c >= '0' && c <= '9') {
+                length = appendNumber(length, c);
+                c = read();
+            }
+        }
+        if (c != -1) {
+            pos--;
+        }
+        return integral ? length : -length;
+    }
+
+    private int appendNumber(int length, int c) {
+        if (length == number.length) {
+            byte[] grown = new byte[length * 2];
+            System.arraycopy(number, 0, grown, 0, length);
+            number = grown;
+        }
+        number[length] = (byte) c;
+        return length + 1;
+    }
+
+    private boolean fitsInLong(int length) {
+        int digits = number[0] == '-' ? length - 1 : length;
+        if (digits < 19) {
+            return true;
+        }
+        if (digits > 19) {
+            return false;
+        }
+        String max = number[0] == '-' ? "9223372036854775808" : "9223372036854775807";
+        int offset = length - digits;
+        for (int i = 0; i < 19; i++) {
+            int diff = number[offset + i] - max.charAt(i);
+            if (diff != 0) {
+                return diff < 0;
+            }
+        }
+        return true;
+    }
+
+    private long parseLong(int length) throws IOException {
+        if (!fitsInLong(length)) {
+            throw syntaxError("Number out of range for long");
+        }
+        boolean negative = number[0] == '-';
+        long value = 0;
+        // Accumulate negatively so Long.MIN_VALUE does not overflow
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            value = value * 10 - (number[i] - '0');
+        }
+        return negative ? value : -value;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON at offset " + (consumed + pos) + ": " + message);
+    }
+}
@@ -0,0 +1,490 @@
+package com.atproto.api.xrpc;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streaming JSON writer that encodes straight to UTF-8 bytes.
+ * <p>
+ * Output goes either to an {@link OutputStream} (through a small reusable buffer) or directly
+ * into a {@link ByteBuffer}. No intermediate {@code String} is built for the document, and
+ * string values are escaped as they are encoded. Instances are not thread-safe.
+ */
+public final class JsonWriter implements Flushable, Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    // Worst case for a single char: a six byte unicode escape
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    // 0 = copy as-is, 'u' = unicode escape, anything else = two char escape
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+    }
+
+    private static final byte EMPTY_OBJECT = 1;
+    private static final byte NONEMPTY_OBJECT = 2;
+    private static final byte DANGLING_NAME = 3;
+    private static final byte EMPTY_ARRAY = 4;
+    private static final byte NONEMPTY_ARRAY = 5;
+    private static final byte EMPTY_DOCUMENT = 6;
+    private static final byte NONEMPTY_DOCUMENT = 7;
+
+    private final OutputStream out;
+    private final ByteBuffer target;
+    private final boolean inPlace;
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+
+    private byte[] stack = new byte[16];
+    private int depth;
+
+    /**
+     * Create a writer that buffers output and flushes it to the given stream.
+     * @param out stream receiving the UTF-8 encoded document
+     */
+    public JsonWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a writer that buffers output and flushes it to the given stream.
+     * @param out stream receiving the UTF-8 encoded document
+     * @param bufferSize size of the internal buffer in bytes
+     */
+    public JsonWriter(OutputStream out, int bufferSize) {
+        if (bufferSize < MAX_CHAR_BYTES * 4) {
+            throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+        }
+        this.out = Objects.requireNonNull(out, "out");
+        this.target = null;
+        this.inPlace = false;
+        this.buf = new byte[bufferSize];
+        this.limit = bufferSize;
+        this.stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Create a writer that encodes into the remaining space of a buffer. Heap buffers are written
+     * in place; direct buffers are filled through a small staging array. The buffer position is
+     * advanced on {@link #flush()} and {@link #close()}.
+     * @param target buffer receiving the UTF-8 encoded document
+     * @throws BufferOverflowException if the document does not fit in the buffer
+     */
+    public JsonWriter(ByteBuffer target) {
+        this.out = null;
+        this.target = Objects.requireNonNull(target, "target");
+        this.inPlace = target.hasArray() && !target.isReadOnly();
+        if (inPlace) {
+            this.buf = target.array();
+            this.pos = target.arrayOffset() + target.position();
+            this.limit = target.arrayOffset() + target.limit();
+        } else {
+            this.buf = new byte[DEFAULT_BUFFER_SIZE];
+            this.limit = DEFAULT_BUFFER_SIZE;
+        }
+        this.stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        writeByte('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        byte state = peek();
+        if (state != EMPTY_OBJECT && state != NONEMPTY_OBJECT) {
+            throw new IllegalStateException("Not inside an object");
+        }
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        writeByte('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        byte state = peek();
+        if (state != EMPTY_ARRAY && state != NONEMPTY_ARRAY) {
+            throw new IllegalStateException("Not inside an array");
+        }
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Write an object member name. Must be followed by exactly one value.
+     * @param name member name, escaped as needed
+     * @return this writer
+     */
+    public JsonWriter name(String name) throws IOException {
+        Objects.requireNonNull(name, "name");
+        byte state = peek();
+        if (state == NONEMPTY_OBJECT) {
+            writeByte(',');
+        } else if (state != EMPTY_OBJECT) {
+            throw new IllegalStateException("Name must be written inside an object");
+        }
+        stack[depth - 1] = DANGLING_NAME;
+        writeString(name);
+        writeByte(':');
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON cannot represent " + value);
+        }
+        beforeValue();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Write an arbitrary value tree. Maps become objects (entries with {@code null} values are
+     * skipped), iterables and arrays become JSON arrays, numbers and booleans are written as
+     * literals, and anything else is written as its string form.
+     * @param value value to write
+     * @return this writer
+     */
+    public JsonWriter writeValue(Object value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof String str) {
+            return value(str);
+        }
+        if (value instanceof Map<?, ?> map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object v = entry.getValue();
+                if (v != null) {
+                    Object key = entry.getKey();
+                    name(key instanceof String s ? s : String.valueOf(key));
+                    writeValue(v);
+                }
+            }
+            return endObject();
+        }
+        if (value instanceof Iterable<?> iterable) {
+            beginArray();
+            for (Object element : iterable) {
+                writeValue(element);
+            }
+            return endArray();
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        }
+        if (value instanceof Number number) {
+            beforeValue();
+            writeAscii(number.toString());
+            return this;
+        }
+        if (value instanceof Boolean bool) {
+            return value(bool.booleanValue());
+        }
+        if (value instanceof Object[] array) {
+            beginArray();
+            for (Object element : array) {
+                writeValue(element);
+            }
+            return endArray();
+        }
+        if (value.getClass().isArray()) {
+            return writePrimitiveArray(value);
+        }
+        if (value instanceof Enum<?> e) {
+            return value(e.name());
+        }
+        return value(value.toString());
+    }
+
+    private JsonWriter writePrimitiveArray(Object array) throws IOException {
+        beginArray();
+        if (array instanceof int[] ints) {
+            for (int v : ints) {
+                value(v);
+            }
+        } else if (array instanceof long[] longs) {
+            for (long v : longs) {
+                value(v);
+            }
+        } else if (array instanceof boolean[] booleans) {
+            for (boolean v : booleans) {
+                value(v);
+            }
+        } else if (array instanceof double[] doubles) {
+            for (double v : doubles) {
+                value(v);
+            }
+        } else {
+            int length = Array.getLength(array);
+            for (int i = 0; i < length; i++) {
+                writeValue(Array.get(array, i));
+            }
+        }
+        return endArray();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.write(buf, 0, pos);
+            pos = 0;
+            out.flush();
+        } else if (inPlace) {
+            target.position(pos - target.arrayOffset());
+        } else {
+            drainToTarget();
+        }
+    }
+
+    /**
+     * Flush remaining output. The underlying stream is flushed but not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (depth > 1 || peek() == DANGLING_NAME) {
+            throw new IllegalStateException("Incomplete document");
+        }
+        flush();
+    }
+
+    private void beforeValue() throws IOException {
+        byte state = peek();
+        switch (state) {
+            case DANGLING_NAME -> stack[depth - 1] = NONEMPTY_OBJECT;
+            case EMPTY_ARRAY -> stack[depth - 1] = NONEMPTY_ARRAY;
+            case NONEMPTY_ARRAY -> writeByte(',');
+            case EMPTY_DOCUMENT -> stack[depth - 1] = NONEMPTY_DOCUMENT;
+            case NONEMPTY_DOCUMENT -> throw new IllegalStateException("Document already has a root value");
+            default -> throw new IllegalStateException("Value written where a name is expected");
+        }
+    }
+
+    private byte peek() {
+        return stack[depth - 1];
+    }
+
+    private void push(byte state) {
+        if (depth == stack.length) {
+            byte[] grown = new byte[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = state;
+    }
+
+    private void writeString(String s) throws IOException {
+        ensure(1);
+        buf[pos++] = '"';
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            // Encode as many chars as are guaranteed to fit without further bounds checks
+            int room = (limit - pos) / MAX_CHAR_BYTES;
+            if (room > 0) {
+                int end = Math.min(length, i + room);
+                while (i < end) {
+                    i = writeChar(s, i, length);
+                }
+            } else {
+                // Close to the limit, only make room if the next char really doesn't fit
+                ensure(encodedLength(s, i, length));
+                i = writeChar(s, i, length);
+            }
+        }
+        ensure(1);
+        buf[pos++] = '"';
+    }
+
+    /**
+     * Encode the char at {@code i}, or the surrogate pair starting there, without bounds checks
+     * @return index of the next char
+     */
+    private int writeChar(String s, int i, int length) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            byte escape = ESCAPES[c];
+            if (escape == 0) {
+                buf[pos++] = (byte) c;
+            } else if (escape == 'u') {
+                buf[pos++] = '\\';
+                buf[pos++] = 'u';
+                buf[pos++] = '0';
+                buf[pos++] = '0';
+                buf[pos++] = HEX[c >> 4];
+                buf[pos++] = HEX[c & 0xF];
+            } else {
+                buf[pos++] = '\\';
+                buf[pos++] = escape;
+            }
+        } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (c >> 6));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(++i));
+            buf[pos++] = (byte) (0xF0 | (cp >> 18));
+            buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            if (Character.isSurrogate(c)) {
+                // Unpaired surrogates have no UTF-8 encoding
+                c = '\uFFFD';
+            }
+            buf[pos++] = (byte) (0xE0 | (c >> 12));
+            buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return i + 1;
+    }
+
+    /**
+     * @return number of bytes {@link #writeChar} writes for the char at {@code i}
+     */
+    private static int encodedLength(String s, int i, int length) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            byte escape = ESCAPES[c];
+            return escape == 0 ? 1 : escape == 'u' ? 6 : 2;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+            return 4;
+        }
+        return 3;
+    }
+
+    private void writeLong(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + (int) (v % 10));
+            v /= 10;
+        }
+        pos = end;
+    }
+
+    private void writeAscii(String s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            ensure(1);
+            buf[pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void writeByte(char b) throws IOException {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (limit - pos < n) {
+            makeRoom(n);
+        }
+    }
+
+    private void makeRoom(int n) throws IOException {
+        if (out != null) {
+            out.write(buf, 0, pos);
+            pos = 0;
+            if (n > limit) {
+                throw new IllegalArgumentException("Token larger than buffer: " + n);
+            }
+        } else if (inPlace) {
+            throw new BufferOverflowException();
+        } else {
+            drainToTarget();
+        }
+    }
+
+    private void drainToTarget() {
+        target.put(buf, 0, pos);
+        pos = 0;
+    }
+}
@@ -0,0 +1,373 @@
+package com.atproto.api.xrpc;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a cursor-paginated query such as {@code com.atproto.repo.listRecords} or
+ * {@code app.bsky.feed.getTimeline}, exposing the items of all pages as an {@link Iterator},
+ * a {@link Stream} or a {@link Flow.Publisher}.
+ * <p>
+ * Each page is requested with the {@code cursor} of the one before it, so pages cannot be fetched
+ * in parallel. Instead the next page is requested as soon as the previous one arrives, while the
+ * caller is still consuming earlier items, keeping up to the prefetch depth of pages buffered
+ * ahead. With a depth of zero a page is only requested once the caller needs it. The walk ends
+ * when a page comes back without a cursor, or with the cursor it was requested with.
+ * <p>
+ * Every call to {@link #iterator()}, {@link #stream()} or {@link #publisher()} starts a new walk
+ * from the request's own cursor, if any.
+ *
+ * @param <T> type of the items
+ */
+public final class Paginator<T> implements Iterable<T> {
+    public static final int DEFAULT_PREFETCH = 1;
+
+    private static final String CURSOR = "cursor";
+
+    private final XrpcClient client;
+    private final XrpcRequest request;
+    private final Function<XrpcResponse, List<T>> pageDecoder;
+    private final int prefetch;
+
+    private Paginator(Builder<T> builder) {
+        this.client = Objects.requireNonNull(builder.client, "client");
+        this.request = Objects.requireNonNull(builder.request, "request");
+        this.pageDecoder = Objects.requireNonNull(builder.pageDecoder, "pageDecoder");
+        if (!request.isQuery()) {
+            throw new IllegalArgumentException("Only queries can be paginated");
+        }
+        this.prefetch = builder.prefetch;
+    }
+
+    /**
+     * @return a blocking iterator over the items of all pages; a failed page is thrown from
+     *     {@code hasNext} as an {@link XrpcException}
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator(new Walk());
+    }
+
+    /**
+     * @return a sequential stream over the items of all pages; closing it stops the walk
+     */
+    public Stream<T> stream() {
+        PageIterator iterator = new PageIterator(new Walk());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(iterator.walk::cancel);
+    }
+
+    /**
+     * @return a publisher that starts a walk for each subscriber and requests pages as its demand
+     *     and the prefetch depth allow, without blocking any thread
+     */
+    public Flow.Publisher<T> publisher() {
+        return subscriber -> {
+            Objects.requireNonNull(subscriber, "subscriber");
+            PageSubscription subscription = new PageSubscription(subscriber);
+            subscriber.onSubscribe(subscription);
+            subscription.drain();
+        };
+    }
+
+    /**
+     * State of one walk: pages that arrived but were not consumed, and the request in flight.
+     * Arriving pages are announced to the listener, if any, outside the lock.
+     */
+    private final class Walk {
+        private final ArrayDeque<List<T>> ready = new ArrayDeque<>();
+        private String cursor;
+        private boolean exhausted;
+        private boolean cancelled;
+        private Throwable failure;
+        private CompletableFuture<XrpcResponse> pending;
+        private Runnable listener;
+
+        Walk() {
+            Object initial = request.getParams().get(CURSOR);
+            cursor = initial != null ? initial.toString() : null;
+        }
+
+        /**
+         * @return the next page if one has arrived, otherwise null
+         */
+        List<T> poll() {
+            List<T> page;
+            synchronized (this) {
+                page = ready.poll();
+                fetch(page == null);
+            }
+            return page;
+        }
+
+        /**
+         * @return the next page, waiting for it if needed, or null once all pages were consumed
+         */
+        List<T> take() {
+            synchronized (this) {
+                while (true) {
+                    List<T> page = ready.poll();
+                    if (page != null) {
+                        fetch(false);
+                        return page;
+                    }
+                    if (failure != null) {
+                        throw XrpcClient.transportFailure(request.getMethod(), failure);
+                    }
+                    if (exhausted && pending == null) {
+                        return null;
+                    }
+                    fetch(true);
+                    if (pending == null) {
+                        // Completed inline
+                        continue;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancel();
+                        throw new XrpcException("Interrupted while paging " + request.getMethod(), e);
+                    }
+                }
+            }
+        }
+
+        synchronized boolean done() {
+            return ready.isEmpty() && (failure != null || (exhausted && pending == null));
+        }
+
+        synchronized Throwable failure() {
+            return failure;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            exhausted = true;
+            ready.clear();
+            if (pending != null) {
+                pending.cancel(true);
+            }
+        }
+
+        // Request the next page if none is in flight and the buffer is below the prefetch depth,
+        // or empty while the caller waits
+        private void fetch(boolean demand) {
+            if (pending != null || exhausted || failure != null || ready.size() >= Math.max(prefetch, demand ? 1 : 0)) {
+                return;
+            }
+            XrpcRequest.Builder page = request.toBuilder();
+            if (cursor != null) {
+                page.withParam(CURSOR, cursor);
+            }
+            CompletableFuture<XrpcResponse> sent;
+            try {
+                sent = client.sendAsync(page.build());
+            } catch (RuntimeException e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            pending = sent;
+            sent.whenComplete(this::arrive);
+        }
+
+        private void arrive(XrpcResponse response, Throwable error) {
+            Runnable notify;
+            synchronized (this) {
+                pending = null;
+                if (cancelled) {
+                    notifyAll();
+                    return;
+                }
+                if (error != null) {
+                    failure = XrpcClient.unwrap(error);
+                } else {
+                    try {
+                        List<T> items = pageDecoder.apply(response);
+                        String next = response.getString("/" + CURSOR);
+                        exhausted = next == null || next.isEmpty() || next.equals(cursor);
+                        cursor = next;
+                        ready.add(items != null ? items : List.of());
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+                fetch(false);
+                notifyAll();
+                notify = listener;
+            }
+            if (notify != null) {
+                notify.run();
+            }
+        }
+    }
+
+    private final class PageIterator implements Iterator<T> {
+        private final Walk walk;
+        private Iterator<T> page = Collections.emptyIterator();
+
+        PageIterator(Walk walk) {
+            this.walk = walk;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext()) {
+                List<T> next = walk.take();
+                if (next == null) {
+                    return false;
+                }
+                page = next.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
+
+    /**
+     * Delivers items as demanded. Signals are serialized by a work counter: whoever raises it
+     * from zero drains until no work is left, so page arrivals and requests from any thread
+     * never deliver concurrently.
+     */
+    private final class PageSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Walk walk = new Walk();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private Iterator<T> page = Collections.emptyIterator();
+        private volatile boolean cancelled;
+        private boolean terminated;
+
+        PageSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            synchronized (walk) {
+                walk.listener = this::drain;
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Demand must be positive"));
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            walk.cancel();
+        }
+
+        void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!cancelled && !terminated && demand.get() > 0) {
+                    if (page.hasNext()) {
+                        demand.decrementAndGet();
+                        subscriber.onNext(page.next());
+                        continue;
+                    }
+                    List<T> next = walk.poll();
+                    if (next != null) {
+                        page = next.iterator();
+                        continue;
+                    }
+                    break;
+                }
+                if (!cancelled && !terminated && !page.hasNext() && walk.done()) {
+                    terminated = true;
+                    Throwable failure = walk.failure();
+                    if (failure != null) {
+                        subscriber.onError(XrpcClient.transportFailure(request.getMethod(), failure));
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            } while (work.decrementAndGet() != 0);
+        }
+    }
+
+    /**
+     * @param <T> type of the items
+     */
+    public static class Builder<T> {
+        private XrpcClient client;
+        private XrpcRequest request;
+        private Function<XrpcResponse, List<T>> pageDecoder;
+        private int prefetch = DEFAULT_PREFETCH;
+
+        public Builder<T> withClient(XrpcClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * @param request the query for the first page; its {@code cursor} param, if any, is where
+         *     the walk starts
+         */
+        public Builder<T> withRequest(XrpcRequest request) {
+            this.request = request;
+            return this;
+        }
+
+        /**
+         * @param pageDecoder extracts the items of one page from its response
+         */
+        public Builder<T> withPageDecoder(Function<XrpcResponse, List<T>> pageDecoder) {
+            this.pageDecoder = pageDecoder;
+            return this;
+        }
+
+        /**
+         * Take the items of each page from a top-level array of the response, such as
+         * {@code records} or {@code feed}, as decoded JSON values
+         * @param field name of the array
+         */
+        @SuppressWarnings("unchecked")
+        public Builder<T> withItems(String field) {
+            Objects.requireNonNull(field, "field");
+            String pointer = "/" + field;
+            return withPageDecoder(response -> response.at(pointer) instanceof List<?> items ? (List<T>) items : List.of());
+        }
+
+        /**
+         * @param pages number of pages to fetch ahead of the caller; 0 fetches only on demand
+         */
+        public Builder<T> withPrefetch(int pages) {
+            if (pages < 0) {
+                throw new IllegalArgumentException("Prefetch depth must not be negative");
+            }
+            this.prefetch = pages;
+            return this;
+        }
+
+        public Paginator<T> build() {
+            return new Paginator<>(this);
+        }
+    }
+}
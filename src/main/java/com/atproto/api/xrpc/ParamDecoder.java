@@ -0,0 +1,309 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.lexicon.MethodSchema;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Query param decoder compiled from a method's lexicon.
+ * <p>
+ * Each declared param gets a slot with its type, bounds, allowed values and default resolved
+ * up front. A query string is decoded in one pass: names are matched against the slots on the
+ * raw text, and values are converted and checked as they are read. Integers and booleans are
+ * parsed in place without a substring. The result is a small immutable map over the slot
+ * array. Params the lexicon does not declare are ignored.
+ */
+final class ParamDecoder {
+    private final String[] names;
+    private final Slot[] slots;
+
+    private ParamDecoder(String[] names, Slot[] slots) {
+        this.names = names;
+        this.slots = slots;
+    }
+
+    private record Slot(String name, MethodSchema.ParamType type, MethodSchema.ParamType itemType, boolean required,
+                        Object defaultValue, long minimum, long maximum, int minLength, int maxLength,
+                        int itemMinLength, int itemMaxLength, Set<Object> allowed) {
+    }
+
+    /**
+     * @param schema the method's lexicon
+     * @return a decoder for its params
+     */
+    static ParamDecoder compile(MethodSchema schema) {
+        List<MethodSchema.Param> params = schema.getParams();
+        String[] names = new String[params.size()];
+        Slot[] slots = new Slot[params.size()];
+        for (int i = 0; i < slots.length; i++) {
+            MethodSchema.Param param = params.get(i);
+            names[i] = param.getName();
+            slots[i] = new Slot(param.getName(), param.getType(), param.getItemType(), param.isRequired(),
+                param.getDefaultValue(),
+                param.getMinimum() != null ? param.getMinimum() : Long.MIN_VALUE,
+                param.getMaximum() != null ? param.getMaximum() : Long.MAX_VALUE,
+                param.getMinLength() != null ? param.getMinLength() : 0,
+                param.getMaxLength() != null ? param.getMaxLength() : Integer.MAX_VALUE,
+                param.getItemMinLength() != null ? param.getItemMinLength() : 0,
+                param.getItemMaxLength() != null ? param.getItemMaxLength() : Integer.MAX_VALUE,
+                param.getAllowed());
+        }
+        return new ParamDecoder(names, slots);
+    }
+
+    /**
+     * Decode and check a raw query string
+     * @param rawQuery query string as sent, may be null
+     * @return declared params with their typed values and defaults applied
+     * @throws XrpcException with status 400 if a param is missing, malformed or out of bounds
+     */
+    Map<String, Object> decode(String rawQuery) {
+        Object[] values = new Object[slots.length];
+        if (rawQuery != null) {
+            int start = 0;
+            while (start < rawQuery.length()) {
+                int end = rawQuery.indexOf('&', start);
+                if (end < 0) {
+                    end = rawQuery.length();
+                }
+                int equals = rawQuery.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    equals = end;
+                }
+                int index = find(rawQuery, start, equals);
+                if (index >= 0) {
+                    accept(values, index, rawQuery, Math.min(equals + 1, end), end);
+                }
+                start = end + 1;
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[i];
+            if (values[i] == null) {
+                if (slot.required()) {
+                    throw invalid("Missing required param " + slot.name());
+                }
+                values[i] = slot.defaultValue();
+            } else if (slot.type() == MethodSchema.ParamType.ARRAY) {
+                List<?> list = (List<?>) values[i];
+                if (list.size() < slot.minLength() || list.size() > slot.maxLength()) {
+                    throw invalid("Param " + slot.name() + " must have " + slot.minLength() + " to " + slot.maxLength()
+                        + " values");
+                }
+                values[i] = List.copyOf(list);
+            }
+        }
+        return new Decoded(names, values);
+    }
+
+    private int find(String query, int start, int end) {
+        boolean escaped = false;
+        for (int i = start; i < end && !escaped; i++) {
+            char c = query.charAt(i);
+            escaped = c == '%' || c == '+';
+        }
+        if (escaped) {
+            String name;
+            try {
+                name = URLDecoder.decode(query.substring(start, end), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                return -1;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int length = end - start;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].length() == length && query.startsWith(names[i], start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(Object[] values, int index, String query, int start, int end) {
+        Slot slot = slots[index];
+        if (slot.type() == MethodSchema.ParamType.ARRAY) {
+            List<Object> list = (List<Object>) values[index];
+            if (list == null) {
+                values[index] = list = new ArrayList<>(4);
+            }
+            list.add(value(slot, slot.itemType(), slot.itemMinLength(), slot.itemMaxLength(), query, start, end));
+        } else if (values[index] != null) {
+            throw invalid("Param " + slot.name() + " must have a single value");
+        } else {
+            values[index] = value(slot, slot.type(), slot.minLength(), slot.maxLength(), query, start, end);
+        }
+    }
+
+    /**
+     * @param minLength minimum string length: the param's own for scalars, the items' for arrays
+     * @param maxLength maximum string length, likewise
+     */
+    private static Object value(Slot slot, MethodSchema.ParamType type, int minLength, int maxLength, String query,
+                                int start, int end) {
+        Object value = switch (type) {
+            case INTEGER -> integer(slot, query, start, end);
+            case BOOLEAN -> {
+                if (end - start == 4 && query.startsWith("true", start)) {
+                    yield Boolean.TRUE;
+                }
+                if (end - start == 5 && query.startsWith("false", start)) {
+                    yield Boolean.FALSE;
+                }
+                throw invalid("Param " + slot.name() + " must be true or false");
+            }
+            default -> string(slot, minLength, maxLength, query, start, end);
+        };
+        if (slot.allowed() != null && !slot.allowed().contains(value)) {
+            throw invalid("Param " + slot.name() + " must be one of " + slot.allowed());
+        }
+        return value;
+    }
+
+    private static Long integer(Slot slot, String query, int start, int end) {
+        long value;
+        try {
+            value = Long.parseLong(query, start, end, 10);
+        } catch (NumberFormatException e) {
+            throw invalid("Param " + slot.name() + " must be an integer");
+        }
+        if (value < slot.minimum() || value > slot.maximum()) {
+            throw invalid("Param " + slot.name() + " must be between " + slot.minimum() + " and " + slot.maximum());
+        }
+        return value;
+    }
+
+    private static String string(Slot slot, int minLength, int maxLength, String query, int start, int end) {
+        String value = query.substring(start, end);
+        if (value.indexOf('%') >= 0 || value.indexOf('+') >= 0) {
+            try {
+                value = URLDecoder.decode(value, StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw invalid("Param " + slot.name() + " is not properly percent-encoded");
+            }
+        }
+        // Lengths are in UTF-8 bytes: at least the char count and at most three times it, so the
+        // bytes only need counting when the char count alone cannot decide
+        int length = value.length();
+        boolean valid = length <= maxLength && length * 3L >= minLength;
+        if (valid && (length * 3L > maxLength || length < minLength)) {
+            int bytes = utf8Length(value);
+            valid = bytes <= maxLength && bytes >= minLength;
+        }
+        if (!valid) {
+            throw invalid("Param " + slot.name() + " must be " + minLength + " to " + maxLength
+                + " bytes long");
+        }
+        return value;
+    }
+
+    private static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static XrpcException invalid(String message) {
+        return new XrpcException(400, "InvalidRequest", message);
+    }
+
+    /**
+     * Immutable map view over the decoded slots; lookups scan the few declared names.
+     */
+    private static final class Decoded extends AbstractMap<String, Object> {
+        private final String[] names;
+        private final Object[] values;
+
+        Decoded(String[] names, Object[] values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(Object key) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(key)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            while (from < values.length && values[from] == null) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < values.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(names[next], values[next]);
+                            next = advance(next + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int count = 0;
+                    for (Object value : values) {
+                        if (value != null) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+}
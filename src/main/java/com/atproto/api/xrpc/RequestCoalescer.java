@@ -0,0 +1,84 @@
+package com.atproto.api.xrpc;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Single-flight execution of identical concurrent calls.
+ * <p>
+ * While a call is in flight, further calls with an equal {@link XrpcRequest} (same method,
+ * params, auth and headers) wait for its result instead of going to the network. A call that
+ * starts after the previous one completed is sent again; nothing is cached. Only use this for
+ * idempotent methods. Coalesced callers receive the same {@link XrpcResponse} instance and should
+ * treat it as read-only.
+ */
+public final class RequestCoalescer {
+    private final Map<XrpcRequest, CompletableFuture<XrpcResponse>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Run a call, or join an identical one already in flight
+     * @param request the call
+     * @param transport sends the call when no identical call is in flight
+     * @return a future for the result; cancelling it does not affect other callers
+     */
+    public CompletableFuture<XrpcResponse> execute(XrpcRequest request,
+                                                   Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        requests.increment();
+        CompletableFuture<XrpcResponse> shared = new CompletableFuture<>();
+        CompletableFuture<XrpcResponse> existing = inFlight.putIfAbsent(request, shared);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        CompletableFuture<XrpcResponse> upstream;
+        try {
+            upstream = transport.apply(request);
+        } catch (RuntimeException e) {
+            upstream = CompletableFuture.failedFuture(e);
+        }
+        upstream.whenComplete((response, failure) -> {
+            // Leave the table before completing so later callers never join a finished call
+            inFlight.remove(request, shared);
+            if (failure != null) {
+                shared.completeExceptionally(failure);
+            } else {
+                shared.complete(response);
+            }
+        });
+        return shared.copy();
+    }
+
+    /**
+     * @return number of calls currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return total calls passed to {@link #execute}
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return calls that joined an identical in-flight call instead of being sent
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return fraction of calls that were coalesced, between 0 and 1
+     */
+    public double getHitRate() {
+        long total = requests.sum();
+        return total == 0 ? 0.0 : (double) coalesced.sum() / total;
+    }
+}
@@ -0,0 +1,331 @@
+package com.atproto.api.xrpc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache for query responses following HTTP caching semantics.
+ * <p>
+ * Responses are keyed on the method, its params in sorted order, the other request headers
+ * (such as {@code atproto-accept-labelers}) and the account the query is sent as. They are
+ * stored as raw bytes that are decoded again on every hit. A response is stored only if it is a
+ * 200 that does not carry {@code Cache-Control: no-store}. It stays fresh for its
+ * {@code max-age}, less any {@code Age}. A stale entry with an {@code ETag} is revalidated with
+ * {@code If-None-Match}, and a 304 refreshes it without transferring the body again, unless the
+ * 304 carries {@code no-store}, which evicts it.
+ * <p>
+ * Memory is bounded by the total size of stored bodies and headers, with segmented LRU
+ * eviction. New entries go to a probation segment. Entries hit again move to a protected
+ * segment that takes up to 80% of the budget. A scan of one-off lookups therefore only evicts
+ * other one-off lookups.
+ */
+public final class ResponseCache {
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final long maxProtectedBytes;
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>(64, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes upper bound on the total size of cached responses
+     */
+    public ResponseCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.maxProtectedBytes = maxBytes * 4 / 5;
+    }
+
+    /**
+     * Answer a query from the cache, revalidate it, or send it and store the response
+     * @param request the query
+     * @param account credentials the query is sent with, or null if it is sent unauthenticated
+     * @param transport sends the query to the server
+     * @return a future for the response
+     */
+    public CompletableFuture<XrpcResponse> execute(XrpcRequest request, String account,
+                                                   Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        String key = key(request, account);
+        Entry cached = get(key);
+        long now = System.nanoTime();
+        if (cached != null && now - cached.expiresAt < 0) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached.toResponse(request.getMethod()));
+        }
+        XrpcRequest outgoing = request;
+        if (cached != null && cached.etag != null) {
+            outgoing = request.toBuilder().withHeader("If-None-Match", cached.etag).build();
+        }
+        CompletableFuture<XrpcResponse> pending;
+        try {
+            pending = transport.apply(outgoing);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return pending.thenApply(response -> {
+            if (response.getStatusCode() == 304 && cached != null) {
+                revalidations.increment();
+                Entry refreshed = cached.refresh(response, now);
+                if (refreshed == null) {
+                    remove(key, cached);
+                    return cached.toResponse(request.getMethod());
+                }
+                put(key, refreshed);
+                return refreshed.toResponse(request.getMethod());
+            }
+            misses.increment();
+            if (response.getStatusCode() == 200) {
+                Entry entry = Entry.of(key, response, now);
+                if (entry != null) {
+                    put(key, entry);
+                } else if (cached != null) {
+                    remove(key, cached);
+                }
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Drop all entries
+     */
+    public synchronized void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * @return total size of the cached entries in bytes
+     */
+    public synchronized long weight() {
+        return probationBytes + protectedBytes;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return stale entries refreshed by a 304 Not Modified
+     */
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Build the cache key: method, params and query params in sorted order, the headers other than
+     * credentials in sorted order, and the account
+     */
+    static String key(XrpcRequest request, String account) {
+        StringBuilder key = new StringBuilder(64).append(request.getMethod()).append('?');
+        if (!request.getParams().isEmpty()) {
+            key.append(HttpUtil.encodeQuery(new TreeMap<>(request.getParams())));
+        }
+        if (!request.getQueryParams().isEmpty()) {
+            key.append('&').append(HttpUtil.encodeQuery(new TreeMap<>(request.getQueryParams())));
+        }
+        if (!request.getHeaders().isEmpty()) {
+            // Headers such as atproto-accept-labelers or atproto-proxy change what the server returns
+            TreeMap<String, String> varying = new TreeMap<>();
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                String name = header.getKey().toLowerCase(Locale.ROOT);
+                if (!name.equals("authorization")) {
+                    varying.put(name, header.getValue());
+                }
+            }
+            for (Map.Entry<String, String> header : varying.entrySet()) {
+                key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+            }
+        }
+        if (account != null) {
+            key.append("\n\n").append(account);
+        }
+        return key.toString();
+    }
+
+    private synchronized Entry get(String key) {
+        Entry entry = protectedSegment.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        entry = probation.remove(key);
+        if (entry != null) {
+            probationBytes -= entry.weight;
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.weight;
+            demoteOverflow();
+        }
+        return entry;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        if (entry.weight > maxBytes) {
+            return;
+        }
+        Entry previous = protectedSegment.get(key);
+        if (previous != null) {
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.weight - previous.weight;
+            demoteOverflow();
+        } else {
+            previous = probation.put(key, entry);
+            probationBytes += entry.weight - (previous != null ? previous.weight : 0);
+        }
+        evictOverflow();
+    }
+
+    // Drop the entry unless another call has replaced it meanwhile
+    private synchronized void remove(String key, Entry entry) {
+        if (protectedSegment.remove(key, entry)) {
+            protectedBytes -= entry.weight;
+        } else if (probation.remove(key, entry)) {
+            probationBytes -= entry.weight;
+        }
+    }
+
+    // Move least recently used protected entries back to probation
+    private void demoteOverflow() {
+        Iterator<Map.Entry<String, Entry>> eldest = protectedSegment.entrySet().iterator();
+        while (protectedBytes > maxProtectedBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> demoted = eldest.next();
+            eldest.remove();
+            protectedBytes -= demoted.getValue().weight;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().weight;
+        }
+    }
+
+    private void evictOverflow() {
+        while (probationBytes + protectedBytes > maxBytes) {
+            LinkedHashMap<String, Entry> segment = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<Map.Entry<String, Entry>> eldest = segment.entrySet().iterator();
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            if (segment == probation) {
+                probationBytes -= evicted.weight;
+            } else {
+                protectedBytes -= evicted.weight;
+            }
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Freshness lifetime in seconds from Cache-Control and Age, or -1 if the response must not
+     * be stored
+     */
+    static long freshSeconds(String cacheControl, String age) {
+        long maxAge = 0;
+        boolean noCache = false;
+        if (cacheControl != null) {
+            // no-store wins wherever it appears, so every directive is read
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    return -1;
+                }
+                if (directive.equals("no-cache")) {
+                    noCache = true;
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = parseSeconds(directive.substring("max-age=".length()));
+                }
+            }
+        }
+        if (noCache) {
+            return 0;
+        }
+        return Math.max(0, maxAge - parseSeconds(age));
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim().replace("\"", "")));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class Entry {
+        final Map<String, String> headers;
+        final byte[] body;
+        final String etag;
+        final long expiresAt;
+        final long weight;
+
+        private Entry(Map<String, String> headers, byte[] body, String etag, long expiresAt, long weight) {
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        static Entry of(String key, XrpcResponse response, long now) {
+            long fresh = freshSeconds(response.getHeader("Cache-Control"), response.getHeader("Age"));
+            String etag = response.getHeader("ETag");
+            // Nothing to gain from storing an entry that is immediately stale and can't be revalidated
+            if (fresh < 0 || (fresh == 0 && etag == null)) {
+                return null;
+            }
+            byte[] body = response.getBodyBytes();
+            long weight = ENTRY_OVERHEAD + 2L * key.length() + body.length;
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                weight += 2L * (header.getKey().length() + header.getValue().length());
+            }
+            return new Entry(response.getHeaders(), body, etag, now + TimeUnit.SECONDS.toNanos(fresh), weight);
+        }
+
+        /**
+         * Apply the freshness of a 304 response to this entry, keeping its body
+         * @return the refreshed entry, or null if the 304 says it must no longer be stored
+         */
+        Entry refresh(XrpcResponse notModified, long now) {
+            String cacheControl = notModified.getHeader("Cache-Control");
+            long fresh = freshSeconds(cacheControl != null ? cacheControl : headers.get("cache-control"),
+                notModified.getHeader("Age"));
+            if (fresh < 0) {
+                return null;
+            }
+            String newEtag = notModified.getHeader("ETag");
+            return new Entry(headers, body, newEtag != null ? newEtag : etag,
+                now + TimeUnit.SECONDS.toNanos(Math.max(0, fresh)), weight);
+        }
+
+        XrpcResponse toResponse(String method) {
+            return XrpcClient.decode(method, 200, headers, body);
+        }
+    }
+}
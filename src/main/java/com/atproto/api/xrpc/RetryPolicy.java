@@ -0,0 +1,396 @@
+package com.atproto.api.xrpc;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Retries and hedging for idempotent calls.
+ * <p>
+ * Timeouts, network errors and 502/503/504 responses are retried after exponential backoff with
+ * full jitter. Retries are limited by a budget shared by every client using this policy: each
+ * call adds a fraction of a retry to it, with a small per-second floor for low traffic. While a
+ * backend is failing, retries stay a bounded share of traffic instead of multiplying it.
+ * <p>
+ * With hedging enabled, a second copy of a call is sent if the first has not completed after the
+ * 95th percentile of recent latencies (or a fixed delay). Whichever copy succeeds first wins, and
+ * the other is cancelled. Hedges draw from the same budget.
+ */
+public final class RetryPolicy {
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_LATENCY_SAMPLES = 32;
+    private static final int PERCENTILE_REFRESH = 32;
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final boolean hedging;
+    private final long hedgeDelayNanos;
+
+    private final Budget budget;
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+    private final AtomicLong latencyCount = new AtomicLong();
+    private volatile long p95Nanos;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelay.toNanos();
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.hedging = builder.hedging;
+        this.hedgeDelayNanos = builder.hedgeDelay != null ? builder.hedgeDelay.toNanos() : 0;
+        this.budget = new Budget(builder.budgetRatio, builder.minRetriesPerSecond, builder.maxBudget);
+    }
+
+    /**
+     * @return a policy with 3 attempts, 100 ms to 5 s backoff, a 10% budget and no hedging
+     */
+    public static RetryPolicy defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * Run a call, retrying and hedging it as configured
+     * @param request an idempotent call
+     * @param transport sends one copy of the call
+     * @return a future for the first successful response, or the last failure
+     */
+    public CompletableFuture<XrpcResponse> execute(XrpcRequest request,
+                                                   Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        budget.deposit();
+        CompletableFuture<XrpcResponse> result = new CompletableFuture<>();
+        attempt(request, transport, 1, result);
+        return result;
+    }
+
+    // Completes result; cancelling it cancels the attempt in flight and any retry not yet sent
+    private void attempt(XrpcRequest request, Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport,
+                         int attempt, CompletableFuture<XrpcResponse> result) {
+        CompletableFuture<XrpcResponse> call = hedging ? hedged(request, transport) : timed(request, transport);
+        Futures.cancelling(result, call);
+        call.whenComplete((response, failure) -> {
+            if (failure == null) {
+                result.complete(response);
+                return;
+            }
+            Throwable cause = XrpcClient.unwrap(failure);
+            if (result.isDone() || attempt >= maxAttempts || !isRetryable(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!budget.tryWithdraw()) {
+                budgetExhausted.increment();
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries.increment();
+            CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.NANOSECONDS).execute(() -> {
+                if (result.isDone()) {
+                    budget.refund();
+                } else {
+                    attempt(request, transport, attempt + 1, result);
+                }
+            });
+        });
+    }
+
+    private CompletableFuture<XrpcResponse> hedged(XrpcRequest request,
+                                                   Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        long delay = hedgeDelayNanos > 0 ? hedgeDelayNanos : p95Nanos;
+        CompletableFuture<XrpcResponse> primary = timed(request, transport);
+        if (delay <= 0 || primary.isDone()) {
+            return primary;
+        }
+        CompletableFuture<XrpcResponse> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        AtomicBoolean settled = new AtomicBoolean();
+        AtomicReference<CompletableFuture<XrpcResponse>> hedge = new AtomicReference<>();
+        AtomicReference<CompletableFuture<XrpcResponse>> original = new AtomicReference<>(primary);
+        Futures.cancelling(result, primary);
+        primary.whenComplete((response, failure) ->
+            settle(result, outstanding, settled, response, failure, hedge, false));
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone() || !budget.tryWithdraw()) {
+                return;
+            }
+            if (!join(outstanding)) {
+                // The primary failed meanwhile, so the call is already over
+                budget.refund();
+                return;
+            }
+            hedges.increment();
+            CompletableFuture<XrpcResponse> copy = timed(request, transport);
+            hedge.set(copy);
+            Futures.cancelling(result, copy);
+            copy.whenComplete((response, failure) ->
+                settle(result, outstanding, settled, response, failure, original, true));
+            if (settled.get()) {
+                // The primary won while the copy was being sent
+                copy.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Count one more copy in flight, unless every copy has already failed
+    private static boolean join(AtomicInteger outstanding) {
+        int current;
+        do {
+            current = outstanding.get();
+            if (current == 0) {
+                return false;
+            }
+        } while (!outstanding.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    // First success wins and cancels the other copy; the result fails only once every copy has failed
+    private void settle(CompletableFuture<XrpcResponse> result, AtomicInteger outstanding, AtomicBoolean settled,
+                        XrpcResponse response, Throwable failure,
+                        AtomicReference<CompletableFuture<XrpcResponse>> other, boolean hedge) {
+        if (failure == null) {
+            if (settled.compareAndSet(false, true)) {
+                // Read after winning, so a copy sent concurrently is either seen here or sees settled
+                CompletableFuture<XrpcResponse> loser = other.get();
+                if (loser != null) {
+                    loser.cancel(true);
+                }
+                if (hedge) {
+                    hedgeWins.increment();
+                }
+                result.complete(response);
+            }
+        } else if (outstanding.decrementAndGet() == 0) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private CompletableFuture<XrpcResponse> timed(XrpcRequest request,
+                                                  Function<XrpcRequest, CompletableFuture<XrpcResponse>> transport) {
+        long start = System.nanoTime();
+        CompletableFuture<XrpcResponse> call;
+        try {
+            call = transport.apply(request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<XrpcResponse> timed = call.whenComplete((response, failure) -> {
+            if (failure == null) {
+                recordLatency(System.nanoTime() - start);
+            }
+        });
+        // Cancelling this copy, as hedging does with the loser, cancels the call itself
+        return Futures.cancelling(timed, call);
+    }
+
+    private void recordLatency(long nanos) {
+        long count = latencyCount.incrementAndGet();
+        latencies.set((int) ((count - 1) % LATENCY_SAMPLES), nanos);
+        if (count >= MIN_LATENCY_SAMPLES && count % PERCENTILE_REFRESH == 0) {
+            int size = (int) Math.min(count, LATENCY_SAMPLES);
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            p95Nanos = sorted[(int) Math.ceil(size * 0.95) - 1];
+        }
+    }
+
+    /**
+     * Backoff before the given retry: a uniformly random delay up to the exponential bound
+     */
+    long backoff(int attempt) {
+        long bound = baseDelayNanos << Math.min(attempt - 1, 30);
+        if (bound <= 0 || bound > maxDelayNanos) {
+            bound = maxDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * @return true for failures where sending the call again may succeed
+     */
+    static boolean isRetryable(Throwable failure) {
+        if (!(failure instanceof XrpcException e) || e instanceof XrpcRateLimitException) {
+            return false;
+        }
+        int status = e.getStatusCode();
+        return e.isTimeout() || e.isNetworkError() || status == 502 || status == 503 || status == 504;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return recent 95th percentile latency in nanoseconds, or 0 until enough calls completed
+     */
+    public long getP95LatencyNanos() {
+        return p95Nanos;
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return retries that were not made because the budget was spent
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return hedged copies that returned before the original call
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Retry tokens in thousandths. Calls deposit {@code ratio} tokens up to a cap and each retry
+     * withdraws one; when empty, a few retries per second are still allowed.
+     */
+    private static final class Budget {
+        private static final long UNIT = 1000;
+
+        private final long deposit;
+        private final long cap;
+        private final int minPerSecond;
+        private final AtomicLong balance = new AtomicLong();
+        private long windowStart = System.nanoTime();
+        private int windowUsed;
+
+        Budget(double ratio, int minPerSecond, int maxBalance) {
+            this.deposit = (long) (ratio * UNIT);
+            this.cap = maxBalance * UNIT;
+            this.minPerSecond = minPerSecond;
+        }
+
+        void deposit() {
+            if (deposit > 0 && balance.get() < cap) {
+                balance.accumulateAndGet(deposit, (b, d) -> Math.min(cap, b + d));
+            }
+        }
+
+        /**
+         * Return a withdrawn token that was not used
+         */
+        void refund() {
+            balance.accumulateAndGet(UNIT, (b, d) -> Math.min(cap, b + d));
+        }
+
+        boolean tryWithdraw() {
+            long current;
+            do {
+                current = balance.get();
+                if (current < UNIT) {
+                    return tryFloor();
+                }
+            } while (!balance.compareAndSet(current, current - UNIT));
+            return true;
+        }
+
+        private synchronized boolean tryFloor() {
+            long now = System.nanoTime();
+            if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+                windowStart = now;
+                windowUsed = 0;
+            }
+            if (windowUsed < minPerSecond) {
+                windowUsed++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration baseDelay = Duration.ofMillis(100);
+        private Duration maxDelay = Duration.ofSeconds(5);
+        private double budgetRatio = 0.1;
+        private int minRetriesPerSecond = 10;
+        private int maxBudget = 100;
+        private boolean hedging;
+        private Duration hedgeDelay;
+
+        /**
+         * @param maxAttempts total attempts per call, including the first
+         */
+        public Builder withMaxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("At least one attempt is required");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param baseDelay upper bound of the first backoff, doubled for each further retry
+         * @param maxDelay cap on the backoff bound
+         */
+        public Builder withBackoff(Duration baseDelay, Duration maxDelay) {
+            if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0) {
+                throw new IllegalArgumentException("Backoff delays must satisfy 0 <= base <= max");
+            }
+            this.baseDelay = baseDelay;
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * @param ratio retries earned per call, e.g. 0.1 for at most 10% extra traffic
+         * @param minRetriesPerSecond retries allowed per second even when the budget is empty
+         * @param maxBudget most retries that can be saved up
+         */
+        public Builder withBudget(double ratio, int minRetriesPerSecond, int maxBudget) {
+            if (ratio < 0 || minRetriesPerSecond < 0 || maxBudget < 0) {
+                throw new IllegalArgumentException("Budget parameters must not be negative");
+            }
+            this.budgetRatio = ratio;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+            this.maxBudget = maxBudget;
+            return this;
+        }
+
+        /**
+         * Hedge calls that take longer than the recent 95th percentile latency
+         */
+        public Builder withHedging() {
+            this.hedging = true;
+            return this;
+        }
+
+        /**
+         * Hedge calls that take longer than a fixed delay
+         */
+        public Builder withHedgeDelay(Duration hedgeDelay) {
+            this.hedging = true;
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.atproto.api.xrpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one HTTP exchange made by an {@link XrpcClient}, so protocol activity
+ * can be lined up with GC pauses and lock contention in a recording.
+ * <p>
+ * Disabled by default; enable {@code com.atproto.XrpcCall} in a recording's settings. While it
+ * is disabled the client skips it after a single check, and the unused event object is removed
+ * by the JIT.
+ */
+@Name("com.atproto.XrpcCall")
+@Label("XRPC Call")
+@Category({"AT Protocol", "XRPC"})
+@Description("HTTP exchange for an XRPC call made by the client")
+@Enabled(false)
+@StackTrace(false)
+final class XrpcCallEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("Procedure")
+    boolean procedure;
+
+    @Label("Status")
+    @Description("HTTP status, or 0 if no response was received")
+    int status;
+
+    @Label("Error")
+    @Description("XRPC error name or failure kind for calls that failed")
+    String error;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+
+    /**
+     * Fill in the outcome of the exchange and commit the event
+     */
+    void complete(XrpcResponse response, Throwable failure) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        if (response != null) {
+            status = response.getStatusCode();
+            bytesReceived = response.getBodyBytes().length;
+        } else {
+            Throwable cause = XrpcClient.unwrap(failure);
+            status = cause instanceof XrpcException xrpc ? xrpc.getStatusCode() : 0;
+            error = XrpcMetrics.errorCode(cause);
+        }
+        commit();
+    }
+}
@@ -1,16 +1,863 @@
 package com.atproto.api.xrpc;
 
-import com.atproto.api.xrpc.model.XrpcRequest;
-import com.atproto.api.xrpc.model.XrpcResponse;
+import com.atproto.api.common.BlobRef;
+import com.atproto.api.common.Cid;
 
-public class XrpcClient implements XrpcClientInterface {
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.net.http.WebSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * XRPC client over {@link java.net.http.HttpClient}.
+ * <p>
+ * Queries are sent as GET with their params in the query string, procedures as POST with a JSON
+ * body. By default all clients for the same service share one HTTP/2 {@link HttpClient}, so
+ * concurrent calls are multiplexed over a small number of connections; it is shut down when the
+ * last of them is {@link #close() closed}.
+ * <p>
+ * {@link #sendAsync} is non-blocking and built on {@link HttpClient#sendAsync}. Alternatively a
+ * client can be configured with an executor, typically {@link Builder#withVirtualThreads()}, in
+ * which case each call runs the blocking exchange on its own thread; with virtual threads this
+ * keeps tens of thousands of calls in flight without a platform thread per call.
+ * <p>
+ * Optional layers enabled through the {@link Builder} apply to queries in this order: response
+ * cache, coalescing, retries and hedging, rate limiting. Procedures only pass the rate limiter.
+ * Per-method latency, error and byte counts are recorded when {@link Builder#withMetrics()} is set,
+ * and each HTTP exchange is reported to Flight Recorder as a {@code com.atproto.XrpcCall} event
+ * when that event is enabled.
+ * <p>
+ * Blobs are streamed between files or streams and the connection by {@link #uploadBlob} and
+ * {@link #getBlob}, and their CID is computed from the buffers as they pass. Subscriptions are
+ * opened as WebSockets by {@link #connectWebSocket}.
+ */
+public class XrpcClient implements XrpcClientInterface, AutoCloseable {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final long DEFAULT_TIMEOUT = 30_000L;
+
+    private static final String JSON = "application/json";
+    private static final String UPLOAD_BLOB = "com.atproto.repo.uploadBlob";
+    private static final String GET_BLOB = "com.atproto.sync.getBlob";
+    private static final int BLOB_BUFFER_SIZE = 64 * 1024;
+
+    private final URI serviceUri;
+    private final HttpClient httpClient;
+    // Connect timeout the shared client was acquired with, or null if the caller supplied one
+    private final Duration sharedConnectTimeout;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Executor executor;
+    private final RequestCoalescer coalescer;
+    private final ResponseCache cache;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final XrpcMetrics metrics;
+    private volatile long timeout;
+    private volatile String accessToken;
+
+    public XrpcClient(String serviceUrl) {
+        this(new Builder().withServiceUrl(serviceUrl));
+    }
+
+    /**
+     * Create a client that sends through the given HTTP client
+     * @param serviceUri service URI, e.g. https://bsky.social
+     * @param httpClient HTTP client to use
+     */
+    public XrpcClient(URI serviceUri, HttpClient httpClient) {
+        this.serviceUri = Objects.requireNonNull(serviceUri, "serviceUri");
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+        this.sharedConnectTimeout = null;
+        this.executor = null;
+        this.coalescer = null;
+        this.cache = null;
+        this.rateLimiter = null;
+        this.retryPolicy = null;
+        this.metrics = null;
+        this.timeout = DEFAULT_TIMEOUT;
+    }
+
+    private XrpcClient(Builder builder) {
+        this.serviceUri = Objects.requireNonNull(builder.serviceUri, "serviceUri");
+        this.sharedConnectTimeout = builder.httpClient != null ? null : builder.connectTimeout;
+        this.httpClient = builder.httpClient != null
+            ? builder.httpClient
+            : HttpUtil.acquireClient(builder.serviceUri, builder.connectTimeout);
+        this.executor = builder.executor;
+        this.coalescer = builder.coalesce ? new RequestCoalescer() : null;
+        this.cache = builder.cacheBytes > 0 ? new ResponseCache(builder.cacheBytes) : null;
+        this.rateLimiter = builder.rateLimiter;
+        this.retryPolicy = builder.retryPolicy;
+        this.metrics = builder.metrics;
+        this.timeout = builder.timeout;
+        this.accessToken = builder.accessToken;
+    }
+
+    public URI getServiceUri() {
+        return serviceUri;
+    }
+
+    /**
+     * @return the coalescer for identical concurrent queries, or null if coalescing is disabled
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * @return the query response cache, or null if caching is disabled
+     */
+    public ResponseCache getResponseCache() {
+        return cache;
+    }
+
+    /**
+     * @return the rate limiter pacing this client's calls, or null if rate limiting is disabled
+     */
+    public AdaptiveRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the retry policy for queries, or null if queries are not retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return the per-method call metrics, or null if metrics are disabled
+     */
+    public XrpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the read timeout in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the time to wait for a response to each call
+     * @param timeout read timeout in milliseconds
+     */
+    public void setTimeout(long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Set the access token sent as a bearer token with calls that carry no auth of their own
+     * @param accessToken access JWT, or null to send calls unauthenticated
+     */
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+
+    /**
+     * Release the shared HTTP client, which is shut down once no client uses it. A client given
+     * to the constructor or {@link Builder#withHttpClient} is left open. The client must not be
+     * used after it is closed.
+     */
+    @Override
+    public void close() {
+        if (sharedConnectTimeout != null && closed.compareAndSet(false, true)) {
+            HttpUtil.releaseClient(serviceUri, sharedConnectTimeout);
+        }
+    }
+
+    /**
+     * Send an XRPC call and wait for its response
+     * @param request the call
+     * @return the response; only 2xx responses are returned
+     * @throws XrpcException if the server returned an error or the call failed in transit
+     */
     @Override
     public XrpcResponse send(XrpcRequest request) throws XrpcException {
-        // TO DO: implement the send method
-        return null;
+        return await(request.getMethod(), sendAsync(request));
+    }
+
+    /**
+     * Send an XRPC call without blocking the caller
+     * @param request the call
+     * @return a future completed with the response, or exceptionally with an {@link XrpcException}
+     * @throws IllegalArgumentException if the request has no type
+     */
+    @Override
+    public CompletableFuture<XrpcResponse> sendAsync(XrpcRequest request) {
+        if (request.getType() == null) {
+            // Guessing would send body-less procedures as cacheable, retryable GETs
+            throw new IllegalArgumentException("Request type is required: " + request.getMethod());
+        }
+        if (metrics == null) {
+            return dispatch(request);
+        }
+        XrpcMetrics.MethodMetrics method = metrics.forMethod(request.getMethod());
+        long start = method.start();
+        CompletableFuture<XrpcResponse> pending;
+        try {
+            pending = dispatch(request);
+        } catch (RuntimeException e) {
+            method.end(start, e);
+            throw e;
+        }
+        return pending.whenComplete((response, failure) -> method.end(start, failure));
+    }
+
+    private CompletableFuture<XrpcResponse> dispatch(XrpcRequest request) {
+        if (!request.isQuery()) {
+            return limit(request);
+        }
+        if (cache != null) {
+            return cache.execute(request, account(request), this::coalesce);
+        }
+        return coalesce(request);
+    }
+
+    private CompletableFuture<XrpcResponse> coalesce(XrpcRequest request) {
+        return coalescer != null ? coalescer.execute(request, this::retry) : retry(request);
+    }
+
+    // Retries and hedges go back through the rate limiter so they are paced like any other call
+    private CompletableFuture<XrpcResponse> retry(XrpcRequest request) {
+        return retryPolicy != null ? retryPolicy.execute(request, this::limit) : limit(request);
+    }
+
+    private CompletableFuture<XrpcResponse> limit(XrpcRequest request) {
+        if (rateLimiter == null) {
+            return transmit(request);
+        }
+        return rateLimiter.execute(serviceUri.getAuthority(), account(request), request, this::transmit);
+    }
+
+    // Credentials the call will be sent with, as chosen in toHttpRequest
+    private String account(XrpcRequest request) {
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Authorization")) {
+                return header.getValue();
+            }
+        }
+        return request.getAuth() != null ? request.getAuth() : accessToken;
+    }
+
+    // Send over HTTP, either through HttpClient.sendAsync or as a blocking exchange on the executor
+    private CompletableFuture<XrpcResponse> transmit(XrpcRequest request) {
+        HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String method = request.getMethod();
+        long bytesSent = httpRequest.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        if (metrics != null) {
+            metrics.forMethod(method).sent(bytesSent);
+        }
+        XrpcCallEvent event = new XrpcCallEvent();
+        if (!event.isEnabled()) {
+            return transmit(method, httpRequest);
+        }
+        event.method = method;
+        event.procedure = !request.isQuery();
+        event.bytesSent = Math.max(0, bytesSent);
+        event.begin();
+        CompletableFuture<XrpcResponse> call = transmit(method, httpRequest);
+        return Futures.cancelling(call.whenComplete(event::complete), call);
+    }
+
+    // Cancelling the returned future aborts the exchange, as hedging does with the losing copy
+    private CompletableFuture<XrpcResponse> transmit(String method, HttpRequest httpRequest) {
+        if (executor != null) {
+            CompletableFuture<XrpcResponse> result = new CompletableFuture<>();
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                try {
+                    result.complete(exchange(method, httpRequest));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }, null);
+            executor.execute(task);
+            // Interrupting the blocking send aborts it
+            return Futures.cancelling(result, task);
+        }
+        CompletableFuture<HttpResponse<byte[]>> exchange =
+            httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+        return Futures.cancelling(exchange.handle((response, failure) -> {
+            if (failure != null) {
+                throw transportFailure(method, unwrap(failure));
+            }
+            return received(method, response);
+        }), exchange);
+    }
+
+    // Blocking exchange, run on the configured executor
+    private XrpcResponse exchange(String method, HttpRequest httpRequest) {
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw transportFailure(method, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XrpcException("Interrupted while calling " + method, e);
+        }
+        return received(method, response);
+    }
+
+    private XrpcResponse received(String method, HttpResponse<byte[]> response) {
+        if (metrics != null && response.body() != null) {
+            metrics.forMethod(method).received(response.body().length);
+        }
+        return toXrpcResponse(method, response);
+    }
+
+    /**
+     * Wait for a pending call, rethrowing its failure as an {@link XrpcException}
+     */
+    static <T> T await(String method, CompletableFuture<T> pending) {
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            throw transportFailure(method, e.getCause());
+        } catch (InterruptedException e) {
+            pending.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new XrpcException("Interrupted while calling " + method, e);
+        }
+    }
+
+    static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException)
+                && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    /**
+     * Upload a file as a blob, streaming it from disk
+     * @param file the blob content
+     * @param mimeType MIME type of the content
+     * @return reference to the uploaded blob, with the CID computed while sending
+     * @throws XrpcException if the upload fails or the server reports a different CID
+     */
+    public BlobRef uploadBlob(Path file, String mimeType) throws XrpcException {
+        return await(UPLOAD_BLOB, uploadBlobAsync(file, mimeType));
+    }
+
+    /**
+     * Upload a blob read from a stream of unknown length. The stream can only be sent once, so
+     * an upload the server redirects with 307 or 308 fails instead of resending it; upload from
+     * a file where that may happen.
+     * @param content the blob content; read once and not closed
+     * @param mimeType MIME type of the content
+     * @return reference to the uploaded blob
+     */
+    public BlobRef uploadBlob(InputStream content, String mimeType) throws XrpcException {
+        return await(UPLOAD_BLOB, uploadBlobAsync(content, mimeType));
+    }
+
+    public CompletableFuture<BlobRef> uploadBlobAsync(Path file, String mimeType) {
+        HttpRequest.BodyPublisher body;
+        try {
+            body = HttpRequest.BodyPublishers.ofFile(file);
+        } catch (FileNotFoundException e) {
+            return CompletableFuture.failedFuture(new XrpcException("Blob file not found: " + file, e));
+        }
+        return uploadBlobAsync(body, mimeType);
+    }
+
+    /**
+     * Upload a blob read from a stream of unknown length; see {@link #uploadBlob(InputStream, String)}
+     * @param content the blob content; read once and not closed
+     * @param mimeType MIME type of the content
+     * @return a future for the reference to the uploaded blob
+     */
+    public CompletableFuture<BlobRef> uploadBlobAsync(InputStream content, String mimeType) {
+        AtomicBoolean sent = new AtomicBoolean();
+        // A redirect subscribes to the body again, which would send what is left of a drained stream
+        return uploadBlobAsync(HttpRequest.BodyPublishers.ofInputStream(() -> {
+            if (!sent.compareAndSet(false, true)) {
+                throw new IllegalStateException(
+                    "Blob stream cannot be sent again; upload from a file to follow redirects");
+            }
+            return content;
+        }), mimeType);
+    }
+
+    // No read timeout: the server only responds once the whole blob has arrived
+    private CompletableFuture<BlobRef> uploadBlobAsync(HttpRequest.BodyPublisher content, String mimeType) {
+        BlobStreams.HashingPublisher body = new BlobStreams.HashingPublisher(content);
+        HttpRequest httpRequest = newRequest(HttpUtil.xrpcUri(serviceUri, UPLOAD_BLOB, null, null), Map.of(), null)
+            .header("Accept", JSON)
+            .header("Content-Type", mimeType)
+            .POST(body)
+            .build();
+        return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+            .handle((response, failure) -> {
+                if (failure != null) {
+                    throw transportFailure(UPLOAD_BLOB, failure);
+                }
+                XrpcResponse decoded = toXrpcResponse(UPLOAD_BLOB, response);
+                BlobRef uploaded = new BlobRef(body.cid(), mimeType, body.size());
+                String link = decoded.getString("/blob/ref/$link");
+                if (link != null && !link.equals(uploaded.getCid().toString())) {
+                    throw new XrpcException("Server stored blob as " + link + " but sent content hashes to " + uploaded.getCid());
+                }
+                return uploaded;
+            });
+    }
+
+    /**
+     * Download a blob to a file, verifying its content against the CID while it streams
+     * @param did repository holding the blob
+     * @param cid CID of the blob
+     * @param target file to write; replaced if it exists and deleted if the content is wrong
+     * @return number of bytes written
+     * @throws XrpcException if the download fails or the content does not match the CID
+     */
+    public long getBlob(String did, Cid cid, Path target) throws XrpcException {
+        return await(GET_BLOB, getBlobAsync(did, cid, target));
+    }
+
+    public CompletableFuture<Long> getBlobAsync(String did, Cid cid, Path target) {
+        BlobStreams.HashingSubscriber<?>[] hashing = new BlobStreams.HashingSubscriber<?>[1];
+        HttpResponse.BodyHandler<Path> handler = info -> {
+            if (info.statusCode() >= 300) {
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+                    bytes -> { throw decodeError(GET_BLOB, info.statusCode(), HttpUtil.firstValues(info.headers()), bytes); });
+            }
+            BlobStreams.HashingSubscriber<Path> subscriber =
+                new BlobStreams.HashingSubscriber<>(HttpResponse.BodySubscribers.ofFile(target));
+            hashing[0] = subscriber;
+            return subscriber;
+        };
+        return httpClient.sendAsync(getBlobRequest(did, cid), handler)
+            .handle((response, failure) -> {
+                if (failure != null) {
+                    throw transportFailure(GET_BLOB, failure);
+                }
+                if (!cid.equals(hashing[0].cid())) {
+                    try {
+                        Files.deleteIfExists(target);
+                    } catch (IOException e) {
+                        // The mismatch is the error worth reporting
+                    }
+                    throw new XrpcException("Blob content hashes to " + hashing[0].cid() + ", expected " + cid);
+                }
+                return hashing[0].size();
+            });
+    }
+
+    /**
+     * Download a blob into a stream, verifying its content against the CID. The content has
+     * already been written when a mismatch is detected, so callers should discard it then.
+     * @return number of bytes written
+     */
+    public long getBlob(String did, Cid cid, OutputStream target) throws XrpcException {
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(getBlobRequest(did, cid), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            throw transportFailure(GET_BLOB, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XrpcException("Interrupted while calling " + GET_BLOB, e);
+        }
+        MessageDigest digest = Cid.newDigest();
+        long size = 0;
+        try (InputStream in = response.body()) {
+            if (response.statusCode() >= 300) {
+                throw decodeError(GET_BLOB, response.statusCode(), HttpUtil.firstValues(response.headers()), in.readAllBytes());
+            }
+            byte[] buffer = new byte[BLOB_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+                target.write(buffer, 0, n);
+                size += n;
+            }
+        } catch (IOException e) {
+            throw transportFailure(GET_BLOB, e);
+        }
+        Cid actual = Cid.of(Cid.RAW, digest.digest());
+        if (!actual.equals(cid)) {
+            throw new XrpcException("Blob content hashes to " + actual + ", expected " + cid);
+        }
+        return size;
+    }
+
+    private HttpRequest getBlobRequest(String did, Cid cid) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("did", did);
+        params.put("cid", cid.toString());
+        return newRequest(HttpUtil.xrpcUri(serviceUri, GET_BLOB, params, null), Map.of(), null)
+            .timeout(Duration.ofMillis(timeout))
+            .GET()
+            .build();
+    }
+
+    /**
+     * Open a WebSocket to an XRPC subscription method, such as
+     * {@code com.atproto.sync.subscribeRepos}. The scheme is ws or wss to match the service URI,
+     * and the client's access token is sent if one is set.
+     * @param method NSID of the subscription
+     * @param params query parameters, e.g. the cursor to resume from
+     * @param listener receives the frames; it should request more as it handles them
+     * @return future completed with the open WebSocket
+     */
+    public CompletableFuture<WebSocket> connectWebSocket(String method, Map<String, ?> params, WebSocket.Listener listener) {
+        URI http = HttpUtil.xrpcUri(serviceUri, method, params, null);
+        URI uri = URI.create(("https".equalsIgnoreCase(http.getScheme()) ? "wss" : "ws")
+            + http.toString().substring(http.getScheme().length()));
+        WebSocket.Builder builder = httpClient.newWebSocketBuilder();
+        String token = accessToken;
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.buildAsync(uri, listener)
+            .exceptionallyCompose(e -> CompletableFuture.failedFuture(transportFailure(method, e)));
+    }
+
+    private static XrpcException decodeError(String method, int status, Map<String, String> headers, byte[] body) {
+        String contentType = headers.get("content-type");
+        return errorResponse(status, headers, body, body.length > 0 && isJson(contentType));
+    }
+
+    /**
+     * Call a query (HTTP GET) method
+     * @param method NSID of the method
+     * @param params query parameters
+     * @return the response
+     */
+    public XrpcResponse query(String method, Map<String, Object> params) throws XrpcException {
+        return send(new XrpcRequest.Builder()
+            .withMethod(method)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParams(params)
+            .build());
+    }
+
+    /**
+     * Call a procedure (HTTP POST) method
+     * @param method NSID of the method
+     * @param body JSON input
+     * @return the response
+     */
+    public XrpcResponse procedure(String method, Map<String, Object> body) throws XrpcException {
+        return send(new XrpcRequest.Builder()
+            .withMethod(method)
+            .withType(XrpcRequest.Type.PROCEDURE)
+            .withBody(body)
+            .build());
+    }
+
+    HttpRequest toHttpRequest(XrpcRequest request) {
+        HttpRequest.Builder builder = newRequest(
+                HttpUtil.xrpcUri(serviceUri, request.getMethod(), request.getParams(), request.getQueryParams()),
+                request.getHeaders(), request.getAuth())
+            .timeout(Duration.ofMillis(timeout));
+        if (request.isQuery()) {
+            builder.GET();
+        } else {
+            builder.header("Content-Type", JSON).POST(HttpRequest.BodyPublishers.ofByteArray(encodeBody(request.getBody())));
+        }
+        if (!request.getHeaders().containsKey("Accept")) {
+            builder.header("Accept", JSON);
+        }
+        return builder.build();
+    }
+
+    // Headers plus a bearer token from the call or the client, unless Authorization is set
+    private HttpRequest.Builder newRequest(URI uri, Map<String, String> headers, String auth) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(uri);
+        boolean hasAuthorization = false;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.setHeader(header.getKey(), header.getValue());
+            hasAuthorization |= header.getKey().equalsIgnoreCase("Authorization");
+        }
+        if (!hasAuthorization) {
+            String token = auth != null ? auth : accessToken;
+            if (token != null) {
+                builder.header("Authorization", "Bearer " + token);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Map an HTTP response to an XRPC response, throwing for error statuses
+     */
+    static XrpcResponse toXrpcResponse(String method, HttpResponse<byte[]> response) {
+        byte[] body = response.body() != null ? response.body() : new byte[0];
+        return decode(method, response.statusCode(), HttpUtil.firstValues(response.headers()), body);
+    }
+
+    /**
+     * Decode a raw response, throwing for error statuses. JSON data of 2xx responses is left
+     * to be decoded on access. Non-error 3xx responses such as 304 Not Modified are returned
+     * without data.
+     */
+    static XrpcResponse decode(String method, int status, Map<String, String> headers, byte[] body) {
+        XrpcResponse result = new XrpcResponse(method, status, headers, body);
+        boolean json = body.length > 0 && isJson(result.getHeader("Content-Type"));
+        if (status < 400) {
+            if (json && status >= 200 && status < 300) {
+                result.deferJson();
+            }
+            return result;
+        }
+        throw errorResponse(status, headers, body, json);
+    }
+
+    /**
+     * Build the exception for an error response. XRPC error bodies are
+     * {@code {"error": "Name", "message": "..."}}; anything else keeps the HTTP status only.
+     */
+    static XrpcException errorResponse(int status, Map<String, String> headers, byte[] body, boolean json) {
+        String code = null;
+        String message = null;
+        List<String> details = List.of();
+        if (json) {
+            try {
+                Map<String, Object> error = new JsonReader(body).readObject();
+                code = error.get("error") instanceof String s ? s : null;
+                message = error.get("message") instanceof String s ? s : null;
+                if (error.get("details") instanceof List<?> list) {
+                    details = new ArrayList<>(list.size());
+                    for (Object detail : list) {
+                        details.add(String.valueOf(detail));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                message = "Malformed JSON response";
+            }
+        }
+        if (message == null) {
+            message = code != null ? code : "HTTP " + status;
+        }
+        if (status == 429) {
+            return new XrpcRateLimitException(code, message, headers);
+        }
+        return new XrpcException(status, code, message, details);
+    }
+
+    /**
+     * Map a failure to get any response to the matching exception type
+     */
+    static XrpcException transportFailure(String method, Throwable e) {
+        e = unwrap(e);
+        if (e instanceof HttpConnectTimeoutException) {
+            return new XrpcTimeoutException("Connect timeout calling " + method, e);
+        }
+        if (e instanceof HttpTimeoutException) {
+            return new XrpcTimeoutException("Request timeout calling " + method, e);
+        }
+        if (e instanceof ConnectException) {
+            return new XrpcConnectionException("Connection failed calling " + method, e);
+        }
+        if (e instanceof IOException) {
+            return new XrpcConnectionException("Network error calling " + method + ": " + e.getMessage(), e);
+        }
+        if (e instanceof XrpcException xrpc) {
+            return xrpc;
+        }
+        if (e instanceof CancellationException) {
+            return new XrpcException("Call to " + method + " was cancelled", e);
+        }
+        return new XrpcException("Failed calling " + method, e);
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType == null || contentType.regionMatches(true, 0, JSON, 0, JSON.length());
+    }
+
+    private static byte[] encodeBody(Map<String, Object> body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writer.writeValue(body);
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode request body", e);
+        }
+        return out.toByteArray();
+    }
+
+    // Created on first use so clients that never ask for virtual threads don't start the executor
+    private static final class VirtualThreads {
+        static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("xrpc-", 0).factory());
+
+        private VirtualThreads() {
+        }
+    }
+
+    public static class Builder {
+        private URI serviceUri;
+        private HttpClient httpClient;
+        private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private long timeout = DEFAULT_TIMEOUT;
+        private String accessToken;
+        private Executor executor;
+        private boolean coalesce;
+        private long cacheBytes;
+        private AdaptiveRateLimiter rateLimiter;
+        private RetryPolicy retryPolicy;
+        private XrpcMetrics metrics;
+
+        public Builder withServiceUrl(String serviceUrl) {
+            this.serviceUri = URI.create(serviceUrl);
+            return this;
+        }
+
+        public Builder withServiceUri(URI serviceUri) {
+            this.serviceUri = serviceUri;
+            return this;
+        }
+
+        /**
+         * Use a dedicated HTTP client instead of the shared one for the service
+         */
+        public Builder withHttpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        public Builder withConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = Objects.requireNonNull(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        /**
+         * @param timeout read timeout in milliseconds
+         */
+        public Builder withTimeout(long timeout) {
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("Timeout must be positive");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder withAccessToken(String accessToken) {
+            this.accessToken = accessToken;
+            return this;
+        }
+
+        /**
+         * Run each call as a blocking exchange on the given executor instead of through
+         * {@link HttpClient#sendAsync}
+         */
+        public Builder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Run each call as a blocking exchange on its own virtual thread
+         */
+        public Builder withVirtualThreads() {
+            return withExecutor(VirtualThreads.EXECUTOR);
+        }
+
+        /**
+         * Share one in-flight call between identical concurrent queries
+         */
+        public Builder withCoalescing() {
+            this.coalesce = true;
+            return this;
+        }
+
+        /**
+         * Cache query responses according to their Cache-Control and ETag headers
+         * @param maxBytes upper bound on the total size of cached responses
+         */
+        public Builder withResponseCache(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Cache size must be positive");
+            }
+            this.cacheBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Pace calls according to the server's ratelimit-* headers, delaying rather than failing
+         * calls over the limit
+         */
+        public Builder withRateLimiting() {
+            return withRateLimiter(new AdaptiveRateLimiter());
+        }
+
+        /**
+         * Pace calls with the given limiter, which may be shared between clients
+         */
+        public Builder withRateLimiter(AdaptiveRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Retry and optionally hedge queries; procedures are never retried
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Record per-method latency, error and byte counts, read through {@link XrpcClient#getMetrics()}
+         */
+        public Builder withMetrics() {
+            return withMetrics(new XrpcMetrics());
+        }
+
+        /**
+         * Record per-method metrics into the given instance, which may be shared between clients
+         */
+        public Builder withMetrics(XrpcMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public XrpcClient build() {
+            return new XrpcClient(this);
+        }
     }
 }
 
 interface XrpcClientInterface {
     XrpcResponse send(XrpcRequest request) throws XrpcException;
+
+    CompletableFuture<XrpcResponse> sendAsync(XrpcRequest request);
 }
@@ -0,0 +1,15 @@
+package com.atproto.api.xrpc;
+
+/**
+ * The server could not be reached or the connection failed before a response was received.
+ */
+public class XrpcConnectionException extends XrpcException {
+    public XrpcConnectionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public boolean isNetworkError() {
+        return true;
+    }
+}
@@ -1,3 +1,75 @@
-public class XrpcException {
-    
+package com.atproto.api.xrpc;
+
+import com.atproto.api.common.AtProtoException;
+
+import java.util.List;
+
+/**
+ * An XRPC call failed, either with an error response from the server or in the transport.
+ */
+public class XrpcException extends AtProtoException {
+    private final int statusCode;
+    private final String code;
+    private final List<String> details;
+
+    public XrpcException(String message) {
+        this(message, null);
+    }
+
+    public XrpcException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+        this.code = null;
+        this.details = List.of();
+    }
+
+    /**
+     * Create an exception for an XRPC error response
+     * @param statusCode HTTP status of the response
+     * @param code XRPC error name from the response body, or null if absent
+     * @param message human readable message
+     * @param details additional error details, may be empty
+     */
+    public XrpcException(int statusCode, String code, String message, List<String> details) {
+        super(message);
+        this.statusCode = statusCode;
+        this.code = code;
+        this.details = details != null ? List.copyOf(details) : List.of();
+    }
+
+    public XrpcException(int statusCode, String code, String message) {
+        this(statusCode, code, message, List.of());
+    }
+
+    /**
+     * @return HTTP status of the error response, or 0 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return XRPC error name, such as {@code InvalidRequest}, or null
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public List<String> getDetails() {
+        return details;
+    }
+
+    /**
+     * @return true if the call timed out before a response was received
+     */
+    public boolean isTimeout() {
+        return false;
+    }
+
+    /**
+     * @return true if the call failed in the network before a response was received
+     */
+    public boolean isNetworkError() {
+        return false;
+    }
 }
@@ -0,0 +1,367 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.common.Nsid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-method call metrics for an {@link XrpcClient}: latency histograms, calls in flight,
+ * error counts by XRPC error name and bytes on the wire.
+ * <p>
+ * Methods are looked up by their interned {@link Nsid} id in a plain array, and every counter is
+ * a {@link LongAdder}, so recording takes no lock and concurrent calls do not contend. Latency is
+ * measured from {@link XrpcClient#sendAsync} to completion, so it includes cache hits, coalesced
+ * waits, retries and rate limiter delays, as the caller sees them. Byte counts are bodies only and
+ * include every attempt.
+ * <p>
+ * Reading is done through {@link #snapshot()}, or in the Prometheus text format through
+ * {@link #writePrometheus(Appendable)}. Clients built without metrics skip all of this.
+ */
+public final class XrpcMetrics {
+    /**
+     * Bucket for calls whose method is not a valid NSID or could not be interned.
+     */
+    public static final String OTHER = "other";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final MethodMetrics other = new MethodMetrics(OTHER);
+    private volatile MethodMetrics[] methods = new MethodMetrics[16];
+
+    /**
+     * @param method NSID of the method
+     * @return the metrics recorded for the method, created on first use
+     */
+    MethodMetrics forMethod(String method) {
+        Nsid nsid = Nsid.lookup(method);
+        if (nsid == null) {
+            try {
+                nsid = method != null && Nsid.isValid(method) ? Nsid.intern(method) : null;
+            } catch (IllegalStateException e) {
+                nsid = null;
+            }
+        }
+        if (nsid == null) {
+            return other;
+        }
+        MethodMetrics[] table = methods;
+        int id = nsid.id();
+        if (id < table.length && table[id] != null) {
+            return table[id];
+        }
+        return create(nsid);
+    }
+
+    private synchronized MethodMetrics create(Nsid nsid) {
+        MethodMetrics[] table = methods;
+        int id = nsid.id();
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(table.length * 2, id + 1));
+        } else if (table[id] != null) {
+            return table[id];
+        } else {
+            table = table.clone();
+        }
+        MethodMetrics created = new MethodMetrics(nsid.toString());
+        table[id] = created;
+        methods = table;
+        return created;
+    }
+
+    /**
+     * @return a point-in-time copy of the metrics of every method called so far, by method name
+     */
+    public Map<String, MethodSnapshot> snapshot() {
+        Map<String, MethodSnapshot> snapshot = new TreeMap<>();
+        for (MethodMetrics metrics : all()) {
+            snapshot.put(metrics.method, metrics.snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param method NSID of the method
+     * @return a point-in-time copy of the method's metrics, or null if it was never called
+     */
+    public MethodSnapshot snapshot(String method) {
+        for (MethodMetrics metrics : all()) {
+            if (metrics.method.equals(method)) {
+                return metrics.snapshot();
+            }
+        }
+        return null;
+    }
+
+    private List<MethodMetrics> all() {
+        List<MethodMetrics> all = new ArrayList<>();
+        for (MethodMetrics metrics : methods) {
+            if (metrics != null) {
+                all.add(metrics);
+            }
+        }
+        if (other.latency.count() > 0 || other.inFlight.sum() > 0) {
+            all.add(other);
+        }
+        return all;
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(1024);
+        try {
+            writePrometheus(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write the metrics in the Prometheus text exposition format, labelled by method
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        Map<String, MethodSnapshot> snapshot = snapshot();
+        header(out, "xrpc_client_requests_total", "counter", "XRPC calls completed");
+        for (MethodSnapshot method : snapshot.values()) {
+            sample(out, "xrpc_client_requests_total", method.getMethod(), null, method.getRequestCount());
+        }
+        header(out, "xrpc_client_in_flight", "gauge", "XRPC calls in progress");
+        for (MethodSnapshot method : snapshot.values()) {
+            sample(out, "xrpc_client_in_flight", method.getMethod(), null, method.getInFlight());
+        }
+        header(out, "xrpc_client_errors_total", "counter", "XRPC calls failed, by error name");
+        for (MethodSnapshot method : snapshot.values()) {
+            for (Map.Entry<String, Long> error : method.getErrors().entrySet()) {
+                sample(out, "xrpc_client_errors_total", method.getMethod(), "code=\"" + escape(error.getKey()) + "\"",
+                    error.getValue());
+            }
+        }
+        header(out, "xrpc_client_bytes_sent_total", "counter", "Request body bytes sent");
+        for (MethodSnapshot method : snapshot.values()) {
+            sample(out, "xrpc_client_bytes_sent_total", method.getMethod(), null, method.getBytesSent());
+        }
+        header(out, "xrpc_client_bytes_received_total", "counter", "Response body bytes received");
+        for (MethodSnapshot method : snapshot.values()) {
+            sample(out, "xrpc_client_bytes_received_total", method.getMethod(), null, method.getBytesReceived());
+        }
+        header(out, "xrpc_client_latency_seconds", "summary", "XRPC call latency");
+        for (MethodSnapshot method : snapshot.values()) {
+            for (double quantile : QUANTILES) {
+                sample(out, "xrpc_client_latency_seconds", method.getMethod(), "quantile=\"" + quantile + "\"",
+                    seconds(method.getLatencyNanos(quantile)));
+            }
+            sample(out, "xrpc_client_latency_seconds_sum", method.getMethod(), null,
+                seconds(method.getLatencySumNanos()));
+            sample(out, "xrpc_client_latency_seconds_count", method.getMethod(), null, method.getRequestCount());
+        }
+    }
+
+    private static void header(Appendable out, String name, String type, String help) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String method, String label, Object value)
+            throws IOException {
+        out.append(name).append("{method=\"").append(escape(method)).append('"');
+        if (label != null) {
+            out.append(',').append(label);
+        }
+        out.append("} ").append(String.valueOf(value)).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /**
+     * Name an error for counting: the XRPC error name if the server sent one, otherwise the kind
+     * of transport failure or the HTTP status.
+     */
+    static String errorCode(Throwable failure) {
+        Throwable cause = XrpcClient.unwrap(failure);
+        if (cause instanceof XrpcException xrpc) {
+            if (xrpc.getCode() != null) {
+                return xrpc.getCode();
+            }
+            if (xrpc.isTimeout()) {
+                return "Timeout";
+            }
+            if (xrpc.isNetworkError()) {
+                return "NetworkError";
+            }
+            if (xrpc.getStatusCode() > 0) {
+                return "HTTP " + xrpc.getStatusCode();
+            }
+        }
+        return "Unknown";
+    }
+
+    /**
+     * Live counters of one method.
+     */
+    static final class MethodMetrics {
+        private final String method;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        MethodMetrics(String method) {
+            this.method = method;
+        }
+
+        /**
+         * @return start time to pass to {@link #end}
+         */
+        long start() {
+            inFlight.increment();
+            return System.nanoTime();
+        }
+
+        void end(long start, Throwable failure) {
+            latency.record(System.nanoTime() - start);
+            inFlight.decrement();
+            if (failure != null) {
+                errors.computeIfAbsent(errorCode(failure), code -> new LongAdder()).increment();
+            }
+        }
+
+        void sent(long bytes) {
+            if (bytes > 0) {
+                bytesSent.add(bytes);
+            }
+        }
+
+        void received(long bytes) {
+            bytesReceived.add(bytes);
+        }
+
+        MethodSnapshot snapshot() {
+            Map<String, Long> errorCounts = new TreeMap<>();
+            errors.forEach((code, count) -> errorCounts.put(code, count.sum()));
+            long[] buckets = latency.buckets();
+            long requests = 0;
+            for (long bucket : buckets) {
+                requests += bucket;
+            }
+            return new MethodSnapshot(method, requests, inFlight.sum(), errorCounts, bytesSent.sum(),
+                bytesReceived.sum(), latency.sum(), buckets);
+        }
+    }
+
+    /**
+     * Metrics of one method at a point in time. Counters are read one after another while calls
+     * continue, so they may disagree slightly with each other.
+     */
+    public static final class MethodSnapshot {
+        private final String method;
+        private final long requestCount;
+        private final long inFlight;
+        private final Map<String, Long> errors;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long latencySumNanos;
+        private final long[] buckets;
+
+        MethodSnapshot(String method, long requestCount, long inFlight, Map<String, Long> errors, long bytesSent,
+                       long bytesReceived, long latencySumNanos, long[] buckets) {
+            this.method = method;
+            this.requestCount = requestCount;
+            this.inFlight = inFlight;
+            this.errors = Map.copyOf(errors);
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.latencySumNanos = latencySumNanos;
+            this.buckets = buckets;
+        }
+
+        /**
+         * @return NSID of the method, or {@link #OTHER}
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return number of calls completed, successfully or not
+         */
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return number of failed calls by XRPC error name, such as {@code InvalidRequest},
+         *     {@code Timeout}, {@code NetworkError} or {@code HTTP 502}
+         */
+        public Map<String, Long> getErrors() {
+            return errors;
+        }
+
+        public long getErrorCount() {
+            long count = 0;
+            for (long value : errors.values()) {
+                count += value;
+            }
+            return count;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getLatencySumNanos() {
+            return latencySumNanos;
+        }
+
+        /**
+         * @param quantile quantile between 0 and 1, e.g. 0.99
+         * @return the call latency at the quantile in nanoseconds, within about 6%, or 0 if no
+         *     call completed
+         */
+        public long getLatencyNanos(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1");
+            }
+            return LatencyHistogram.quantile(buckets, quantile);
+        }
+
+        public Duration getP50() {
+            return Duration.ofNanos(getLatencyNanos(0.5));
+        }
+
+        public Duration getP99() {
+            return Duration.ofNanos(getLatencyNanos(0.99));
+        }
+
+        public Duration getP999() {
+            return Duration.ofNanos(getLatencyNanos(0.999));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.atproto.api.xrpc;
+
+/**
+ * A response body could not be decoded.
+ */
+public class XrpcParseException extends XrpcException {
+    public XrpcParseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
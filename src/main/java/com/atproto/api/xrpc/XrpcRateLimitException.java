@@ -0,0 +1,31 @@
+package com.atproto.api.xrpc;
+
+import java.util.Map;
+
+/**
+ * The server rejected the call with HTTP 429 because a rate limit was exceeded.
+ */
+public class XrpcRateLimitException extends XrpcException {
+    private final Map<String, String> headers;
+
+    public XrpcRateLimitException(String code, String message) {
+        this(code, message, Map.of());
+    }
+
+    /**
+     * @param code XRPC error name, or null
+     * @param message human readable message
+     * @param headers response headers with lower-case names, used to find when the limit resets
+     */
+    public XrpcRateLimitException(String code, String message, Map<String, String> headers) {
+        super(429, code, message);
+        this.headers = headers != null ? headers : Map.of();
+    }
+
+    /**
+     * @return headers of the 429 response, such as {@code ratelimit-reset} and {@code retry-after}
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+}
@@ -1,55 +1,141 @@
 package com.atproto.api.xrpc;
 
+import com.atproto.api.common.Nsid;
+import com.atproto.api.xrpc.model.Params;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 
-public class XrpcRequest {
+/**
+ * An immutable XRPC request.
+ * <p>
+ * All maps are deeply immutable and returned without copying, so a request can be passed
+ * through interceptors, used as a map key and shared between threads freely. The public
+ * constructors copy their arguments once; {@link Builder#build()} hands its maps over without
+ * copying.
+ */
+public final class XrpcRequest {
+
+    /**
+     * XRPC method kinds: queries are idempotent HTTP GETs, procedures are HTTP POSTs.
+     */
+    public enum Type {
+        QUERY, PROCEDURE
+    }
+
     private final String method;
+    private final Type type;
     private final Map<String, Object> params;
     private final String auth;
     private final Map<String, String> headers;
     private final Map<String, String> queryParams;
     private final Map<String, Object> body;
 
+    // Cached hash code; racy single-check is safe because every field is immutable
+    private int hash;
+    private boolean hashIsZero;
+
+    /**
+     * Create a request whose type is guessed from its body: a procedure if it has one and a query
+     * otherwise. Body-less procedures such as {@code com.atproto.server.deleteSession} are guessed
+     * wrongly, so prefer the constructor that takes a {@link Type}.
+     */
     public XrpcRequest(String method, Map<String, Object> params, String auth, Map<String, String> headers, Map<String, String> queryParams, Map<String, Object> body) {
+        this(method, body == null || body.isEmpty() ? Type.QUERY : Type.PROCEDURE, params, auth, headers, queryParams, body);
+    }
+
+    /**
+     * Create a request of the given type, as declared by the method's lexicon
+     */
+    public XrpcRequest(String method, Type type, Map<String, Object> params, String auth, Map<String, String> headers, Map<String, String> queryParams, Map<String, Object> body) {
+        this(method, type, auth, ImmutableValues.freezeMap(params), ImmutableValues.freezeMap(headers),
+                ImmutableValues.freezeMap(queryParams), ImmutableValues.freezeMap(body));
+    }
+
+    /**
+     * Create a request from maps that are already frozen. No copies are made.
+     */
+    private XrpcRequest(String method, Type type, String auth, Map<String, Object> params, Map<String, String> headers,
+                        Map<String, String> queryParams, Map<String, Object> body) {
         this.method = method;
-        this.params = params != null ? new HashMap<>(params) : new HashMap<>();
+        this.type = type;
+        this.params = params;
         this.auth = auth;
-        this.headers = headers != null ? new HashMap<>(headers) : new HashMap<>();
-        this.queryParams = queryParams != null ? new HashMap<>(queryParams) : new HashMap<>();
-        this.body = body != null ? new HashMap<>(body) : new HashMap<>();
+        this.headers = headers;
+        this.queryParams = queryParams;
+        this.body = body;
     }
 
     public String getMethod() {
         return method;
     }
 
+    /**
+     * @return whether the method is a query or a procedure, or null if not set
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return true if this is an idempotent query; false for procedures and requests without a type
+     */
+    public boolean isQuery() {
+        return type == Type.QUERY;
+    }
+
+    /**
+     * @return the request parameters as an unmodifiable view
+     */
     public Map<String, Object> getParams() {
-        return new HashMap<>(params);
+        return params;
     }
 
     public String getAuth() {
         return auth;
     }
 
+    /**
+     * @return the request headers as an unmodifiable view
+     */
     public Map<String, String> getHeaders() {
-        return new HashMap<>(headers);
+        return headers;
     }
 
+    /**
+     * @return the query parameters as an unmodifiable view
+     */
     public Map<String, String> getQueryParams() {
-        return new HashMap<>(queryParams);
+        return queryParams;
     }
 
+    /**
+     * @return the request body as an unmodifiable view
+     */
     public Map<String, Object> getBody() {
-        return new HashMap<>(body);
+        return body;
+    }
+
+    /**
+     * @return a builder initialised with this request's values; its maps are shared until modified
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
     }
 
     @Override
     public String toString() {
         return "XrpcRequest{" +
                 "method='" + method + '\'' +
+                ", type=" + type +
                 ", params=" + params +
                 ", auth='" + auth + '\'' +
                 ", headers=" + headers +
@@ -63,7 +149,9 @@ public class XrpcRequest {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         XrpcRequest that = (XrpcRequest) o;
+        if (hash != 0 && that.hash != 0 && hash != that.hash) return false;
         return Objects.equals(method, that.method) &&
+                type == that.type &&
                 Objects.equals(params, that.params) &&
                 Objects.equals(auth, that.auth) &&
                 Objects.equals(headers, that.headers) &&
@@ -73,214 +161,314 @@ public class XrpcRequest {
 
     @Override
     public int hashCode() {
-        return Objects.hash(method, params, auth, headers, queryParams, body);
+        int h = hash;
+        if (h == 0 && !hashIsZero) {
+            h = Objects.hash(method, type, params, auth, headers, queryParams, body);
+            if (h == 0) {
+                hashIsZero = true;
+            } else {
+                hash = h;
+            }
+        }
+        return h;
     }
 
     public String serialize() throws IOException {
-        StringBuilder json = new StringBuilder();
-        json.append("{");
-
-        appendField(json, "method", method);
-        appendField(json, "params", params);
-        appendField(json, "auth", auth);
-        appendField(json, "headers", headers);
-        appendField(json, "queryParams", queryParams);
-        appendField(json, "body", body);
-
-        json.append("}");
-        return json.toString();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        serialize(out);
+        return out.toString(StandardCharsets.UTF_8);
     }
 
-    private void appendField(StringBuilder json, String fieldName, Object value) {
-        if (value != null) {
-            json.append(json.length() > 1 ? "," : "");
-            json.append('"').append(fieldName).append('"').append(":");
-            appendValue(json, value);
-        }
+    /**
+     * Serialize this request as UTF-8 JSON directly to a stream
+     * @param out stream to write to; flushed but not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public void serialize(OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writeTo(writer);
+        writer.close();
     }
 
-    private void appendValue(StringBuilder json, Object value) {
-        if (value instanceof String str) {
-            json.append('"').append(str).append('"');
-        } else if (value instanceof Map<?, ?> map) {
-            json.append('{');
-            map.forEach((k, v) -> {
-                if (v != null) {
-                    if (json.charAt(json.length() - 1) != '{') {
-                        json.append(',');
-                    }
-                    appendValue(json, String.valueOf(k));
-                    json.append(':');
-                    appendValue(json, v);
-                }
-            });
-            json.append('}');
-        } else {
-            json.append(String.valueOf(value));
+    /**
+     * Serialize this request as UTF-8 JSON into the remaining space of a buffer
+     * @param target buffer to write to; its position is advanced past the document
+     * @throws IOException if the request cannot be encoded
+     * @throws java.nio.BufferOverflowException if the document does not fit
+     */
+    public void serialize(ByteBuffer target) throws IOException {
+        JsonWriter writer = new JsonWriter(target);
+        writeTo(writer);
+        writer.close();
+    }
+
+    private void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writeField(writer, "method", method);
+        writeField(writer, "type", type == null ? null : type == Type.QUERY ? "query" : "procedure");
+        writeField(writer, "params", params);
+        writeField(writer, "auth", auth);
+        writeField(writer, "headers", headers);
+        writeField(writer, "queryParams", queryParams);
+        writeField(writer, "body", body);
+        writer.endObject();
+    }
+
+    private static void writeField(JsonWriter writer, String fieldName, Object value) throws IOException {
+        if (value != null) {
+            writer.name(fieldName).writeValue(value);
         }
     }
 
     public static XrpcRequest deserialize(String json) throws IOException {
-        // Simple JSON parser - this is a basic implementation for demonstration
-        // In a real application, you might want to use a more robust JSON parser
-        Map<String, Object> fields = new HashMap<>();
-        
-        // Remove outer braces
-        String content = json.substring(1, json.length() - 1).trim();
-        
-        // Split fields
-        String[] fieldPairs = content.split(",\\s*");
-        for (String pair : fieldPairs) {
-            String[] keyValue = pair.split(":\\s*");
-            if (keyValue.length == 2) {
-                String key = keyValue[0].replaceAll("^\\s*\"|\"\\s*$", "");
-                String value = keyValue[1].trim();
-                
-                // Handle different value types
-                if (value.startsWith("{")) {
-                    fields.put(key, deserializeMap(value));
-                } else if (value.startsWith("[")) {
-                    fields.put(key, deserializeArray(value));
-                } else if (value.startsWith("\"")) {
-                    fields.put(key, value.replaceAll("^\\s*\"|\"\\s*$", ""));
-                } else {
-                    try {
-                        fields.put(key, Double.parseDouble(value));
-                    } catch (NumberFormatException e) {
-                        fields.put(key, Boolean.parseBoolean(value));
-                    }
-                }
-            }
-        }
+        return deserialize(new JsonReader(json.getBytes(StandardCharsets.UTF_8)));
+    }
 
-        return new XrpcRequest(
-            (String) fields.get("method"),
-            (Map<String, Object>) fields.get("params"),
-            (String) fields.get("auth"),
-            (Map<String, String>) fields.get("headers"),
-            (Map<String, String>) fields.get("queryParams"),
-            (Map<String, Object>) fields.get("body")
-        );
+    /**
+     * Deserialize a request from UTF-8 JSON bytes
+     * @param json serialized request
+     * @return the request
+     * @throws IOException if the JSON is malformed
+     */
+    public static XrpcRequest deserialize(byte[] json) throws IOException {
+        return deserialize(new JsonReader(json));
     }
 
-    private static Map<String, Object> deserializeMap(String json) {
-        Map<String, Object> map = new HashMap<>();
-        // Remove outer braces
-        String content = json.substring(1, json.length() - 1).trim();
-        
-        String[] fieldPairs = content.split(",\\s*");
-        for (String pair : fieldPairs) {
-            String[] keyValue = pair.split(":\\s*");
-            if (keyValue.length == 2) {
-                String key = keyValue[0].replaceAll("^\\s*\"|\"\\s*$", "");
-                String value = keyValue[1].trim();
-                
-                if (value.startsWith("{")) {
-                    map.put(key, deserializeMap(value));
-                } else if (value.startsWith("[")) {
-                    map.put(key, deserializeArray(value));
-                } else if (value.startsWith("\"")) {
-                    map.put(key, value.replaceAll("^\\s*\"|\"\\s*$", ""));
-                } else {
-                    try {
-                        map.put(key, Double.parseDouble(value));
-                    } catch (NumberFormatException e) {
-                        map.put(key, Boolean.parseBoolean(value));
-                    }
-                }
+    /**
+     * Deserialize a request from the remaining bytes of a buffer
+     * @param json buffer holding the serialized request; its position is not modified
+     * @return the request
+     * @throws IOException if the JSON is malformed
+     */
+    public static XrpcRequest deserialize(ByteBuffer json) throws IOException {
+        return deserialize(new JsonReader(json));
+    }
+
+    /**
+     * Deserialize a request from a stream of UTF-8 JSON
+     * @param json stream holding the serialized request; not closed
+     * @return the request
+     * @throws IOException if the stream cannot be read or the JSON is malformed
+     */
+    public static XrpcRequest deserialize(InputStream json) throws IOException {
+        return deserialize(new JsonReader(json));
+    }
+
+    private static XrpcRequest deserialize(JsonReader reader) throws IOException {
+        String method = null;
+        Type type = null;
+        Map<String, Object> params = null;
+        String auth = null;
+        Map<String, String> headers = null;
+        Map<String, String> queryParams = null;
+        Map<String, Object> body = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "method" -> method = reader.nextString();
+                case "type" -> type = switch (reader.nextString()) {
+                    case "query" -> Type.QUERY;
+                    case "procedure" -> Type.PROCEDURE;
+                    default -> throw new IOException("Unknown request type");
+                };
+                case "params" -> params = reader.readObject();
+                case "auth" -> auth = reader.nextString();
+                case "headers" -> headers = readStringMap(reader);
+                case "queryParams" -> queryParams = readStringMap(reader);
+                case "body" -> body = reader.readObject();
+                default -> reader.skipValue();
             }
         }
-        return map;
+        reader.endObject();
+        if (reader.peek() != JsonReader.Token.END_DOCUMENT) {
+            throw new IOException("Trailing data after request");
+        }
+
+        // The decoded maps are referenced only here, so they can be frozen in place
+        return new XrpcRequest(method, type, auth, ImmutableValues.adoptMap(params), wrapOwned(headers),
+                wrapOwned(queryParams), ImmutableValues.adoptMap(body));
     }
 
-    private static Object[] deserializeArray(String json) {
-        // Remove outer brackets
-        String content = json.substring(1, json.length() - 1).trim();
-        String[] values = content.split(",\\s*");
-        Object[] array = new Object[values.length];
-        
-        for (int i = 0; i < values.length; i++) {
-            String value = values[i].trim();
-            
-            if (value.startsWith("{")) {
-                array[i] = deserializeMap(value);
-            } else if (value.startsWith("[")) {
-                array[i] = deserializeArray(value);
-            } else if (value.startsWith("\"")) {
-                array[i] = value.replaceAll("^\\s*\"|\"\\s*$", "");
-            } else {
-                try {
-                    array[i] = Double.parseDouble(value);
-                } catch (NumberFormatException e) {
-                    array[i] = Boolean.parseBoolean(value);
-                }
+    private static Map<String, String> wrapOwned(Map<String, String> map) {
+        return map == null ? ImmutableValues.emptyMap() : ImmutableValues.wrapOwned(map);
+    }
+
+    private static Map<String, String> readStringMap(JsonReader reader) throws IOException {
+        Map<String, String> map = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            Object value = reader.readValue();
+            if (value != null) {
+                map.put(key, value instanceof String str ? str : String.valueOf(value));
             }
         }
-        return array;
+        reader.endObject();
+        return map;
     }
 
+    /**
+     * Check that the method is a valid NSID, that the type is set and that auth, if set, is a DID
+     * @return field names mapped to error messages; empty if the request is valid
+     */
     public Map<String, String> validate() {
-        Map<String, String> errors = new HashMap<>();
+        Map<String, String> errors = null;
 
-        if (method == null || method.isEmpty()) {
-            errors.put("method", "Method is required");
+        if (type == null) {
+            errors = new HashMap<>();
+            errors.put("type", "Type is required");
         }
 
-        if (method != null && !method.matches("^[a-zA-Z0-9._-]+$")) {
-            errors.put("method", "Method contains invalid characters");
+        if (method == null || method.isEmpty()) {
+            if (errors == null) {
+                errors = new HashMap<>();
+            }
+            errors.put("method", "Method is required");
+        } else if (!Nsid.isValid(method)) {
+            if (errors == null) {
+                errors = new HashMap<>();
+            }
+            errors.put("method", "Method is not a valid NSID");
         }
 
         if (auth != null && !auth.startsWith("did:")) {
+            if (errors == null) {
+                errors = new HashMap<>();
+            }
             errors.put("auth", "Auth must be a valid DID");
         }
 
-        return errors;
+        return errors != null ? errors : Map.of();
     }
 
+    /**
+     * Builds requests without copying: {@link #build()} hands the builder's maps to the request
+     * and the builder switches to copy-on-write, so it can keep being used afterwards.
+     */
     public static class Builder {
+        private static final int PARAMS = 1;
+        private static final int HEADERS = 2;
+        private static final int QUERY_PARAMS = 4;
+        private static final int BODY = 8;
+
         private String method;
-        private Map<String, Object> params = new HashMap<>();
+        private Type type;
+        private Map<String, Object> params = ImmutableValues.emptyMap();
         private String auth;
-        private Map<String, String> headers = new HashMap<>();
-        private Map<String, String> queryParams = new HashMap<>();
-        private Map<String, Object> body = new HashMap<>();
+        private Map<String, String> headers = ImmutableValues.emptyMap();
+        private Map<String, String> queryParams = ImmutableValues.emptyMap();
+        private Map<String, Object> body = ImmutableValues.emptyMap();
+        // Bit set of the maps above that this builder owns and may mutate in place
+        private int owned;
+
+        public Builder() {
+        }
+
+        private Builder(XrpcRequest request) {
+            this.method = request.method;
+            this.type = request.type;
+            this.params = request.params;
+            this.auth = request.auth;
+            this.headers = request.headers;
+            this.queryParams = request.queryParams;
+            this.body = request.body;
+        }
 
         public Builder withMethod(String method) {
             this.method = method;
             return this;
         }
 
+        /**
+         * Set the method kind, as declared by the method's lexicon. Requests without a type cannot
+         * be sent.
+         */
+        public Builder withType(Type type) {
+            this.type = type;
+            return this;
+        }
+
+        /**
+         * Add params. {@link Params} given to a builder without params of its own are kept as is,
+         * so their cached query-string encoding is reused.
+         */
         public Builder withParams(Map<String, Object> params) {
-            if (params != null) {
-                this.params.putAll(params);
+            if (params instanceof Params typed && this.params.isEmpty()) {
+                this.params = typed;
+                owned &= ~PARAMS;
+            } else if (params != null && !params.isEmpty()) {
+                Map<String, Object> target = mutable(PARAMS);
+                params.forEach((k, v) -> target.put(k, ImmutableValues.freeze(v)));
             }
             return this;
         }
 
+        public Builder withParam(String key, Object value) {
+            this.<Object>mutable(PARAMS).put(key, ImmutableValues.freeze(value));
+            return this;
+        }
+
         public Builder withAuth(String auth) {
             this.auth = auth;
             return this;
         }
 
         public Builder withHeader(String key, String value) {
-            headers.put(key, value);
+            this.<String>mutable(HEADERS).put(key, value);
             return this;
         }
 
         public Builder withQueryParam(String key, String value) {
-            queryParams.put(key, value);
+            this.<String>mutable(QUERY_PARAMS).put(key, value);
             return this;
         }
 
         public Builder withBody(Map<String, Object> body) {
-            if (body != null) {
-                this.body.putAll(body);
+            if (body != null && !body.isEmpty()) {
+                Map<String, Object> target = mutable(BODY);
+                body.forEach((k, v) -> target.put(k, ImmutableValues.freeze(v)));
             }
             return this;
         }
 
         public XrpcRequest build() {
-            return new XrpcRequest(method, params, auth, headers, queryParams, body);
+            // Keep the wrapped maps, so a later build() shares the views rather than the raw maps
+            params = wrap(params, PARAMS);
+            headers = wrap(headers, HEADERS);
+            queryParams = wrap(queryParams, QUERY_PARAMS);
+            body = wrap(body, BODY);
+            // The request now references the maps, so further changes must copy them first
+            owned = 0;
+            return new XrpcRequest(method, type, auth, params, headers, queryParams, body);
+        }
+
+        private <V> Map<String, V> wrap(Map<String, V> map, int bit) {
+            return (owned & bit) != 0 ? ImmutableValues.wrapOwned(map) : map;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <V> Map<String, V> mutable(int bit) {
+            if ((owned & bit) == 0) {
+                owned |= bit;
+                switch (bit) {
+                    case PARAMS -> params = new LinkedHashMap<>(params);
+                    case HEADERS -> headers = new LinkedHashMap<>(headers);
+                    case QUERY_PARAMS -> queryParams = new LinkedHashMap<>(queryParams);
+                    default -> body = new LinkedHashMap<>(body);
+                }
+            }
+            return (Map<String, V>) switch (bit) {
+                case PARAMS -> params;
+                case HEADERS -> headers;
+                case QUERY_PARAMS -> queryParams;
+                default -> body;
+            };
         }
     }
 }
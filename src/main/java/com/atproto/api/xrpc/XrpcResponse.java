@@ -1,3 +1,400 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.common.Nsid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The result of an XRPC call: HTTP status, headers, the raw body and, for JSON responses, the
+ * decoded data or error.
+ * <p>
+ * Received JSON bodies are kept as bytes and only decoded when asked for. {@link #getData()}
+ * builds the full map tree on first use, {@link #decode(Decoder)} reads the body straight into a
+ * model class, and {@link #at(String)} streams to a single value by JSON pointer, skipping over
+ * everything before it without building it. A handler that reads only the {@code cursor} of a
+ * large timeline never decodes the feed. Malformed JSON is reported as an
+ * {@link XrpcParseException} by whichever of these is called first.
+ */
 public class XrpcResponse {
-    
+
+    /**
+     * Reads a response body into a typed value, typically a generated model class.
+     */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        /**
+         * @param reader reader positioned at the start of the body
+         * @return the decoded value
+         */
+        T read(JsonReader reader) throws IOException;
+    }
+
+    private final String method;
+    private int statusCode = 200;
+    private Map<String, String> headers = Map.of();
+    private byte[] body;
+    private Map<String, Object> data;
+    private volatile boolean pendingJson;
+    private String errorCode;
+    private String errorMessage;
+
+    public XrpcResponse(String method) {
+        Objects.requireNonNull(method, "method");
+        if (method.isEmpty()) {
+            throw new IllegalArgumentException("Method must not be empty");
+        }
+        this.method = method;
+    }
+
+    /**
+     * Create a response for a received HTTP message
+     * @param method XRPC method that was called
+     * @param statusCode HTTP status
+     * @param headers response headers with lower-case names
+     * @param body raw response body, may be empty
+     */
+    XrpcResponse(String method, int statusCode, Map<String, String> headers, byte[] body) {
+        this(method);
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return true for 2xx responses without an XRPC error
+     */
+    public boolean isSuccess() {
+        return statusCode >= 200 && statusCode < 300 && errorCode == null;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public void setHeaders(Map<String, String> headers) {
+        this.headers = headers != null ? headers : Map.of();
+    }
+
+    /**
+     * Look up a header ignoring case
+     * @param name header name
+     * @return the header value, or null if absent
+     */
+    public String getHeader(String name) {
+        String value = headers.get(name);
+        if (value == null) {
+            value = headers.get(name.toLowerCase(Locale.ROOT));
+        }
+        if (value == null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(name)) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the raw response body, or an empty array if there is none
+     */
+    public byte[] getBodyBytes() {
+        return body != null ? body : new byte[0];
+    }
+
+    /**
+     * @return the response body as text; for responses built in memory, the serialized data
+     */
+    public String getBody() {
+        if (body != null) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        if (data == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonWriter writer = new JsonWriter(out);
+            writer.writeValue(data);
+            writer.close();
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode response data", e);
+        }
+    }
+
+    /**
+     * @return the JSON body as a map tree, decoded on first call; null if there is no JSON data
+     * @throws XrpcParseException if the body is not valid JSON
+     */
+    public Map<String, Object> getData() {
+        if (pendingJson) {
+            synchronized (this) {
+                if (pendingJson) {
+                    data = decode(JsonReader::readObject);
+                    pendingJson = false;
+                }
+            }
+        }
+        return data;
+    }
+
+    public void setData(Map<String, Object> data) {
+        this.data = data;
+        this.pendingJson = false;
+    }
+
+    /**
+     * Mark the raw body as JSON data to be decoded when first accessed
+     */
+    void deferJson() {
+        pendingJson = true;
+    }
+
+    /**
+     * Decode the body with a typed decoder instead of into a map tree
+     * @param decoder reads the body, e.g. a generated model's reader
+     * @return the decoded value
+     * @throws XrpcParseException if the body is not valid JSON or the decoder rejects it
+     */
+    public <T> T decode(Decoder<T> decoder) {
+        byte[] json = body != null ? body : getBody().getBytes(StandardCharsets.UTF_8);
+        try {
+            return decoder.read(new JsonReader(json));
+        } catch (IOException | RuntimeException e) {
+            throw new XrpcParseException("Invalid JSON response from " + method, e);
+        }
+    }
+
+    /**
+     * Read one value from the JSON data by JSON pointer (RFC 6901), such as {@code /cursor} or
+     * {@code /feed/0/post/uri}. If the data has not been decoded yet, the body is scanned only up
+     * to the value and nothing else is decoded.
+     * @param pointer JSON pointer; the empty string selects the whole document
+     * @return the value as in {@link JsonReader#readValue()}, or null if it is absent or null
+     * @throws IllegalArgumentException if the pointer does not start with {@code /}
+     * @throws XrpcParseException if the body is not valid JSON up to the value
+     */
+    public Object at(String pointer) {
+        List<String> tokens = parsePointer(pointer);
+        if (!pendingJson) {
+            return find(data, tokens);
+        }
+        return decode(reader -> find(reader, tokens));
+    }
+
+    /**
+     * @param pointer JSON pointer as in {@link #at(String)}
+     * @return the string at the pointer, or null if it is absent or not a string
+     */
+    public String getString(String pointer) {
+        return at(pointer) instanceof String value ? value : null;
+    }
+
+    public void setError(String errorCode, String errorMessage) {
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Check that the method name is well formed, that data only holds JSON values, that errors
+     * carry both a code and a message, and that JSON responses declare a JSON content type.
+     * @return true if the response is valid
+     */
+    public boolean validate() {
+        if (!Nsid.isValid(method)) {
+            return false;
+        }
+        // Data still pending decode came from a JSON body, so only walk data set in memory
+        if (data != null && !isJsonValue(data)) {
+            return false;
+        }
+        if (errorCode != null || errorMessage != null) {
+            if (errorCode == null || errorCode.isEmpty() || errorMessage == null || errorMessage.isEmpty()) {
+                return false;
+            }
+        }
+        String contentType = getHeader("Content-Type");
+        if (contentType != null && (data != null || pendingJson || errorCode != null)) {
+            return contentType.startsWith("application/json");
+        }
+        return true;
+    }
+
+    /**
+     * Serialize this response as JSON with its method, data, error and headers
+     * @return the JSON document
+     * @throws IllegalArgumentException if the method name is invalid
+     */
+    public String serialize() throws IOException {
+        if (!Nsid.isValid(method)) {
+            throw new IllegalArgumentException("Invalid method: " + method);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("method").value(method);
+        writer.name("status").value(statusCode);
+        Map<String, Object> json = getData();
+        if (json != null) {
+            writer.name("data").writeValue(json);
+        }
+        if (errorCode != null) {
+            writer.name("error").beginObject()
+                .name("code").value(errorCode)
+                .name("message").value(errorMessage)
+                .endObject();
+        }
+        if (!headers.isEmpty()) {
+            writer.name("headers").writeValue(headers);
+        }
+        writer.endObject();
+        writer.close();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> parsePointer(String pointer) {
+        if (pointer.isEmpty()) {
+            return List.of();
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new IllegalArgumentException("JSON pointer must start with '/': " + pointer);
+        }
+        String[] parts = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].indexOf('~') >= 0) {
+                parts[i] = parts[i].replace("~1", "/").replace("~0", "~");
+            }
+        }
+        return List.of(parts);
+    }
+
+    private static Object find(Object node, List<String> tokens) {
+        for (String token : tokens) {
+            if (node instanceof Map<?, ?> map) {
+                node = map.get(token);
+            } else if (node instanceof List<?> list) {
+                int index = arrayIndex(token);
+                if (index < 0 || index >= list.size()) {
+                    return null;
+                }
+                node = list.get(index);
+            } else {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    // Skips every member and element before the target without decoding it
+    private static Object find(JsonReader reader, List<String> tokens) throws IOException {
+        for (String token : tokens) {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    while (true) {
+                        if (!reader.hasNext()) {
+                            return null;
+                        }
+                        if (reader.nextName().equals(token)) {
+                            break;
+                        }
+                        reader.skipValue();
+                    }
+                }
+                case BEGIN_ARRAY -> {
+                    int index = arrayIndex(token);
+                    if (index < 0) {
+                        return null;
+                    }
+                    reader.beginArray();
+                    for (int i = 0; i < index; i++) {
+                        if (!reader.hasNext()) {
+                            return null;
+                        }
+                        reader.skipValue();
+                    }
+                    if (!reader.hasNext()) {
+                        return null;
+                    }
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return reader.readValue();
+    }
+
+    private static int arrayIndex(String token) {
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) {
+            return -1;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(token);
+    }
+
+    private static boolean isJsonValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return true;
+        }
+        if (value instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isJsonValue(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Collection<?> collection) {
+            for (Object element : collection) {
+                if (!isJsonValue(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "XrpcResponse{" +
+                "method='" + method + '\'' +
+                ", statusCode=" + statusCode +
+                ", errorCode='" + errorCode + '\'' +
+                ", bodyLength=" + (body != null ? body.length : 0) +
+                '}';
+    }
 }
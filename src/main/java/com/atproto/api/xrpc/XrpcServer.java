@@ -0,0 +1,662 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.common.Nsid;
+import com.atproto.lexicon.MethodSchema;
+import com.atproto.security.RateLimiter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Embedded XRPC server on the JDK's {@link HttpServer}.
+ * <p>
+ * Requests to {@code /xrpc/{nsid}} are dispatched to the handler registered for that NSID
+ * through a perfect-hash table that is fixed when the server is built. Queries must be sent as
+ * GET and procedures as POST. Unknown methods get {@code 501 MethodNotImplemented}, as the
+ * protocol requires. The JDK server accepts connections and parses requests on a single NIO
+ * selector thread. By default each exchange then runs on its own virtual thread, so handlers can
+ * block on I/O without tying up a platform thread per request.
+ * <p>
+ * Handlers registered through {@link Builder#withLexicon} have their params decoded, typed and
+ * checked before they run, by a decoder precompiled from the lexicon. A call that violates the
+ * lexicon is answered with {@code 400 InvalidRequest} and never reaches the handler.
+ * <p>
+ * Admission control turns excess load away before it queues. A {@link RateLimiter} caps
+ * requests per client: calls over it get {@code 429 RateLimitExceeded}, and every response to a
+ * limited client carries {@code ratelimit-*} headers that {@link AdaptiveRateLimiter} paces by.
+ * A server-wide {@link ConcurrencyLimiter}, typically adaptive, and optional per-method limits
+ * cap calls in progress; calls over them get {@code 503 Overloaded} with {@code Retry-After}
+ * at once. With virtual threads every accepted exchange gets a thread immediately, so without
+ * these limits an overloaded server keeps taking work until it runs out of memory.
+ * <p>
+ * Responses are streamed. JSON output is encoded with {@link JsonWriter} into a small buffer.
+ * A document that fits is sent with a {@code Content-Length}; a larger one switches to chunked
+ * transfer and is written as it is encoded. Handlers can also stream bodies of any type through
+ * {@link Call#openStream}. A handler that throws an {@link XrpcException} with a status gets the
+ * standard {@code {"error", "message"}} body; any other failure becomes
+ * {@code 500 InternalServerError}.
+ * <p>
+ * The JDK server speaks HTTP/1.1 only; clients keep connections alive and pipeline over
+ * several of them instead of multiplexing.
+ */
+public final class XrpcServer implements AutoCloseable {
+    private static final String PREFIX = "/xrpc/";
+    private static final String JSON = "application/json";
+    private static final int BUFFERED_BODY_SIZE = 8 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService ownedExecutor;
+    private final DispatchTable<Route> routes;
+    private final ConcurrencyLimiter limiter;
+    private final RateLimiter rateLimiter;
+    private final Function<Call, String> clientKey;
+
+    /**
+     * Handles calls to one XRPC method.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Handle a call. Returning without responding sends an empty 200, as for procedures
+         * without output.
+         * @param call the request and the means to respond
+         * @throws XrpcException to send an XRPC error response
+         */
+        void handle(Call call) throws IOException;
+    }
+
+    private record Route(Nsid nsid, XrpcRequest.Type type, ParamDecoder decoder, ConcurrencyLimiter limiter,
+                         Handler handler) {
+    }
+
+    private XrpcServer(Builder builder) throws IOException {
+        Map<String, Route> routes = new HashMap<>(builder.routes);
+        for (Map.Entry<String, Integer> limit : builder.methodLimits.entrySet()) {
+            Route route = routes.get(limit.getKey());
+            if (route == null) {
+                throw new IllegalArgumentException("No handler registered for " + limit.getKey());
+            }
+            routes.put(limit.getKey(), new Route(route.nsid(), route.type(), route.decoder(),
+                ConcurrencyLimiter.fixed(limit.getValue()), route.handler()));
+        }
+        this.routes = new DispatchTable<>(routes);
+        this.limiter = builder.limiter;
+        this.rateLimiter = builder.rateLimiter;
+        this.clientKey = builder.clientKey;
+        this.server = HttpServer.create(builder.address, builder.backlog);
+        if (builder.executor != null) {
+            this.ownedExecutor = null;
+            server.setExecutor(builder.executor);
+        } else {
+            this.ownedExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("xrpc-server-", 0).factory());
+            server.setExecutor(ownedExecutor);
+        }
+        server.createContext(PREFIX, this::dispatch);
+    }
+
+    /**
+     * Start accepting requests
+     * @return this server
+     */
+    public XrpcServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return the bound port, useful when the server was built on port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the base URI clients should use, on the loopback address
+     */
+    public URI getUri() {
+        return URI.create("http://127.0.0.1:" + getPort());
+    }
+
+    /**
+     * Stop accepting requests and wait up to the given time for exchanges in progress
+     * @param delaySeconds maximum time to wait for in-flight exchanges
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop(0);
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        XrpcServerCallEvent event = new XrpcServerCallEvent();
+        event.begin();
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            Route route = routes.get(path, PREFIX.length());
+            if (route == null) {
+                sendError(exchange, 501, "MethodNotImplemented", "Method not implemented");
+                return;
+            }
+            String expected = route.type() == XrpcRequest.Type.QUERY ? "GET" : "POST";
+            if (!expected.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", expected);
+                sendError(exchange, 405, "InvalidRequest", "Incorrect HTTP method (" + exchange.getRequestMethod()
+                    + ") expected " + expected);
+                return;
+            }
+            Call call = new Call(route.nsid(), exchange);
+            if (rateLimiter != null && !admitClient(call)) {
+                return;
+            }
+            if (limiter != null && !limiter.tryAcquire()) {
+                sendOverloaded(exchange);
+                return;
+            }
+            if (route.limiter() != null && !route.limiter().tryAcquire()) {
+                if (limiter != null) {
+                    limiter.cancel();
+                }
+                sendOverloaded(exchange);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                if (route.decoder() != null) {
+                    call.params = route.decoder().decode(exchange.getRequestURI().getRawQuery());
+                }
+                route.handler().handle(call);
+                call.finish();
+            } catch (XrpcException e) {
+                if (call.committed()) {
+                    throw e;
+                }
+                int status = e.getStatusCode() >= 400 ? e.getStatusCode() : 500;
+                String code = e.getCode() != null ? e.getCode() : status == 500 ? "InternalServerError" : "InvalidRequest";
+                sendError(exchange, status, code, e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                if (call.committed()) {
+                    throw e;
+                }
+                sendError(exchange, 500, "InternalServerError", "Internal server error");
+            } finally {
+                long latency = System.nanoTime() - start;
+                if (route.limiter() != null) {
+                    route.limiter().release(latency);
+                }
+                if (limiter != null) {
+                    limiter.release(latency);
+                }
+            }
+        } finally {
+            // Committed before the exchange closes, so stop() waits for it
+            event.end();
+            if (event.shouldCommit()) {
+                String path = exchange.getRequestURI().getRawPath();
+                event.method = path.startsWith(PREFIX) ? path.substring(PREFIX.length()) : path;
+                event.status = exchange.getResponseCode();
+                String length = exchange.getRequestHeaders().getFirst("Content-Length");
+                try {
+                    event.bytesReceived = length != null ? Long.parseLong(length) : 0;
+                } catch (NumberFormatException e) {
+                    event.bytesReceived = 0;
+                }
+                event.commit();
+            }
+            exchange.close();
+        }
+    }
+
+    // Counts the call against the client's limit and reports the quota in ratelimit-* headers
+    private boolean admitClient(Call call) throws IOException {
+        String client = clientKey.apply(call);
+        if (client == null || client.isBlank()) {
+            // Anonymous calls have no account to count against, so count them per address
+            client = call.getRemoteAddress();
+        }
+        boolean admitted = rateLimiter.tryAcquire(client);
+        long reset = rateLimiter.getWindowReset(client).getEpochSecond();
+        int remaining = Math.max(0, rateLimiter.getLimit() - rateLimiter.getRequestCount(client));
+        call.setHeader("ratelimit-limit", Integer.toString(rateLimiter.getLimit()));
+        call.setHeader("ratelimit-remaining", Integer.toString(remaining));
+        call.setHeader("ratelimit-reset", Long.toString(reset));
+        if (!admitted) {
+            long wait = Math.max(1, reset - System.currentTimeMillis() / 1000);
+            call.setHeader("Retry-After", Long.toString(wait));
+            sendError(call.exchange, 429, "RateLimitExceeded", "Rate limit exceeded");
+        }
+        return admitted;
+    }
+
+    private static void sendOverloaded(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendError(exchange, 503, "Overloaded", "Server is overloaded, try again later");
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", code);
+        error.put("message", message);
+        writeJson(exchange, status, error);
+    }
+
+    private static void writeJson(HttpExchange exchange, int status, Object value) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        try (BufferedBody body = new BufferedBody(exchange, status)) {
+            JsonWriter writer = new JsonWriter(body);
+            writer.writeValue(value);
+            writer.close();
+        }
+    }
+
+    /**
+     * One XRPC request and its response. Methods are not thread-safe; a handler that hands the
+     * call to another thread must not use it concurrently.
+     */
+    public static final class Call {
+        private final Nsid nsid;
+        private final HttpExchange exchange;
+        private Map<String, Object> params;
+        private Map<String, Object> input;
+        private OutputStream stream;
+        private boolean responded;
+
+        private Call(Nsid nsid, HttpExchange exchange) {
+            this.nsid = nsid;
+            this.exchange = exchange;
+        }
+
+        /**
+         * @return the interned NSID of the called method
+         */
+        public Nsid getNsid() {
+            return nsid;
+        }
+
+        /**
+         * @return params typed as the lexicon declares them, with defaults applied; for handlers
+         * registered without a lexicon, strings with repeated names collected into a list
+         */
+        public Map<String, Object> getParams() {
+            if (params == null) {
+                params = parseQuery(exchange.getRequestURI().getRawQuery());
+            }
+            return params;
+        }
+
+        /**
+         * @param name param name
+         * @return the param value as in {@link #getParams()}, or null if absent
+         */
+        public Object getParam(String name) {
+            return getParams().get(name);
+        }
+
+        /**
+         * @param name header name, case-insensitive
+         * @return the first value of the header, or null if absent
+         */
+        public String getHeader(String name) {
+            return exchange.getRequestHeaders().getFirst(name);
+        }
+
+        /**
+         * @return address of the connected peer, e.g. {@code 192.0.2.1}
+         */
+        public String getRemoteAddress() {
+            return exchange.getRemoteAddress().getAddress().getHostAddress();
+        }
+
+        /**
+         * @return the bearer token from the Authorization header, or null
+         */
+        public String getAuth() {
+            String authorization = getHeader("Authorization");
+            if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                return authorization.substring(7).trim();
+            }
+            return null;
+        }
+
+        /**
+         * Decode the JSON input of a procedure, reading it straight from the connection
+         * @return the input object, or null if the request has no JSON body
+         * @throws XrpcException with status 400 if the body is not a JSON object
+         */
+        public Map<String, Object> getInput() {
+            if (input == null) {
+                String contentType = getHeader("Content-Type");
+                if (contentType == null || !contentType.startsWith(JSON)) {
+                    return null;
+                }
+                try {
+                    input = new JsonReader(exchange.getRequestBody()).readObject();
+                } catch (IOException e) {
+                    throw new XrpcException(400, "InvalidRequest", "Invalid JSON input: " + e.getMessage());
+                }
+            }
+            return input;
+        }
+
+        /**
+         * @return the raw request body, for procedures that take non-JSON input such as blobs
+         */
+        public InputStream getInputStream() {
+            return exchange.getRequestBody();
+        }
+
+        /**
+         * Set a response header; must be called before responding
+         * @param name header name
+         * @param value header value
+         */
+        public void setHeader(String name, String value) {
+            exchange.getResponseHeaders().set(name, value);
+        }
+
+        /**
+         * Respond 200 with a JSON body
+         * @param data output object, containing only JSON values
+         */
+        public void respond(Map<String, ?> data) throws IOException {
+            respond(200, data);
+        }
+
+        /**
+         * Respond with a JSON body, streamed as it is encoded
+         * @param status HTTP status
+         * @param data output object, containing only JSON values
+         */
+        public void respond(int status, Map<String, ?> data) throws IOException {
+            markResponded();
+            writeJson(exchange, status, data);
+        }
+
+        /**
+         * Start a streamed response. The stream is closed when the handler returns.
+         * @param status HTTP status
+         * @param contentType media type of the body
+         * @param length exact body length, or -1 to send it chunked
+         * @return stream for the body
+         */
+        public OutputStream openStream(int status, String contentType, long length) throws IOException {
+            markResponded();
+            setHeader("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, length < 0 ? 0 : length == 0 ? -1 : length);
+            stream = exchange.getResponseBody();
+            return stream;
+        }
+
+        private void markResponded() {
+            if (responded) {
+                throw new IllegalStateException("Response already sent");
+            }
+            responded = true;
+        }
+
+        private boolean committed() {
+            return responded;
+        }
+
+        private void finish() throws IOException {
+            if (!responded) {
+                responded = true;
+                exchange.sendResponseHeaders(200, -1);
+            } else if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    private static Map<String, Object> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Object> params = new HashMap<>();
+        int start = 0;
+        while (start <= rawQuery.length()) {
+            int end = rawQuery.indexOf('&', start);
+            if (end < 0) {
+                end = rawQuery.length();
+            }
+            if (end > start) {
+                int equals = rawQuery.indexOf('=', start);
+                String name;
+                String value;
+                if (equals < 0 || equals > end) {
+                    name = decode(rawQuery.substring(start, end));
+                    value = "";
+                } else {
+                    name = decode(rawQuery.substring(start, equals));
+                    value = decode(rawQuery.substring(equals + 1, end));
+                }
+                params.merge(name, value, XrpcServer::collect);
+            }
+            start = end + 1;
+        }
+        return params;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object collect(Object existing, Object value) {
+        List<Object> values;
+        if (existing instanceof List<?>) {
+            values = (List<Object>) existing;
+        } else {
+            values = new ArrayList<>(2);
+            values.add(existing);
+        }
+        values.add(value);
+        return values;
+    }
+
+    private static String decode(String text) {
+        return text.indexOf('%') < 0 && text.indexOf('+') < 0 ? text : URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Holds the start of a body so small responses are sent with a length, and switches to
+     * chunked transfer once the buffer overflows.
+     */
+    private static final class BufferedBody extends OutputStream {
+        private final HttpExchange exchange;
+        private final int status;
+        private final byte[] buffer = new byte[BUFFERED_BODY_SIZE];
+        private int count;
+        private OutputStream out;
+
+        BufferedBody(HttpExchange exchange, int status) {
+            this.exchange = exchange;
+            this.status = status;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null && count + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            if (out == null) {
+                exchange.sendResponseHeaders(status, 0);
+                out = exchange.getResponseBody();
+                out.write(buffer, 0, count);
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out == null) {
+                exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+                out = exchange.getResponseBody();
+                out.write(buffer, 0, count);
+            }
+            out.close();
+        }
+    }
+
+    public static class Builder {
+        private InetSocketAddress address = new InetSocketAddress(0);
+        private int backlog;
+        private Executor executor;
+        private final Map<String, Route> routes = new HashMap<>();
+        private final Map<String, Integer> methodLimits = new HashMap<>();
+        private ConcurrencyLimiter limiter;
+        private RateLimiter rateLimiter;
+        private Function<Call, String> clientKey;
+
+        /**
+         * @param address local address to bind; port 0 picks a free port
+         */
+        public Builder withAddress(InetSocketAddress address) {
+            this.address = Objects.requireNonNull(address, "address");
+            return this;
+        }
+
+        /**
+         * @param port port to bind on all interfaces; 0 picks a free port
+         */
+        public Builder withPort(int port) {
+            return withAddress(new InetSocketAddress(port));
+        }
+
+        /**
+         * @param backlog maximum queued incoming connections, or 0 for the system default
+         */
+        public Builder withBacklog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Run exchanges on the given executor instead of a virtual thread per exchange. The
+         * executor is not shut down when the server stops.
+         */
+        public Builder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Register a query handler, called for GET requests
+         * @param nsid method NSID
+         * @param handler handler for the method
+         */
+        public Builder withQuery(String nsid, Handler handler) {
+            return withRoute(nsid, XrpcRequest.Type.QUERY, handler);
+        }
+
+        /**
+         * Register a procedure handler, called for POST requests
+         * @param nsid method NSID
+         * @param handler handler for the method
+         */
+        public Builder withProcedure(String nsid, Handler handler) {
+            return withRoute(nsid, XrpcRequest.Type.PROCEDURE, handler);
+        }
+
+        /**
+         * Register a handler for a method defined by a lexicon. Its params are decoded and
+         * checked against the lexicon before the handler is called.
+         * @param schema the method's lexicon, see {@link com.atproto.lexicon.LexiconParser#parseMethod}
+         * @param handler handler for the method
+         */
+        public Builder withLexicon(MethodSchema schema, Handler handler) {
+            XrpcRequest.Type type = schema.getType() == MethodSchema.Type.QUERY
+                ? XrpcRequest.Type.QUERY : XrpcRequest.Type.PROCEDURE;
+            return withRoute(schema.getId(), type, ParamDecoder.compile(schema), handler);
+        }
+
+        /**
+         * Cap calls in progress across all methods
+         * @param limiter fixed or adaptive limiter; calls over it get 503
+         */
+        public Builder withConcurrencyLimiter(ConcurrencyLimiter limiter) {
+            this.limiter = limiter;
+            return this;
+        }
+
+        /**
+         * Cap calls in progress of one method, e.g. an expensive query, in addition to the
+         * server-wide limit
+         * @param nsid method NSID; its handler must be registered by the time the server is built
+         * @param limit maximum calls of the method in progress
+         */
+        public Builder withMethodConcurrencyLimit(String nsid, int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be positive");
+            }
+            methodLimits.put(nsid, limit);
+            return this;
+        }
+
+        /**
+         * Limit requests per client, identified by remote address
+         * @param rateLimiter per-client limit; calls over it get 429
+         */
+        public Builder withRateLimiter(RateLimiter rateLimiter) {
+            return withRateLimiter(rateLimiter, Call::getRemoteAddress);
+        }
+
+        /**
+         * Limit requests per client. Calls for which {@code clientKey} returns null or a blank id,
+         * such as unauthenticated calls when keying on the account, are limited by remote address.
+         * @param rateLimiter per-client limit; calls over it get 429
+         * @param clientKey derives the client id from a call, e.g. the account of its token
+         */
+        public Builder withRateLimiter(RateLimiter rateLimiter, Function<Call, String> clientKey) {
+            this.rateLimiter = rateLimiter;
+            this.clientKey = Objects.requireNonNull(clientKey, "clientKey");
+            return this;
+        }
+
+        private Builder withRoute(String nsid, XrpcRequest.Type type, Handler handler) {
+            return withRoute(nsid, type, null, handler);
+        }
+
+        private Builder withRoute(String nsid, XrpcRequest.Type type, ParamDecoder decoder, Handler handler) {
+            Objects.requireNonNull(handler, "handler");
+            if (routes.putIfAbsent(nsid, new Route(Nsid.intern(nsid), type, decoder, null, handler)) != null) {
+                throw new IllegalArgumentException("Handler already registered for " + nsid);
+            }
+            return this;
+        }
+
+        /**
+         * Bind the server; call {@link XrpcServer#start()} to accept requests
+         * @return the server
+         * @throws IOException if the address cannot be bound
+         */
+        public XrpcServer build() throws IOException {
+            return new XrpcServer(this);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.atproto.api.xrpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one call served by an {@link XrpcServer}, from routing to the end of
+ * the response. Disabled by default, like {@link XrpcCallEvent}.
+ */
+@Name("com.atproto.XrpcServerCall")
+@Label("XRPC Server Call")
+@Category({"AT Protocol", "XRPC"})
+@Description("XRPC call handled by the embedded server")
+@Enabled(false)
+@StackTrace(false)
+final class XrpcServerCallEvent extends Event {
+    @Label("Method")
+    @Description("Requested NSID, which may not be a served method")
+    String method;
+
+    @Label("Status")
+    int status;
+
+    @Label("Bytes Received")
+    @Description("Declared length of the request body, or 0 if unknown")
+    @DataAmount
+    long bytesReceived;
+}
@@ -0,0 +1,20 @@
+package com.atproto.api.xrpc;
+
+/**
+ * Connecting to the server or waiting for its response exceeded the configured timeout.
+ */
+public class XrpcTimeoutException extends XrpcException {
+    public XrpcTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public boolean isTimeout() {
+        return true;
+    }
+
+    @Override
+    public boolean isNetworkError() {
+        return true;
+    }
+}
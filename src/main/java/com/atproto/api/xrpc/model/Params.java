@@ -1,3 +1,466 @@
-public class Params {
-    
+package com.atproto.api.xrpc.model;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable, typed query params for an XRPC call that encode straight to query-string bytes.
+ * <p>
+ * Values are kept as strings, longs, booleans and instants, and arrays of those become repeated
+ * names ({@code uris=a&uris=b}). Encoding writes names and values directly into a byte buffer,
+ * percent-encoding through a lookup table and formatting numbers and datetimes digit by digit,
+ * so no intermediate strings are made. Everything outside the RFC 3986 unreserved set is
+ * percent-encoded as UTF-8, and datetimes are written in the AT Protocol form
+ * {@code 2024-01-31T12:00:00.000Z}.
+ * <p>
+ * The encoded form is computed once and cached, so a request that is reissued, retried or
+ * paged through reuses it. Params are also a read-only {@code Map} of name to value, with arrays
+ * as lists, and can be passed wherever a request takes its params as a map.
+ */
+public final class Params extends AbstractMap<String, Object> {
+    private static final Params EMPTY = new Params(new String[0], new Object[0]);
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final boolean[] UNRESERVED = new boolean[128];
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    // "yyyy-MM-ddTHH%3Amm%3Ass.SSSZ"
+    private static final int DATETIME_LENGTH = 28;
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+            UNRESERVED[c - 'a' + 'A'] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['-'] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['_'] = true;
+        UNRESERVED['~'] = true;
+    }
+
+    private final String[] names;
+    private final Object[] values;
+    // Cached encodings, computed at most a few times under a race. The array's contents are not
+    // safely published by a plain write, so it is volatile; a String is immutable and may be
+    // shared racily.
+    private volatile byte[] encoded;
+    private String query;
+
+    private Params(String[] names, Object[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * @return params without any values
+     */
+    public static Params empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the length of the encoded query string in bytes
+     */
+    public int encodedLength() {
+        byte[] cached = encoded;
+        if (cached != null) {
+            return cached.length;
+        }
+        int length = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] instanceof List<?> list) {
+                for (Object element : list) {
+                    length += pairLength(names[i], element);
+                }
+            } else {
+                length += pairLength(names[i], values[i]);
+            }
+        }
+        return Math.max(0, length - 1);
+    }
+
+    /**
+     * Encode the query string, without a leading '?', into an array
+     * @param target array to write into
+     * @param offset where to start writing
+     * @return number of bytes written
+     * @throws IndexOutOfBoundsException if the array is too short; see {@link #encodedLength()}
+     */
+    public int encodeTo(byte[] target, int offset) {
+        byte[] cached = encoded;
+        if (cached != null) {
+            System.arraycopy(cached, 0, target, offset, cached.length);
+            return cached.length;
+        }
+        int position = offset;
+        boolean first = true;
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] instanceof List<?> list) {
+                for (Object element : list) {
+                    position = writePair(target, position, names[i], element, first);
+                    first = false;
+                }
+            } else {
+                position = writePair(target, position, names[i], values[i], first);
+                first = false;
+            }
+        }
+        return position - offset;
+    }
+
+    /**
+     * Encode the query string, without a leading '?', into a buffer at its position
+     * @param target buffer with at least {@link #encodedLength()} bytes remaining
+     * @throws BufferOverflowException if the buffer has too little room
+     */
+    public void encodeTo(ByteBuffer target) {
+        if (target.hasArray()) {
+            int length = encodedLength();
+            if (target.remaining() < length) {
+                throw new BufferOverflowException();
+            }
+            encodeTo(target.array(), target.arrayOffset() + target.position());
+            target.position(target.position() + length);
+        } else {
+            target.put(encoded());
+        }
+    }
+
+    /**
+     * @return the encoded query string as ASCII bytes, without a leading '?'; computed once and
+     *     shared, so it must not be modified
+     */
+    public byte[] encoded() {
+        byte[] cached = encoded;
+        if (cached == null) {
+            cached = new byte[encodedLength()];
+            encodeTo(cached, 0);
+            encoded = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * @return the encoded query string without a leading '?'; computed once
+     */
+    public String toQueryString() {
+        String cached = query;
+        if (cached == null) {
+            cached = new String(encoded(), StandardCharsets.ISO_8859_1);
+            query = cached;
+        }
+        return cached;
+    }
+
+    @Override
+    public Object get(Object key) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < names.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(names[next], values[next]);
+                        next++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
+    }
+
+    // Every pair is counted with its '&' separator; the total drops the first one
+    private static int pairLength(String name, Object value) {
+        return 2 + textLength(name) + valueLength(value);
+    }
+
+    private static int valueLength(Object value) {
+        if (value instanceof String text) {
+            return textLength(text);
+        }
+        if (value instanceof Long number) {
+            return digits(number);
+        }
+        if (value instanceof Boolean flag) {
+            return flag ? TRUE.length : FALSE.length;
+        }
+        return DATETIME_LENGTH;
+    }
+
+    private static int writePair(byte[] target, int position, String name, Object value, boolean first) {
+        if (!first) {
+            target[position++] = '&';
+        }
+        position = writeText(target, position, name);
+        target[position++] = '=';
+        if (value instanceof String text) {
+            return writeText(target, position, text);
+        }
+        if (value instanceof Long number) {
+            return writeLong(target, position, number);
+        }
+        if (value instanceof Boolean flag) {
+            byte[] literal = flag ? TRUE : FALSE;
+            System.arraycopy(literal, 0, target, position, literal.length);
+            return position + literal.length;
+        }
+        return writeDatetime(target, position, (Instant) value);
+    }
+
+    private static int textLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += UNRESERVED[c] ? 1 : 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else {
+                length += 9;
+            }
+        }
+        return length;
+    }
+
+    private static int writeText(byte[] target, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    target[position++] = (byte) c;
+                } else {
+                    position = escape(target, position, c);
+                }
+            } else if (c < 0x800) {
+                position = escape(target, position, 0xC0 | (c >> 6));
+                position = escape(target, position, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                position = escape(target, position, 0xF0 | (codePoint >> 18));
+                position = escape(target, position, 0x80 | ((codePoint >> 12) & 0x3F));
+                position = escape(target, position, 0x80 | ((codePoint >> 6) & 0x3F));
+                position = escape(target, position, 0x80 | (codePoint & 0x3F));
+            } else {
+                // Lone surrogates are replaced by U+FFFD, as String.getBytes would
+                int unit = Character.isSurrogate(c) ? 0xFFFD : c;
+                position = escape(target, position, 0xE0 | (unit >> 12));
+                position = escape(target, position, 0x80 | ((unit >> 6) & 0x3F));
+                position = escape(target, position, 0x80 | (unit & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    private static int escape(byte[] target, int position, int b) {
+        target[position] = '%';
+        target[position + 1] = HEX[(b >> 4) & 0xF];
+        target[position + 2] = HEX[b & 0xF];
+        return position + 3;
+    }
+
+    private static int digits(long value) {
+        if (value == Long.MIN_VALUE) {
+            return 20;
+        }
+        int length = value < 0 ? 2 : 1;
+        long remaining = Math.abs(value);
+        while (remaining >= 10) {
+            remaining /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeLong(byte[] target, int position, long value) {
+        int end = position + digits(value);
+        int index = end;
+        if (value == Long.MIN_VALUE) {
+            // -9223372036854775808 has no positive counterpart
+            target[--index] = '8';
+            value /= 10;
+        }
+        boolean negative = value < 0;
+        long remaining = Math.abs(value);
+        do {
+            target[--index] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        if (negative) {
+            target[--index] = '-';
+        }
+        return end;
+    }
+
+    // Civil date from days since the epoch, after Howard Hinnant's days_from_civil inverse
+    private static int writeDatetime(byte[] target, int position, Instant instant) {
+        long seconds = instant.getEpochSecond();
+        long days = Math.floorDiv(seconds, 86_400);
+        int secondOfDay = Math.floorMod(seconds, 86_400);
+        long shifted = days + 719_468;
+        long era = Math.floorDiv(shifted, 146_097);
+        long dayOfEra = shifted - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        position = writeDigits(target, position, year, 4);
+        target[position++] = '-';
+        position = writeDigits(target, position, month, 2);
+        target[position++] = '-';
+        position = writeDigits(target, position, day, 2);
+        target[position++] = 'T';
+        position = writeDigits(target, position, secondOfDay / 3600, 2);
+        position = escape(target, position, ':');
+        position = writeDigits(target, position, secondOfDay / 60 % 60, 2);
+        position = escape(target, position, ':');
+        position = writeDigits(target, position, secondOfDay % 60, 2);
+        target[position++] = '.';
+        position = writeDigits(target, position, instant.getNano() / 1_000_000, 3);
+        target[position++] = 'Z';
+        return position;
+    }
+
+    private static int writeDigits(byte[] target, int position, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            target[position + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + width;
+    }
+
+    /**
+     * Collects params in order. Setting a name again replaces its value.
+     */
+    public static class Builder {
+        private static final Instant MIN_DATETIME = Instant.parse("0000-01-01T00:00:00Z");
+        private static final Instant MAX_DATETIME = Instant.parse("9999-12-31T23:59:59.999Z");
+
+        private final List<String> names = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        public Builder withParam(String name, String value) {
+            return put(name, Objects.requireNonNull(value, "value"));
+        }
+
+        public Builder withParam(String name, long value) {
+            return put(name, value);
+        }
+
+        public Builder withParam(String name, boolean value) {
+            return put(name, value);
+        }
+
+        /**
+         * @param value datetime, sent with millisecond precision in UTC
+         */
+        public Builder withParam(String name, Instant value) {
+            return put(name, checkDatetime(Objects.requireNonNull(value, "value")));
+        }
+
+        /**
+         * Set an array param, sent as the name repeated once per element
+         * @param values strings, integral numbers, booleans or instants
+         */
+        public Builder withArray(String name, Collection<?> values) {
+            List<Object> elements = new ArrayList<>(values.size());
+            for (Object value : values) {
+                elements.add(element(name, value));
+            }
+            return put(name, List.copyOf(elements));
+        }
+
+        private static Object element(String name, Object value) {
+            if (value instanceof String || value instanceof Boolean) {
+                return value;
+            }
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof Instant instant) {
+                return checkDatetime(instant);
+            }
+            throw new IllegalArgumentException("Unsupported value for param " + name + ": " + value);
+        }
+
+        private static Instant checkDatetime(Instant value) {
+            if (value.isBefore(MIN_DATETIME) || value.isAfter(MAX_DATETIME)) {
+                throw new IllegalArgumentException("Datetime out of range: " + value);
+            }
+            return value;
+        }
+
+        private Builder put(String name, Object value) {
+            Objects.requireNonNull(name, "name");
+            int index = names.indexOf(name);
+            if (index >= 0) {
+                values.set(index, value);
+            } else {
+                names.add(name);
+                values.add(value);
+            }
+            return this;
+        }
+
+        public Params build() {
+            if (names.isEmpty()) {
+                return EMPTY;
+            }
+            return new Params(names.toArray(new String[0]), values.toArray());
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package com.atproto.concurrency;
+
+/**
+ * Receives events consumed from an {@link EventManager} subscription.
+ * @param <E> event type
+ */
+@FunctionalInterface
+public interface EventHandler<E> {
+    /**
+     * Handle one event
+     * @param event the event
+     * @param sequence position of the event in the ring buffer
+     * @param endOfBatch true for the last event of the batch being consumed, e.g. to flush
+     *     output buffered for the batch
+     */
+    void onEvent(E event, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,290 @@
+package com.atproto.concurrency;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process event bus over a preallocated ring buffer.
+ * <p>
+ * Any number of threads may publish, one event at a time or as a batch claimed and published
+ * together. Every subscription sees every event published after it was created, in sequence
+ * order, and consumes at its own pace; a subscription must be consumed by one thread at a time.
+ * Publishing and consuming take no locks. When the slowest subscription is a full ring behind,
+ * producers wait for it rather than dropping events or growing the buffer.
+ * <p>
+ * Slots keep their last event until the ring wraps around to them, so up to {@code capacity}
+ * consumed events stay reachable.
+ * @param <E> event type
+ */
+public final class EventManager<E> {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final RingBuffer<E> ring;
+    private final Map<String, Subscription<E>> subscriptions = new ConcurrentHashMap<>();
+
+    public EventManager() {
+        this(new Builder<>());
+    }
+
+    private EventManager(Builder<E> builder) {
+        this.ring = new RingBuffer<>(builder.capacity, builder.waitStrategy);
+    }
+
+    /**
+     * @return number of slots in the ring
+     */
+    public int getCapacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * @return sequence of the last slot claimed by a producer, or -1 before the first
+     */
+    public long getCursor() {
+        return ring.cursor().get();
+    }
+
+    /**
+     * Publish an event, waiting while the ring is full
+     * @param event the event
+     * @return sequence of the event
+     */
+    public long publishEvent(E event) {
+        Objects.requireNonNull(event, "event");
+        long sequence = ring.next(1);
+        ring.set(sequence, event);
+        ring.publish(sequence, sequence);
+        return sequence;
+    }
+
+    /**
+     * Publish events with a single claim of consecutive slots. Batches larger than the ring are
+     * published a ring at a time, so events of other producers may fall between the parts.
+     * @param events the events, in order
+     * @return sequence of the last event, or the cursor if there were none
+     */
+    public long publishBatch(List<? extends E> events) {
+        int size = events.size();
+        long hi = getCursor();
+        for (int from = 0; from < size; ) {
+            int n = Math.min(size - from, ring.capacity());
+            for (int i = from; i < from + n; i++) {
+                Objects.requireNonNull(events.get(i), "event");
+            }
+            hi = ring.next(n);
+            long lo = hi - n + 1;
+            for (int i = 0; i < n; i++) {
+                ring.set(lo + i, events.get(from + i));
+            }
+            ring.publish(lo, hi);
+            from += n;
+        }
+        return hi;
+    }
+
+    /**
+     * Create a subscription that receives events published from now on
+     * @param id name of the subscription
+     * @return the subscription
+     * @throws IllegalArgumentException if a subscription with that name exists
+     */
+    public Subscription<E> createSubscription(String id) {
+        Objects.requireNonNull(id, "id");
+        synchronized (subscriptions) {
+            if (subscriptions.containsKey(id)) {
+                throw new IllegalArgumentException("Subscription already exists: " + id);
+            }
+            Subscription<E> subscription = new Subscription<>(this, id);
+            ring.addGatingSequence(subscription.sequence);
+            subscriptions.put(id, subscription);
+            return subscription;
+        }
+    }
+
+    /**
+     * @return the subscription with that name, or null
+     */
+    public Subscription<E> getSubscription(String id) {
+        return subscriptions.get(id);
+    }
+
+    public Set<String> getSubscriptionIds() {
+        return Set.copyOf(subscriptions.keySet());
+    }
+
+    /**
+     * Remove a subscription, so producers no longer wait for it
+     * @return true if it existed
+     */
+    public boolean deleteSubscription(String id) {
+        synchronized (subscriptions) {
+            Subscription<E> subscription = subscriptions.remove(id);
+            if (subscription == null) {
+                return false;
+            }
+            subscription.closed = true;
+            ring.removeGatingSequence(subscription.sequence);
+            return true;
+        }
+    }
+
+    /**
+     * Consume all events published so far for a subscription, without waiting
+     * @return number of events consumed
+     */
+    public int consumeEvents(String id, EventHandler<? super E> handler) {
+        return consumeBatch(id, Integer.MAX_VALUE, handler);
+    }
+
+    /**
+     * Consume up to {@code max} published events for a subscription, without waiting
+     * @return number of events consumed
+     */
+    public int consumeBatch(String id, int max, EventHandler<? super E> handler) {
+        Subscription<E> subscription = subscriptions.get(id);
+        if (subscription == null) {
+            throw new IllegalArgumentException("No such subscription: " + id);
+        }
+        return subscription.poll(max, handler);
+    }
+
+    /**
+     * A consumer's position in the ring.
+     * @param <E> event type
+     */
+    public static final class Subscription<E> implements AutoCloseable {
+        private final EventManager<E> manager;
+        private final String id;
+        // Last consumed sequence; producers don't overwrite slots after it
+        private final Sequence sequence = new Sequence(-1);
+        private volatile boolean closed;
+
+        private Subscription(EventManager<E> manager, String id) {
+            this.manager = manager;
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return sequence of the last consumed event
+         */
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        /**
+         * @return number of claimed events not consumed yet, including some that may not be
+         *     published yet
+         */
+        public long getLag() {
+            return manager.ring.cursor().get() - sequence.get();
+        }
+
+        /**
+         * Consume up to {@code max} published events without waiting. If the handler throws, the
+         * events before it and the one it threw for count as consumed and the exception is
+         * rethrown.
+         * @return number of events consumed
+         */
+        public int poll(int max, EventHandler<? super E> handler) {
+            checkOpen();
+            long next = sequence.get() + 1;
+            long claimed = manager.ring.cursor().get();
+            if (claimed < next) {
+                return 0;
+            }
+            long hi = manager.ring.highestPublished(next, Math.min(claimed, next + max - 1));
+            return hi < next ? 0 : handle(next, hi, handler);
+        }
+
+        /**
+         * Consume up to {@code max} events, waiting with the manager's wait strategy until at
+         * least one is published or the timeout passes
+         * @return number of events consumed, 0 on timeout
+         * @throws InterruptedException if the thread was interrupted while waiting
+         */
+        public int take(int max, Duration timeout, EventHandler<? super E> handler) throws InterruptedException {
+            checkOpen();
+            RingBuffer<E> ring = manager.ring;
+            long deadline = System.nanoTime() + timeout.toNanos();
+            long next = sequence.get() + 1;
+            while (true) {
+                long claimed = ring.waitStrategy().waitFor(next, ring.cursor(), deadline);
+                if (claimed >= next) {
+                    long hi = ring.highestPublished(next, Math.min(claimed, next + max - 1));
+                    if (hi >= next) {
+                        return handle(next, hi, handler);
+                    }
+                }
+                // Claimed but not yet published, or timed out
+                if (System.nanoTime() - deadline >= 0 || closed) {
+                    return 0;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        private int handle(long lo, long hi, EventHandler<? super E> handler) {
+            RingBuffer<E> ring = manager.ring;
+            long current = lo;
+            try {
+                for (; current <= hi; current++) {
+                    handler.onEvent(ring.get(current), current, current == hi);
+                }
+            } finally {
+                // One store for the whole batch releases its slots to producers
+                sequence.set(Math.min(current, hi));
+            }
+            return (int) (hi - lo + 1);
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Subscription is closed: " + id);
+            }
+        }
+
+        @Override
+        public void close() {
+            manager.deleteSubscription(id);
+        }
+    }
+
+    public static class Builder<E> {
+        private int capacity = DEFAULT_CAPACITY;
+        private WaitStrategy waitStrategy = WaitStrategy.parking();
+
+        /**
+         * @param capacity number of slots, a power of two
+         */
+        public Builder<E> withCapacity(int capacity) {
+            if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+                throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param waitStrategy how consumers wait in {@link Subscription#take}; parking by default
+         */
+        public Builder<E> withWaitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = Objects.requireNonNull(waitStrategy, "waitStrategy");
+            return this;
+        }
+
+        public EventManager<E> build() {
+            return new EventManager<>(this);
+        }
+    }
+}
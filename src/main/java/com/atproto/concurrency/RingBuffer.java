@@ -0,0 +1,150 @@
+package com.atproto.concurrency;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring of event slots shared by any number of producers and consumers.
+ * <p>
+ * Producers claim free slots by advancing the cursor, fill them and then mark them published. Since
+ * slots are claimed out of order by concurrent producers, each slot records the lap of the ring it
+ * was last published in, and consumers read up to the first slot that is not published yet.
+ * Producers never lap the slowest gating sequence, so an event stays in its slot until every
+ * subscription has consumed it.
+ */
+final class RingBuffer<E> {
+    private static final VarHandle AVAILABLE = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final Sequence[] NO_SEQUENCES = new Sequence[0];
+
+    private final Object[] entries;
+    private final int[] available;
+    private final int mask;
+    private final int shift;
+    private final WaitStrategy waitStrategy;
+    // Highest claimed sequence; claimed slots may not be published yet
+    private final Sequence cursor = new Sequence(-1);
+    // Minimum of the gating sequences when producers last looked, so they rarely scan them
+    private final Sequence gatingCache = new Sequence(-1);
+    private volatile Sequence[] gating = NO_SEQUENCES;
+
+    RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.entries = new Object[capacity];
+        this.available = new int[capacity];
+        Arrays.fill(available, -1);
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.waitStrategy = waitStrategy;
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    Sequence cursor() {
+        return cursor;
+    }
+
+    WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Claim slots, waiting while they are still held by the slowest subscription. Slots are only
+     * claimed once they are free, so the cursor never runs ahead of events that can be published
+     * and consumers waiting on it don't see claims that are still blocked.
+     * @param n number of slots, at most the capacity
+     * @return sequence of the last claimed slot
+     */
+    long next(int n) {
+        if (n < 1 || n > entries.length) {
+            throw new IllegalArgumentException("Cannot claim " + n + " slots of " + entries.length);
+        }
+        while (true) {
+            long current = cursor.get();
+            long hi = current + n;
+            long wrapPoint = hi - entries.length;
+            long cached = gatingCache.get();
+            if (wrapPoint > cached || cached > current) {
+                long min = minimumGating(current);
+                if (wrapPoint > min) {
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                gatingCache.set(min);
+            }
+            if (cursor.compareAndSet(current, hi)) {
+                return hi;
+            }
+        }
+    }
+
+    private long minimumGating(long ifNone) {
+        long min = ifNone;
+        for (Sequence sequence : gating) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+
+    void set(long sequence, E event) {
+        entries[(int) sequence & mask] = event;
+    }
+
+    @SuppressWarnings("unchecked")
+    E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Make claimed and filled slots visible to consumers
+     */
+    void publish(long lo, long hi) {
+        for (long sequence = lo; sequence <= hi; sequence++) {
+            AVAILABLE.setRelease(available, (int) sequence & mask, (int) (sequence >>> shift));
+        }
+        waitStrategy.signal();
+    }
+
+    /**
+     * @return the last sequence from {@code lo} up to {@code claimed} that is published with all
+     *     sequences before it, or {@code lo - 1} if {@code lo} is not published yet
+     */
+    long highestPublished(long lo, long claimed) {
+        for (long sequence = lo; sequence <= claimed; sequence++) {
+            if ((int) AVAILABLE.getAcquire(available, (int) sequence & mask) != (int) (sequence >>> shift)) {
+                return sequence - 1;
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Add a consumer position that producers must not lap, starting after the last claimed slot
+     */
+    synchronized void addGatingSequence(Sequence sequence) {
+        sequence.set(cursor.get());
+        Sequence[] updated = Arrays.copyOf(gating, gating.length + 1);
+        updated[gating.length] = sequence;
+        gating = updated;
+        // Claims made before the new array was visible may have been checked without it
+        sequence.set(cursor.get());
+    }
+
+    synchronized void removeGatingSequence(Sequence sequence) {
+        Sequence[] current = gating;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sequence) {
+                Sequence[] updated = new Sequence[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                gating = updated;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.atproto.concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How a consumer waits for events that have not been published yet.
+ * <p>
+ * The choice trades latency for CPU: {@link #busySpin()} reacts fastest but keeps a core busy per
+ * waiting consumer, {@link #yielding()} gives the core to other threads between checks, and
+ * {@link #parking()} puts waiting consumers to sleep until a producer signals them.
+ */
+public interface WaitStrategy {
+    /**
+     * Wait until the cursor reaches a sequence, or until a deadline
+     * @param sequence sequence to wait for
+     * @param cursor the producers' cursor
+     * @param deadline {@link System#nanoTime()} to give up at
+     * @return the cursor's value, which is less than the sequence if the deadline passed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    long waitFor(long sequence, Sequence cursor, long deadline) throws InterruptedException;
+
+    /**
+     * Called by producers after publishing, to wake consumers that are waiting
+     */
+    void signal();
+
+    /**
+     * @return a strategy that checks the cursor in a tight loop
+     */
+    static WaitStrategy busySpin() {
+        return BusySpinWaitStrategy.INSTANCE;
+    }
+
+    /**
+     * @return a strategy that spins briefly and then yields the thread between checks
+     */
+    static WaitStrategy yielding() {
+        return YieldingWaitStrategy.INSTANCE;
+    }
+
+    /**
+     * @return a strategy that spins briefly and then parks until signalled; producers only take
+     *     its lock when a consumer is actually parked
+     */
+    static WaitStrategy parking() {
+        return new ParkingWaitStrategy();
+    }
+}
+
+final class BusySpinWaitStrategy implements WaitStrategy {
+    static final BusySpinWaitStrategy INSTANCE = new BusySpinWaitStrategy();
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, long deadline) throws InterruptedException {
+        long available;
+        for (int i = 1; (available = cursor.get()) < sequence; i++) {
+            // Reading the clock and the interrupt flag costs more than a check of the cursor
+            if ((i & 0xff) == 0) {
+                if (System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            Thread.onSpinWait();
+        }
+        return available;
+    }
+
+    @Override
+    public void signal() {
+    }
+}
+
+final class YieldingWaitStrategy implements WaitStrategy {
+    static final YieldingWaitStrategy INSTANCE = new YieldingWaitStrategy();
+    private static final int SPINS = 100;
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, long deadline) throws InterruptedException {
+        long available;
+        for (int i = 0; (available = cursor.get()) < sequence; i++) {
+            if (i < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.yield();
+        }
+        return available;
+    }
+
+    @Override
+    public void signal() {
+    }
+}
+
+final class ParkingWaitStrategy implements WaitStrategy {
+    private static final int SPINS = 100;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    // Set by a consumer before it parks, so producers can skip the lock when nobody is waiting
+    private final AtomicBoolean signalNeeded = new AtomicBoolean();
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, long deadline) throws InterruptedException {
+        long available;
+        for (int i = 0; i < SPINS; i++) {
+            if ((available = cursor.get()) >= sequence) {
+                return available;
+            }
+            Thread.onSpinWait();
+        }
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                // Set before the check: a producer that publishes after the check sees the flag
+                signalNeeded.set(true);
+                if ((available = cursor.get()) >= sequence) {
+                    return available;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return available;
+                }
+                published.await(remaining, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        // A plain read first keeps the flag's cache line shared while nobody is parked
+        if (signalNeeded.get() && signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
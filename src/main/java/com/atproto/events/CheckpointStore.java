@@ -0,0 +1,433 @@
+package com.atproto.events;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable record of how far a firehose consumer has got: the stream's sequence cursor and the last
+ * commit CID seen for each repository.
+ * <p>
+ * Updates are kept in memory and group-committed by a background thread: everything recorded
+ * within the commit interval is appended to the file as one checksummed frame and made durable
+ * with a single {@code fsync}. Several updates for the same DID within an interval are written
+ * once. Each update returns the future of the batch it joined, completed once the batch is on disk.
+ * <p>
+ * The file is append-only. Every frame ends with a footer holding the cursor, so reopening after a
+ * crash reads at most one frame from the end of the file, however long it is, and cuts off a frame
+ * the crash left half-written. Per-DID CIDs are read from the file on first lookup, and the file is
+ * rewritten with one entry per DID once it grows past the compaction threshold.
+ */
+public final class CheckpointStore implements AutoCloseable {
+    public static final Duration DEFAULT_COMMIT_INTERVAL = Duration.ofMillis(10);
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64L * 1024 * 1024;
+
+    // Frames above this size are split and each is synced, so a crash damages at most one frame
+    static final int MAX_FRAME_BYTES = 1024 * 1024;
+    private static final int MAGIC = 0x41545043;
+    // magic, payload length, checksum
+    private static final int HEADER_BYTES = 12;
+    // cursor, payload length, magic
+    private static final int FOOTER_BYTES = 16;
+
+    private final Path file;
+    private final long commitIntervalNanos;
+    private final long compactionThreshold;
+    private final Map<String, String> lastCids = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private final Object loadLock = new Object();
+    private final Thread flusher;
+
+    // Owned by the flusher thread after construction
+    private FileChannel channel;
+    private ByteBuffer frame = ByteBuffer.allocate(4096);
+    private long compactedSize;
+
+    // Length of the file when opened; frames before it are only read when a CID is looked up
+    private final long openLength;
+    private volatile boolean loaded;
+    private volatile long cursor;
+
+    // Guarded by lock
+    private Batch pending;
+    private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+    private boolean closed;
+    private IOException failure;
+
+    private static final class Batch {
+        final long created = System.nanoTime();
+        final Map<String, String> cids = new LinkedHashMap<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        long cursor = -1;
+        boolean flushRequested;
+    }
+
+    private CheckpointStore(Builder builder) throws IOException {
+        this.file = Objects.requireNonNull(builder.file, "file");
+        this.commitIntervalNanos = builder.commitInterval.toNanos();
+        this.compactionThreshold = builder.compactionThreshold;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long[] last = lastFrame(channel);
+            if (last[0] < channel.size()) {
+                channel.truncate(last[0]);
+                channel.force(true);
+            }
+            this.openLength = last[0];
+            this.cursor = last[1];
+            this.compactedSize = openLength;
+            channel.position(openLength);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.flusher = Thread.ofPlatform().name("checkpoint-" + file.getFileName()).daemon().start(this::run);
+    }
+
+    /**
+     * Open a store with the default commit interval, creating the file if needed
+     * @param file the checkpoint file
+     * @return the store, which must be closed to write its last updates
+     */
+    public static CheckpointStore open(Path file) throws IOException {
+        return new Builder().withFile(file).build();
+    }
+
+    /**
+     * @return the last durable cursor, or -1 if none has been recorded
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return the last CID recorded for a repository, including updates not yet durable, or null
+     */
+    public String getLastCid(String did) {
+        load();
+        return lastCids.get(did);
+    }
+
+    /**
+     * Record that the stream has been processed up to a sequence number. The cursor only moves
+     * forward.
+     * @return future completed once the update is durable
+     */
+    public CompletableFuture<Void> checkpoint(long seq) {
+        return record(null, null, seq);
+    }
+
+    /**
+     * Record the last commit CID of a repository, and the sequence number of its event
+     * @param seq sequence number to advance the cursor to, or -1 to leave it
+     * @return future completed once the update is durable
+     */
+    public CompletableFuture<Void> persistEvent(String did, String cid, long seq) {
+        Objects.requireNonNull(did, "did");
+        Objects.requireNonNull(cid, "cid");
+        if (did.length() > 0xffff || cid.length() > 0xffff) {
+            throw new IllegalArgumentException("DID or CID too long");
+        }
+        return record(did, cid, seq);
+    }
+
+    private CompletableFuture<Void> record(String did, String cid, long seq) {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Checkpoint store is closed");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Checkpoint store failed", failure);
+            }
+            if (pending == null) {
+                pending = new Batch();
+                lock.notifyAll();
+            }
+            if (did != null) {
+                pending.cids.put(did, cid);
+                lastCids.put(did, cid);
+            }
+            pending.cursor = Math.max(pending.cursor, seq);
+            return pending.done;
+        }
+    }
+
+    /**
+     * Commit the pending updates without waiting for the commit interval
+     * @return future completed once everything recorded so far is durable
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (lock) {
+            if (pending == null) {
+                return inFlight;
+            }
+            pending.flushRequested = true;
+            lock.notifyAll();
+            return pending.done;
+        }
+    }
+
+    /**
+     * Commit the pending updates, stop the commit thread and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Batch batch;
+            synchronized (lock) {
+                try {
+                    while (pending == null && !closed) {
+                        lock.wait();
+                    }
+                    if (pending == null) {
+                        return;
+                    }
+                    // Let more updates join the batch until the interval has passed
+                    long remaining;
+                    while (!closed && !pending.flushRequested
+                            && (remaining = pending.created + commitIntervalNanos - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batch = pending;
+                pending = null;
+                inFlight = batch.done;
+            }
+            try {
+                commit(batch);
+                batch.done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                IOException io = e instanceof IOException i ? i : new IOException(e);
+                synchronized (lock) {
+                    failure = io;
+                }
+                batch.done.completeExceptionally(io);
+            }
+        }
+    }
+
+    private void commit(Batch batch) throws IOException {
+        long newCursor = Math.max(cursor, batch.cursor);
+        writeFrames(channel, batch.cids, cursor, newCursor);
+        cursor = newCursor;
+        long size = channel.position();
+        if (size > compactionThreshold && size > 2 * compactedSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Append entries as frames and sync each. Only the last frame carries the new cursor, so a
+     * crash between frames never leaves the cursor ahead of the CIDs.
+     */
+    private void writeFrames(FileChannel out, Map<String, String> cids, long oldCursor, long newCursor) throws IOException {
+        frame.clear().position(HEADER_BYTES);
+        for (Map.Entry<String, String> entry : cids.entrySet()) {
+            byte[] did = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] cid = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            int size = 4 + did.length + cid.length;
+            if (frame.position() > HEADER_BYTES && frame.position() + size > MAX_FRAME_BYTES) {
+                finishFrame(out, oldCursor);
+                frame.clear().position(HEADER_BYTES);
+            }
+            ensure(size + FOOTER_BYTES);
+            frame.putShort((short) did.length).put(did).putShort((short) cid.length).put(cid);
+        }
+        finishFrame(out, newCursor);
+    }
+
+    private void finishFrame(FileChannel out, long frameCursor) throws IOException {
+        int length = frame.position() - HEADER_BYTES;
+        ensure(FOOTER_BYTES);
+        frame.putLong(frameCursor).putInt(length).putInt(MAGIC);
+        CRC32C crc = new CRC32C();
+        crc.update(frame.array(), HEADER_BYTES, length + 8);
+        frame.putInt(0, MAGIC).putInt(4, length).putInt(8, (int) crc.getValue());
+        frame.flip();
+        while (frame.hasRemaining()) {
+            out.write(frame);
+        }
+        out.force(false);
+    }
+
+    private void ensure(int bytes) {
+        if (frame.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(frame.capacity() * 2, frame.position() + bytes));
+            frame.flip();
+            grown.put(frame);
+            frame = grown;
+        }
+    }
+
+    /**
+     * Find the end of the last intact frame and its cursor, looking back at most one frame
+     * @return {end offset, cursor}
+     */
+    private static long[] lastFrame(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return new long[] {0, -1};
+        }
+        // The last intact frame, and after it at most one frame cut off by a crash
+        int window = (int) Math.min(size, 2L * (MAX_FRAME_BYTES + FOOTER_BYTES));
+        long start = size - window;
+        ByteBuffer tail = ByteBuffer.allocate(window);
+        while (tail.hasRemaining() && channel.read(tail, start + tail.position()) >= 0) {
+        }
+        byte[] bytes = tail.array();
+        for (int end = window; end >= HEADER_BYTES + FOOTER_BYTES; end--) {
+            if (tail.getInt(end - 4) != MAGIC) {
+                continue;
+            }
+            int length = tail.getInt(end - 8);
+            int frameStart = end - FOOTER_BYTES - length - HEADER_BYTES;
+            if (length < 0 || frameStart < 0 || tail.getInt(frameStart) != MAGIC || tail.getInt(frameStart + 4) != length) {
+                continue;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, frameStart + HEADER_BYTES, length + 8);
+            if ((int) crc.getValue() == tail.getInt(frameStart + 8)) {
+                return new long[] {start + end, tail.getLong(end - FOOTER_BYTES)};
+            }
+        }
+        if (start > 0) {
+            throw new IOException("No intact frame at the end of " + channel + "; the checkpoint file is corrupt");
+        }
+        return new long[] {0, -1};
+    }
+
+    // Read the CIDs written before this store was opened; later updates are already in memory
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+            Map<String, String> stored = new HashMap<>();
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer all = ByteBuffer.allocate((int) Math.min(openLength, Integer.MAX_VALUE - 8));
+                while (all.hasRemaining() && in.read(all, all.position()) >= 0) {
+                }
+                all.flip();
+                while (all.remaining() >= HEADER_BYTES + FOOTER_BYTES) {
+                    int length = all.getInt(all.position() + 4);
+                    int end = all.position() + HEADER_BYTES + length;
+                    all.position(all.position() + HEADER_BYTES);
+                    while (all.position() < end) {
+                        String did = text(all);
+                        stored.put(did, text(all));
+                    }
+                    all.position(end + FOOTER_BYTES);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read checkpoint file " + file, e);
+            }
+            stored.forEach(lastCids::putIfAbsent);
+            loaded = true;
+        }
+    }
+
+    private static String text(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        String text = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    // Rewrite the file with one entry per DID and swap it in atomically
+    private void compact() throws IOException {
+        load();
+        Map<String, String> live = new HashMap<>(lastCids);
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFrames(out, live, cursor, cursor);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        compactedSize = channel.size();
+        channel.position(compactedSize);
+    }
+
+    private void syncDirectory() {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename itself is atomic
+        }
+    }
+
+    public static class Builder {
+        private Path file;
+        private Duration commitInterval = DEFAULT_COMMIT_INTERVAL;
+        private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+        public Builder withFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * @param commitInterval longest an update waits for others to share its fsync
+         */
+        public Builder withCommitInterval(Duration commitInterval) {
+            if (commitInterval.isNegative()) {
+                throw new IllegalArgumentException("Commit interval must not be negative");
+            }
+            this.commitInterval = commitInterval;
+            return this;
+        }
+
+        /**
+         * @param compactionThreshold file size in bytes past which the file is rewritten with one
+         *     entry per DID, once it has also doubled since it was last rewritten
+         */
+        public Builder withCompactionThreshold(long compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        public CheckpointStore build() throws IOException {
+            return new CheckpointStore(this);
+        }
+    }
+}
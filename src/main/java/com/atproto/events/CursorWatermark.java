@@ -0,0 +1,41 @@
+package com.atproto.events;
+
+import java.util.ArrayDeque;
+
+/**
+ * Tracks the highest sequence number below which every event has been handled, when events
+ * complete out of order.
+ */
+final class CursorWatermark {
+    private final ArrayDeque<Ticket> inFlight = new ArrayDeque<>();
+
+    static final class Ticket {
+        final long seq;
+        boolean done;
+
+        Ticket(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * @param seq sequence number of an event about to be handled; called in stream order
+     */
+    synchronized Ticket begin(long seq) {
+        Ticket ticket = new Ticket(seq);
+        inFlight.addLast(ticket);
+        return ticket;
+    }
+
+    /**
+     * @return the new watermark if completing this event advanced it, otherwise -1
+     */
+    synchronized long complete(Ticket ticket) {
+        ticket.done = true;
+        long seq = -1;
+        while (!inFlight.isEmpty() && inFlight.peekFirst().done) {
+            seq = inFlight.pollFirst().seq;
+        }
+        return seq;
+    }
+}
@@ -0,0 +1,328 @@
+package com.atproto.events;
+
+import com.atproto.api.sync.FirehoseEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Events of the stream, optionally of one repository, published to a single
+ * {@link Flow.Subscriber} as fast as it requests them.
+ * <p>
+ * Events that arrive while the subscriber has no outstanding demand, or before it subscribes, are
+ * buffered up to a fixed number. Beyond that the {@link OverflowPolicy} decides: drop the oldest
+ * buffered event, disconnect the subscriber with an error, or keep the excess in a temporary file
+ * and read it back in order as the subscriber catches up. The stream itself is never held back by
+ * a subscriber.
+ * <p>
+ * Signals are sent from a virtual thread, one at a time. A subscriber that throws from
+ * {@code onNext} is cancelled.
+ */
+public final class EventSubscription implements Flow.Publisher<FirehoseEvent> {
+    private static final Executor DELIVERY =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("event-subscriber-", 0).factory());
+
+    /**
+     * What to do with an event that arrives while the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest buffered event to make room
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the buffer and end the subscription with an error
+         */
+        DISCONNECT,
+        /**
+         * Write events past the buffer to a temporary file
+         */
+        SPILL_TO_DISK
+    }
+
+    private final String id;
+    private final String did;
+    private final int bufferSize;
+    private final OverflowPolicy policy;
+    private final Path spillDirectory;
+    private final Consumer<EventSubscription> onTerminate;
+    private final Object lock = new Object();
+    private final ArrayDeque<FirehoseEvent> buffer = new ArrayDeque<>();
+    // Running or pending deliveries; only the caller that raises it from 0 schedules one
+    private final AtomicInteger wip = new AtomicInteger();
+    private SpillQueue spill;
+    private Flow.Subscriber<? super FirehoseEvent> subscriber;
+    private boolean subscribed;
+    private long requested;
+    private long dropped;
+    // No more events will be offered; buffered ones are still delivered
+    private boolean completed;
+    // Signalled ahead of any buffered events
+    private Throwable error;
+    // The subscriber has been terminated or has cancelled
+    private boolean done;
+
+    EventSubscription(String id, String did, int bufferSize, OverflowPolicy policy, Path spillDirectory,
+                      Consumer<EventSubscription> onTerminate) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.id = Objects.requireNonNull(id, "id");
+        this.did = did;
+        this.bufferSize = bufferSize;
+        this.policy = Objects.requireNonNull(policy, "policy");
+        this.spillDirectory = spillDirectory;
+        this.onTerminate = onTerminate;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return DID of the repository whose events are published, or null for all events
+     */
+    public String getDid() {
+        return did;
+    }
+
+    /**
+     * @return number of events waiting for demand, including spilled ones
+     */
+    public int getBufferedCount() {
+        synchronized (lock) {
+            return buffer.size() + (spill != null ? spill.size() : 0);
+        }
+    }
+
+    /**
+     * @return number of events discarded by {@link OverflowPolicy#DROP_OLDEST}
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    /**
+     * Attach the subscriber. Only one subscriber is allowed; later ones receive an error.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super FirehoseEvent> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        synchronized (lock) {
+            if (this.subscriber == null) {
+                this.subscriber = subscriber;
+                subscriber = null;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Subscription already has a subscriber: " + id));
+            return;
+        }
+        this.subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                EventSubscription.this.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                EventSubscription.this.cancel();
+            }
+        });
+        synchronized (lock) {
+            subscribed = true;
+        }
+        drain();
+    }
+
+    boolean matches(String key) {
+        return did == null || did.equals(key);
+    }
+
+    /**
+     * Buffer an event for delivery, applying the overflow policy if the buffer is full
+     * @param event an event that does not refer to its frame
+     */
+    void offer(FirehoseEvent event) {
+        synchronized (lock) {
+            if (completed || error != null || done) {
+                return;
+            }
+            try {
+                if (spill != null && spill.size() > 0) {
+                    // Keep the order: nothing may pass events already on disk
+                    spill.add(event);
+                } else if (buffer.size() < bufferSize) {
+                    buffer.addLast(event);
+                } else {
+                    switch (policy) {
+                        case DROP_OLDEST -> {
+                            buffer.pollFirst();
+                            buffer.addLast(event);
+                            dropped++;
+                        }
+                        case DISCONNECT -> fail(new IllegalStateException(
+                            "Subscriber fell more than " + bufferSize + " events behind: " + id));
+                        case SPILL_TO_DISK -> {
+                            if (spill == null) {
+                                spill = new SpillQueue(spillDirectory);
+                            }
+                            spill.add(event);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                fail(new UncheckedIOException("Could not spill events of subscription " + id, e));
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Stop publishing; the subscriber completes once it has consumed the buffered events
+     */
+    void complete() {
+        synchronized (lock) {
+            completed = true;
+        }
+        drain();
+    }
+
+    private void request(long n) {
+        synchronized (lock) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non-positive request: " + n));
+            } else {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            }
+        }
+        drain();
+    }
+
+    private void cancel() {
+        synchronized (lock) {
+            if (done) {
+                return;
+            }
+            done = true;
+            release();
+        }
+        onTerminate.accept(this);
+    }
+
+    // Called with the lock held
+    private void fail(Throwable cause) {
+        error = cause;
+        release();
+    }
+
+    // Called with the lock held
+    private void release() {
+        buffer.clear();
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+                // The file is deleted on close either way
+            }
+            spill = null;
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            DELIVERY.execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        int missed = 1;
+        do {
+            if (!deliverAvailable()) {
+                onTerminate.accept(this);
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @return false once the subscriber has been terminated
+     */
+    private boolean deliverAvailable() {
+        while (true) {
+            FirehoseEvent event;
+            Throwable failure = null;
+            boolean complete = false;
+            synchronized (lock) {
+                if (done || !subscribed) {
+                    return true;
+                }
+                event = error == null && requested > 0 ? poll() : null;
+                if (error != null) {
+                    failure = error;
+                    done = true;
+                } else {
+                    if (event != null) {
+                        if (requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                    } else if (completed && buffer.isEmpty()) {
+                        complete = true;
+                        done = true;
+                        release();
+                    } else {
+                        return true;
+                    }
+                }
+            }
+            if (failure != null) {
+                subscriber.onError(failure);
+                return false;
+            }
+            if (complete) {
+                subscriber.onComplete();
+                return false;
+            }
+            try {
+                subscriber.onNext(event);
+            } catch (Throwable e) {
+                cancel();
+                return true;
+            }
+        }
+    }
+
+    // Called with the lock held
+    private FirehoseEvent poll() {
+        FirehoseEvent event = buffer.pollFirst();
+        if (spill != null && spill.size() > 0) {
+            try {
+                buffer.addLast(spill.poll());
+            } catch (IOException e) {
+                fail(new UncheckedIOException("Could not read spilled events of subscription " + id, e));
+                return null;
+            }
+        }
+        return event;
+    }
+}
@@ -0,0 +1,395 @@
+package com.atproto.events;
+
+import com.atproto.api.sync.Firehose;
+import com.atproto.api.sync.FirehoseEvent;
+import com.atproto.api.xrpc.XrpcClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Consumes the repository event stream of a relay or PDS and passes each event to a handler,
+ * recording progress in a {@link CheckpointStore} so that a restarted consumer resumes from the
+ * last durable cursor.
+ * <p>
+ * After the handler returns, a commit records its repository's commit CID and sequence number;
+ * other sequenced events only advance the cursor. Handler failures are passed to the error handler
+ * and do not stop the stream.
+ * <p>
+ * By default events are handled one at a time on the connection's thread. With
+ * {@link Builder#withParallelism} they are handed to a {@link PartitionedDispatcher} keyed by DID
+ * instead: events of one repository are still handled in stream order, events of different
+ * repositories concurrently. The cursor then only advances past a sequence number once every
+ * event up to it has been handled, so a restart never skips an unhandled event. If an event cannot
+ * be queued, the stream is disconnected and the failure passed to the error handler.
+ * <p>
+ * Other consumers can {@link #subscribe} to the events as a {@link Flow.Publisher}, after the
+ * handler has seen them. Each subscription buffers for its own subscriber, so a slow subscriber
+ * never holds back the stream.
+ */
+public class EventSystem implements AutoCloseable {
+    private final XrpcClient client;
+    private final CheckpointStore checkpoints;
+    private final Consumer<? super FirehoseEvent> handler;
+    private final Consumer<? super Throwable> errorHandler;
+    private final PartitionedDispatcher dispatcher;
+    private final CursorWatermark watermark = new CursorWatermark();
+    private final Map<String, EventSubscription> subscriptions = new ConcurrentHashMap<>();
+    private final int subscriberBufferSize;
+    private final EventSubscription.OverflowPolicy overflowPolicy;
+    private final Path spillDirectory;
+    private volatile Firehose firehose;
+    // Set when an event could not be handed to the dispatcher; the stream is disconnected for good
+    private volatile boolean stopped;
+
+    private EventSystem(Builder builder) {
+        this.client = Objects.requireNonNull(builder.client, "client");
+        this.checkpoints = Objects.requireNonNull(builder.checkpoints, "checkpoints");
+        this.handler = Objects.requireNonNull(builder.handler, "handler");
+        this.errorHandler = builder.errorHandler;
+        this.subscriberBufferSize = builder.subscriberBufferSize;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.spillDirectory = builder.spillDirectory;
+        if (builder.parallelism > 1) {
+            PartitionedDispatcher.Builder dispatcherBuilder = new PartitionedDispatcher.Builder()
+                .withShards(builder.parallelism)
+                .withErrorHandler(errorHandler);
+            if (builder.virtualThreads) {
+                dispatcherBuilder.withVirtualThreads();
+            }
+            this.dispatcher = dispatcherBuilder.build();
+        } else {
+            this.dispatcher = null;
+        }
+    }
+
+    /**
+     * Connect to the stream, resuming after the last durable cursor if there is one
+     * @return future completed once connected
+     * @throws IllegalStateException if an event could not be queued for the worker shards, which
+     *     disconnects the stream for good
+     */
+    public CompletableFuture<Void> start() {
+        if (stopped) {
+            throw new IllegalStateException("Event system stopped after failing to queue an event");
+        }
+        long cursor = checkpoints.getCursor();
+        Firehose connection = new Firehose.Builder()
+            .withClient(client)
+            .withCursor(cursor >= 0 ? cursor : null)
+            .withHandler(new Firehose.Handler() {
+                @Override
+                public void onEvent(FirehoseEvent event) {
+                    if (dispatcher != null) {
+                        dispatch(event);
+                    } else {
+                        process(event);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    errorHandler.accept(error);
+                }
+            })
+            .build();
+        firehose = connection;
+        return connection.connect().thenApply(ignored -> null);
+    }
+
+    void process(FirehoseEvent event) {
+        try {
+            handler.accept(event);
+        } finally {
+            publish(event, false);
+            if (event instanceof FirehoseEvent.Commit commit) {
+                checkpoints.persistEvent(commit.getRepo(), commit.getCommit().toString(), commit.getSeq());
+            } else if (event.getSeq() >= 0) {
+                checkpoints.checkpoint(event.getSeq());
+            }
+        }
+    }
+
+    void dispatch(FirehoseEvent event) {
+        if (stopped) {
+            return;
+        }
+        // The frame is reused once this returns, so the shard needs its own copy of the blocks
+        FirehoseEvent detached = event.detach();
+        CursorWatermark.Ticket ticket = detached.getSeq() >= 0 ? watermark.begin(detached.getSeq()) : null;
+        try {
+            // Waits while the shard's queue is full, which holds back the connection's demand
+            dispatcher.submit(keyOf(detached), () -> processDispatched(detached, ticket));
+        } catch (InterruptedException | IllegalStateException e) {
+            // The ticket stays open so the cursor never passes this event, and a restart resumes
+            // at it. Nothing after it can be checkpointed, so stop receiving events. The interrupt
+            // is not set again, since this runs on the HTTP client's pooled thread.
+            stopped = true;
+            Firehose connection = firehose;
+            if (connection != null) {
+                connection.close();
+            }
+            errorHandler.accept(new IllegalStateException(
+                "Disconnected: could not queue event " + detached.getSeq(), e));
+        }
+    }
+
+    private void processDispatched(FirehoseEvent event, CursorWatermark.Ticket ticket) {
+        try {
+            handler.accept(event);
+        } finally {
+            publish(event, true);
+            if (event instanceof FirehoseEvent.Commit commit) {
+                checkpoints.persistEvent(commit.getRepo(), commit.getCommit().toString(), -1);
+            }
+            if (ticket != null) {
+                long seq = watermark.complete(ticket);
+                if (seq >= 0) {
+                    checkpoints.checkpoint(seq);
+                }
+            }
+        }
+    }
+
+    private void publish(FirehoseEvent event, boolean detached) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        String key = keyOf(event);
+        for (EventSubscription subscription : subscriptions.values()) {
+            if (subscription.matches(key)) {
+                if (!detached) {
+                    // Subscribers run later, so they need a copy of the frame's blocks
+                    event = event.detach();
+                    detached = true;
+                }
+                subscription.offer(event);
+            }
+        }
+    }
+
+    /**
+     * Publish the events of a repository, or of the whole stream, with the default buffer size and
+     * overflow policy
+     * @param did DID of the repository, or null for all events
+     * @param subscriptionId name of the subscription
+     * @return publisher for a single subscriber; events are buffered from now on
+     * @throws IllegalArgumentException if a subscription with that name exists
+     */
+    public EventSubscription subscribe(String did, String subscriptionId) {
+        return subscribe(did, subscriptionId, subscriberBufferSize, overflowPolicy);
+    }
+
+    /**
+     * Publish the events of a repository, or of the whole stream
+     * @param did DID of the repository, or null for all events
+     * @param subscriptionId name of the subscription
+     * @param bufferSize events held in memory while the subscriber has no demand
+     * @param policy what to do with events beyond the buffer
+     * @return publisher for a single subscriber; events are buffered from now on
+     * @throws IllegalArgumentException if a subscription with that name exists
+     */
+    public EventSubscription subscribe(String did, String subscriptionId, int bufferSize,
+                                       EventSubscription.OverflowPolicy policy) {
+        Objects.requireNonNull(subscriptionId, "subscriptionId");
+        synchronized (subscriptions) {
+            if (subscriptions.containsKey(subscriptionId)) {
+                throw new IllegalArgumentException("Subscription already exists: " + subscriptionId);
+            }
+            EventSubscription subscription = new EventSubscription(subscriptionId, did, bufferSize, policy,
+                spillDirectory, ended -> subscriptions.remove(ended.getId(), ended));
+            subscriptions.put(subscriptionId, subscription);
+            return subscription;
+        }
+    }
+
+    /**
+     * Stop publishing to a subscription; its subscriber completes after the buffered events
+     * @return true if it existed
+     */
+    public boolean unsubscribe(String subscriptionId) {
+        EventSubscription subscription = subscriptions.remove(subscriptionId);
+        if (subscription == null) {
+            return false;
+        }
+        subscription.complete();
+        return true;
+    }
+
+    /**
+     * @return the subscription with that name, or null
+     */
+    public EventSubscription getSubscription(String subscriptionId) {
+        return subscriptions.get(subscriptionId);
+    }
+
+    private static String keyOf(FirehoseEvent event) {
+        if (event instanceof FirehoseEvent.Commit commit) {
+            return commit.getRepo();
+        } else if (event instanceof FirehoseEvent.Sync sync) {
+            return sync.getDid();
+        } else if (event instanceof FirehoseEvent.Identity identity) {
+            return identity.getDid();
+        } else if (event instanceof FirehoseEvent.Account account) {
+            return account.getDid();
+        }
+        return "";
+    }
+
+    /**
+     * @return the last commit CID recorded for a repository, or null
+     */
+    public String recoverLastEvent(String did) {
+        return checkpoints.getLastCid(did);
+    }
+
+    /**
+     * Record a repository's last commit CID outside of the stream
+     * @return future completed once the record is durable
+     */
+    public CompletableFuture<Void> persistEvent(String did, String cid) {
+        return checkpoints.persistEvent(did, cid, -1);
+    }
+
+    /**
+     * @return the last durable cursor, or -1 if none
+     */
+    public long getCursor() {
+        return checkpoints.getCursor();
+    }
+
+    public CheckpointStore getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * @return number of events waiting on each worker shard; empty when events are handled on the
+     *     connection's thread
+     */
+    public int[] getQueueDepths() {
+        return dispatcher != null ? dispatcher.getQueueDepths() : new int[0];
+    }
+
+    /**
+     * Disconnect from the stream, finish the queued events, complete the subscriptions and close the
+     * checkpoint store, writing its last updates
+     */
+    @Override
+    public void close() throws IOException {
+        // Frames still arriving are dropped rather than reported as failing to queue
+        stopped = true;
+        Firehose connection = firehose;
+        if (connection != null) {
+            connection.close();
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        for (String subscriptionId : subscriptions.keySet()) {
+            unsubscribe(subscriptionId);
+        }
+        checkpoints.close();
+    }
+
+    public static class Builder {
+        private XrpcClient client;
+        private CheckpointStore checkpoints;
+        private Consumer<? super FirehoseEvent> handler;
+        private Consumer<? super Throwable> errorHandler = error -> { };
+        private int parallelism = 1;
+        private boolean virtualThreads;
+        private int subscriberBufferSize = Flow.defaultBufferSize();
+        private EventSubscription.OverflowPolicy overflowPolicy = EventSubscription.OverflowPolicy.DROP_OLDEST;
+        private Path spillDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+        /**
+         * @param client client for the relay or PDS to subscribe to
+         */
+        public Builder withClient(XrpcClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * @param checkpoints store for the cursor and per-DID CIDs; closed with the event system
+         */
+        public Builder withCheckpoints(CheckpointStore checkpoints) {
+            this.checkpoints = checkpoints;
+            return this;
+        }
+
+        public Builder withHandler(Consumer<? super FirehoseEvent> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        /**
+         * @param errorHandler receives error frames, undecodable frames, handler failures and
+         *     connection failures
+         */
+        public Builder withErrorHandler(Consumer<? super Throwable> errorHandler) {
+            this.errorHandler = Objects.requireNonNull(errorHandler, "errorHandler");
+            return this;
+        }
+
+        /**
+         * @param parallelism number of worker shards to handle events on; 1, the default, handles
+         *     them on the connection's thread
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Run the worker shards on virtual threads, for handlers that block on I/O
+         */
+        public Builder withVirtualThreads() {
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * @param bufferSize events a subscription holds in memory while its subscriber has no
+         *     demand; {@link Flow#defaultBufferSize()} by default
+         */
+        public Builder withSubscriberBufferSize(int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("Buffer size must be positive");
+            }
+            this.subscriberBufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param overflowPolicy what subscriptions do with events beyond their buffer; dropping the
+         *     oldest by default
+         */
+        public Builder withOverflowPolicy(EventSubscription.OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+            return this;
+        }
+
+        /**
+         * @param spillDirectory where {@link EventSubscription.OverflowPolicy#SPILL_TO_DISK} keeps its
+         *     temporary files; the system temporary directory by default
+         */
+        public Builder withSpillDirectory(Path spillDirectory) {
+            this.spillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory");
+            return this;
+        }
+
+        public EventSystem build() {
+            return new EventSystem(this);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.atproto.events;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * Runs tasks on a fixed set of worker shards such that tasks with the same key run one at a time,
+ * in the order they were submitted, while tasks with different keys run in parallel.
+ * <p>
+ * Keys are hashed to one of many partitions, and each partition is assigned to a shard. Every
+ * {@code rebalanceInterval} submissions the recent load of each shard is compared, and if one
+ * carries noticeably more than the rest, one of its partitions is reassigned to the least loaded
+ * shard. A partition only moves once its queued tasks have all finished, so no two tasks of a key
+ * can ever run at the same time or out of order. A single key that is hot on its own stays on one
+ * shard.
+ * <p>
+ * Each shard has a bounded queue, and {@link #submit} waits while the target queue is full, which
+ * passes back-pressure to the producer. Submissions are serialized.
+ */
+public final class PartitionedDispatcher implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_REBALANCE_INTERVAL = 10_000;
+    private static final int PARTITIONS_PER_SHARD = 16;
+    // A shard is rebalanced when its load is this much above the mean
+    private static final double IMBALANCE = 1.25;
+    private static final Task STOP = new Task(-1, () -> { });
+
+    private final Shard[] shards;
+    private final int[] assignment;
+    // Shard a partition should move to once it has no queued tasks, or -1
+    private final int[] target;
+    private final long[] load;
+    private final AtomicIntegerArray pending;
+    private final int mask;
+    private final int rebalanceInterval;
+    private final Consumer<? super Throwable> errorHandler;
+    private int submitted;
+    private long moves;
+    private boolean closed;
+
+    private record Task(int partition, Runnable action) {
+    }
+
+    private final class Shard implements Runnable {
+        final BlockingQueue<Task> queue;
+        final Thread thread;
+
+        Shard(int capacity, ThreadFactory factory) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = factory.newThread(this);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Task task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == STOP) {
+                    return;
+                }
+                try {
+                    task.action().run();
+                } catch (Throwable e) {
+                    errorHandler.accept(e);
+                } finally {
+                    pending.decrementAndGet(task.partition());
+                }
+            }
+        }
+    }
+
+    private PartitionedDispatcher(Builder builder) {
+        if (builder.shards < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        int partitions = Integer.highestOneBit(builder.shards * PARTITIONS_PER_SHARD - 1) << 1;
+        this.mask = partitions - 1;
+        this.assignment = new int[partitions];
+        this.target = new int[partitions];
+        this.load = new long[partitions];
+        this.pending = new AtomicIntegerArray(partitions);
+        for (int p = 0; p < partitions; p++) {
+            assignment[p] = p % builder.shards;
+            target[p] = -1;
+        }
+        this.rebalanceInterval = builder.rebalanceInterval;
+        this.errorHandler = builder.errorHandler;
+        ThreadFactory factory = builder.virtualThreads
+            ? Thread.ofVirtual().name("event-shard-", 0).factory()
+            : Thread.ofPlatform().name("event-shard-", 0).daemon().factory();
+        this.shards = new Shard[builder.shards];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(builder.queueCapacity, factory);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Queue a task behind the earlier tasks with the same key, waiting while its shard's queue is full
+     * @param key ordering key, e.g. the DID of the repository an event belongs to
+     * @param task the task
+     * @throws InterruptedException if interrupted while waiting for queue space
+     */
+    public synchronized void submit(String key, Runnable task) throws InterruptedException {
+        Objects.requireNonNull(task, "task");
+        if (closed) {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+        int partition = partition(key);
+        if (target[partition] >= 0 && pending.get(partition) == 0) {
+            move(partition);
+        }
+        Shard shard = shards[assignment[partition]];
+        Task queued = new Task(partition, task);
+        pending.incrementAndGet(partition);
+        try {
+            shard.queue.put(queued);
+        } catch (InterruptedException e) {
+            pending.decrementAndGet(partition);
+            throw e;
+        }
+        load[partition]++;
+        if (++submitted >= rebalanceInterval) {
+            submitted = 0;
+            rebalance();
+        }
+    }
+
+    private int partition(String key) {
+        int h = key != null ? key.hashCode() : 0;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void move(int partition) {
+        assignment[partition] = target[partition];
+        target[partition] = -1;
+        moves++;
+    }
+
+    private void rebalance() {
+        long[] shardLoad = new long[shards.length];
+        for (int p = 0; p < load.length; p++) {
+            // A partition waiting to move already counts as the target's, or every later check would
+            // pick another partition off the hot shard while the first waits for its queue to drain
+            shardLoad[target[p] >= 0 ? target[p] : assignment[p]] += load[p];
+        }
+        int hot = 0;
+        int cool = 0;
+        long total = 0;
+        for (int s = 0; s < shards.length; s++) {
+            total += shardLoad[s];
+            hot = shardLoad[s] > shardLoad[hot] ? s : hot;
+            cool = shardLoad[s] < shardLoad[cool] ? s : cool;
+        }
+        if (hot != cool && shardLoad[hot] > IMBALANCE * total / shards.length) {
+            // Move the largest partition of at most half the gap, so the cool shard does not become
+            // the hot one and the partition is not moved straight back
+            long gap = shardLoad[hot] - shardLoad[cool];
+            int best = -1;
+            for (int p = 0; p < load.length; p++) {
+                if (assignment[p] == hot && target[p] < 0 && load[p] > 0 && 2 * load[p] <= gap
+                        && (best < 0 || load[p] > load[best])) {
+                    best = p;
+                }
+            }
+            if (best >= 0) {
+                target[best] = cool;
+                if (pending.get(best) == 0) {
+                    move(best);
+                }
+            }
+        }
+        // Halve the counts so the load reflects recent submissions
+        for (int p = 0; p < load.length; p++) {
+            load[p] >>= 1;
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param key ordering key
+     * @return the shard tasks with this key currently run on
+     */
+    public synchronized int shardOf(String key) {
+        return assignment[partition(key)];
+    }
+
+    /**
+     * @return number of tasks queued on each shard, not counting the one running
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            depths[i] = shards[i].queue.size();
+        }
+        return depths;
+    }
+
+    /**
+     * @return number of partitions moved between shards so far
+     */
+    public synchronized long getRebalanceCount() {
+        return moves;
+    }
+
+    /**
+     * Stop accepting tasks, run the queued ones and wait for the workers to finish. If the
+     * thread is interrupted meanwhile, it keeps waiting and the interrupt status is set again on
+     * return.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Shard shard : shards) {
+                while (true) {
+                    try {
+                        shard.queue.put(STOP);
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        for (Shard shard : shards) {
+            while (true) {
+                try {
+                    shard.thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class Builder {
+        private int shards = Runtime.getRuntime().availableProcessors();
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private int rebalanceInterval = DEFAULT_REBALANCE_INTERVAL;
+        private boolean virtualThreads;
+        private Consumer<? super Throwable> errorHandler = error -> { };
+
+        /**
+         * @param shards number of workers; the number of processors by default
+         */
+        public Builder withShards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity tasks each shard can queue before {@link #submit} waits
+         */
+        public Builder withQueueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("Queue capacity must be positive");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * @param rebalanceInterval submissions between load checks
+         */
+        public Builder withRebalanceInterval(int rebalanceInterval) {
+            if (rebalanceInterval < 1) {
+                throw new IllegalArgumentException("Rebalance interval must be positive");
+            }
+            this.rebalanceInterval = rebalanceInterval;
+            return this;
+        }
+
+        /**
+         * Run each shard on a virtual thread instead of a platform thread, for tasks that block
+         * on I/O
+         */
+        public Builder withVirtualThreads() {
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * @param errorHandler receives exceptions thrown by tasks
+         */
+        public Builder withErrorHandler(Consumer<? super Throwable> errorHandler) {
+            this.errorHandler = Objects.requireNonNull(errorHandler, "errorHandler");
+            return this;
+        }
+
+        public PartitionedDispatcher build() {
+            return new PartitionedDispatcher(this);
+        }
+    }
+}
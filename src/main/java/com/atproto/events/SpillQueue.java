@@ -0,0 +1,86 @@
+package com.atproto.events;
+
+import com.atproto.api.sync.FirehoseEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FIFO queue of events in a temporary file, for subscribers that fall behind. Records are
+ * length-prefixed {@link FirehoseEvent#writeTo binary events}, appended at the end and read from
+ * the front; the file is truncated whenever the queue empties and deleted when closed. Nothing is
+ * forced to disk, since the queue does not outlive the process.
+ */
+final class SpillQueue implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    private long readPosition;
+    private long writePosition;
+    private int size;
+
+    SpillQueue(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "events-", ".spill");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(FirehoseEvent event) throws IOException {
+        bytes.reset();
+        out.writeInt(0);
+        event.writeTo(out);
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(0, record.remaining() - Integer.BYTES);
+        while (record.hasRemaining()) {
+            writePosition += channel.write(record, writePosition);
+        }
+        size++;
+    }
+
+    /**
+     * @return the oldest event, or null if the queue is empty
+     */
+    FirehoseEvent poll() throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        length.clear();
+        readFully(length, readPosition);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(record, readPosition + Integer.BYTES);
+        readPosition += Integer.BYTES + record.capacity();
+        if (--size == 0) {
+            channel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return FirehoseEvent.readFrom(new DataInputStream(new ByteArrayInputStream(record.array())));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Spill file truncated");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
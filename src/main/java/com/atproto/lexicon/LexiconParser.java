@@ -1,12 +1,19 @@
 package com.atproto.lexicon;
 
+import com.atproto.api.xrpc.JsonReader;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class LexiconParser {
     private final ObjectMapper objectMapper;
@@ -129,8 +136,9 @@ public class LexiconParser {
                 return false;
             }
 
-            for (String fieldName : oldProps.fieldNames()) {
-                if (!newProps.has(fieldName)) {
+            Iterator<String> fieldNames = oldProps.fieldNames();
+            while (fieldNames.hasNext()) {
+                if (!newProps.has(fieldNames.next())) {
                     return false;
                 }
             }
@@ -138,4 +146,101 @@ public class LexiconParser {
 
         return true;
     }
+
+    /**
+     * Parse the main definition of a query or procedure lexicon document
+     * @param lexiconJson lexicon document with {@code lexicon}, {@code id} and {@code defs.main}
+     * @return the method and its params
+     * @throws LexiconValidationException if the document is not a valid query or procedure
+     */
+    public MethodSchema parseMethod(String lexiconJson) {
+        Map<String, Object> document;
+        try {
+            document = new JsonReader(lexiconJson.getBytes(StandardCharsets.UTF_8)).readObject();
+        } catch (IOException e) {
+            throw new LexiconValidationException("Invalid lexicon JSON", e);
+        }
+        if (!Long.valueOf(1).equals(document.get("lexicon")) || !(document.get("id") instanceof String id)) {
+            throw new LexiconValidationException("Lexicon document needs \"lexicon\": 1 and an id");
+        }
+        Map<String, Object> main = object(object(document, "defs", id), "main", id);
+        if (main == null) {
+            throw new LexiconValidationException(id + " has no main definition");
+        }
+        MethodSchema.Type type = switch (String.valueOf(main.get("type"))) {
+            case "query" -> MethodSchema.Type.QUERY;
+            case "procedure" -> MethodSchema.Type.PROCEDURE;
+            default -> throw new LexiconValidationException(id + " is not a query or procedure");
+        };
+        List<MethodSchema.Param> params = new ArrayList<>();
+        Map<String, Object> parameters = object(main, "parameters", id);
+        if (parameters != null) {
+            Map<String, Object> properties = object(parameters, "properties", id);
+            List<?> required = parameters.get("required") instanceof List<?> list ? list : List.of();
+            if (properties != null) {
+                for (Map.Entry<String, Object> property : properties.entrySet()) {
+                    if (!(property.getValue() instanceof Map<?, ?>)) {
+                        throw new LexiconValidationException(id + " param " + property.getKey() + " is not an object");
+                    }
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> definition = (Map<String, Object>) property.getValue();
+                    params.add(parseParam(id, property.getKey(), definition, required.contains(property.getKey())));
+                }
+            }
+        }
+        return new MethodSchema(id, type, params);
+    }
+
+    private static MethodSchema.Param parseParam(String id, String name, Map<String, Object> definition, boolean required) {
+        MethodSchema.ParamType type = paramType(id, name, definition.get("type"));
+        MethodSchema.ParamType itemType = null;
+        Map<String, Object> constraints = definition;
+        if (type == MethodSchema.ParamType.ARRAY) {
+            Map<String, Object> items = object(definition, "items", id);
+            if (items == null) {
+                throw new LexiconValidationException(id + " array param " + name + " has no items");
+            }
+            itemType = paramType(id, name, items.get("type"));
+            if (itemType == MethodSchema.ParamType.ARRAY) {
+                throw new LexiconValidationException(id + " param " + name + " nests arrays");
+            }
+            constraints = items;
+        }
+        Set<Object> allowed = constraints.get("enum") instanceof List<?> values ? new HashSet<>(values) : null;
+        return new MethodSchema.Param(name, type, itemType, required, definition.get("default"),
+            longValue(constraints.get("minimum")), longValue(constraints.get("maximum")),
+            intValue(definition.get("minLength")), intValue(definition.get("maxLength")),
+            itemType != null ? intValue(constraints.get("minLength")) : null,
+            itemType != null ? intValue(constraints.get("maxLength")) : null, allowed);
+    }
+
+    private static MethodSchema.ParamType paramType(String id, String name, Object type) {
+        return switch (String.valueOf(type)) {
+            case "string" -> MethodSchema.ParamType.STRING;
+            case "integer" -> MethodSchema.ParamType.INTEGER;
+            case "boolean" -> MethodSchema.ParamType.BOOLEAN;
+            case "array" -> MethodSchema.ParamType.ARRAY;
+            default -> throw new LexiconValidationException(id + " param " + name + " has unsupported type " + type);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Map<String, Object> parent, String name, String id) {
+        if (parent == null) {
+            return null;
+        }
+        Object value = parent.get(name);
+        if (value != null && !(value instanceof Map<?, ?>)) {
+            throw new LexiconValidationException(id + ": " + name + " must be an object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static Long longValue(Object value) {
+        return value instanceof Long number ? number : null;
+    }
+
+    private static Integer intValue(Object value) {
+        return value instanceof Long number ? Math.toIntExact(number) : null;
+    }
 }
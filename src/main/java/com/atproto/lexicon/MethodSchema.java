@@ -0,0 +1,178 @@
+package com.atproto.lexicon;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The main definition of a query or procedure lexicon, reduced to what a server needs to
+ * dispatch a call and decode its params.
+ */
+public final class MethodSchema {
+
+    /**
+     * Lexicon def types that describe an XRPC method.
+     */
+    public enum Type {
+        QUERY, PROCEDURE
+    }
+
+    /**
+     * Primitive types allowed for params; arrays hold one of the others.
+     */
+    public enum ParamType {
+        STRING, INTEGER, BOOLEAN, ARRAY
+    }
+
+    private final String id;
+    private final Type type;
+    private final List<Param> params;
+
+    public MethodSchema(String id, Type type, List<Param> params) {
+        this.id = Objects.requireNonNull(id, "id");
+        this.type = Objects.requireNonNull(type, "type");
+        this.params = List.copyOf(params);
+    }
+
+    /**
+     * @return the NSID of the lexicon
+     */
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return params in declaration order
+     */
+    public List<Param> getParams() {
+        return params;
+    }
+
+    /**
+     * One declared param. Bounds that the lexicon leaves out are null.
+     */
+    public static final class Param {
+        private final String name;
+        private final ParamType type;
+        private final ParamType itemType;
+        private final boolean required;
+        private final Object defaultValue;
+        private final Long minimum;
+        private final Long maximum;
+        private final Integer minLength;
+        private final Integer maxLength;
+        private final Integer itemMinLength;
+        private final Integer itemMaxLength;
+        private final Set<Object> allowed;
+
+        /**
+         * @param name param name
+         * @param type param type
+         * @param itemType element type of arrays, null otherwise
+         * @param required whether the param must be present
+         * @param defaultValue value used when absent, or null
+         * @param minimum smallest allowed integer, or null
+         * @param maximum largest allowed integer, or null
+         * @param minLength minimum string length in UTF-8 bytes or array length, or null
+         * @param maxLength maximum string length in UTF-8 bytes or array length, or null
+         * @param allowed closed set of allowed values ({@code enum}), or null
+         */
+        public Param(String name, ParamType type, ParamType itemType, boolean required, Object defaultValue,
+                     Long minimum, Long maximum, Integer minLength, Integer maxLength, Set<Object> allowed) {
+            this(name, type, itemType, required, defaultValue, minimum, maximum, minLength, maxLength, null, null,
+                allowed);
+        }
+
+        /**
+         * @param name param name
+         * @param type param type
+         * @param itemType element type of arrays, null otherwise
+         * @param required whether the param must be present
+         * @param defaultValue value used when absent, or null
+         * @param minimum smallest allowed integer or array item, or null
+         * @param maximum largest allowed integer or array item, or null
+         * @param minLength minimum string length in UTF-8 bytes or array length, or null
+         * @param maxLength maximum string length in UTF-8 bytes or array length, or null
+         * @param itemMinLength minimum length in UTF-8 bytes of each string in an array, or null
+         * @param itemMaxLength maximum length in UTF-8 bytes of each string in an array, or null
+         * @param allowed closed set of allowed values ({@code enum}), or null
+         */
+        public Param(String name, ParamType type, ParamType itemType, boolean required, Object defaultValue,
+                     Long minimum, Long maximum, Integer minLength, Integer maxLength, Integer itemMinLength,
+                     Integer itemMaxLength, Set<Object> allowed) {
+            this.name = Objects.requireNonNull(name, "name");
+            this.type = Objects.requireNonNull(type, "type");
+            if (type == ParamType.ARRAY && (itemType == null || itemType == ParamType.ARRAY)) {
+                throw new IllegalArgumentException("Array param " + name + " needs a primitive item type");
+            }
+            this.itemType = itemType;
+            this.required = required;
+            this.defaultValue = defaultValue;
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.itemMinLength = itemMinLength;
+            this.itemMaxLength = itemMaxLength;
+            this.allowed = allowed != null ? Set.copyOf(allowed) : null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ParamType getType() {
+            return type;
+        }
+
+        public ParamType getItemType() {
+            return itemType;
+        }
+
+        public boolean isRequired() {
+            return required;
+        }
+
+        public Object getDefaultValue() {
+            return defaultValue;
+        }
+
+        public Long getMinimum() {
+            return minimum;
+        }
+
+        public Long getMaximum() {
+            return maximum;
+        }
+
+        public Integer getMinLength() {
+            return minLength;
+        }
+
+        public Integer getMaxLength() {
+            return maxLength;
+        }
+
+        /**
+         * @return minimum length in UTF-8 bytes of each string in an array, or null
+         */
+        public Integer getItemMinLength() {
+            return itemMinLength;
+        }
+
+        /**
+         * @return maximum length in UTF-8 bytes of each string in an array, or null
+         */
+        public Integer getItemMaxLength() {
+            return itemMaxLength;
+        }
+
+        public Set<Object> getAllowed() {
+            return allowed;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.atproto.security;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link RateLimiter} that allows a fixed number of requests per client in consecutive windows.
+ * <p>
+ * A client's window starts with its first request and its count resets once the window has
+ * passed. Windows of clients that have been quiet for a full window are dropped once more than
+ * a thousand clients are tracked, so memory follows the number of active clients.
+ */
+public final class FixedWindowRateLimiter implements RateLimiter {
+    private static final int SWEEP_THRESHOLD = 1024;
+
+    private final int limit;
+    private final long windowMillis;
+    private final Clock clock;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private static final class Window {
+        private long start;
+        private int count;
+        private long last;
+        // Set under the lock when swept; a caller holding a removed window must fetch a new one
+        private boolean removed;
+
+        Window(long now) {
+            this.last = now;
+        }
+    }
+
+    /**
+     * @param limit requests allowed per client per window
+     * @param window length of a window
+     */
+    public FixedWindowRateLimiter(int limit, Duration window) {
+        this(limit, window, Clock.systemUTC());
+    }
+
+    /**
+     * @param limit requests allowed per client per window
+     * @param window length of a window
+     * @param clock time source
+     */
+    public FixedWindowRateLimiter(int limit, Duration window, Clock clock) {
+        if (limit <= 0 || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Limit and window must be positive");
+        }
+        this.limit = limit;
+        this.windowMillis = window.toMillis();
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean canMakeRequest(String clientId) {
+        if (!isValid(clientId)) {
+            return false;
+        }
+        return getRequestCount(clientId) < limit;
+    }
+
+    @Override
+    public void recordRequest(String clientId) {
+        if (isValid(clientId)) {
+            count(clientId, false);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String clientId) {
+        return isValid(clientId) && count(clientId, true);
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getRequestCount(String clientId) {
+        Window window = clientId != null ? windows.get(clientId) : null;
+        if (window == null) {
+            return 0;
+        }
+        long now = clock.millis();
+        synchronized (window) {
+            return now - window.start >= windowMillis ? 0 : window.count;
+        }
+    }
+
+    @Override
+    public Instant getLastRequestTime(String clientId) {
+        Window window = clientId != null ? windows.get(clientId) : null;
+        if (window == null) {
+            return null;
+        }
+        synchronized (window) {
+            return Instant.ofEpochMilli(window.last);
+        }
+    }
+
+    @Override
+    public Instant getWindowReset(String clientId) {
+        Window window = clientId != null ? windows.get(clientId) : null;
+        long now = clock.millis();
+        if (window == null) {
+            return Instant.ofEpochMilli(now + windowMillis);
+        }
+        synchronized (window) {
+            long end = window.start + windowMillis;
+            return Instant.ofEpochMilli(end > now ? end : now + windowMillis);
+        }
+    }
+
+    private boolean count(String clientId, boolean enforce) {
+        long now = clock.millis();
+        while (true) {
+            Window window = windows.get(clientId);
+            if (window == null) {
+                if (windows.size() >= SWEEP_THRESHOLD) {
+                    sweep(now);
+                }
+                window = windows.computeIfAbsent(clientId, id -> new Window(now));
+            }
+            synchronized (window) {
+                if (window.removed) {
+                    // Swept after we fetched it; counting here would escape the limit
+                    continue;
+                }
+                if (now - window.start >= windowMillis) {
+                    window.start = now;
+                    window.count = 0;
+                }
+                if (enforce && window.count >= limit) {
+                    return false;
+                }
+                window.count++;
+                window.last = now;
+                return true;
+            }
+        }
+    }
+
+    private void sweep(long now) {
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            synchronized (window) {
+                if (now - window.last >= windowMillis && windows.remove(entry.getKey(), window)) {
+                    window.removed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(String clientId) {
+        return clientId != null && !clientId.isBlank();
+    }
+}
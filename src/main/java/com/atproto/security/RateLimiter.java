@@ -0,0 +1,55 @@
+package com.atproto.security;
+
+import java.time.Instant;
+
+/**
+ * Limits how many requests each client may make per time window.
+ * <p>
+ * Client ids are opaque, such as an account DID or a remote address. Blank ids are never
+ * allowed. Implementations must be thread-safe.
+ */
+public interface RateLimiter {
+
+    /**
+     * @param clientId client to check
+     * @return true if a request by the client now would be within its limit
+     */
+    boolean canMakeRequest(String clientId);
+
+    /**
+     * Count a request by the client against its limit
+     * @param clientId client making the request
+     */
+    void recordRequest(String clientId);
+
+    /**
+     * Check and count a request in one atomic step, so concurrent requests cannot all pass a
+     * check that only one of them fits
+     * @param clientId client making the request
+     * @return true if the request was within the limit and has been counted
+     */
+    boolean tryAcquire(String clientId);
+
+    /**
+     * @return requests allowed per client per window
+     */
+    int getLimit();
+
+    /**
+     * @param clientId client to look up
+     * @return requests counted in the client's current window
+     */
+    int getRequestCount(String clientId);
+
+    /**
+     * @param clientId client to look up
+     * @return time of the client's last counted request, or null if none is known
+     */
+    Instant getLastRequestTime(String clientId);
+
+    /**
+     * @param clientId client to look up
+     * @return when the client's current window ends and its count starts over
+     */
+    Instant getWindowReset(String clientId);
+}
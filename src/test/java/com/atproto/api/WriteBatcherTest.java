@@ -0,0 +1,162 @@
+package com.atproto.api;
+
+import com.atproto.api.common.Cid;
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.XrpcException;
+import com.atproto.api.xrpc.XrpcServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WriteBatcherTest {
+
+    private static final String REPO = "did:plc:abc";
+    private static final String POST = "app.bsky.feed.post";
+
+    private final List<List<Map<String, Object>>> batches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextKey = new AtomicInteger();
+    private XrpcServer server;
+    private AtpAgent agent;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        server = new XrpcServer.Builder()
+            .withProcedure("com.atproto.repo.applyWrites", call -> {
+                Map<String, Object> input = call.getInput();
+                List<Map<String, Object>> writes = (List<Map<String, Object>>) input.get("writes");
+                batches.add(writes);
+                if (writes.stream().anyMatch(write -> "invalid".equals(write.get("rkey")))) {
+                    throw new XrpcException(400, "InvalidRecord", "Bad record");
+                }
+                List<Object> results = new ArrayList<>();
+                for (Map<String, Object> write : writes) {
+                    String type = (String) write.get("$type");
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    if (type.endsWith("#delete")) {
+                        result.put("$type", "com.atproto.repo.applyWrites#deleteResult");
+                    } else {
+                        String rkey = write.get("rkey") != null ? (String) write.get("rkey") : "k" + nextKey.getAndIncrement();
+                        result.put("$type", type + "Result");
+                        result.put("uri", "at://" + input.get("repo") + "/" + write.get("collection") + "/" + rkey);
+                        result.put("cid", cid(rkey).toString());
+                        result.put("validationStatus", "valid");
+                    }
+                    results.add(result);
+                }
+                call.respond(Map.of("results", results));
+            })
+            .build()
+            .start();
+        agent = new AtpAgent(new XrpcClient.Builder().withServiceUri(server.getUri()).build());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    private static Cid cid(String rkey) {
+        return Cid.hash(Cid.DAG_CBOR, rkey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, Object> post(String text) {
+        return Map.of("$type", POST, "text", text, "createdAt", "2024-01-31T12:00:00.000Z");
+    }
+
+    @Test
+    public void testSendsFullBatchesAndFlushesRemainder() throws Exception {
+        WriteBatcher batcher = agent.writeBatcher(REPO).withMaxBatchSize(3).withLinger(Duration.ofMinutes(1)).build();
+        List<CompletableFuture<WriteBatcher.Result>> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            results.add(batcher.create(POST, post("post " + i)));
+        }
+
+        CompletableFuture.allOf(results.subList(0, 6).toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertThat(batcher.getPendingCount()).isEqualTo(1);
+        assertThat(results.get(6)).isNotDone();
+
+        batcher.flush().get(5, TimeUnit.SECONDS);
+        assertThat(batches).extracting(List::size).containsExactly(3, 3, 1);
+        for (int i = 0; i < 7; i++) {
+            WriteBatcher.Result result = results.get(i).get();
+            assertThat(result.getUri()).isEqualTo("at://" + REPO + "/" + POST + "/k" + i);
+            assertThat(result.getCid()).isEqualTo(cid("k" + i));
+            assertThat(result.getValidationStatus()).isEqualTo("valid");
+        }
+        assertThat(batches.get(0).get(0)).containsEntry("$type", "com.atproto.repo.applyWrites#create")
+            .containsEntry("collection", POST)
+            .containsEntry("value", post("post 0"))
+            .doesNotContainKey("rkey");
+    }
+
+    @Test
+    public void testSendsAfterLingerTime() throws Exception {
+        WriteBatcher batcher = agent.writeBatcher(REPO).withLinger(Duration.ofMillis(20)).build();
+        CompletableFuture<WriteBatcher.Result> first = batcher.create(POST, post("a"));
+        CompletableFuture<WriteBatcher.Result> second = batcher.create(POST, "self", post("b"));
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getUri()).endsWith("/k0");
+        assertThat(second.get(5, TimeUnit.SECONDS).getUri()).isEqualTo("at://" + REPO + "/" + POST + "/self");
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void testMixesUpdatesAndDeletes() throws Exception {
+        CompletableFuture<WriteBatcher.Result> updated;
+        CompletableFuture<WriteBatcher.Result> deleted;
+        try (WriteBatcher batcher = agent.newWriteBatcher(REPO)) {
+            updated = batcher.update("app.bsky.actor.profile", "self", Map.of("displayName", "Alice"));
+            deleted = batcher.delete(POST, "old");
+        }
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).extracting(write -> write.get("$type"))
+            .containsExactly("com.atproto.repo.applyWrites#update", "com.atproto.repo.applyWrites#delete");
+        assertThat(batches.get(0).get(1)).doesNotContainKey("value");
+        assertThat(updated.get().getCid()).isEqualTo(cid("self"));
+        assertThat(deleted.get().getUri()).isEqualTo("at://" + REPO + "/" + POST + "/old");
+        assertThat(deleted.get().getCid()).isNull();
+    }
+
+    @Test
+    public void testFailedBatchFailsEveryWrite() throws Exception {
+        WriteBatcher batcher = agent.writeBatcher(REPO).withMaxBatchSize(2).withLinger(Duration.ofMinutes(1)).build();
+        CompletableFuture<WriteBatcher.Result> good = batcher.create(POST, post("ok"));
+        CompletableFuture<WriteBatcher.Result> bad = batcher.create(POST, "invalid", post("bad"));
+        CompletableFuture<WriteBatcher.Result> later = batcher.create(POST, post("later"));
+        batcher.flush().get(5, TimeUnit.SECONDS);
+
+        for (CompletableFuture<WriteBatcher.Result> result : List.of(good, bad)) {
+            assertThatThrownBy(result::get).isInstanceOf(ExecutionException.class)
+                .cause().isInstanceOfSatisfying(XrpcException.class, e -> assertThat(e.getCode()).isEqualTo("InvalidRecord"));
+        }
+        assertThat(later.get().getUri()).endsWith("/k0");
+    }
+
+    @Test
+    public void testRejectsWritesAfterClose() {
+        WriteBatcher batcher = agent.newWriteBatcher(REPO);
+        batcher.close();
+
+        assertThatThrownBy(() -> batcher.create(POST, post("late"))).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> agent.writeBatcher(REPO).withMaxBatchSize(WriteBatcher.MAX_BATCH_SIZE + 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,37 @@
+package com.atproto.api.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CidTest {
+
+    @Test
+    public void testHashesRawContentToKnownCid() {
+        Cid cid = Cid.hash(Cid.RAW, "hello world".getBytes(StandardCharsets.UTF_8));
+        assertThat(cid.toString()).isEqualTo("bafkreifzjut3te2nhyekklss27nh3k72ysco7y32koao5eei66wof36n5e");
+        assertThat(cid.getCodec()).isEqualTo(Cid.RAW);
+    }
+
+    @Test
+    public void testParsesAndDecodesRoundTrip() {
+        String text = "bafyreihdwdcefgh4dqkjv67uzcmw7ojee6xedzdetojuzjevtenxquvyku";
+        Cid cid = Cid.parse(text);
+
+        assertThat(cid.getCodec()).isEqualTo(Cid.DAG_CBOR);
+        assertThat(cid.toString()).isEqualTo(text);
+        assertThat(Cid.decode(cid.toBytes())).isEqualTo(cid).hasSameHashCodeAs(cid);
+        assertThat(cid).isEqualTo(Cid.hash(Cid.DAG_CBOR, new byte[0]));
+    }
+
+    @Test
+    public void testRejectsUnsupportedCids() {
+        assertThatThrownBy(() -> Cid.parse("QmYwAPJzv5CZsnA625s3Xf2nemtYgPpHdWEz79ojWnPbdG"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cid.parse("bafy!")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cid.of(Cid.RAW, new byte[16])).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,74 @@
+package com.atproto.api.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NsidTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "com.atproto.identity.resolveHandle",
+        "app.bsky.feed.getTimeline",
+        "com.example.fooBar",
+        "net.users.bob.ping",
+        "a-0.b-1.c",
+        "a.b.c",
+        "cn.8.lex.stuff",
+        "com.exa-mple.fooBarV2"
+    })
+    public void testAcceptsValidNsids(String nsid) {
+        assertThat(Nsid.isValid(nsid)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "invalid.method",
+        "com.example",
+        "com..example.foo",
+        ".com.example.foo",
+        "com.example.foo.",
+        "com.example.foo-bar",
+        "com.example.3foo",
+        "1com.example.foo",
+        "com.-example.foo",
+        "com.example-.foo",
+        "com.exa_mple.foo",
+        "com.example.fo o",
+        "com.example.föo"
+    })
+    public void testRejectsInvalidNsids(String nsid) {
+        assertThat(Nsid.isValid(nsid)).isFalse();
+    }
+
+    @Test
+    public void testEnforcesLengthLimits() {
+        String segment = "a".repeat(63);
+        assertThat(Nsid.isValid("com." + segment + ".foo")).isTrue();
+        assertThat(Nsid.isValid("com." + segment + "a.foo")).isFalse();
+        assertThat(Nsid.isValid("com.example." + "a".repeat(64))).isFalse();
+        String longAuthority = String.join(".", segment, segment, segment, "a".repeat(62));
+        assertThat(Nsid.isValid(longAuthority + ".foo")).isFalse();
+        assertThat(Nsid.isValid(null)).isFalse();
+    }
+
+    @Test
+    public void testInternsToStableDenseIds() {
+        Nsid first = Nsid.intern("com.atproto.test.internFirst");
+        Nsid second = Nsid.intern("com.atproto.test.internSecond");
+
+        assertThat(Nsid.intern("com.atproto.test.internFirst")).isSameAs(first);
+        assertThat(second.id()).isNotEqualTo(first.id());
+        assertThat(Nsid.byId(first.id())).isSameAs(first);
+        assertThat(Nsid.lookup("com.atproto.test.internSecond")).isSameAs(second);
+        assertThat(Nsid.lookup("com.atproto.test.neverInterned")).isNull();
+        assertThat(Nsid.internedCount()).isGreaterThan(Math.max(first.id(), second.id()));
+        assertThat(first.getAuthority()).isEqualTo("com.atproto.test");
+        assertThat(first.getName()).isEqualTo("internFirst");
+        assertThatThrownBy(() -> Nsid.intern("not-an-nsid")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
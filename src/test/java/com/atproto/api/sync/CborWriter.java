@@ -0,0 +1,85 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.common.Cid;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal DAG-CBOR encoder for building test frames.
+ */
+public final class CborWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    public static byte[] frame(Map<String, ?> header, Map<String, ?> body) {
+        return new CborWriter().write(header).write(body).toByteArray();
+    }
+
+    public CborWriter write(Object value) {
+        if (value == null) {
+            out.write(0xf6);
+        } else if (value instanceof Boolean b) {
+            out.write(b ? 0xf5 : 0xf4);
+        } else if (value instanceof Number n) {
+            long v = n.longValue();
+            if (v < 0) {
+                head(1, -1 - v);
+            } else {
+                head(0, v);
+            }
+        } else if (value instanceof String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            head(3, bytes.length);
+            out.writeBytes(bytes);
+        } else if (value instanceof byte[] bytes) {
+            head(2, bytes.length);
+            out.writeBytes(bytes);
+        } else if (value instanceof Cid cid) {
+            byte[] bytes = cid.toBytes();
+            head(6, 42);
+            head(2, bytes.length + 1);
+            out.write(0);
+            out.writeBytes(bytes);
+        } else if (value instanceof List<?> list) {
+            head(4, list.size());
+            list.forEach(this::write);
+        } else if (value instanceof Map<?, ?> map) {
+            head(5, map.size());
+            map.forEach((k, v) -> write(k).write(v));
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + value.getClass());
+        }
+        return this;
+    }
+
+    private void head(int type, long value) {
+        int major = type << 5;
+        if (value < 24) {
+            out.write(major | (int) value);
+        } else if (value < 0x100) {
+            out.write(major | 24);
+            out.write((int) value);
+        } else if (value < 0x10000) {
+            out.write(major | 25);
+            writeBigEndian(value, 2);
+        } else if (value < 0x100000000L) {
+            out.write(major | 26);
+            writeBigEndian(value, 4);
+        } else {
+            out.write(major | 27);
+            writeBigEndian(value, 8);
+        }
+    }
+
+    private void writeBigEndian(long value, int bytes) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.write((int) (value >>> (i * 8)));
+        }
+    }
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
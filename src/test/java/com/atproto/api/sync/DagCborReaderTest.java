@@ -0,0 +1,111 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.common.Cid;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DagCborReaderTest {
+
+    private static final Cid CID = Cid.hash(Cid.DAG_CBOR, "record".getBytes(StandardCharsets.UTF_8));
+
+    private static DagCborReader reader(Object... values) {
+        CborWriter writer = new CborWriter();
+        for (Object value : values) {
+            writer.write(value);
+        }
+        return new DagCborReader(ByteBuffer.wrap(writer.toByteArray()));
+    }
+
+    @Test
+    public void testReadsScalarsAtEveryWidth() {
+        DagCborReader reader = reader(0L, 23L, 24L, 255L, 256L, 65536L, 1L << 32, Long.MAX_VALUE, -1L, -500L,
+            Long.MIN_VALUE, true, false, null, "héllo");
+
+        for (long expected : new long[] {0, 23, 24, 255, 256, 65536, 1L << 32, Long.MAX_VALUE, -1, -500, Long.MIN_VALUE}) {
+            assertThat(reader.readLong()).isEqualTo(expected);
+        }
+        assertThat(reader.readBoolean()).isTrue();
+        assertThat(reader.readBoolean()).isFalse();
+        assertThat(reader.readNull()).isTrue();
+        assertThat(reader.readNull()).isFalse();
+        assertThat(reader.readText()).isEqualTo("héllo");
+        assertThat(reader.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void testReadsBytesAsSlicesAndCidLinks() {
+        byte[] content = {1, 2, 3, 4};
+        byte[] encoded = new CborWriter().write(content).write(CID).toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        DagCborReader reader = new DagCborReader(buffer);
+
+        ByteBuffer bytes = reader.readBytes();
+        assertThat(bytes.isReadOnly()).isTrue();
+        assertThat(bytes.remaining()).isEqualTo(4);
+        encoded[1] = 9;
+        assertThat(bytes.get(0)).isEqualTo((byte) 9);
+        assertThat(reader.readCid()).isEqualTo(CID);
+        assertThat(buffer.position()).isZero();
+    }
+
+    @Test
+    public void testMatchesKeysInPlaceAndSkipsNestedValues() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("skipped", Map.of("nested", List.of(1L, "two", CID, Map.of("deep", new byte[3]))));
+        map.put("wanted", "yes");
+        byte[][] keys = {"other".getBytes(StandardCharsets.UTF_8), "wanted".getBytes(StandardCharsets.UTF_8)};
+        DagCborReader reader = reader(map);
+
+        assertThat(reader.readMapHeader()).isEqualTo(2);
+        assertThat(reader.readKey(keys)).isEqualTo(-1);
+        reader.skip();
+        assertThat(reader.readKey(keys)).isEqualTo(1);
+        assertThat(reader.readText()).isEqualTo("yes");
+        assertThat(reader.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void testReadsGenericValues() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("text", "a");
+        map.put("list", Arrays.asList(1L, null, false));
+        map.put("link", CID);
+        map.put("bytes", new byte[] {7});
+
+        Object value = reader(map).readValue();
+
+        assertThat(value).isInstanceOf(Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decoded = (Map<String, Object>) value;
+        assertThat(decoded).containsEntry("text", "a").containsEntry("list", Arrays.asList(1L, null, false))
+            .containsEntry("link", CID);
+        assertThat((byte[]) decoded.get("bytes")).containsExactly(7);
+    }
+
+    @Test
+    public void testRejectsMalformedInput() {
+        assertThatThrownBy(() -> new DagCborReader(ByteBuffer.wrap(new byte[] {0x7f})).readText())
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Indefinite");
+        assertThatThrownBy(() -> new DagCborReader(ByteBuffer.wrap(new byte[] {0x65, 'a', 'b'})).readText())
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("end of input");
+        assertThatThrownBy(() -> new DagCborReader(ByteBuffer.wrap(new byte[] {0x5a, 0x7f, 0, 0, 0})).readBytes())
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("end of input");
+        assertThatThrownBy(() -> reader("text").readLong())
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("major type");
+        assertThatThrownBy(() -> new DagCborReader(ByteBuffer.wrap(new byte[] {(byte) 0xc1, 0})).skip())
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("CID");
+        byte[] deep = new byte[100];
+        Arrays.fill(deep, (byte) 0x81);
+        assertThatThrownBy(() -> new DagCborReader(ByteBuffer.wrap(deep)).readValue())
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("too deep");
+    }
+}
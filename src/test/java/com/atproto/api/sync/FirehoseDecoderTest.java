@@ -0,0 +1,201 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.common.Cid;
+import com.atproto.api.xrpc.XrpcException;
+import com.atproto.api.xrpc.XrpcParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FirehoseDecoderTest {
+
+    private static final String DID = "did:plc:ewvi7nxzyoun6zhxrhs64oiz";
+    private static final Cid COMMIT = Cid.hash(Cid.DAG_CBOR, "commit".getBytes(StandardCharsets.UTF_8));
+    private static final Cid RECORD = Cid.hash(Cid.DAG_CBOR, "record".getBytes(StandardCharsets.UTF_8));
+    private static final Cid BLOB = Cid.hash(Cid.RAW, "blob".getBytes(StandardCharsets.UTF_8));
+
+    private final FirehoseDecoder decoder = new FirehoseDecoder();
+
+    public static Map<String, Object> commitBody(long seq, byte[] blocks) {
+        Map<String, Object> create = new LinkedHashMap<>();
+        create.put("action", "create");
+        create.put("path", "app.bsky.feed.post/3k2a");
+        create.put("cid", RECORD);
+        Map<String, Object> delete = new LinkedHashMap<>();
+        delete.put("action", "delete");
+        delete.put("path", "app.bsky.feed.like/3k2b");
+        delete.put("cid", null);
+        delete.put("prev", RECORD);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("seq", seq);
+        body.put("rebase", false);
+        body.put("tooBig", false);
+        body.put("repo", DID);
+        body.put("commit", COMMIT);
+        body.put("rev", "3k2c");
+        body.put("since", null);
+        body.put("blocks", blocks);
+        body.put("ops", List.of(create, delete));
+        body.put("blobs", List.of(BLOB));
+        body.put("time", "2024-01-31T12:00:00.000Z");
+        return body;
+    }
+
+    public static byte[] message(String type, Map<String, ?> body) {
+        return CborWriter.frame(Map.of("op", 1, "t", type), body);
+    }
+
+    @Test
+    public void testDecodesCommit() {
+        byte[] frame = message("#commit", commitBody(42, new byte[] {1, 2, 3}));
+
+        FirehoseEvent event = decoder.decode(ByteBuffer.wrap(frame));
+
+        assertThat(event).isInstanceOfSatisfying(FirehoseEvent.Commit.class, commit -> {
+            assertThat(commit.getSeq()).isEqualTo(42);
+            assertThat(commit.getRepo()).isEqualTo(DID);
+            assertThat(commit.getCommit()).isEqualTo(COMMIT);
+            assertThat(commit.getRev()).isEqualTo("3k2c");
+            assertThat(commit.getSince()).isNull();
+            assertThat(commit.isTooBig()).isFalse();
+            assertThat(commit.getTime()).isEqualTo("2024-01-31T12:00:00.000Z");
+            assertThat(commit.getBlocks().remaining()).isEqualTo(3);
+            assertThat(commit.getBlobs()).containsExactly(BLOB);
+            assertThat(commit.getOps()).hasSize(2);
+            FirehoseEvent.RepoOp create = commit.getOps().get(0);
+            assertThat(create.getAction()).isEqualTo(FirehoseEvent.RepoOp.Action.CREATE);
+            assertThat(create.getPath()).isEqualTo("app.bsky.feed.post/3k2a");
+            assertThat(create.getCid()).isEqualTo(RECORD);
+            FirehoseEvent.RepoOp delete = commit.getOps().get(1);
+            assertThat(delete.getAction()).isEqualTo(FirehoseEvent.RepoOp.Action.DELETE);
+            assertThat(delete.getCid()).isNull();
+            assertThat(delete.getPrev()).isEqualTo(RECORD);
+        });
+    }
+
+    @Test
+    public void testDecodesIdentityAccountAndInfo() {
+        Map<String, Object> account = new LinkedHashMap<>();
+        account.put("seq", 8L);
+        account.put("did", DID);
+        account.put("time", "2024-01-31T12:00:00.000Z");
+        account.put("active", false);
+        account.put("status", "takendown");
+
+        FirehoseEvent identity = decoder.decode(ByteBuffer.wrap(message("#identity",
+            Map.of("seq", 7L, "did", DID, "time", "2024-01-31T12:00:00.000Z", "handle", "alice.test"))));
+        FirehoseEvent accountEvent = decoder.decode(ByteBuffer.wrap(message("#account", account)));
+        FirehoseEvent info = decoder.decode(ByteBuffer.wrap(message("#info",
+            Map.of("name", "OutdatedCursor", "message", "Cursor is too old"))));
+
+        assertThat(identity).isInstanceOfSatisfying(FirehoseEvent.Identity.class, e -> {
+            assertThat(e.getSeq()).isEqualTo(7);
+            assertThat(e.getDid()).isEqualTo(DID);
+            assertThat(e.getHandle()).isEqualTo("alice.test");
+        });
+        assertThat(accountEvent).isInstanceOfSatisfying(FirehoseEvent.Account.class, e -> {
+            assertThat(e.isActive()).isFalse();
+            assertThat(e.getStatus()).isEqualTo("takendown");
+        });
+        assertThat(info).isInstanceOfSatisfying(FirehoseEvent.Info.class, e -> {
+            assertThat(e.getSeq()).isEqualTo(-1);
+            assertThat(e.getName()).isEqualTo("OutdatedCursor");
+            assertThat(e.getMessage()).isEqualTo("Cursor is too old");
+        });
+    }
+
+    @Test
+    public void testIgnoresUnknownTypesAndFields() {
+        Map<String, Object> body = new LinkedHashMap<>(Map.of("seq", 9L, "did", DID));
+        body.put("future", Map.of("nested", List.of(1L, 2L)));
+
+        assertThat(decoder.decode(ByteBuffer.wrap(message("#labels", Map.of("seq", 1L))))).isNull();
+        assertThat(decoder.decode(ByteBuffer.wrap(message("#identity", body))))
+            .isInstanceOfSatisfying(FirehoseEvent.Identity.class, e -> assertThat(e.getHandle()).isNull());
+    }
+
+    @Test
+    public void testThrowsErrorFrames() {
+        byte[] frame = CborWriter.frame(Map.of("op", -1),
+            Map.of("error", "FutureCursor", "message", "Cursor in the future"));
+
+        assertThatThrownBy(() -> decoder.decode(ByteBuffer.wrap(frame)))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getCode()).isEqualTo("FutureCursor");
+                assertThat(e.getMessage()).contains("Cursor in the future");
+            });
+    }
+
+    @Test
+    public void testRejectsMalformedFrames() {
+        byte[] frame = message("#commit", commitBody(1, new byte[16]));
+
+        assertThatThrownBy(() -> decoder.decode(ByteBuffer.wrap(Arrays.copyOf(frame, frame.length - 40))))
+            .isInstanceOf(XrpcParseException.class);
+        assertThatThrownBy(() -> decoder.decode(ByteBuffer.wrap(message("#commit", Map.of("seq", 1L)))))
+            .isInstanceOf(XrpcParseException.class).hasMessageContaining("repo");
+        assertThatThrownBy(() -> decoder.decode(ByteBuffer.wrap(CborWriter.frame(Map.of("op", 2), Map.of()))))
+            .isInstanceOf(XrpcParseException.class).hasMessageContaining("op 2");
+    }
+
+    @Test
+    public void testDetachedCommitOutlivesFrame() {
+        byte[] frame = message("#commit", commitBody(7, new byte[] {1, 2, 3}));
+        FirehoseEvent.Commit commit = (FirehoseEvent.Commit) decoder.decode(ByteBuffer.wrap(frame));
+        FirehoseEvent.Commit detached = commit.detach();
+        Arrays.fill(frame, (byte) 0);
+
+        assertThat(detached.getSeq()).isEqualTo(7);
+        assertThat(detached.getRepo()).isEqualTo(DID);
+        assertThat(detached.getBlocks()).isEqualTo(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        assertThat(detached.getBlocks().isReadOnly()).isTrue();
+        assertThat(commit.getBlocks()).isNotEqualTo(detached.getBlocks());
+    }
+
+    @Test
+    public void testBinaryFormRoundTrips() throws IOException {
+        FirehoseEvent.Commit commit = (FirehoseEvent.Commit) decoder.decode(
+            ByteBuffer.wrap(message("#commit", commitBody(9, new byte[] {4, 5}))));
+        FirehoseEvent.Account account = (FirehoseEvent.Account) decoder.decode(ByteBuffer.wrap(message("#account",
+            Map.of("seq", 10L, "did", DID, "active", true))));
+
+        FirehoseEvent.Commit commitCopy = (FirehoseEvent.Commit) roundTrip(commit);
+        assertThat(commitCopy.getSeq()).isEqualTo(9);
+        assertThat(commitCopy.getTime()).isEqualTo(commit.getTime());
+        assertThat(commitCopy.getRepo()).isEqualTo(DID);
+        assertThat(commitCopy.getCommit()).isEqualTo(COMMIT);
+        assertThat(commitCopy.getSince()).isNull();
+        assertThat(commitCopy.getBlocks()).isEqualTo(ByteBuffer.wrap(new byte[] {4, 5}));
+        assertThat(commitCopy.getOps()).hasSize(2);
+        assertThat(commitCopy.getOps().get(1).getAction()).isEqualTo(FirehoseEvent.RepoOp.Action.DELETE);
+        assertThat(commitCopy.getOps().get(1).getCid()).isNull();
+        assertThat(commitCopy.getOps().get(1).getPrev()).isEqualTo(RECORD);
+        assertThat(commitCopy.getBlobs()).containsExactly(BLOB);
+
+        assertThat(roundTrip(account)).isInstanceOfSatisfying(FirehoseEvent.Account.class, e -> {
+            assertThat(e.getSeq()).isEqualTo(10);
+            assertThat(e.getDid()).isEqualTo(DID);
+            assertThat(e.isActive()).isTrue();
+            assertThat(e.getStatus()).isNull();
+        });
+    }
+
+    private static FirehoseEvent roundTrip(FirehoseEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        event.writeTo(new DataOutputStream(bytes));
+        return FirehoseEvent.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
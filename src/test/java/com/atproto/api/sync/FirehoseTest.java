@@ -0,0 +1,181 @@
+package com.atproto.api.sync;
+
+import com.atproto.api.AtpAgent;
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.XrpcException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FirehoseTest {
+
+    private ServerSocket serverSocket;
+    private final CompletableFuture<String> requestLine = new CompletableFuture<>();
+    private final List<String> requestHeaders = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Serve a single WebSocket connection that sends the given frames, each split into the given
+     * number of fragments, then closes
+     */
+    private URI serve(List<byte[]> frames, int fragments) throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().start(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                requestLine.complete(in.readLine());
+                String key = null;
+                for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                    requestHeaders.add(line);
+                    if (line.regionMatches(true, 0, "Sec-WebSocket-Key:", 0, 18)) {
+                        key = line.substring(18).trim();
+                    }
+                }
+                byte[] sha1 = MessageDigest.getInstance("SHA-1")
+                    .digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes(StandardCharsets.ISO_8859_1));
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + Base64.getEncoder().encodeToString(sha1) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+                for (byte[] frame : frames) {
+                    int size = (frame.length + fragments - 1) / fragments;
+                    for (int i = 0, off = 0; i < fragments; i++, off += size) {
+                        int length = Math.max(0, Math.min(size, frame.length - off));
+                        writeFrame(out, i == fragments - 1, i == 0 ? 0x2 : 0x0, frame, off, length);
+                    }
+                }
+                writeFrame(out, true, 0x8, new byte[] {0x03, (byte) 0xe8}, 0, 2);
+                out.flush();
+                socket.getInputStream().readAllBytes();
+            } catch (Exception e) {
+                requestLine.completeExceptionally(e);
+            }
+        });
+        return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort());
+    }
+
+    private static void writeFrame(OutputStream out, boolean fin, int opcode, byte[] data, int off, int length)
+            throws IOException {
+        out.write((fin ? 0x80 : 0) | opcode);
+        if (length < 126) {
+            out.write(length);
+        } else if (length < 0x10000) {
+            out.write(126);
+            out.write(length >>> 8);
+            out.write(length);
+        } else {
+            out.write(127);
+            for (int i = 7; i >= 0; i--) {
+                out.write((int) ((long) length >>> (i * 8)));
+            }
+        }
+        out.write(data, off, length);
+    }
+
+    private static final class Recorder implements Firehose.Handler {
+        final List<FirehoseEvent> events = new CopyOnWriteArrayList<>();
+        final List<byte[]> blocks = new CopyOnWriteArrayList<>();
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Integer> closed = new CompletableFuture<>();
+
+        @Override
+        public void onEvent(FirehoseEvent event) {
+            events.add(event);
+            if (event instanceof FirehoseEvent.Commit commit) {
+                byte[] copy = new byte[commit.getBlocks().remaining()];
+                commit.getBlocks().get(copy);
+                blocks.add(copy);
+            }
+            if (event.getSeq() == 13) {
+                throw new IllegalStateException("handler failed");
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            errors.add(error);
+        }
+
+        @Override
+        public void onClose(int statusCode, String reason) {
+            closed.complete(statusCode);
+        }
+    }
+
+    @Test
+    public void testDeliversEventsAndErrors() throws Exception {
+        List<byte[]> frames = List.of(
+            FirehoseDecoderTest.message("#commit", FirehoseDecoderTest.commitBody(11, new byte[] {5, 6})),
+            FirehoseDecoderTest.message("#labels", Map.of("seq", 99L)),
+            FirehoseDecoderTest.message("#identity", Map.of("seq", 12L, "did", "did:plc:a")),
+            FirehoseDecoderTest.message("#identity", Map.of("seq", 13L, "did", "did:plc:b")),
+            new byte[] {(byte) 0xa1, 0x61},
+            CborWriter.frame(Map.of("op", -1), Map.of("error", "ConsumerTooSlow", "message", "Too slow")));
+        XrpcClient client = new XrpcClient.Builder().withServiceUri(serve(frames, 1)).withAccessToken("token").build();
+        Recorder recorder = new Recorder();
+
+        Firehose firehose = new AtpAgent(client).subscribeRepos(10L, recorder).get(5, TimeUnit.SECONDS);
+
+        assertThat(recorder.closed.get(5, TimeUnit.SECONDS)).isEqualTo(1000);
+        assertThat(requestLine.get()).startsWith("GET /xrpc/com.atproto.sync.subscribeRepos?cursor=10 ");
+        assertThat(requestHeaders).anyMatch(header -> header.equalsIgnoreCase("Authorization: Bearer token"));
+        assertThat(recorder.events).extracting(FirehoseEvent::getSeq).containsExactly(11L, 12L, 13L);
+        assertThat(recorder.blocks).singleElement().isEqualTo(new byte[] {5, 6});
+        assertThat(recorder.errors).hasSize(3);
+        assertThat(recorder.errors.get(0)).isInstanceOf(IllegalStateException.class);
+        assertThat(recorder.errors.get(2)).isInstanceOfSatisfying(XrpcException.class,
+            e -> assertThat(e.getCode()).isEqualTo("ConsumerTooSlow"));
+        assertThat(firehose.getLastSeq()).isEqualTo(12);
+        firehose.close();
+    }
+
+    @Test
+    public void testAssemblesFragmentedFrames() throws Exception {
+        List<byte[]> frames = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] blocks = new byte[100_000 * (i + 1)];
+            for (int j = 0; j < blocks.length; j++) {
+                blocks[j] = (byte) (j * 31 + i);
+            }
+            expected.add(blocks);
+            frames.add(FirehoseDecoderTest.message("#commit", FirehoseDecoderTest.commitBody(i, blocks)));
+        }
+        XrpcClient client = new XrpcClient.Builder().withServiceUri(serve(frames, 4)).build();
+        Recorder recorder = new Recorder();
+
+        Firehose firehose = new Firehose.Builder().withClient(client).withHandler(recorder).build().connect()
+            .get(5, TimeUnit.SECONDS);
+
+        assertThat(recorder.closed.get(5, TimeUnit.SECONDS)).isEqualTo(1000);
+        assertThat(requestLine.get()).startsWith("GET /xrpc/com.atproto.sync.subscribeRepos ");
+        assertThat(recorder.errors).isEmpty();
+        assertThat(recorder.blocks).containsExactlyElementsOf(expected);
+        assertThat(firehose.getLastSeq()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,182 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveRateLimiterTest {
+
+    private static final String HOST = "pds.example.com";
+    private static final XrpcRequest REQUEST = new XrpcRequest.Builder()
+        .withMethod("app.bsky.feed.getTimeline")
+        .withType(XrpcRequest.Type.QUERY)
+        .build();
+
+    private static XrpcResponse withHeaders(Map<String, String> headers) {
+        return new XrpcResponse(REQUEST.getMethod(), 200, headers, new byte[0]);
+    }
+
+    private static Function<XrpcRequest, CompletableFuture<XrpcResponse>> returning(XrpcResponse response,
+                                                                                     List<Long> sentAt) {
+        return request -> {
+            sentAt.add(System.nanoTime());
+            return CompletableFuture.completedFuture(response);
+        };
+    }
+
+    @Test
+    public void testUnknownLimitsDoNotDelay() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+        List<Long> sentAt = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            limiter.execute(HOST, "alice", REQUEST, returning(withHeaders(Map.of()), sentAt)).join();
+        }
+        assertThat(sentAt).hasSize(100);
+        assertThat(limiter.getDelayedCount()).isZero();
+    }
+
+    @Test
+    public void testExhaustedQuotaDelaysUntilReset() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+        List<Long> sentAt = new ArrayList<>();
+        XrpcResponse exhausted = withHeaders(Map.of(
+            "ratelimit-limit", "100", "ratelimit-remaining", "0", "ratelimit-reset", "1"));
+
+        long start = System.nanoTime();
+        limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)).join();
+        limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)).join();
+        // Another account on the same host has its own bucket
+        limiter.execute(HOST, "bob", REQUEST, returning(exhausted, sentAt)).join();
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(sentAt.get(1) - start)).isGreaterThanOrEqualTo(900);
+        assertThat(limiter.getDelayedCount()).isEqualTo(1);
+        assertThat(limiter.getBucketCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testPacesRemainingQuotaUntilReset() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+        List<Long> sentAt = new ArrayList<>();
+        // 10 calls left for one second: after a burst of 5, one call every 200 ms
+        XrpcResponse paced = withHeaders(Map.of(
+            "ratelimit-limit", "3000", "ratelimit-remaining", "10", "ratelimit-reset", "1"));
+        limiter.execute(HOST, null, REQUEST, returning(paced, sentAt)).join();
+
+        List<CompletableFuture<XrpcResponse>> pending = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            pending.add(limiter.execute(HOST, null, REQUEST, returning(withHeaders(Map.of()), sentAt)));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(limiter.getDelayedCount()).isPositive();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(sentAt.get(7) - sentAt.get(0))).isGreaterThanOrEqualTo(150);
+    }
+
+    @Test
+    public void testRetriesAfterTooManyRequests() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+        AtomicInteger calls = new AtomicInteger();
+        XrpcResponse ok = withHeaders(Map.of());
+
+        XrpcResponse response = limiter.execute(HOST, "alice", REQUEST, request -> calls.incrementAndGet() == 1
+            ? CompletableFuture.failedFuture(new XrpcRateLimitException("RateLimitExceeded", "Slow down",
+                Map.of("retry-after", "0")))
+            : CompletableFuture.completedFuture(ok)).join();
+
+        assertThat(response).isSameAs(ok);
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(limiter.getThrottledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailsWhenDelayExceedsMaximum() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(Duration.ofMillis(100), 0);
+        List<Long> sentAt = new ArrayList<>();
+        XrpcResponse exhausted = withHeaders(Map.of(
+            "ratelimit-limit", "100", "ratelimit-remaining", "0", "ratelimit-reset", "300"));
+        limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)).join();
+
+        assertThatThrownBy(() -> limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)).join())
+            .hasCauseInstanceOf(XrpcRateLimitException.class);
+        assertThat(sentAt).hasSize(1);
+    }
+
+    @Test
+    public void testRejectedCallsDoNotPushScheduleOut() throws InterruptedException {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(Duration.ofMillis(200), 0);
+        List<Long> sentAt = new ArrayList<>();
+        XrpcResponse exhausted = withHeaders(Map.of(
+            "ratelimit-limit", "10", "ratelimit-remaining", "0", "ratelimit-reset", "1"));
+        limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)).join();
+        for (int i = 0; i < 200; i++) {
+            assertThat(limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)))
+                .isCompletedExceptionally();
+        }
+
+        Thread.sleep(1100);
+        limiter.execute(HOST, "alice", REQUEST, returning(withHeaders(Map.of()), sentAt)).join();
+        assertThat(sentAt).hasSize(2);
+    }
+
+    @Test
+    public void testFreshQuotaReanchorsSchedule() {
+        AdaptiveRateLimiter.Bucket bucket = new AdaptiveRateLimiter.Bucket();
+        long now = System.nanoTime();
+        bucket.update(Map.of("ratelimit-limit", "10", "ratelimit-remaining", "0", "ratelimit-reset", "300")::get, now);
+        assertThat(bucket.reserve(now, Long.MAX_VALUE)).isGreaterThan(TimeUnit.SECONDS.toNanos(200));
+
+        bucket.update(Map.of("ratelimit-limit", "10", "ratelimit-remaining", "9", "ratelimit-reset", "60")::get, now);
+        assertThat(bucket.reserve(now, Long.MAX_VALUE)).isZero();
+    }
+
+    @Test
+    public void testNegativeNanoTimeDoesNotDelay() {
+        long now = Long.MIN_VALUE + TimeUnit.HOURS.toNanos(1);
+        AdaptiveRateLimiter.Bucket bucket = new AdaptiveRateLimiter.Bucket(now);
+        assertThat(bucket.reserve(now, TimeUnit.MINUTES.toNanos(1))).isZero();
+
+        bucket.update(Map.of("ratelimit-limit", "10", "ratelimit-remaining", "0", "ratelimit-reset", "5")::get, now);
+        assertThat(bucket.reserve(now, Long.MAX_VALUE))
+            .isBetween(TimeUnit.SECONDS.toNanos(4), TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testParsesEpochAndDeltaResets() {
+        long now = System.nanoTime();
+        long epoch = System.currentTimeMillis() / 1000 + 30;
+
+        assertThat(AdaptiveRateLimiter.resetAt("30", now) - now).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+        assertThat(AdaptiveRateLimiter.resetAt(Long.toString(epoch), now) - now)
+            .isBetween(TimeUnit.SECONDS.toNanos(28), TimeUnit.SECONDS.toNanos(31));
+        assertThat(AdaptiveRateLimiter.resetAt("soon", now)).isZero();
+    }
+
+    @Test
+    public void testCancellationReachesHeldAndInFlightCalls() throws InterruptedException {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+        List<Long> sentAt = new ArrayList<>();
+        XrpcResponse exhausted = withHeaders(Map.of(
+            "ratelimit-limit", "100", "ratelimit-remaining", "0", "ratelimit-reset", "1"));
+        limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt)).join();
+
+        // Held back until the reset, then never sent because it was cancelled while waiting
+        CompletableFuture<XrpcResponse> held = limiter.execute(HOST, "alice", REQUEST, returning(exhausted, sentAt));
+        held.cancel(true);
+        Thread.sleep(1200);
+        assertThat(sentAt).hasSize(1);
+
+        CompletableFuture<XrpcResponse> inFlight = new CompletableFuture<>();
+        limiter.execute(HOST, "bob", REQUEST, request -> inFlight).cancel(true);
+        assertThat(inFlight).isCancelled();
+    }
+}
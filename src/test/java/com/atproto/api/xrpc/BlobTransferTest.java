@@ -0,0 +1,184 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.common.BlobRef;
+import com.atproto.api.common.Cid;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BlobTransferTest {
+
+    private static final String DID = "did:plc:abc";
+
+    @TempDir
+    Path temp;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private XrpcClient client;
+    private byte[] blob;
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicReference<String> uploadedType = new AtomicReference<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        blob = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(blob);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(serverExecutor);
+        server.createContext("/xrpc/com.atproto.repo.uploadBlob", exchange -> {
+            MessageDigest digest = Cid.newDigest();
+            long size = 0;
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                    size += n;
+                }
+            }
+            uploadedBytes.set(size);
+            uploadedType.set(exchange.getRequestHeaders().getFirst("Content-Type"));
+            Cid cid = Cid.of(Cid.RAW, digest.digest());
+            respond(exchange, 200, "application/json", ("{\"blob\":{\"$type\":\"blob\",\"ref\":{\"$link\":\"" + cid
+                + "\"},\"mimeType\":\"video/mp4\",\"size\":" + size + "}}").getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/moved/xrpc/com.atproto.repo.uploadBlob", exchange -> {
+            exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+            exchange.getResponseHeaders().set("Location", "/xrpc/com.atproto.repo.uploadBlob");
+            exchange.sendResponseHeaders(307, -1);
+            exchange.close();
+        });
+        server.createContext("/xrpc/com.atproto.sync.getBlob", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            if (query.contains("did=did:plc:missing")) {
+                respond(exchange, 400, "application/json",
+                    "{\"error\":\"BlobNotFound\",\"message\":\"Blob not found\"}".getBytes(StandardCharsets.UTF_8));
+            } else {
+                respond(exchange, 200, "application/octet-stream", blob);
+            }
+        });
+        server.start();
+        client = new XrpcClient.Builder()
+            .withServiceUri(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+            .build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void testUploadsFileAndComputesCidWhileStreaming() throws IOException {
+        Path file = Files.write(temp.resolve("video.mp4"), blob);
+
+        BlobRef ref = client.uploadBlob(file, "video/mp4");
+
+        assertThat(ref.getCid()).isEqualTo(Cid.hash(Cid.RAW, blob));
+        assertThat(ref.getSize()).isEqualTo(blob.length);
+        assertThat(uploadedBytes.get()).isEqualTo(blob.length);
+        assertThat(uploadedType.get()).isEqualTo("video/mp4");
+        assertThat(ref.toJson()).containsEntry("$type", "blob").containsEntry("size", (long) blob.length);
+    }
+
+    @Test
+    public void testUploadsStreamOfUnknownLength() {
+        BlobRef ref = client.uploadBlob(new ByteArrayInputStream(blob), "image/jpeg");
+
+        assertThat(ref.getCid()).isEqualTo(Cid.hash(Cid.RAW, blob));
+        assertThat(uploadedBytes.get()).isEqualTo(blob.length);
+    }
+
+    @Test
+    public void testRedirectedUploadResendsFileButNotStream() throws IOException {
+        XrpcClient moved = new XrpcClient.Builder()
+            .withServiceUri(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/moved"))
+            .build();
+        Path file = Files.write(temp.resolve("image.jpg"), blob);
+
+        assertThat(moved.uploadBlob(file, "image/jpeg").getCid()).isEqualTo(Cid.hash(Cid.RAW, blob));
+        assertThat(uploadedBytes.get()).isEqualTo(blob.length);
+
+        uploadedBytes.set(0);
+        assertThatThrownBy(() -> moved.uploadBlob(new ByteArrayInputStream(blob), "image/jpeg"))
+            .isInstanceOf(XrpcException.class)
+            .rootCause()
+            .hasMessageContaining("cannot be sent again");
+        assertThat(uploadedBytes.get()).isZero();
+    }
+
+    @Test
+    public void testDownloadsToFileAndStreamVerifyingCid() throws IOException {
+        Cid cid = Cid.hash(Cid.RAW, blob);
+        Path target = temp.resolve("download.bin");
+
+        assertThat(client.getBlob(DID, cid, target)).isEqualTo(blob.length);
+        assertThat(Files.readAllBytes(target)).isEqualTo(blob);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(client.getBlob(DID, cid, out)).isEqualTo(blob.length);
+        assertThat(out.toByteArray()).isEqualTo(blob);
+    }
+
+    @Test
+    public void testRejectsContentThatDoesNotMatchCid() {
+        Cid other = Cid.hash(Cid.RAW, new byte[]{1, 2, 3});
+        Path target = temp.resolve("corrupt.bin");
+
+        assertThatThrownBy(() -> client.getBlob(DID, other, target))
+            .isInstanceOf(XrpcException.class)
+            .hasMessageContaining("expected " + other);
+        assertThat(target).doesNotExist();
+        assertThatThrownBy(() -> client.getBlob(DID, other, new ByteArrayOutputStream()))
+            .isInstanceOf(XrpcException.class);
+    }
+
+    @Test
+    public void testMapsDownloadErrors() {
+        Cid cid = Cid.hash(Cid.RAW, blob);
+
+        assertThatThrownBy(() -> client.getBlob("did:plc:missing", cid, temp.resolve("missing.bin")))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(400);
+                assertThat(e.getCode()).isEqualTo("BlobNotFound");
+            });
+        assertThatThrownBy(() -> client.getBlob("did:plc:missing", cid, new ByteArrayOutputStream()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> assertThat(e.getCode()).isEqualTo("BlobNotFound"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testFixedLimitRejectsWithoutQueueing() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(2);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        limiter.release(TimeUnit.SECONDS.toNanos(10));
+        assertThat(limiter.tryAcquire()).isTrue();
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        assertThat(limiter.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdaptiveLimitGrowsUnderLoadAndBacksOffWhenSlow() throws InterruptedException {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.adaptive(10, 2, 50, Duration.ofMillis(5));
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+        long slow = TimeUnit.MILLISECONDS.toNanos(50);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < 5; i++) {
+            limiter.release(fast);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(14);
+
+        // Lightly loaded: fast calls do not raise the limit further
+        while (limiter.getInFlight() > 0) {
+            limiter.release(fast);
+        }
+        assertThat(limiter.tryAcquire()).isTrue();
+        limiter.release(fast);
+        assertThat(limiter.getLimit()).isEqualTo(14);
+
+        // A burst of slow calls cuts the limit only once per target interval
+        Thread.sleep(10);
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < 5; i++) {
+            limiter.release(slow);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(13);
+    }
+
+    @Test
+    public void testCancelReturnsSlotWithoutSample() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.adaptive(4, 2, 50, Duration.ofMillis(5));
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < 4; i++) {
+            limiter.cancel();
+        }
+
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    public void testValidatesLimits() {
+        assertThatThrownBy(() -> ConcurrencyLimiter.fixed(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ConcurrencyLimiter.adaptive(5, 10, 20, Duration.ofMillis(5)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ConcurrencyLimiter.adaptive(5, 1, 20, Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,42 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DispatchTableTest {
+
+    @Test
+    public void testFindsEveryKeyByRegion() {
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            entries.put("com.example.method.call" + i, i);
+        }
+        DispatchTable<Integer> table = new DispatchTable<>(entries);
+
+        for (int i = 0; i < 300; i++) {
+            assertThat(table.get("/xrpc/com.example.method.call" + i, 6)).isEqualTo(i);
+        }
+        assertThat(table.get("/xrpc/com.example.method.call300", 6)).isNull();
+        assertThat(table.get("/xrpc/com.example.method.call1x", 6)).isNull();
+        assertThat(new DispatchTable<Integer>(Map.of()).get("/xrpc/a.b.c", 6)).isNull();
+    }
+
+    @Test
+    public void testBuildsLargeTablesInLinearSpace() {
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            entries.put("app.bsky.method" + i, i);
+        }
+        DispatchTable<Integer> table = new DispatchTable<>(entries);
+
+        for (int i = 0; i < 20_000; i++) {
+            assertThat(table.get("app.bsky.method" + i, 0)).isEqualTo(i);
+        }
+        assertThat(table.get("app.bsky.method20000", 0)).isNull();
+        assertThat(table.capacity()).isLessThanOrEqualTo(4 * 20_000);
+    }
+}
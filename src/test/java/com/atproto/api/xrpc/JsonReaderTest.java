@@ -0,0 +1,125 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonReaderTest {
+
+    private static final String DOCUMENT = "{\"text\":\"a, b: \\\"c\\\" \\u00e9 ✓ 😀\",\"count\":42,\"big\":12345678901234,"
+        + "\"ratio\":-1.5e2,\"ok\":true,\"none\":null,"
+        + "\"nested\":{\"list\":[1,[2,{\"x\":\"y,z\"}],{}],\"empty\":[]}}";
+
+    @Test
+    public void testReadsNestedValuesFromBytes() throws IOException {
+        Object value = new JsonReader(DOCUMENT.getBytes(StandardCharsets.UTF_8)).readValue();
+
+        assertThat(value).isEqualTo(expected());
+    }
+
+    @Test
+    public void testReadsFromByteBuffersAndStreams() throws IOException {
+        byte[] bytes = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        assertThat(new JsonReader(ByteBuffer.wrap(bytes)).readValue()).isEqualTo(expected());
+        assertThat(new JsonReader(direct).readValue()).isEqualTo(expected());
+        assertThat(direct.position()).isZero();
+        // Deliver a single byte per read so every token straddles a refill
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        assertThat(new JsonReader(trickle).readValue()).isEqualTo(expected());
+    }
+
+    @Test
+    public void testKeepsIntegersAsLong() throws IOException {
+        JsonReader reader = new JsonReader("[9223372036854775807,-9223372036854775808,9223372036854775808,1.0]"
+            .getBytes(StandardCharsets.UTF_8));
+        reader.beginArray();
+        assertThat(reader.nextLong()).isEqualTo(Long.MAX_VALUE);
+        assertThat(reader.nextNumber()).isEqualTo(Long.MIN_VALUE);
+        assertThat(reader.nextNumber()).isEqualTo(9.223372036854775808E18);
+        assertThatThrownBy(reader::nextLong).hasMessageContaining("Expected an integer");
+    }
+
+    @Test
+    public void testSkipsValuesWithoutDecoding() throws IOException {
+        JsonReader reader = new JsonReader(DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        reader.beginObject();
+        String last = null;
+        while (reader.hasNext()) {
+            last = reader.nextName();
+            if (!last.equals("ok")) {
+                reader.skipValue();
+            } else {
+                assertThat(reader.nextBoolean()).isTrue();
+            }
+        }
+        reader.endObject();
+
+        assertThat(last).isEqualTo("nested");
+        assertThat(reader.peek()).isEqualTo(JsonReader.Token.END_DOCUMENT);
+    }
+
+    @Test
+    public void testRejectsMalformedInput() {
+        for (String json : List.of("{\"a\":1,}", "{\"a\" 1}", "[1 2]", "{\"a\":tru}", "\"open", "[01]", "{} {}", "[-]")) {
+            assertThatThrownBy(() -> {
+                JsonReader reader = new JsonReader(json.getBytes(StandardCharsets.UTF_8));
+                reader.readValue();
+                reader.peek();
+            })
+                .as(json)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Malformed JSON");
+        }
+    }
+
+    @Test
+    public void testDeserializesRequestWithCommasInStrings() throws IOException {
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("com.atproto.repo.createRecord")
+            .withType(XrpcRequest.Type.PROCEDURE)
+            .withAuth("did:plc:abc")
+            .withHeader("Content-Type", "application/json")
+            .withBody(Map.of("record", Map.of("text", "one, two: three", "langs", List.of("en"))))
+            .build();
+
+        XrpcRequest roundTripped = XrpcRequest.deserialize(request.serialize());
+
+        assertThat(roundTripped).isEqualTo(request);
+        assertThat(XrpcRequest.deserialize(new ByteArrayInputStream(request.serialize().getBytes(StandardCharsets.UTF_8))))
+            .isEqualTo(request);
+    }
+
+    private static Map<String, Object> expected() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("list", List.of(1L, List.of(2L, Map.of("x", "y,z")), Map.of()));
+        nested.put("empty", List.of());
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("text", "a, b: \"c\" é ✓ 😀");
+        map.put("count", 42L);
+        map.put("big", 12345678901234L);
+        map.put("ratio", -150.0);
+        map.put("ok", true);
+        map.put("none", null);
+        map.put("nested", nested);
+        return map;
+    }
+}
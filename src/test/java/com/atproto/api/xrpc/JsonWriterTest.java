@@ -0,0 +1,147 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonWriterTest {
+
+    private static String write(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.writeValue(value);
+        writer.close();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEscapesStrings() throws IOException {
+        assertThat(write("a\"b\\c\nd\te\u0001")).isEqualTo("\"a\\\"b\\\\c\\nd\\te\\u0001\"");
+    }
+
+    @Test
+    public void testEncodesMultiByteCharactersAsUtf8() throws IOException {
+        String text = "héllo ✓ 😀";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.value(text);
+        writer.close();
+
+        assertThat(out.toByteArray()).isEqualTo(("\"" + text + "\"").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWritesNestedStructures() throws IOException {
+        Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("uris", List.of("at://a", "at://b"));
+        inner.put("skipped", null);
+        inner.put("ids", new int[]{1, 2});
+        Map<String, Object> outer = new LinkedHashMap<>();
+        outer.put("limit", 50);
+        outer.put("ratio", 0.5);
+        outer.put("ok", true);
+        outer.put("inner", inner);
+        outer.put("array", new Object[]{"x", null, Map.of()});
+
+        assertThat(write(outer)).isEqualTo(
+            "{\"limit\":50,\"ratio\":0.5,\"ok\":true,\"inner\":{\"uris\":[\"at://a\",\"at://b\"],\"ids\":[1,2]},"
+                + "\"array\":[\"x\",null,{}]}");
+    }
+
+    @Test
+    public void testWritesLongBoundaries() throws IOException {
+        assertThat(write(List.of(0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE)))
+            .isEqualTo("[0,-1,9223372036854775807,-9223372036854775808]");
+    }
+
+    @Test
+    public void testFlushesLargeDocumentsThroughSmallBuffer() throws IOException {
+        char[] chars = new char[10_000];
+        Arrays.fill(chars, 'é');
+        String large = new String(chars);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out, 64);
+        writer.beginArray().value(large).value(large).endArray();
+        writer.close();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("[\"" + large + "\",\"" + large + "\"]");
+    }
+
+    @Test
+    public void testWritesIntoHeapAndDirectBuffers() throws IOException {
+        for (ByteBuffer buffer : List.of(ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64))) {
+            buffer.put((byte) ' ');
+            JsonWriter writer = new JsonWriter(buffer);
+            writer.beginObject().name("a").value(1).endObject();
+            writer.close();
+
+            buffer.flip();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(" {\"a\":1}");
+        }
+    }
+
+    @Test
+    public void testRejectsOverflowingBuffer() {
+        JsonWriter writer = new JsonWriter(ByteBuffer.allocate(4));
+        assertThatThrownBy(() -> writer.value("too long for the buffer"))
+            .isInstanceOf(BufferOverflowException.class);
+    }
+
+    @Test
+    public void testFillsBufferToTheLastByte() throws IOException {
+        for (int size = 4; size <= 6; size++) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            JsonWriter writer = new JsonWriter(buffer);
+            writer.value("ab");
+            writer.close();
+            assertThat(buffer.position()).isEqualTo(4);
+            assertThat(new String(buffer.array(), 0, 4, StandardCharsets.UTF_8)).isEqualTo("\"ab\"");
+        }
+        JsonWriter writer = new JsonWriter(ByteBuffer.allocate(6));
+        assertThatThrownBy(() -> writer.value("a\u00e9\u00e9"))
+            .isInstanceOf(BufferOverflowException.class);
+    }
+
+    @Test
+    public void testRejectsMalformedDocuments() throws IOException {
+        JsonWriter writer = new JsonWriter(new ByteArrayOutputStream());
+        writer.beginObject();
+        assertThatThrownBy(() -> writer.value("no name")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(writer::endArray).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(writer::close).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> write(Double.NaN)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testSerializesRequestToStreamAndBuffer() throws IOException {
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("com.atproto.identity.resolveHandle")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParams(Map.of("handle", "a\"b.test"))
+            .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.serialize(out);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        request.serialize(buffer);
+
+        String expected = "{\"method\":\"com.atproto.identity.resolveHandle\",\"type\":\"query\",\"params\":{\"handle\":\"a\\\"b.test\"},"
+            + "\"headers\":{},\"queryParams\":{},\"body\":{}}";
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(request.serialize()).isEqualTo(expected);
+        assertThat(buffer.position()).isEqualTo(expected.length());
+    }
+}
@@ -0,0 +1,237 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PaginatorTest {
+
+    private static final int PAGES = 5;
+    private static final int PAGE_SIZE = 3;
+
+    private final List<String> cursors = new CopyOnWriteArrayList<>();
+    private XrpcServer server;
+    private XrpcClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new XrpcServer.Builder()
+            .withQuery("com.atproto.repo.listRecords", call -> {
+                String cursor = (String) call.getParam("cursor");
+                cursors.add(String.valueOf(cursor));
+                int page = cursor == null ? 0 : Integer.parseInt(cursor);
+                List<Object> records = new ArrayList<>();
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    records.add(Map.of("uri", "at://did:plc:abc/app.bsky.feed.post/" + (page * PAGE_SIZE + i)));
+                }
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("records", records);
+                if (page + 1 < PAGES) {
+                    body.put("cursor", Integer.toString(page + 1));
+                }
+                call.respond(body);
+            })
+            .withQuery("com.example.failing", call -> {
+                if (call.getParam("cursor") != null) {
+                    throw new XrpcException(400, "InvalidRequest", "Bad cursor");
+                }
+                call.respond(Map.of("items", List.of("a", "b"), "cursor", "next"));
+            })
+            .withQuery("com.example.stuck", call -> call.respond(Map.of("items", List.of("a"), "cursor", "same")))
+            .build()
+            .start();
+        client = new XrpcClient.Builder().withServiceUri(server.getUri()).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    private Paginator<Map<String, Object>> records(int prefetch) {
+        return new Paginator.Builder<Map<String, Object>>()
+            .withClient(client)
+            .withRequest(query("com.atproto.repo.listRecords", Map.of("repo", "did:plc:abc")))
+            .withItems("records")
+            .withPrefetch(prefetch)
+            .build();
+    }
+
+    private static XrpcRequest query(String method, Map<String, Object> params) {
+        return new XrpcRequest.Builder().withMethod(method).withType(XrpcRequest.Type.QUERY).withParams(params).build();
+    }
+
+    private static List<Object> uris(Iterable<Map<String, Object>> records) {
+        List<Object> uris = new ArrayList<>();
+        records.forEach(record -> uris.add(record.get("uri")));
+        return uris;
+    }
+
+    @Test
+    public void testIteratesAllPagesInOrder() {
+        List<Object> uris = uris(records(1));
+
+        assertThat(uris).hasSize(PAGES * PAGE_SIZE);
+        assertThat(uris.get(0)).isEqualTo("at://did:plc:abc/app.bsky.feed.post/0");
+        assertThat(uris.get(uris.size() - 1)).isEqualTo("at://did:plc:abc/app.bsky.feed.post/14");
+        assertThat(cursors).containsExactly("null", "1", "2", "3", "4");
+    }
+
+    @Test
+    public void testPrefetchesAheadOfConsumer() throws InterruptedException {
+        Iterator<Map<String, Object>> iterator = records(2).iterator();
+        iterator.next();
+
+        // The first page plus two prefetched pages, and no more while the caller holds back
+        awaitRequests(3);
+        Thread.sleep(100);
+        assertThat(cursors).containsExactly("null", "1", "2");
+
+        for (int i = 1; i <= PAGE_SIZE; i++) {
+            iterator.next();
+        }
+        awaitRequests(4);
+    }
+
+    @Test
+    public void testNoPrefetchFetchesOnDemand() throws InterruptedException {
+        Iterator<Map<String, Object>> iterator = records(0).iterator();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            iterator.next();
+        }
+        Thread.sleep(100);
+        assertThat(cursors).containsExactly("null");
+
+        iterator.next();
+        assertThat(cursors).containsExactly("null", "1");
+    }
+
+    @Test
+    public void testStreamStopsWhenClosed() throws InterruptedException {
+        try (Stream<Map<String, Object>> stream = records(1).stream()) {
+            assertThat(stream.limit(4).count()).isEqualTo(4);
+        }
+        Thread.sleep(100);
+        assertThat(cursors.size()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void testPublisherHonoursDemand() throws Exception {
+        List<Object> received = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        records(1).publisher().subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Map<String, Object> item) {
+                received.add(item.get("uri"));
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        completed.get(5, TimeUnit.SECONDS);
+        assertThat(received).hasSize(PAGES * PAGE_SIZE).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testFailedPageEndsWalk() throws Exception {
+        Paginator<String> paginator = new Paginator.Builder<String>()
+            .withClient(client)
+            .withRequest(query("com.example.failing", Map.of()))
+            .withItems("items")
+            .build();
+
+        Iterator<String> iterator = paginator.iterator();
+        assertThat(iterator.next()).isEqualTo("a");
+        assertThat(iterator.next()).isEqualTo("b");
+        assertThatThrownBy(iterator::hasNext)
+            .isInstanceOfSatisfying(XrpcException.class, e -> assertThat(e.getCode()).isEqualTo("InvalidRequest"));
+
+        CompletableFuture<Throwable> failed = new CompletableFuture<>();
+        paginator.publisher().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                failed.complete(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                failed.complete(null);
+            }
+        });
+        assertThat(failed.get(5, TimeUnit.SECONDS)).isInstanceOf(XrpcException.class);
+    }
+
+    @Test
+    public void testRepeatedCursorEndsWalk() {
+        Paginator<String> paginator = new Paginator.Builder<String>()
+            .withClient(client)
+            .withRequest(query("com.example.stuck", Map.of("cursor", "same")))
+            .withItems("items")
+            .build();
+
+        assertThat(paginator).containsExactly("a");
+    }
+
+    @Test
+    public void testRejectsProcedures() {
+        XrpcRequest procedure = new XrpcRequest.Builder()
+            .withMethod("com.atproto.repo.createRecord")
+            .withType(XrpcRequest.Type.PROCEDURE)
+            .build();
+        assertThatThrownBy(() -> new Paginator.Builder<Object>()
+            .withClient(client)
+            .withRequest(procedure)
+            .withItems("records")
+            .build())
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cursors.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(cursors).hasSizeGreaterThanOrEqualTo(count);
+    }
+}
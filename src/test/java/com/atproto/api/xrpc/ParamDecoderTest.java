@@ -0,0 +1,78 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.lexicon.LexiconParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ParamDecoderTest {
+
+    static final String GET_AUTHOR_FEED = "{\"lexicon\":1,\"id\":\"app.bsky.feed.getAuthorFeed\",\"defs\":{\"main\":{"
+        + "\"type\":\"query\",\"parameters\":{\"type\":\"params\",\"required\":[\"actor\"],\"properties\":{"
+        + "\"actor\":{\"type\":\"string\",\"maxLength\":8},"
+        + "\"limit\":{\"type\":\"integer\",\"minimum\":1,\"maximum\":100,\"default\":50},"
+        + "\"filter\":{\"type\":\"string\",\"enum\":[\"all\",\"media\"],\"default\":\"all\"},"
+        + "\"includePins\":{\"type\":\"boolean\"},"
+        + "\"uris\":{\"type\":\"array\",\"maxLength\":2,\"items\":{\"type\":\"integer\",\"minimum\":0}}}}}}}";
+
+    static final String GET_POSTS = "{\"lexicon\":1,\"id\":\"app.bsky.feed.getPosts\",\"defs\":{\"main\":{"
+        + "\"type\":\"query\",\"parameters\":{\"type\":\"params\",\"required\":[\"uris\"],\"properties\":{"
+        + "\"uris\":{\"type\":\"array\",\"maxLength\":25,\"items\":{\"type\":\"string\",\"format\":\"at-uri\","
+        + "\"maxLength\":100}}}},\"output\":{\"encoding\":\"application/json\"}}}}";
+
+    private final ParamDecoder decoder = ParamDecoder.compile(new LexiconParser().parseMethod(GET_AUTHOR_FEED));
+
+    @Test
+    public void testDecodesTypedValuesAndDefaults() {
+        Map<String, Object> params = decoder.decode("actor=al%C3%AFce&limit=25&includePins=true&uris=1&uris=2&other=x");
+
+        assertThat(params).isEqualTo(Map.of("actor", "alïce", "limit", 25L, "filter", "all", "includePins", true,
+            "uris", List.of(1L, 2L)));
+        assertThat(new HashMap<>(decoder.decode("actor=bob"))).isEqualTo(Map.of("actor", "bob", "limit", 50L,
+            "filter", "all"));
+        assertThatThrownBy(() -> params.put("limit", 1L)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testRejectsValuesOutsideTheLexicon() {
+        assertInvalid(null, "Missing required param actor");
+        assertInvalid("actor=bob&limit=0", "limit");
+        assertInvalid("actor=bob&limit=ten", "must be an integer");
+        assertInvalid("actor=bob&filter=replies", "must be one of");
+        assertInvalid("actor=bob&includePins=yes", "true or false");
+        assertInvalid("actor=bob&uris=1&uris=2&uris=3", "uris");
+        assertInvalid("actor=bob&uris=-1", "uris");
+        assertInvalid("actor=bob&actor=carol", "single value");
+        // Eight chars but nine UTF-8 bytes
+        assertInvalid("actor=%C3%AFabcdefg", "bytes long");
+    }
+
+    @Test
+    public void testChecksArrayLengthAndItemLengthSeparately() {
+        ParamDecoder getPosts = ParamDecoder.compile(new LexiconParser().parseMethod(GET_POSTS));
+        String uri = "at://did:plc:ewvi7nxzyoun6zhxrhs64oiz/app.bsky.feed.post/3k2a4b5c6d7e8";
+
+        assertThat(getPosts.decode("uris=" + uri + "&uris=" + uri)).isEqualTo(Map.of("uris", List.of(uri, uri)));
+        StringBuilder query = new StringBuilder("uris=" + uri);
+        for (int i = 0; i < 25; i++) {
+            query.append("&uris=").append(uri);
+        }
+        assertThatThrownBy(() -> getPosts.decode(query.toString())).hasMessageContaining("0 to 25 values");
+        assertThatThrownBy(() -> getPosts.decode("uris=at://" + "x".repeat(100)))
+            .hasMessageContaining("0 to 100 bytes long");
+    }
+
+    private void assertInvalid(String query, String message) {
+        assertThatThrownBy(() -> decoder.decode(query))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(400);
+                assertThat(e.getCode()).isEqualTo("InvalidRequest");
+            })
+            .hasMessageContaining(message);
+    }
+}
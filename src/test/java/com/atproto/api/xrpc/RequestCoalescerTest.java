@@ -0,0 +1,89 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RequestCoalescerTest {
+
+    private static XrpcRequest profile(String actor) {
+        return new XrpcRequest.Builder()
+            .withMethod("app.bsky.actor.getProfile")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("actor", actor)
+            .build();
+    }
+
+    @Test
+    public void testIdenticalConcurrentCallsShareOneTransportCall() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<XrpcResponse> upstream = new CompletableFuture<>();
+
+        List<CompletableFuture<XrpcResponse>> callers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            callers.add(coalescer.execute(profile("alice.test"), request -> {
+                sent.incrementAndGet();
+                return upstream;
+            }));
+        }
+        assertThat(coalescer.getInFlightCount()).isEqualTo(1);
+
+        XrpcResponse response = new XrpcResponse("app.bsky.actor.getProfile");
+        upstream.complete(response);
+
+        assertThat(sent.get()).isEqualTo(1);
+        assertThat(callers).allSatisfy(f -> assertThat(f.join()).isSameAs(response));
+        assertThat(coalescer.getInFlightCount()).isZero();
+        assertThat(coalescer.getRequestCount()).isEqualTo(10);
+        assertThat(coalescer.getCoalescedCount()).isEqualTo(9);
+        assertThat(coalescer.getHitRate()).isEqualTo(0.9);
+    }
+
+    @Test
+    public void testDifferentParamsAndLaterCallsAreSentSeparately() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger sent = new AtomicInteger();
+
+        coalescer.execute(profile("alice.test"), request -> {
+            sent.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        coalescer.execute(profile("bob.test"), request -> {
+            sent.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        coalescer.execute(profile("carol.test"), request -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(new XrpcResponse("app.bsky.actor.getProfile"));
+        }).join();
+        coalescer.execute(profile("carol.test"), request -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(new XrpcResponse("app.bsky.actor.getProfile"));
+        }).join();
+
+        assertThat(sent.get()).isEqualTo(4);
+        assertThat(coalescer.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    public void testFailuresAndCancellationAreIsolatedPerCaller() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CompletableFuture<XrpcResponse> upstream = new CompletableFuture<>();
+
+        CompletableFuture<XrpcResponse> first = coalescer.execute(profile("alice.test"), request -> upstream);
+        CompletableFuture<XrpcResponse> second = coalescer.execute(profile("alice.test"), request -> upstream);
+        first.cancel(true);
+        upstream.completeExceptionally(new XrpcException(500, "InternalServerError", "boom"));
+
+        assertThat(first).isCancelled();
+        assertThatThrownBy(second::join).hasCauseInstanceOf(XrpcException.class);
+        assertThat(coalescer.getInFlightCount()).isZero();
+    }
+}
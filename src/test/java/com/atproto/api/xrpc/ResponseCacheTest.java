@@ -0,0 +1,137 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseCacheTest {
+
+    private static final String METHOD = "app.bsky.actor.getProfile";
+
+    private final List<XrpcRequest> sent = new ArrayList<>();
+
+    private static XrpcRequest profile(String actor) {
+        return new XrpcRequest.Builder()
+            .withMethod(METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("actor", actor)
+            .build();
+    }
+
+    private static XrpcResponse response(int status, Map<String, String> headers, String body) {
+        return XrpcClient.decode(METHOD, status, headers, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Function<XrpcRequest, CompletableFuture<XrpcResponse>> serving(XrpcResponse response) {
+        return request -> {
+            sent.add(request);
+            return CompletableFuture.completedFuture(response);
+        };
+    }
+
+    @Test
+    public void testServesFreshResponsesFromStoredBytes() {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        XrpcResponse origin = response(200, Map.of("content-type", "application/json", "cache-control", "max-age=60"),
+            "{\"handle\":\"alice.test\"}");
+
+        XrpcResponse first = cache.execute(profile("alice.test"), null, serving(origin)).join();
+        XrpcResponse second = cache.execute(profile("alice.test"), null, serving(origin)).join();
+
+        assertThat(sent).hasSize(1);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getData()).containsEntry("handle", "alice.test");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testKeysOnCanonicalParamsAndCredentials() {
+        XrpcRequest ab = new XrpcRequest.Builder()
+            .withMethod(METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("a", "1")
+            .withParam("b", "2")
+            .build();
+        XrpcRequest ba = new XrpcRequest.Builder()
+            .withMethod(METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("b", "2")
+            .withParam("a", "1")
+            .build();
+        XrpcRequest labelled = ab.toBuilder().withHeader("atproto-accept-labelers", "did:plc:labeler").build();
+
+        assertThat(ResponseCache.key(ab, null)).isEqualTo(ResponseCache.key(ba, null));
+        assertThat(ResponseCache.key(ab, "Bearer alice")).isNotEqualTo(ResponseCache.key(ab, null))
+            .isNotEqualTo(ResponseCache.key(ab, "Bearer bob"));
+        assertThat(ResponseCache.key(labelled, null)).isNotEqualTo(ResponseCache.key(ab, null));
+    }
+
+    @Test
+    public void testNoStoreOverridesOtherDirectives() {
+        assertThat(ResponseCache.freshSeconds("max-age=60", "10")).isEqualTo(50);
+        assertThat(ResponseCache.freshSeconds("no-cache, max-age=60", null)).isZero();
+        assertThat(ResponseCache.freshSeconds("no-cache, no-store", null)).isEqualTo(-1);
+        assertThat(ResponseCache.freshSeconds("max-age=60, no-store", null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testHonorsNoStoreAndRevalidatesWithEtag() {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        XrpcResponse noStore = response(200, Map.of("cache-control", "no-store"), "{}");
+        cache.execute(profile("alice.test"), null, serving(noStore)).join();
+        assertThat(cache.size()).isZero();
+
+        XrpcResponse tagged = response(200, Map.of("cache-control", "no-cache", "etag", "\"v1\""), "{\"v\":1}");
+        cache.execute(profile("bob.test"), null, serving(tagged)).join();
+        XrpcResponse revalidated = cache.execute(profile("bob.test"), null,
+            serving(response(304, Map.of("etag", "\"v1\""), ""))).join();
+
+        assertThat(sent).hasSize(3);
+        assertThat(sent.get(2).getHeaders()).containsEntry("If-None-Match", "\"v1\"");
+        assertThat(revalidated.getStatusCode()).isEqualTo(200);
+        assertThat(revalidated.getData()).containsEntry("v", 1L);
+        assertThat(cache.getRevalidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNotModifiedWithNoStoreEvictsTheEntry() {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        XrpcResponse tagged = response(200, Map.of("cache-control", "max-age=0", "etag", "\"v1\""), "{\"v\":1}");
+        cache.execute(profile("bob.test"), null, serving(tagged)).join();
+        assertThat(cache.size()).isEqualTo(1);
+
+        XrpcResponse revalidated = cache.execute(profile("bob.test"), null,
+            serving(response(304, Map.of("cache-control", "no-store"), ""))).join();
+
+        assertThat(revalidated.getData()).containsEntry("v", 1L);
+        assertThat(cache.size()).isZero();
+        assertThat(cache.weight()).isZero();
+    }
+
+    @Test
+    public void testScanDoesNotEvictFrequentlyUsedEntries() {
+        String body = "{\"padding\":\"" + "x".repeat(900) + "\"}";
+        XrpcResponse origin = response(200, Map.of("cache-control", "max-age=60"), body);
+        ResponseCache cache = new ResponseCache(10_000);
+
+        cache.execute(profile("hot.test"), null, serving(origin)).join();
+        cache.execute(profile("hot.test"), null, serving(origin)).join();
+        for (int i = 0; i < 50; i++) {
+            cache.execute(profile("scan" + i + ".test"), null, serving(origin)).join();
+        }
+        sent.clear();
+        cache.execute(profile("hot.test"), null, serving(origin)).join();
+
+        assertThat(sent).isEmpty();
+        assertThat(cache.weight()).isLessThanOrEqualTo(10_000);
+        assertThat(cache.getEvictionCount()).isPositive();
+    }
+}
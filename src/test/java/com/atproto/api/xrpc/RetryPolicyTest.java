@@ -0,0 +1,154 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RetryPolicyTest {
+
+    private static final XrpcRequest REQUEST = new XrpcRequest.Builder()
+        .withMethod("app.bsky.feed.getTimeline")
+        .withType(XrpcRequest.Type.QUERY)
+        .build();
+    private static final XrpcResponse OK = new XrpcResponse(REQUEST.getMethod());
+
+    private static RetryPolicy.Builder fastRetries() {
+        return new RetryPolicy.Builder().withBackoff(Duration.ofMillis(1), Duration.ofMillis(5));
+    }
+
+    @Test
+    public void testRetriesTimeoutsAndNetworkErrorsUntilSuccess() {
+        RetryPolicy policy = fastRetries().withMaxAttempts(3).build();
+        AtomicInteger calls = new AtomicInteger();
+
+        XrpcResponse response = policy.execute(REQUEST, request -> switch (calls.incrementAndGet()) {
+            case 1 -> CompletableFuture.failedFuture(new XrpcTimeoutException("Request timeout", null));
+            case 2 -> CompletableFuture.failedFuture(new XrpcConnectionException("Connection reset", null));
+            default -> CompletableFuture.completedFuture(OK);
+        }).join();
+
+        assertThat(response).isSameAs(OK);
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(policy.getRetryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDoesNotRetryClientErrors() {
+        RetryPolicy policy = fastRetries().build();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.execute(REQUEST, request -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new XrpcException(400, "InvalidRequest", "bad"));
+        }).join()).hasCauseInstanceOf(XrpcException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(RetryPolicy.isRetryable(new XrpcException(503, null, "unavailable"))).isTrue();
+        assertThat(RetryPolicy.isRetryable(new XrpcRateLimitException("RateLimitExceeded", "slow"))).isFalse();
+    }
+
+    @Test
+    public void testBudgetStopsRetryAmplification() {
+        RetryPolicy policy = fastRetries().withMaxAttempts(5).withBudget(0.1, 0, 100).build();
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            policy.execute(REQUEST, request -> {
+                calls.incrementAndGet();
+                return CompletableFuture.failedFuture(new XrpcException(503, null, "unavailable"));
+            }).exceptionally(e -> null).join();
+        }
+
+        // 100 calls earn 10 retries, instead of 400 without a budget
+        assertThat(calls.get()).isEqualTo(110);
+        assertThat(policy.getRetryCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void testCancellingDuringBackoffStopsRetries() throws InterruptedException {
+        RetryPolicy policy = new RetryPolicy.Builder().withBackoff(Duration.ofMillis(200), Duration.ofMillis(200)).build();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<XrpcResponse> pending = policy.execute(REQUEST, request -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new XrpcException(503, null, "unavailable"));
+        });
+        assertThat(calls.get()).isEqualTo(1);
+        pending.cancel(true);
+        Thread.sleep(500);
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(pending).isCancelled();
+    }
+
+    @Test
+    public void testCancellationReachesTheCallInFlight() {
+        RetryPolicy policy = fastRetries().build();
+        CompletableFuture<XrpcResponse> inFlight = new CompletableFuture<>();
+
+        policy.execute(REQUEST, request -> inFlight).cancel(true);
+
+        assertThat(inFlight).isCancelled();
+    }
+
+    @Test
+    public void testBackoffStaysWithinExponentialBound() {
+        RetryPolicy policy = new RetryPolicy.Builder().withBackoff(Duration.ofMillis(100), Duration.ofSeconds(1)).build();
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.backoff(1)).isBetween(0L, Duration.ofMillis(100).toNanos());
+            assertThat(policy.backoff(3)).isBetween(0L, Duration.ofMillis(400).toNanos());
+            assertThat(policy.backoff(20)).isBetween(0L, Duration.ofSeconds(1).toNanos());
+        }
+    }
+
+    @Test
+    public void testHedgeReturnsFirstResponseWhenPrimaryStalls() {
+        RetryPolicy policy = fastRetries().withHedgeDelay(Duration.ofMillis(20)).build();
+        CompletableFuture<XrpcResponse> stalled = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        XrpcResponse response = policy.execute(REQUEST,
+            request -> calls.incrementAndGet() == 1 ? stalled : CompletableFuture.completedFuture(OK)).join();
+
+        assertThat(response).isSameAs(OK);
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(stalled).isCancelled();
+        assertThat(policy.getHedgeCount()).isEqualTo(1);
+        assertThat(policy.getHedgeWinCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCancellationReachesBothHedgedCopies() throws InterruptedException {
+        RetryPolicy policy = fastRetries().withHedgeDelay(Duration.ofMillis(20)).build();
+        List<CompletableFuture<XrpcResponse>> copies = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<XrpcResponse> pending = policy.execute(REQUEST, request -> {
+            CompletableFuture<XrpcResponse> copy = new CompletableFuture<>();
+            copies.add(copy);
+            return copy;
+        });
+        for (int i = 0; i < 100 && copies.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        pending.cancel(true);
+
+        assertThat(copies).hasSize(2).allSatisfy(copy -> assertThat(copy).isCancelled());
+    }
+
+    @Test
+    public void testHedgeDelayLearnsP95Latency() {
+        RetryPolicy policy = fastRetries().withHedging().build();
+        for (int i = 0; i < 64; i++) {
+            policy.execute(REQUEST, request -> CompletableFuture.completedFuture(OK)).join();
+        }
+        assertThat(policy.getP95LatencyNanos()).isPositive();
+        assertThat(policy.getHedgeCount()).isZero();
+    }
+}
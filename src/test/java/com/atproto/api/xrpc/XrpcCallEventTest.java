@@ -0,0 +1,98 @@
+package com.atproto.api.xrpc;
+
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XrpcCallEventTest {
+
+    @TempDir
+    Path dir;
+
+    private XrpcServer server;
+    private XrpcClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new XrpcServer.Builder()
+            .withQuery("com.example.echo", call -> call.respond(Map.of("value", "hello")))
+            .withProcedure("com.example.store", call -> {
+                call.getInput();
+                call.respond(Map.of());
+            })
+            .build()
+            .start();
+        client = new XrpcClient.Builder().withServiceUri(server.getUri()).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertThat(EventType.getEventType(XrpcCallEvent.class).isEnabled()).isFalse();
+        assertThat(EventType.getEventType(XrpcServerCallEvent.class).isEnabled()).isFalse();
+        assertThat(new XrpcCallEvent().isEnabled()).isFalse();
+    }
+
+    @Test
+    public void testRecordsClientAndServerCalls() throws IOException {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.atproto.XrpcCall").withThreshold(Duration.ZERO);
+            recording.enable("com.atproto.XrpcServerCall").withThreshold(Duration.ZERO);
+            recording.start();
+            client.query("com.example.echo", Map.of());
+            client.procedure("com.example.store", Map.of("text", "hi"));
+            assertThatThrownBy(() -> client.query("com.example.missing", Map.of())).isInstanceOf(XrpcException.class);
+            // Waits for the exchanges, and so their server events, to finish
+            server.stop(1);
+            recording.stop();
+            Path file = dir.resolve("calls.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        List<RecordedEvent> calls = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.atproto.XrpcCall"))
+            .toList();
+        assertThat(calls).extracting(e -> e.getString("method"))
+            .containsExactlyInAnyOrder("com.example.echo", "com.example.store", "com.example.missing");
+        RecordedEvent echo = find(calls, "com.example.echo");
+        assertThat(echo.getInt("status")).isEqualTo(200);
+        assertThat(echo.getLong("bytesReceived")).isEqualTo("{\"value\":\"hello\"}".length());
+        assertThat(echo.getBoolean("procedure")).isFalse();
+        RecordedEvent store = find(calls, "com.example.store");
+        assertThat(store.getBoolean("procedure")).isTrue();
+        assertThat(store.getLong("bytesSent")).isEqualTo("{\"text\":\"hi\"}".length());
+        RecordedEvent missing = find(calls, "com.example.missing");
+        assertThat(missing.getInt("status")).isEqualTo(501);
+        assertThat(missing.getString("error")).isEqualTo("MethodNotImplemented");
+
+        List<RecordedEvent> served = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.atproto.XrpcServerCall"))
+            .toList();
+        assertThat(served).extracting(e -> e.getInt("status")).containsExactlyInAnyOrder(200, 200, 501);
+        assertThat(find(served, "com.example.store").getLong("bytesReceived")).isEqualTo("{\"text\":\"hi\"}".length());
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String method) {
+        return events.stream().filter(e -> method.equals(e.getString("method"))).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,361 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.api.xrpc.model.Params;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XrpcClientHttpTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private XrpcClient client;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(serverExecutor);
+        server.createContext("/xrpc/com.atproto.identity.resolveHandle", exchange -> {
+            requests.incrementAndGet();
+            String query = exchange.getRequestURI().getRawQuery();
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            respond(exchange, 200, "{\"did\":\"did:plc:abc\",\"query\":\"" + query + "\",\"auth\":\"" + auth + "\"}");
+        });
+        server.createContext("/xrpc/com.atproto.repo.createRecord", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, "{\"echo\":" + new String(body, StandardCharsets.UTF_8) + ",\"method\":\""
+                + exchange.getRequestMethod() + "\"}");
+        });
+        server.createContext("/xrpc/test.error.badRequest", exchange ->
+            respond(exchange, 400, "{\"error\":\"InvalidRequest\",\"message\":\"Missing handle\",\"details\":[\"handle\"]}"));
+        server.createContext("/xrpc/test.error.rateLimited", exchange ->
+            respond(exchange, 429, "{\"error\":\"RateLimitExceeded\",\"message\":\"Slow down\"}"));
+        server.createContext("/xrpc/test.error.invalidJson", exchange -> respond(exchange, 200, "{\"data\":"));
+        server.createContext("/xrpc/test.error.slow", exchange -> {
+            try {
+                Thread.sleep(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "{}");
+        });
+        server.createContext("/xrpc/test.latency.delayed", exchange -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "{}");
+        });
+        server.start();
+        client = new XrpcClient.Builder()
+            .withServiceUri(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+            .withTimeout(5_000)
+            .build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void testQuerySendsParamsAndParsesResponse() {
+        client.setAccessToken("token");
+        XrpcResponse response = client.query("com.atproto.identity.resolveHandle",
+            Map.of("handle", "alice.test", "tags", List.of("a b", "c")));
+
+        assertThat(response.getStatusCode()).isEqualTo(200);
+        assertThat(response.getData()).containsEntry("did", "did:plc:abc").containsEntry("auth", "Bearer token");
+        assertThat((String) response.getData().get("query"))
+            .contains("handle=alice.test").contains("tags=a+b&tags=c");
+        assertThat(response.getHeader("Content-Type")).startsWith("application/json");
+    }
+
+    @Test
+    public void testQuerySendsTypedParams() {
+        Params params = new Params.Builder()
+            .withParam("handle", "alice.test")
+            .withParam("limit", 25)
+            .withArray("tags", List.of("a b", "c"))
+            .build();
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("com.atproto.identity.resolveHandle")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParams(params)
+            .build();
+
+        assertThat(request.getParams()).isSameAs(params);
+        XrpcResponse response = client.send(request);
+        assertThat(response.getData()).containsEntry("query", "handle=alice.test&limit=25&tags=a%20b&tags=c");
+    }
+
+    @Test
+    public void testProcedurePostsJsonBody() {
+        XrpcResponse response = client.procedure("com.atproto.repo.createRecord", Map.of("repo", "did:plc:abc"));
+
+        assertThat(response.getData()).containsEntry("method", "POST")
+            .containsEntry("echo", Map.of("repo", "did:plc:abc"));
+    }
+
+    @Test
+    public void testBodylessProcedureIsPostedAndUntypedRequestIsRejected() {
+        XrpcRequest bodyless = new XrpcRequest.Builder()
+            .withMethod("com.atproto.repo.createRecord")
+            .withType(XrpcRequest.Type.PROCEDURE)
+            .build();
+        assertThat(client.send(bodyless).getData()).containsEntry("method", "POST");
+
+        XrpcRequest untyped = new XrpcRequest.Builder().withMethod("com.atproto.server.deleteSession").build();
+        assertThat(untyped.validate()).containsKey("type");
+        assertThatThrownBy(() -> client.sendAsync(untyped))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("deleteSession");
+        assertThat(requests).hasValue(0);
+    }
+
+    @Test
+    public void testMapsErrorResponses() {
+        assertThatThrownBy(() -> client.query("test.error.badRequest", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(400);
+                assertThat(e.getCode()).isEqualTo("InvalidRequest");
+                assertThat(e.getMessage()).isEqualTo("Missing handle");
+                assertThat(e.getDetails()).containsExactly("handle");
+            });
+        assertThatThrownBy(() -> client.query("test.error.rateLimited", Map.of()))
+            .isInstanceOf(XrpcRateLimitException.class)
+            .hasMessage("Slow down");
+        XrpcResponse invalid = client.query("test.error.invalidJson", Map.of());
+        assertThat(invalid.getStatusCode()).isEqualTo(200);
+        assertThatThrownBy(invalid::getData)
+            .isInstanceOf(XrpcParseException.class)
+            .hasMessageContaining("Invalid JSON response");
+    }
+
+    @Test
+    public void testTimeoutsAndConnectionFailures() throws IOException {
+        client.setTimeout(200);
+        assertThatThrownBy(() -> client.query("test.error.slow", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.isTimeout()).isTrue();
+                assertThat(e.getStatusCode()).isZero();
+            });
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        XrpcClient unreachable = new XrpcClient.Builder()
+            .withServiceUri(URI.create("http://127.0.0.1:" + port))
+            .withConnectTimeout(Duration.ofSeconds(1))
+            .build();
+        assertThatThrownBy(() -> unreachable.query("com.atproto.identity.resolveHandle", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> assertThat(e.isNetworkError()).isTrue());
+    }
+
+    @Test
+    public void testConcurrentLoadSharesOneHttpClient() throws Exception {
+        XrpcClient other = new XrpcClient.Builder().withServiceUri(client.getServiceUri()).build();
+        URI service = client.getServiceUri();
+        HttpClient shared = HttpUtil.acquireClient(service, XrpcClient.DEFAULT_CONNECT_TIMEOUT);
+        HttpUtil.releaseClient(service, XrpcClient.DEFAULT_CONNECT_TIMEOUT);
+        assertThat(HttpUtil.acquireClient(other.getServiceUri(), XrpcClient.DEFAULT_CONNECT_TIMEOUT)).isSameAs(shared);
+        HttpUtil.releaseClient(service, XrpcClient.DEFAULT_CONNECT_TIMEOUT);
+
+        int threads = 32;
+        int perThread = 50;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                XrpcClient caller = t % 2 == 0 ? client : other;
+                results.add(callers.submit(() -> {
+                    int ok = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        XrpcResponse response = caller.query("com.atproto.identity.resolveHandle", Map.of("handle", "h" + i));
+                        ok += response.getStatusCode() == 200 ? 1 : 0;
+                    }
+                    return ok;
+                }));
+            }
+            int ok = 0;
+            for (Future<Integer> result : results) {
+                ok += result.get();
+            }
+            assertThat(ok).isEqualTo(threads * perThread);
+            assertThat(requests.get()).isEqualTo(threads * perThread);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // Once every client using it is closed, the shared client is shut down and replaced
+        other.close();
+        other.close();
+        client.close();
+        HttpClient replacement = HttpUtil.acquireClient(service, XrpcClient.DEFAULT_CONNECT_TIMEOUT);
+        HttpUtil.releaseClient(service, XrpcClient.DEFAULT_CONNECT_TIMEOUT);
+        assertThat(replacement).isNotSameAs(shared);
+        assertThat(shared.isTerminated() || shared.awaitTermination(Duration.ofSeconds(5))).isTrue();
+    }
+
+    @Test
+    public void testSendAsyncCompletesWithResponseOrMappedFailure() {
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("com.atproto.identity.resolveHandle")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("handle", "alice.test")
+            .build();
+        assertThat(client.sendAsync(request).join().getData()).containsEntry("did", "did:plc:abc");
+
+        XrpcRequest failing = new XrpcRequest.Builder()
+            .withMethod("test.error.badRequest")
+            .withType(XrpcRequest.Type.QUERY)
+            .build();
+        assertThatThrownBy(() -> client.sendAsync(failing).join())
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(XrpcException.class);
+    }
+
+    @Test
+    public void testVirtualThreadModeKeepsManyCallsInFlight() {
+        XrpcClient virtual = new XrpcClient.Builder()
+            .withServiceUri(client.getServiceUri())
+            .withVirtualThreads()
+            .build();
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("test.latency.delayed")
+            .withType(XrpcRequest.Type.QUERY)
+            .build();
+
+        int calls = 500;
+        long start = System.nanoTime();
+        List<CompletableFuture<XrpcResponse>> pending = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            pending.add(virtual.sendAsync(request));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Serially these would take 100 seconds; concurrently they overlap on the server delay
+        assertThat(pending).allSatisfy(f -> assertThat(f.join().getStatusCode()).isEqualTo(200));
+        assertThat(elapsedMillis).isLessThan(20_000);
+    }
+
+    @Test
+    public void testCoalescingSendsIdenticalConcurrentQueriesOnce() {
+        XrpcClient coalescing = new XrpcClient.Builder()
+            .withServiceUri(client.getServiceUri())
+            .withCoalescing()
+            .build();
+        AtomicInteger delayed = new AtomicInteger();
+        server.createContext("/xrpc/test.latency.counted", exchange -> {
+            delayed.incrementAndGet();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "{}");
+        });
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("test.latency.counted")
+            .withType(XrpcRequest.Type.QUERY)
+            .build();
+
+        List<CompletableFuture<XrpcResponse>> pending = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pending.add(coalescing.sendAsync(request));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(delayed.get()).isEqualTo(1);
+        assertThat(coalescing.getCoalescer().getCoalescedCount()).isEqualTo(19);
+    }
+
+    @Test
+    public void testLosingHedgeAbortsItsExchange() throws InterruptedException {
+        assertLosingHedgeAborted(new XrpcClient.Builder());
+        assertLosingHedgeAborted(new XrpcClient.Builder().withVirtualThreads());
+    }
+
+    private void assertLosingHedgeAborted(XrpcClient.Builder builder) throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch aborted = new CountDownLatch(1);
+        server.createContext("/xrpc/test.hedge.stalled", exchange -> {
+            if (calls.incrementAndGet() > 1) {
+                respond(exchange, 200, "{}");
+                return;
+            }
+            // Trickle a body that never ends; writing fails once the client drops the exchange
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 500; i++) {
+                    out.write(' ');
+                    out.flush();
+                    Thread.sleep(20);
+                }
+            } catch (IOException e) {
+                aborted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        XrpcClient hedging = builder
+            .withServiceUri(client.getServiceUri())
+            .withRateLimiter(new AdaptiveRateLimiter())
+            .withRetryPolicy(new RetryPolicy.Builder().withHedgeDelay(Duration.ofMillis(100)).build())
+            .build();
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("test.hedge.stalled")
+            .withType(XrpcRequest.Type.QUERY)
+            .build();
+        try {
+            assertThat(hedging.send(request).getStatusCode()).isEqualTo(200);
+            assertThat(hedging.getRetryPolicy().getHedgeWinCount()).isEqualTo(1);
+            assertThat(aborted.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            hedging.close();
+            server.removeContext("/xrpc/test.hedge.stalled");
+        }
+    }
+}
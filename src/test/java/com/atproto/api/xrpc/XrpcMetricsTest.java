@@ -0,0 +1,164 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XrpcMetricsTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private XrpcServer server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new XrpcServer.Builder()
+            .withQuery("com.example.echo", call -> call.respond(Map.of("value", "x".repeat(100))))
+            .withQuery("com.example.fail", call -> {
+                throw new XrpcException(400, "InvalidRequest", "Bad input");
+            })
+            .withQuery("com.example.blocked", call -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                call.respond(Map.of());
+            })
+            .withProcedure("com.example.store", call -> {
+                call.getInput();
+                call.respond(Map.of());
+            })
+            .build()
+            .start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        server.close();
+    }
+
+    private XrpcClient client(XrpcMetrics metrics) {
+        return new XrpcClient.Builder().withServiceUri(server.getUri()).withMetrics(metrics).build();
+    }
+
+    @Test
+    public void testRecordsCallsLatencyAndBytes() {
+        XrpcMetrics metrics = new XrpcMetrics();
+        XrpcClient client = client(metrics);
+        for (int i = 0; i < 5; i++) {
+            client.query("com.example.echo", Map.of());
+        }
+        client.procedure("com.example.store", Map.of("text", "hello"));
+
+        XrpcMetrics.MethodSnapshot echo = metrics.snapshot("com.example.echo");
+        assertThat(echo.getRequestCount()).isEqualTo(5);
+        assertThat(echo.getErrorCount()).isZero();
+        assertThat(echo.getInFlight()).isZero();
+        assertThat(echo.getBytesSent()).isZero();
+        assertThat(echo.getBytesReceived()).isGreaterThanOrEqualTo(5 * 100);
+        assertThat(echo.getP50()).isPositive();
+        assertThat(echo.getP99()).isGreaterThanOrEqualTo(echo.getP50());
+        assertThat(echo.getLatencySumNanos()).isGreaterThanOrEqualTo(echo.getLatencyNanos(1.0));
+
+        XrpcMetrics.MethodSnapshot store = metrics.snapshot("com.example.store");
+        assertThat(store.getRequestCount()).isEqualTo(1);
+        assertThat(store.getBytesSent()).isEqualTo("{\"text\":\"hello\"}".length());
+        assertThat(metrics.snapshot()).containsOnlyKeys("com.example.echo", "com.example.store");
+    }
+
+    @Test
+    public void testCountsErrorsByCode() {
+        XrpcMetrics metrics = new XrpcMetrics();
+        XrpcClient client = client(metrics);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> client.query("com.example.fail", Map.of())).isInstanceOf(XrpcException.class);
+        }
+        assertThatThrownBy(() -> client.query("com.example.missing", Map.of())).isInstanceOf(XrpcException.class);
+
+        assertThat(metrics.snapshot("com.example.fail").getErrors()).containsExactly(Map.entry("InvalidRequest", 3L));
+        assertThat(metrics.snapshot("com.example.missing").getErrors())
+            .containsExactly(Map.entry("MethodNotImplemented", 1L));
+    }
+
+    @Test
+    public void testTracksCallsInFlight() {
+        XrpcMetrics metrics = new XrpcMetrics();
+        XrpcClient client = client(metrics);
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod("com.example.blocked")
+            .withType(XrpcRequest.Type.QUERY)
+            .build();
+        CompletableFuture<XrpcResponse> first = client.sendAsync(request);
+        CompletableFuture<XrpcResponse> second = client.sendAsync(request);
+
+        assertThat(metrics.snapshot("com.example.blocked").getInFlight()).isEqualTo(2);
+        release.countDown();
+        first.join();
+        second.join();
+        assertThat(metrics.snapshot("com.example.blocked").getInFlight()).isZero();
+        assertThat(metrics.snapshot("com.example.blocked").getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testWritesPrometheusText() {
+        XrpcMetrics metrics = new XrpcMetrics();
+        XrpcClient client = client(metrics);
+        client.query("com.example.echo", Map.of());
+        assertThatThrownBy(() -> client.query("com.example.fail", Map.of())).isInstanceOf(XrpcException.class);
+
+        String text = metrics.toPrometheus();
+        assertThat(text)
+            .contains("# TYPE xrpc_client_requests_total counter\n")
+            .contains("xrpc_client_requests_total{method=\"com.example.echo\"} 1\n")
+            .contains("xrpc_client_errors_total{method=\"com.example.fail\",code=\"InvalidRequest\"} 1\n")
+            .contains("xrpc_client_in_flight{method=\"com.example.echo\"} 0\n")
+            .contains("# TYPE xrpc_client_latency_seconds summary\n")
+            .contains("xrpc_client_latency_seconds{method=\"com.example.echo\",quantile=\"0.99\"} ")
+            .contains("xrpc_client_latency_seconds_count{method=\"com.example.echo\"} 1\n");
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        XrpcClient client = new XrpcClient.Builder().withServiceUri(server.getUri()).build();
+        client.query("com.example.echo", Map.of());
+        assertThat(client.getMetrics()).isNull();
+    }
+
+    @Test
+    public void testHistogramQuantilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(Duration.ofMillis(millis).toNanos());
+        }
+        long[] buckets = histogram.buckets();
+        assertThat(histogram.count()).isEqualTo(1000);
+        assertThat(LatencyHistogram.quantile(buckets, 0.5)).isCloseTo(500_000_000L, withinPercent());
+        assertThat(LatencyHistogram.quantile(buckets, 0.99)).isCloseTo(990_000_000L, withinPercent());
+        assertThat(LatencyHistogram.quantile(buckets, 0.999)).isCloseTo(999_000_000L, withinPercent());
+        assertThat(LatencyHistogram.quantile(new long[buckets.length], 0.5)).isZero();
+    }
+
+    @Test
+    public void testHistogramBucketsRoundTrip() {
+        for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789L, 1L << 40}) {
+            long estimate = LatencyHistogram.value(LatencyHistogram.index(value));
+            assertThat(Math.abs(estimate - value)).isLessThanOrEqualTo(Math.max(1, value / 16));
+        }
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.index(1L << 50));
+    }
+
+    private static org.assertj.core.data.Percentage withinPercent() {
+        return org.assertj.core.data.Percentage.withPercentage(7);
+    }
+}
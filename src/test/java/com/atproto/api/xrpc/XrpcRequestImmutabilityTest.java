@@ -0,0 +1,113 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XrpcRequestImmutabilityTest {
+
+    private static final String TEST_METHOD = "app.bsky.feed.getPosts";
+
+    @Test
+    public void testGettersReturnSharedUnmodifiableViews() {
+        XrpcRequest request = new XrpcRequest.Builder()
+            .withMethod(TEST_METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParams(Map.of("uris", List.of("at://a")))
+            .withHeader("Accept", "application/json")
+            .build();
+
+        assertThat(request.getParams()).isSameAs(request.getParams());
+        assertThat(request.getHeaders()).isSameAs(request.getHeaders());
+        assertThatThrownBy(() -> request.getParams().put("limit", 1)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> request.getHeaders().clear()).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> request.getBody().put("a", "b")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testNestedValuesAreFrozenAgainstCallerMutation() {
+        List<Object> uris = new ArrayList<>(List.of("at://a"));
+        Map<String, Object> nested = new HashMap<>(Map.of("uris", uris));
+        Map<String, Object> params = new HashMap<>(Map.of("filter", nested));
+        XrpcRequest request = new XrpcRequest(TEST_METHOD, params, null, null, null, null);
+
+        uris.add("at://b");
+        nested.put("extra", true);
+        params.put("limit", 10);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> frozenFilter = (Map<String, Object>) request.getParams().get("filter");
+        assertThat(request.getParams()).containsOnlyKeys("filter");
+        assertThat(frozenFilter).containsOnlyKeys("uris");
+        @SuppressWarnings("unchecked")
+        List<Object> frozenUris = (List<Object>) frozenFilter.get("uris");
+        assertThat(frozenUris).containsExactly("at://a");
+        assertThatThrownBy(() -> frozenUris.add("at://c"))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testBuilderCopiesOnWriteAfterBuild() {
+        XrpcRequest.Builder builder = new XrpcRequest.Builder()
+            .withMethod(TEST_METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withQueryParam("limit", "10");
+        XrpcRequest first = builder.build();
+        XrpcRequest second = builder.withQueryParam("cursor", "abc").build();
+
+        assertThat(first.getQueryParams()).containsOnlyKeys("limit");
+        assertThat(second.getQueryParams()).containsOnlyKeys("limit", "cursor");
+    }
+
+    @Test
+    public void testRepeatedBuildSharesOnlyUnmodifiableViews() {
+        XrpcRequest.Builder builder = new XrpcRequest.Builder()
+            .withMethod(TEST_METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("x", "1")
+            .withHeader("Accept", "application/json");
+        XrpcRequest first = builder.build();
+        int firstHash = first.hashCode();
+        XrpcRequest second = builder.build();
+
+        assertThatThrownBy(() -> second.getParams().put("y", "2")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> second.getHeaders().put("X", "y")).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(first.getParams()).containsOnlyKeys("x");
+        assertThat(first.getHeaders()).containsOnlyKeys("Accept");
+        assertThat(first.hashCode()).isEqualTo(firstHash);
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    public void testToBuilderSharesUnmodifiedMaps() {
+        XrpcRequest original = new XrpcRequest.Builder()
+            .withMethod(TEST_METHOD)
+            .withType(XrpcRequest.Type.QUERY)
+            .withParams(Map.of("uris", List.of("at://a")))
+            .withHeader("Accept", "application/json")
+            .build();
+
+        XrpcRequest copy = original.toBuilder().withAuth("did:plc:abc").build();
+        XrpcRequest modified = original.toBuilder().withHeader("If-None-Match", "\"etag\"").build();
+
+        assertThat(copy.getParams()).isSameAs(original.getParams());
+        assertThat(copy.getHeaders()).isSameAs(original.getHeaders());
+        assertThat(modified.getHeaders()).containsOnlyKeys("Accept", "If-None-Match");
+        assertThat(original.getHeaders()).containsOnlyKeys("Accept");
+    }
+
+    @Test
+    public void testFrozenValuesAreReusedAcrossRequests() {
+        XrpcRequest original = new XrpcRequest(TEST_METHOD, Map.of("filter", Map.of("a", 1)), null, null, null, null);
+        XrpcRequest derived = new XrpcRequest(TEST_METHOD, original.getParams(), null, null, null, null);
+
+        assertThat(derived.getParams()).isSameAs(original.getParams());
+        assertThat(derived).isEqualTo(original).hasSameHashCodeAs(original);
+    }
+}
@@ -113,4 +113,18 @@ public class XrpcRequestTest {
         XrpcRequest differentRequest = new XrpcRequest("different.method", params, null, null, null, null);
         assertNotEquals(request1, differentRequest);
     }
+
+    @Test
+    public void testConstructorTypes() {
+        assertEquals(XrpcRequest.Type.QUERY, request.getType());
+
+        XrpcRequest withBody = new XrpcRequest("com.atproto.repo.createRecord", null, null, null, null, Map.of("text", "hi"));
+        assertEquals(XrpcRequest.Type.PROCEDURE, withBody.getType());
+
+        XrpcRequest bodyless = new XrpcRequest("com.atproto.server.deleteSession", XrpcRequest.Type.PROCEDURE,
+            null, null, null, null, null);
+        assertEquals(XrpcRequest.Type.PROCEDURE, bodyless.getType());
+        assertFalse(bodyless.isQuery());
+        assertTrue(bodyless.validate().isEmpty());
+    }
 }
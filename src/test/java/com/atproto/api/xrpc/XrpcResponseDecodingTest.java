@@ -0,0 +1,99 @@
+package com.atproto.api.xrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XrpcResponseDecodingTest {
+
+    private static final String METHOD = "app.bsky.feed.getTimeline";
+    private static final Map<String, String> JSON = Map.of("content-type", "application/json");
+
+    private static XrpcResponse response(String body) {
+        return XrpcClient.decode(METHOD, 200, JSON, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadsValuesByPointerWithoutDecodingTheBody() {
+        // The feed is malformed after its first post, so a full decode would fail
+        XrpcResponse response = response("{\"feed\":[{\"post\":{\"uri\":\"at://a/1\",\"likes\":3}},{\"post\":oops}],"
+            + "\"cursor\":\"c1\"}");
+
+        assertThat(response.at("/feed/0/post/uri")).isEqualTo("at://a/1");
+        assertThat(response.at("/feed/0/post/likes")).isEqualTo(3L);
+        assertThat(response.at("/feed/0/missing")).isNull();
+        assertThat(response.at("/feed/x")).isNull();
+        assertThatThrownBy(() -> response.getString("/cursor")).isInstanceOf(XrpcParseException.class);
+        assertThatThrownBy(response::getData).isInstanceOf(XrpcParseException.class);
+    }
+
+    @Test
+    public void testDecodesFullDataOnceOnFirstAccess() {
+        XrpcResponse response = response("{\"cursor\":\"c1\",\"a/b\":{\"~k\":true},\"feed\":[]}");
+
+        assertThat(response.getString("/cursor")).isEqualTo("c1");
+        assertThat(response.at("/a~1b/~0k")).isEqualTo(true);
+        assertThat(response.at("/feed/0")).isNull();
+        Map<String, Object> data = response.getData();
+        assertThat(data).containsEntry("cursor", "c1").containsKey("feed");
+        assertThat(response.getData()).isSameAs(data);
+        assertThat(response.at("")).isSameAs(data);
+        assertThat(response.validate()).isTrue();
+        assertThatThrownBy(() -> response.at("cursor")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testDecodesIntoTypedModel() {
+        XrpcResponse response = response("{\"feed\":[{\"post\":{\"uri\":\"at://a/1\"}},{\"post\":{\"uri\":\"at://a/2\"}}],"
+            + "\"cursor\":\"c2\"}");
+
+        Timeline timeline = response.decode(Timeline::read);
+
+        assertThat(timeline.uris).containsExactly("at://a/1", "at://a/2");
+        assertThat(timeline.cursor).isEqualTo("c2");
+    }
+
+    @Test
+    public void testReadsDataSetInMemory() {
+        XrpcResponse response = new XrpcResponse(METHOD);
+        response.setData(Map.of("feed", List.of(Map.of("uri", "at://a/1")), "cursor", "c3"));
+
+        assertThat(response.getString("/cursor")).isEqualTo("c3");
+        assertThat(response.at("/feed/0/uri")).isEqualTo("at://a/1");
+        assertThat(response.at("/feed/1")).isNull();
+        assertThat(response.decode(Timeline::read).cursor).isEqualTo("c3");
+    }
+
+    private static final class Timeline {
+        final List<String> uris = new ArrayList<>();
+        String cursor;
+
+        static Timeline read(JsonReader reader) throws IOException {
+            Timeline timeline = new Timeline();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "cursor" -> timeline.cursor = reader.nextString();
+                    case "feed" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            Object uri = reader.readObject().get("post") instanceof Map<?, ?> post ? post.get("uri") : null;
+                            timeline.uris.add((String) uri);
+                        }
+                        reader.endArray();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return timeline;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.atproto.api.xrpc;
+
+import com.atproto.lexicon.LexiconParser;
+import com.atproto.security.FixedWindowRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XrpcServerTest {
+
+    private XrpcServer server;
+    private XrpcClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new XrpcServer.Builder()
+            .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .withQuery("com.atproto.identity.resolveHandle", call -> {
+                if (call.getParam("handle") == null) {
+                    throw new XrpcException(400, "InvalidRequest", "Missing handle");
+                }
+                call.respond(Map.of("did", "did:plc:" + call.getParam("handle"), "auth", String.valueOf(call.getAuth()),
+                    "tags", call.getParams().getOrDefault("tag", List.of())));
+            })
+            .withProcedure("com.atproto.repo.createRecord", call -> call.respond(Map.of("echo", call.getInput())))
+            .withProcedure("com.atproto.server.deleteSession", call -> { })
+            .withQuery("test.server.large", call -> {
+                List<Object> feed = new ArrayList<>();
+                for (int i = 0; i < 2_000; i++) {
+                    feed.add(Map.of("uri", "at://did:plc:abc/app.bsky.feed.post/" + i));
+                }
+                call.respond(Map.of("feed", feed, "cursor", "end"));
+            })
+            .withQuery("test.server.stream", call -> {
+                OutputStream out = call.openStream(200, "application/octet-stream", -1);
+                for (int i = 0; i < 100; i++) {
+                    out.write(new byte[1024]);
+                }
+            })
+            .withLexicon(new LexiconParser().parseMethod(ParamDecoderTest.GET_AUTHOR_FEED),
+                call -> call.respond(call.getParams()))
+            .withQuery("test.server.broken", call -> {
+                throw new IllegalStateException("secret internals");
+            })
+            .build()
+            .start();
+        client = new XrpcClient.Builder().withServiceUri(server.getUri()).withAccessToken("token").build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testDispatchesQueriesAndProcedures() {
+        XrpcResponse resolved = client.send(new XrpcRequest.Builder()
+            .withMethod("com.atproto.identity.resolveHandle")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("handle", "alice test")
+            .withParam("tag", List.of("a", "b"))
+            .build());
+        assertThat(resolved.getData())
+            .containsEntry("did", "did:plc:alice test")
+            .containsEntry("auth", "token")
+            .containsEntry("tags", List.of("a", "b"));
+
+        XrpcResponse created = client.procedure("com.atproto.repo.createRecord", Map.of("text", "héllo"));
+        assertThat(created.getData()).containsEntry("echo", Map.of("text", "héllo"));
+
+        XrpcResponse deleted = client.procedure("com.atproto.server.deleteSession", Map.of());
+        assertThat(deleted.getStatusCode()).isEqualTo(200);
+        assertThat(deleted.getBodyBytes()).isEmpty();
+    }
+
+    @Test
+    public void testStreamsLargeAndRawBodies() throws Exception {
+        XrpcResponse large = client.query("test.server.large", Map.of());
+        assertThat(large.getString("/cursor")).isEqualTo("end");
+        assertThat((List<?>) large.at("/feed")).hasSize(2_000);
+
+        HttpResponse<byte[]> raw = HttpClient.newHttpClient().send(
+            HttpRequest.newBuilder(URI.create(server.getUri() + "/xrpc/test.server.stream")).build(),
+            HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(raw.body()).hasSize(100 * 1024);
+        assertThat(raw.headers().firstValue("Content-Type")).hasValue("application/octet-stream");
+    }
+
+    @Test
+    public void testMapsErrorsToXrpcErrorResponses() {
+        assertThatThrownBy(() -> client.query("com.atproto.identity.resolveHandle", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(400);
+                assertThat(e.getCode()).isEqualTo("InvalidRequest");
+                assertThat(e.getMessage()).isEqualTo("Missing handle");
+            });
+        assertThatThrownBy(() -> client.query("com.example.unknown.method", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(501);
+                assertThat(e.getCode()).isEqualTo("MethodNotImplemented");
+            });
+        assertThatThrownBy(() -> client.procedure("com.atproto.identity.resolveHandle", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> assertThat(e.getStatusCode()).isEqualTo(405));
+        assertThatThrownBy(() -> client.query("test.server.broken", Map.of()))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(500);
+                assertThat(e.getMessage()).doesNotContain("secret");
+            });
+    }
+
+    @Test
+    public void testDecodesParamsOfLexiconMethodsBeforeTheHandler() {
+        XrpcResponse feed = client.send(new XrpcRequest.Builder()
+            .withMethod("app.bsky.feed.getAuthorFeed")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParam("actor", "alice")
+            .withParam("limit", 10)
+            .withParam("uris", List.of(1, 2))
+            .build());
+        assertThat(feed.getData()).isEqualTo(Map.of("actor", "alice", "limit", 10L, "filter", "all",
+            "uris", List.of(1L, 2L)));
+
+        assertThatThrownBy(() -> client.query("app.bsky.feed.getAuthorFeed", Map.of("actor", "alice", "limit", 500)))
+            .isInstanceOfSatisfying(XrpcException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(400);
+                assertThat(e.getCode()).isEqualTo("InvalidRequest");
+                assertThat(e.getMessage()).contains("limit");
+            });
+    }
+
+    @Test
+    public void testRejectsCallsOverTheConcurrencyLimitsAtOnce() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(10);
+        try (XrpcServer limited = new XrpcServer.Builder()
+                .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .withQuery("test.server.slow", call -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    call.respond(Map.of());
+                })
+                .withQuery("test.server.fast", call -> call.respond(Map.of()))
+                .withMethodConcurrencyLimit("test.server.slow", 1)
+                .withConcurrencyLimiter(limiter)
+                .build()
+                .start()) {
+            XrpcClient limitedClient = new XrpcClient.Builder().withServiceUri(limited.getUri()).build();
+            CompletableFuture<XrpcResponse> first = limitedClient.sendAsync(
+                new XrpcRequest.Builder().withMethod("test.server.slow").withType(XrpcRequest.Type.QUERY).build());
+            entered.await();
+
+            assertThatThrownBy(() -> limitedClient.query("test.server.slow", Map.of()))
+                .isInstanceOfSatisfying(XrpcException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(503);
+                    assertThat(e.getCode()).isEqualTo("Overloaded");
+                });
+            assertThat(limitedClient.query("test.server.fast", Map.of()).getStatusCode()).isEqualTo(200);
+
+            release.countDown();
+            assertThat(first.join().getStatusCode()).isEqualTo(200);
+            assertThat(limiter.getInFlight()).isZero();
+        }
+    }
+
+    @Test
+    public void testLimitsRequestsPerClientAndReportsTheQuota() throws IOException {
+        try (XrpcServer limited = new XrpcServer.Builder()
+                .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .withQuery("test.server.fast", call -> call.respond(Map.of()))
+                .withRateLimiter(new FixedWindowRateLimiter(2, Duration.ofMinutes(1)), XrpcServer.Call::getAuth)
+                .build()
+                .start()) {
+            XrpcClient alice = new XrpcClient.Builder().withServiceUri(limited.getUri()).withAccessToken("alice").build();
+            XrpcClient bob = new XrpcClient.Builder().withServiceUri(limited.getUri()).withAccessToken("bob").build();
+
+            XrpcResponse response = alice.query("test.server.fast", Map.of());
+            assertThat(response.getHeader("ratelimit-limit")).isEqualTo("2");
+            assertThat(response.getHeader("ratelimit-remaining")).isEqualTo("1");
+            alice.query("test.server.fast", Map.of());
+            assertThatThrownBy(() -> alice.query("test.server.fast", Map.of()))
+                .isInstanceOfSatisfying(XrpcRateLimitException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(429);
+                    assertThat(e.getHeaders()).containsKey("retry-after").containsEntry("ratelimit-remaining", "0");
+                });
+            assertThat(bob.query("test.server.fast", Map.of()).getStatusCode()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    public void testLimitsAnonymousCallsByRemoteAddress() throws IOException {
+        try (XrpcServer limited = new XrpcServer.Builder()
+                .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .withQuery("test.server.fast", call -> call.respond(Map.of()))
+                .withRateLimiter(new FixedWindowRateLimiter(2, Duration.ofMinutes(1)), XrpcServer.Call::getAuth)
+                .build()
+                .start()) {
+            XrpcClient anonymous = new XrpcClient.Builder().withServiceUri(limited.getUri()).build();
+            XrpcClient alice = new XrpcClient.Builder().withServiceUri(limited.getUri()).withAccessToken("alice").build();
+
+            XrpcResponse response = anonymous.query("test.server.fast", Map.of());
+            assertThat(response.getHeader("ratelimit-remaining")).isEqualTo("1");
+            anonymous.query("test.server.fast", Map.of());
+            assertThatThrownBy(() -> anonymous.query("test.server.fast", Map.of()))
+                .isInstanceOf(XrpcRateLimitException.class);
+            assertThat(alice.query("test.server.fast", Map.of()).getStatusCode()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    public void testServesConcurrentCallsOnVirtualThreads() {
+        XrpcClient async = new XrpcClient.Builder().withServiceUri(server.getUri()).build();
+        List<CompletableFuture<XrpcResponse>> pending = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            pending.add(async.sendAsync(new XrpcRequest.Builder()
+                .withMethod("com.atproto.identity.resolveHandle")
+                .withType(XrpcRequest.Type.QUERY)
+                .withParam("handle", "user" + i)
+                .build()));
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            assertThat(pending.get(i).join().getString("/did")).isEqualTo("did:plc:user" + i);
+        }
+    }
+}
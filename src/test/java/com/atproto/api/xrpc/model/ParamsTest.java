@@ -0,0 +1,113 @@
+package com.atproto.api.xrpc.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ParamsTest {
+
+    @Test
+    public void testEncodesTypedValues() {
+        Params params = new Params.Builder()
+            .withParam("actor", "alice.bsky.social")
+            .withParam("limit", 50)
+            .withParam("reverse", true)
+            .withParam("since", Instant.parse("2024-01-31T12:05:09.123456Z"))
+            .build();
+
+        assertThat(params.toQueryString())
+            .isEqualTo("actor=alice.bsky.social&limit=50&reverse=true&since=2024-01-31T12%3A05%3A09.123Z");
+        assertThat(params.encodedLength()).isEqualTo(params.toQueryString().length());
+    }
+
+    @Test
+    public void testRepeatsArrayParams() {
+        Params params = new Params.Builder()
+            .withArray("uris", List.of("at://did:plc:a/app.bsky.feed.post/1", "at://did:plc:b/app.bsky.feed.post/2"))
+            .withArray("empty", List.of())
+            .withArray("ids", List.of(1, -2L, Long.MIN_VALUE))
+            .build();
+
+        assertThat(params.toQueryString()).isEqualTo(
+            "uris=at%3A%2F%2Fdid%3Aplc%3Aa%2Fapp.bsky.feed.post%2F1&uris=at%3A%2F%2Fdid%3Aplc%3Ab%2Fapp.bsky.feed.post%2F2"
+                + "&ids=1&ids=-2&ids=-9223372036854775808");
+        assertThat(params.get("uris")).isEqualTo(List.of("at://did:plc:a/app.bsky.feed.post/1",
+            "at://did:plc:b/app.bsky.feed.post/2"));
+    }
+
+    @Test
+    public void testPercentEncodesUtf8LikeTheJdk() {
+        String text = "héllo wörld ☃ 😀 a+b&c=d~_.-*";
+        Params params = new Params.Builder().withParam("q", text).build();
+
+        String expected = URLEncoder.encode(text, StandardCharsets.UTF_8)
+            .replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+        assertThat(params.toQueryString()).isEqualTo("q=" + expected);
+        assertThat(URLDecoder.decode(params.toQueryString().substring(2), StandardCharsets.UTF_8)).isEqualTo(text);
+    }
+
+    @Test
+    public void testEncodesLoneSurrogatesAsReplacement() {
+        Params params = new Params.Builder().withParam("q", "a\uD800b").build();
+
+        assertThat(params.toQueryString()).isEqualTo("q=a%EF%BF%BDb");
+        assertThat(params.encodedLength()).isEqualTo(params.toQueryString().length());
+    }
+
+    @Test
+    public void testFormatsDatetimesAcrossTheCalendar() {
+        for (String datetime : new String[] {"0000-01-01T00:00:00Z", "1969-12-31T23:59:59.999Z", "2000-02-29T00:00:00Z",
+                "2100-03-01T01:02:03.004Z", "9999-12-31T23:59:59.999Z"}) {
+            Instant instant = Instant.parse(datetime);
+            Params params = new Params.Builder().withParam("at", instant).build();
+            String decoded = URLDecoder.decode(params.toQueryString().substring(3), StandardCharsets.UTF_8);
+            assertThat(Instant.parse(decoded)).isEqualTo(instant);
+        }
+        assertThatThrownBy(() -> new Params.Builder().withParam("at", Instant.parse("+10000-01-01T00:00:00Z")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testEncodesIntoBuffersAndCaches() {
+        Params params = new Params.Builder().withParam("cursor", "abc").withParam("limit", 100).build();
+        String expected = "cursor=abc&limit=100";
+
+        byte[] target = new byte[64];
+        int written = params.encodeTo(target, 4);
+        assertThat(new String(target, 4, written, StandardCharsets.US_ASCII)).isEqualTo(expected);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64).position(2);
+        params.encodeTo(buffer);
+        assertThat(buffer.position()).isEqualTo(2 + expected.length());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(64);
+        params.encodeTo(direct);
+        assertThat(direct.position()).isEqualTo(expected.length());
+
+        assertThat(params.encoded()).isSameAs(params.encoded());
+        assertThat(params.toQueryString()).isSameAs(params.toQueryString());
+    }
+
+    @Test
+    public void testIsAReadOnlyMap() {
+        Params params = new Params.Builder().withParam("actor", "alice").withParam("limit", 10).withParam("limit", 20)
+            .build();
+
+        assertThat(params).containsExactly(Map.entry("actor", "alice"), Map.entry("limit", 20L));
+        assertThat(params).isEqualTo(Map.of("actor", "alice", "limit", 20L));
+        assertThat(Params.empty()).isEmpty();
+        assertThat(Params.empty().toQueryString()).isEmpty();
+        assertThatThrownBy(() -> params.put("x", "y")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> new Params.Builder().withArray("bad", List.of(new Object())))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,179 @@
+package com.atproto.concurrency;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EventManagerTest {
+
+    private static WaitStrategy strategy(String name) {
+        return switch (name) {
+            case "busySpin" -> WaitStrategy.busySpin();
+            case "yielding" -> WaitStrategy.yielding();
+            default -> WaitStrategy.parking();
+        };
+    }
+
+    @Test
+    public void testEverySubscriptionSeesEveryEventInOrder() {
+        EventManager<String> manager = new EventManager.Builder<String>().withCapacity(8).build();
+        manager.publishEvent("before");
+        EventManager.Subscription<String> first = manager.createSubscription("first");
+        manager.createSubscription("second");
+        manager.publishEvent("a");
+        manager.publishBatch(List.of("b", "c", "d"));
+
+        List<String> seen = new ArrayList<>();
+        List<Boolean> ends = new ArrayList<>();
+        assertThat(first.poll(2, (event, sequence, end) -> {
+            seen.add(event + sequence);
+            ends.add(end);
+        })).isEqualTo(2);
+        assertThat(manager.consumeEvents("first", (event, sequence, end) -> seen.add(event + sequence))).isEqualTo(2);
+        assertThat(seen).containsExactly("a1", "b2", "c3", "d4");
+        assertThat(ends).containsExactly(false, true);
+        assertThat(first.getLag()).isZero();
+
+        List<String> second = new ArrayList<>();
+        assertThat(manager.consumeBatch("second", 10, (event, sequence, end) -> second.add(event))).isEqualTo(4);
+        assertThat(second).containsExactly("a", "b", "c", "d");
+        assertThat(manager.consumeEvents("second", (event, sequence, end) -> second.add(event))).isZero();
+    }
+
+    @Test
+    @Timeout(10)
+    public void testProducersWaitForTheSlowestSubscription() throws Exception {
+        EventManager<Integer> manager = new EventManager.Builder<Integer>().withCapacity(4).build();
+        EventManager.Subscription<Integer> slow = manager.createSubscription("slow");
+        EventManager.Subscription<Integer> fast = manager.createSubscription("fast");
+        manager.publishBatch(List.of(0, 1, 2, 3));
+        assertThat(fast.poll(4, (event, sequence, end) -> { })).isEqualTo(4);
+
+        CompletableFuture<Long> blocked = CompletableFuture.supplyAsync(() -> manager.publishEvent(4));
+        Thread.sleep(100);
+        assertThat(blocked).isNotDone();
+        // The blocked producer has not claimed a slot, so a caught-up subscription simply waits
+        assertThat(manager.getCursor()).isEqualTo(3);
+        assertThat(fast.take(1, Duration.ofMillis(50), (event, sequence, end) -> { })).isZero();
+
+        assertThat(slow.poll(1, (event, sequence, end) -> { })).isEqualTo(1);
+        assertThat(blocked.get(5, TimeUnit.SECONDS)).isEqualTo(4);
+
+        manager.deleteSubscription("slow");
+        manager.deleteSubscription("fast");
+        manager.publishBatch(IntStream.range(0, 10).boxed().toList());
+        assertThat(manager.getCursor()).isEqualTo(14);
+        assertThatThrownBy(() -> slow.poll(1, (event, sequence, end) -> { })).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testFailedHandlerConsumesUpToTheFailure() {
+        EventManager<String> manager = new EventManager.Builder<String>().withCapacity(8).build();
+        EventManager.Subscription<String> subscription = manager.createSubscription("s");
+        manager.publishBatch(List.of("ok", "bad", "next"));
+
+        assertThatThrownBy(() -> subscription.poll(10, (event, sequence, end) -> {
+            if (event.equals("bad")) {
+                throw new IllegalStateException(event);
+            }
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(subscription.getSequence()).isEqualTo(1);
+
+        List<String> rest = new ArrayList<>();
+        subscription.poll(10, (event, sequence, end) -> rest.add(event));
+        assertThat(rest).containsExactly("next");
+        assertThatThrownBy(() -> manager.createSubscription("s")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new EventManager.Builder<String>().withCapacity(12)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"busySpin", "yielding", "parking"})
+    @Timeout(30)
+    public void testConcurrentProducersAndConsumers(String waitStrategy) throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        EventManager<long[]> manager = new EventManager.Builder<long[]>()
+            .withCapacity(1024)
+            .withWaitStrategy(strategy(waitStrategy))
+            .build();
+        List<EventManager.Subscription<long[]>> subscriptions = List.of(manager.createSubscription("a"),
+            manager.createSubscription("b"));
+        ExecutorService executor = Executors.newFixedThreadPool(producers + subscriptions.size());
+        try {
+            List<CompletableFuture<long[]>> consumed = new ArrayList<>();
+            for (EventManager.Subscription<long[]> subscription : subscriptions) {
+                consumed.add(CompletableFuture.supplyAsync(() -> {
+                    // Next expected value per producer, so per-producer order is checked
+                    long[] next = new long[producers];
+                    long[] total = new long[1];
+                    try {
+                        while (total[0] < (long) producers * perProducer) {
+                            subscription.take(256, Duration.ofSeconds(10), (event, sequence, end) -> {
+                                assertThat(event[1]).isEqualTo(next[(int) event[0]]++);
+                                total[0]++;
+                            });
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return next;
+                }, executor));
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            for (int p = 0; p < producers; p++) {
+                long producer = p;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i += 10) {
+                        if (i % 20 == 0) {
+                            for (int j = i; j < i + 10; j++) {
+                                manager.publishEvent(new long[] {producer, j});
+                            }
+                        } else {
+                            List<long[]> batch = new ArrayList<>();
+                            for (int j = i; j < i + 10; j++) {
+                                batch.add(new long[] {producer, j});
+                            }
+                            manager.publishBatch(batch);
+                        }
+                    }
+                });
+            }
+            start.countDown();
+
+            for (CompletableFuture<long[]> result : consumed) {
+                assertThat(result.get(20, TimeUnit.SECONDS)).containsOnly(perProducer);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTakeTimesOut() throws InterruptedException {
+        EventManager<String> manager = new EventManager<>();
+        EventManager.Subscription<String> subscription = manager.createSubscription("idle");
+
+        long start = System.nanoTime();
+        assertThat(subscription.take(1, Duration.ofMillis(50), (event, sequence, end) -> { })).isZero();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
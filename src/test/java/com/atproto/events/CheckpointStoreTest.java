@@ -0,0 +1,122 @@
+package com.atproto.events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CheckpointStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private CheckpointStore open(Path file, Duration interval) throws IOException {
+        return new CheckpointStore.Builder().withFile(file).withCommitInterval(interval).build();
+    }
+
+    @Test
+    public void testGroupCommitsUpdatesAndRecovers() throws Exception {
+        Path file = directory.resolve("checkpoints");
+        try (CheckpointStore store = open(file, Duration.ofSeconds(10))) {
+            assertThat(store.getCursor()).isEqualTo(-1);
+            CompletableFuture<Void> first = store.persistEvent("did:plc:a", "bafya1", 1);
+            List<CompletableFuture<Void>> updates = new ArrayList<>();
+            for (int i = 2; i <= 100; i++) {
+                updates.add(store.persistEvent("did:plc:" + (char) ('a' + i % 3), "bafy" + i, i));
+            }
+            updates.add(store.checkpoint(150));
+            updates.add(store.checkpoint(120));
+
+            assertThat(updates).allMatch(update -> update == first);
+            assertThat(first).isNotDone();
+            assertThat(store.getLastCid("did:plc:b")).isEqualTo("bafy100");
+
+            store.flush().get(5, TimeUnit.SECONDS);
+            assertThat(store.getCursor()).isEqualTo(150);
+        }
+        // One frame: three DIDs, not a hundred updates
+        assertThat(Files.size(file)).isLessThan(200);
+
+        try (CheckpointStore store = open(file, Duration.ofMillis(1))) {
+            assertThat(store.getCursor()).isEqualTo(150);
+            assertThat(store.getLastCid("did:plc:a")).isEqualTo("bafy99");
+            assertThat(store.getLastCid("did:plc:b")).isEqualTo("bafy100");
+            assertThat(store.getLastCid("did:plc:c")).isEqualTo("bafy98");
+            assertThat(store.getLastCid("did:plc:x")).isNull();
+        }
+    }
+
+    @Test
+    public void testCommitsAfterTheIntervalWithoutFlush() throws Exception {
+        Path file = directory.resolve("checkpoints");
+        try (CheckpointStore store = open(file, Duration.ofMillis(5))) {
+            store.checkpoint(7).get(5, TimeUnit.SECONDS);
+            assertThat(store.getCursor()).isEqualTo(7);
+            store.persistEvent("did:plc:a", "bafy8", 8).get(5, TimeUnit.SECONDS);
+            assertThat(store.getCursor()).isEqualTo(8);
+        }
+    }
+
+    @Test
+    public void testDropsFrameTornByACrash() throws Exception {
+        Path file = directory.resolve("checkpoints");
+        try (CheckpointStore store = open(file, Duration.ZERO)) {
+            store.persistEvent("did:plc:a", "bafy1", 10).get(5, TimeUnit.SECONDS);
+            store.persistEvent("did:plc:a", "bafy2", 11).get(5, TimeUnit.SECONDS);
+        }
+        long intact = Files.size(file);
+        byte[] bytes = Files.readAllBytes(file);
+        // A copy of the last frame cut short, as if the machine failed while writing it
+        Files.write(file, Arrays.copyOfRange(bytes, bytes.length / 2, bytes.length - 3), StandardOpenOption.APPEND);
+
+        try (CheckpointStore store = open(file, Duration.ZERO)) {
+            assertThat(Files.size(file)).isEqualTo(intact);
+            assertThat(store.getCursor()).isEqualTo(11);
+            assertThat(store.getLastCid("did:plc:a")).isEqualTo("bafy2");
+            store.checkpoint(12).get(5, TimeUnit.SECONDS);
+        }
+        try (CheckpointStore store = open(file, Duration.ZERO)) {
+            assertThat(store.getCursor()).isEqualTo(12);
+        }
+    }
+
+    @Test
+    public void testCompactsToOneEntryPerDid() throws Exception {
+        Path file = directory.resolve("checkpoints");
+        try (CheckpointStore store = new CheckpointStore.Builder().withFile(file).withCommitInterval(Duration.ZERO)
+                .withCompactionThreshold(1024).build()) {
+            for (int i = 0; i < 500; i++) {
+                store.persistEvent("did:plc:" + i % 5, "bafy" + i, i).get(5, TimeUnit.SECONDS);
+            }
+            assertThat(Files.size(file)).isLessThan(2048 + 200);
+        }
+        assertThat(Files.exists(directory.resolve("checkpoints.compact"))).isFalse();
+
+        try (CheckpointStore store = open(file, Duration.ZERO)) {
+            assertThat(store.getCursor()).isEqualTo(499);
+            for (int d = 0; d < 5; d++) {
+                assertThat(store.getLastCid("did:plc:" + d)).isEqualTo("bafy" + (495 + d));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsUpdatesAfterClose() throws Exception {
+        CheckpointStore store = open(directory.resolve("checkpoints"), Duration.ZERO);
+        store.close();
+
+        assertThatThrownBy(() -> store.checkpoint(1)).isInstanceOf(IllegalStateException.class);
+    }
+}
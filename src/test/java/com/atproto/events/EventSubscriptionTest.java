@@ -0,0 +1,180 @@
+package com.atproto.events;
+
+import com.atproto.api.sync.FirehoseDecoder;
+import com.atproto.api.sync.FirehoseDecoderTest;
+import com.atproto.api.sync.FirehoseEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventSubscriptionTest {
+
+    @TempDir
+    Path directory;
+
+    private final FirehoseDecoder decoder = new FirehoseDecoder();
+    private final List<EventSubscription> terminated = new CopyOnWriteArrayList<>();
+
+    private static final class Recorder implements Flow.Subscriber<FirehoseEvent> {
+        final List<FirehoseEvent> events = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(FirehoseEvent item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+
+        List<Long> seqs() {
+            return events.stream().map(FirehoseEvent::getSeq).toList();
+        }
+
+        void awaitCount(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private EventSubscription subscription(int bufferSize, EventSubscription.OverflowPolicy policy) {
+        return new EventSubscription("test", null, bufferSize, policy, directory, terminated::add);
+    }
+
+    private FirehoseEvent commit(long seq) {
+        byte[] blocks = new byte[64];
+        ByteBuffer.wrap(blocks).putLong(seq);
+        return decoder.decode(ByteBuffer.wrap(FirehoseDecoderTest.message("#commit",
+            FirehoseDecoderTest.commitBody(seq, blocks)))).detach();
+    }
+
+    @Test
+    public void testDeliversOnlyRequestedEvents() throws Exception {
+        EventSubscription subscription = subscription(16, EventSubscription.OverflowPolicy.DISCONNECT);
+        Recorder recorder = new Recorder();
+        subscription.offer(commit(1));
+        subscription.subscribe(recorder);
+        for (long seq = 2; seq <= 5; seq++) {
+            subscription.offer(commit(seq));
+        }
+
+        recorder.subscription.request(2);
+        recorder.awaitCount(2);
+        Thread.sleep(50);
+        assertThat(recorder.seqs()).containsExactly(1L, 2L);
+        assertThat(subscription.getBufferedCount()).isEqualTo(3);
+
+        subscription.complete();
+        subscription.offer(commit(6));
+        recorder.subscription.request(10);
+        recorder.done.get(5, TimeUnit.SECONDS);
+        assertThat(recorder.seqs()).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(terminated).containsExactly(subscription);
+    }
+
+    @Test
+    public void testDropsOldestWhenFull() throws Exception {
+        EventSubscription subscription = subscription(3, EventSubscription.OverflowPolicy.DROP_OLDEST);
+        Recorder recorder = new Recorder();
+        subscription.subscribe(recorder);
+        for (long seq = 1; seq <= 5; seq++) {
+            subscription.offer(commit(seq));
+        }
+        assertThat(subscription.getDroppedCount()).isEqualTo(2);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        subscription.complete();
+        recorder.done.get(5, TimeUnit.SECONDS);
+        assertThat(recorder.seqs()).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    public void testDisconnectsWhenFull() throws Exception {
+        EventSubscription subscription = subscription(2, EventSubscription.OverflowPolicy.DISCONNECT);
+        Recorder recorder = new Recorder();
+        subscription.subscribe(recorder);
+        for (long seq = 1; seq <= 3; seq++) {
+            subscription.offer(commit(seq));
+        }
+
+        assertThat(recorder.done).failsWithin(5, TimeUnit.SECONDS)
+            .withThrowableOfType(Exception.class)
+            .withCauseInstanceOf(IllegalStateException.class)
+            .withMessageContaining("fell more than 2 events behind");
+        assertThat(recorder.events).isEmpty();
+        assertThat(subscription.getBufferedCount()).isZero();
+    }
+
+    @Test
+    public void testSpillsToDiskInOrder() throws Exception {
+        EventSubscription subscription = subscription(4, EventSubscription.OverflowPolicy.SPILL_TO_DISK);
+        Recorder recorder = new Recorder();
+        subscription.subscribe(recorder);
+        for (long seq = 1; seq <= 100; seq++) {
+            subscription.offer(commit(seq));
+        }
+        assertThat(subscription.getBufferedCount()).isEqualTo(100);
+
+        recorder.subscription.request(50);
+        recorder.awaitCount(50);
+        for (long seq = 101; seq <= 120; seq++) {
+            subscription.offer(commit(seq));
+        }
+        recorder.subscription.request(Long.MAX_VALUE);
+        subscription.complete();
+        recorder.done.get(5, TimeUnit.SECONDS);
+
+        assertThat(recorder.seqs()).isEqualTo(LongStream.rangeClosed(1, 120).boxed().toList());
+        List<Long> blockSeqs = new ArrayList<>();
+        for (FirehoseEvent event : recorder.events) {
+            blockSeqs.add(((FirehoseEvent.Commit) event).getBlocks().getLong());
+        }
+        assertThat(blockSeqs).isEqualTo(recorder.seqs());
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    public void testRejectsSecondSubscriberAndBadRequests() throws Exception {
+        EventSubscription subscription = subscription(4, EventSubscription.OverflowPolicy.DROP_OLDEST);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        subscription.subscribe(first);
+        subscription.subscribe(second);
+        assertThat(second.done).isCompletedExceptionally();
+
+        first.subscription.request(0);
+        assertThat(first.done).failsWithin(5, TimeUnit.SECONDS)
+            .withThrowableOfType(Exception.class)
+            .withCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(terminated).containsExactly(subscription);
+    }
+}
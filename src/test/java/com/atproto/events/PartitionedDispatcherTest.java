@@ -0,0 +1,228 @@
+package com.atproto.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PartitionedDispatcherTest {
+
+    private static final class Recorder {
+        final Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        final List<String> overlaps = new CopyOnWriteArrayList<>();
+
+        Runnable task(String key, int seq) {
+            return () -> {
+                AtomicInteger active = running.computeIfAbsent(key, k -> new AtomicInteger());
+                if (active.incrementAndGet() != 1) {
+                    overlaps.add(key);
+                }
+                seen.computeIfAbsent(key, k -> new ArrayList<>()).add(seq);
+                active.decrementAndGet();
+            };
+        }
+
+        void assertOrdered(int perKey) {
+            assertThat(overlaps).isEmpty();
+            seen.values().forEach(list -> assertThat(list).hasSize(perKey).isSorted());
+        }
+    }
+
+    @Test
+    public void testRunsTasksOfOneKeyInOrder() throws Exception {
+        Recorder recorder = new Recorder();
+        try (PartitionedDispatcher dispatcher = new PartitionedDispatcher.Builder()
+                .withShards(4)
+                .withQueueCapacity(64)
+                .withRebalanceInterval(500)
+                .build()) {
+            for (int seq = 0; seq < 20_000; seq++) {
+                String key = "did:plc:" + seq % 50;
+                dispatcher.submit(key, recorder.task(key, seq));
+            }
+        }
+        assertThat(recorder.seen).hasSize(50);
+        recorder.assertOrdered(400);
+    }
+
+    @Test
+    public void testMovesPartitionsOffHotShard() throws Exception {
+        Recorder recorder = new Recorder();
+        List<String> keys = new ArrayList<>();
+        try (PartitionedDispatcher dispatcher = new PartitionedDispatcher.Builder()
+                .withShards(2)
+                .withRebalanceInterval(100)
+                .build()) {
+            for (int i = 0; keys.size() < 8; i++) {
+                if (dispatcher.shardOf("did:plc:" + i) == 0) {
+                    keys.add("did:plc:" + i);
+                }
+            }
+            for (int seq = 0; seq < 4_000; seq++) {
+                String key = keys.get(seq % keys.size());
+                dispatcher.submit(key, recorder.task(key, seq));
+            }
+
+            assertThat(dispatcher.getRebalanceCount()).isPositive();
+            assertThat(keys).anyMatch(key -> dispatcher.shardOf(key) == 1);
+        }
+        recorder.assertOrdered(500);
+    }
+
+    @Test
+    public void testDeferredMovesDoNotDrainTheHotShard() throws Exception {
+        Recorder recorder = new Recorder();
+        List<String> keys = new ArrayList<>();
+        List<String> blockers = new ArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        try (PartitionedDispatcher dispatcher = new PartitionedDispatcher.Builder()
+                .withShards(2)
+                .withQueueCapacity(4096)
+                .withRebalanceInterval(80)
+                .build()) {
+            for (int i = 0; keys.size() < 8; i++) {
+                if (dispatcher.shardOf("did:plc:" + i) == 0) {
+                    keys.add("did:plc:" + i);
+                }
+            }
+            for (int i = 0; blockers.size() < 2; i++) {
+                if (dispatcher.shardOf("blocker:" + i) == blockers.size()) {
+                    blockers.add("blocker:" + i);
+                }
+            }
+            // With both workers blocked, every move the load checks ask for stays deferred
+            for (String blocker : blockers) {
+                dispatcher.submit(blocker, () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            int tasks = 1_600;
+            CountDownLatch done = new CountDownLatch(tasks);
+            for (int seq = 0; seq < tasks; seq++) {
+                String key = keys.get(seq % keys.size());
+                Runnable task = recorder.task(key, seq);
+                dispatcher.submit(key, () -> {
+                    task.run();
+                    done.countDown();
+                });
+            }
+            assertThat(dispatcher.getRebalanceCount()).isZero();
+
+            release.countDown();
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            // The next submission of each key carries out its partition's deferred move
+            for (String key : keys) {
+                dispatcher.submit(key, () -> { });
+            }
+
+            // Only enough load to even out the shards moves, rather than every hot partition
+            assertThat(dispatcher.getRebalanceCount()).isPositive();
+            assertThat(keys).anyMatch(key -> dispatcher.shardOf(key) == 0);
+            assertThat(keys).anyMatch(key -> dispatcher.shardOf(key) == 1);
+        }
+        recorder.assertOrdered(200);
+    }
+
+    @Test
+    public void testReportsQueueDepthsAndWaitsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+        PartitionedDispatcher dispatcher = new PartitionedDispatcher.Builder()
+            .withShards(1)
+            .withQueueCapacity(2)
+            .build();
+        dispatcher.submit("a", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.incrementAndGet();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.submit("b", done::incrementAndGet);
+        dispatcher.submit("c", done::incrementAndGet);
+        assertThat(dispatcher.getQueueDepths()).containsExactly(2);
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                dispatcher.submit("d", done::incrementAndGet);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertThat(blocked).isNotDone();
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        dispatcher.close();
+        assertThat(done).hasValue(4);
+        assertThat(dispatcher.getQueueDepths()).containsExactly(0);
+        assertThatThrownBy(() -> dispatcher.submit("e", done::incrementAndGet))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testPassesTaskFailuresToErrorHandler() throws Exception {
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        try (PartitionedDispatcher dispatcher = new PartitionedDispatcher.Builder()
+                .withShards(2)
+                .withVirtualThreads()
+                .withErrorHandler(errors::add)
+                .build()) {
+            dispatcher.submit("a", () -> {
+                throw new IllegalArgumentException("boom");
+            });
+            dispatcher.submit("a", done::incrementAndGet);
+        }
+        assertThat(errors).singleElement().isInstanceOf(IllegalArgumentException.class);
+        assertThat(done).hasValue(1);
+    }
+
+    @Test
+    public void testCloseFinishesQueuedTasksWhenInterrupted() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        PartitionedDispatcher dispatcher = new PartitionedDispatcher.Builder()
+            .withShards(2)
+            .build();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.submit("did:plc:" + i, done::incrementAndGet);
+        }
+
+        Thread.currentThread().interrupt();
+        dispatcher.close();
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(done).hasValue(100);
+    }
+
+    @Test
+    public void testWatermarkOnlyAdvancesOverCompletedEvents() {
+        CursorWatermark watermark = new CursorWatermark();
+        CursorWatermark.Ticket first = watermark.begin(10);
+        CursorWatermark.Ticket second = watermark.begin(11);
+        CursorWatermark.Ticket third = watermark.begin(13);
+
+        assertThat(watermark.complete(third)).isEqualTo(-1);
+        assertThat(watermark.complete(first)).isEqualTo(10);
+        assertThat(watermark.complete(second)).isEqualTo(13);
+    }
+}
@@ -0,0 +1,69 @@
+package com.atproto.lexicon;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LexiconMethodParserTest {
+
+    static final String GET_AUTHOR_FEED = "{\"lexicon\":1,\"id\":\"app.bsky.feed.getAuthorFeed\",\"defs\":{\"main\":{"
+        + "\"type\":\"query\",\"parameters\":{\"type\":\"params\",\"required\":[\"actor\"],\"properties\":{"
+        + "\"actor\":{\"type\":\"string\",\"format\":\"at-identifier\",\"maxLength\":64},"
+        + "\"limit\":{\"type\":\"integer\",\"minimum\":1,\"maximum\":100,\"default\":50},"
+        + "\"cursor\":{\"type\":\"string\"},"
+        + "\"filter\":{\"type\":\"string\",\"enum\":[\"posts_with_replies\",\"posts_no_replies\"],"
+        + "\"default\":\"posts_with_replies\"},"
+        + "\"includePins\":{\"type\":\"boolean\",\"default\":false},"
+        + "\"uris\":{\"type\":\"array\",\"maxLength\":3,\"items\":{\"type\":\"string\",\"maxLength\":300}}}},"
+        + "\"output\":{\"encoding\":\"application/json\"}}}}";
+
+    private final LexiconParser parser = new LexiconParser();
+
+    @Test
+    public void testParsesQueryParams() {
+        MethodSchema schema = parser.parseMethod(GET_AUTHOR_FEED);
+
+        assertThat(schema.getId()).isEqualTo("app.bsky.feed.getAuthorFeed");
+        assertThat(schema.getType()).isEqualTo(MethodSchema.Type.QUERY);
+        assertThat(schema.getParams()).extracting(MethodSchema.Param::getName)
+            .containsExactly("actor", "limit", "cursor", "filter", "includePins", "uris");
+
+        MethodSchema.Param actor = schema.getParams().get(0);
+        assertThat(actor.isRequired()).isTrue();
+        assertThat(actor.getMaxLength()).isEqualTo(64);
+
+        MethodSchema.Param limit = schema.getParams().get(1);
+        assertThat(limit.getType()).isEqualTo(MethodSchema.ParamType.INTEGER);
+        assertThat(limit.getMinimum()).isEqualTo(1L);
+        assertThat(limit.getMaximum()).isEqualTo(100L);
+        assertThat(limit.getDefaultValue()).isEqualTo(50L);
+
+        assertThat(schema.getParams().get(3).getAllowed())
+            .isEqualTo(Set.of("posts_with_replies", "posts_no_replies"));
+        MethodSchema.Param uris = schema.getParams().get(5);
+        assertThat(uris.getItemType()).isEqualTo(MethodSchema.ParamType.STRING);
+        assertThat(uris.getMaxLength()).isEqualTo(3);
+        assertThat(uris.getItemMaxLength()).isEqualTo(300);
+        assertThat(uris.getItemMinLength()).isNull();
+    }
+
+    @Test
+    public void testRejectsNonMethodsAndUnsupportedParams() {
+        assertThatThrownBy(() -> parser.parseMethod("{\"lexicon\":1,\"id\":\"app.bsky.feed.post\","
+            + "\"defs\":{\"main\":{\"type\":\"record\"}}}"))
+            .isInstanceOf(LexiconValidationException.class)
+            .hasMessageContaining("not a query or procedure");
+        assertThatThrownBy(() -> parser.parseMethod("{\"lexicon\":1,\"id\":\"com.example.test.method\","
+            + "\"defs\":{\"main\":{\"type\":\"query\",\"parameters\":{\"properties\":{\"x\":{\"type\":\"blob\"}}}}}}"))
+            .isInstanceOf(LexiconValidationException.class)
+            .hasMessageContaining("unsupported type");
+        assertThatThrownBy(() -> parser.parseMethod("{\"id\":"))
+            .isInstanceOf(LexiconValidationException.class);
+        assertThat(parser.parseMethod("{\"lexicon\":1,\"id\":\"com.example.test.method\","
+            + "\"defs\":{\"main\":{\"type\":\"procedure\"}}}").getParams()).isEqualTo(List.of());
+    }
+}
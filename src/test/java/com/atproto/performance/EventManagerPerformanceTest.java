@@ -0,0 +1,97 @@
+package com.atproto.performance;
+
+import com.atproto.concurrency.EventManager;
+import com.atproto.concurrency.WaitStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EventManager} with one subscription consumed by a background thread, for each wait
+ * strategy: events per second for single and batched publishing, and the time from publishing an
+ * event until the consumer has handled it.
+ * <p>
+ * {@code publishToConsume} runs in sample-time mode, so JMH reports its p99 and p99.9 alongside
+ * the mean. The busy-spin consumer needs a core of its own for meaningful numbers.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class EventManagerPerformanceTest {
+
+    private static final int BATCH = 64;
+
+    @Param({"busySpin", "yielding", "parking"})
+    public String waitStrategy;
+
+    private EventManager<Long> manager;
+    private Thread consumer;
+    private volatile boolean running;
+    private volatile long consumed = -1;
+    private List<Long> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WaitStrategy strategy = switch (waitStrategy) {
+            case "busySpin" -> WaitStrategy.busySpin();
+            case "yielding" -> WaitStrategy.yielding();
+            default -> WaitStrategy.parking();
+        };
+        manager = new EventManager.Builder<Long>().withCapacity(1 << 14).withWaitStrategy(strategy).build();
+        EventManager.Subscription<Long> subscription = manager.createSubscription("consumer");
+        batch = new ArrayList<>();
+        for (long i = 0; i < BATCH; i++) {
+            batch.add(i);
+        }
+        running = true;
+        consumer = Thread.ofPlatform().name("consumer").start(() -> {
+            try {
+                while (running) {
+                    subscription.take(1024, Duration.ofMillis(100), (event, sequence, end) -> {
+                        if (end) {
+                            consumed = sequence;
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        consumer.join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long publish() {
+        return manager.publishEvent(1L);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long publishBatch() {
+        return manager.publishBatch(batch);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long publishToConsume() {
+        long sequence = manager.publishEvent(1L);
+        while (consumed < sequence) {
+            Thread.onSpinWait();
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,55 @@
+package com.atproto.performance;
+
+import com.atproto.api.sync.DagCborReader;
+import com.atproto.api.sync.FirehoseDecoder;
+import com.atproto.api.sync.FirehoseDecoderTest;
+import com.atproto.api.sync.FirehoseEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a typical firehose commit frame, with two ops and 2 KB of CAR blocks: the typed
+ * {@link FirehoseDecoder} from a heap buffer and from a direct buffer, against reading the same
+ * frame generically into maps and lists with copied byte arrays.
+ * <p>
+ * The relay sends a few thousand events per second at peak, so one core should decode well over
+ * that with room left for the handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class FirehoseDecodePerformanceTest {
+
+    private final FirehoseDecoder decoder = new FirehoseDecoder();
+    private ByteBuffer heap;
+    private ByteBuffer direct;
+
+    @Setup
+    public void setUp() {
+        byte[] frame = FirehoseDecoderTest.message("#commit", FirehoseDecoderTest.commitBody(123_456_789L, new byte[2048]));
+        heap = ByteBuffer.wrap(frame);
+        direct = ByteBuffer.allocateDirect(frame.length).put(frame).flip();
+    }
+
+    @Benchmark
+    public FirehoseEvent typedHeap() {
+        return decoder.decode(heap);
+    }
+
+    @Benchmark
+    public FirehoseEvent typedDirect() {
+        return decoder.decode(direct);
+    }
+
+    @Benchmark
+    public Object genericValues() {
+        DagCborReader reader = new DagCborReader(heap);
+        reader.readValue();
+        return reader.readValue();
+    }
+}
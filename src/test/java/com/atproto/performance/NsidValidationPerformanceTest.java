@@ -0,0 +1,46 @@
+package com.atproto.performance;
+
+import com.atproto.api.common.Nsid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating a method name per request: the hand-written {@link Nsid#isValid} against
+ * the previous {@code String.matches} check, which compiled its pattern on every call, and an
+ * intern table lookup.
+ * <p>
+ * Run with {@code -prof gc}; {@code isValid} and {@code lookup} should report 0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class NsidValidationPerformanceTest {
+
+    private String method;
+
+    @Setup
+    public void setUp() {
+        // Built at runtime so the JIT cannot fold the checks into constants
+        method = new StringBuilder("app.bsky.feed.").append("getTimeline").toString();
+        Nsid.intern(method);
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return Nsid.isValid(method);
+    }
+
+    @Benchmark
+    public boolean legacyRegex() {
+        return method.matches("^[a-zA-Z0-9._-]+$");
+    }
+
+    @Benchmark
+    public Nsid lookup() {
+        return Nsid.lookup(method);
+    }
+}
@@ -0,0 +1,71 @@
+package com.atproto.performance;
+
+import com.atproto.api.xrpc.HttpUtil;
+import com.atproto.api.xrpc.model.Params;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query-string encoding of a typical feed query: {@link HttpUtil#encodeQuery} over a map, which
+ * goes through {@code URLEncoder} and {@code toString} per value, against {@link Params} encoding
+ * into a reused buffer and its cached form for reissued requests.
+ * <p>
+ * Run with {@code -prof gc}; {@code paramsIntoBuffer} and {@code paramsCached} should report
+ * 0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ParamsEncodingPerformanceTest {
+
+    private Map<String, Object> map;
+    private Params params;
+    private Params cached;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() {
+        Instant since = Instant.parse("2024-01-31T12:00:00Z");
+        List<String> uris = List.of("at://did:plc:abc/app.bsky.feed.post/3k2a", "at://did:plc:def/app.bsky.feed.post/3k2b");
+        map = new LinkedHashMap<>();
+        map.put("actor", "alice.bsky.social");
+        map.put("limit", 50);
+        map.put("includePins", true);
+        map.put("since", since);
+        map.put("uris", uris);
+        Params.Builder builder = new Params.Builder()
+            .withParam("actor", "alice.bsky.social")
+            .withParam("limit", 50)
+            .withParam("includePins", true)
+            .withParam("since", since)
+            .withArray("uris", uris);
+        cached = builder.build();
+        cached.toQueryString();
+        // Never asked for its cached form, so every call encodes
+        params = builder.build();
+        buffer = new byte[params.encodedLength()];
+    }
+
+    @Benchmark
+    public String mapWithUrlEncoder() {
+        return HttpUtil.encodeQuery(map);
+    }
+
+    @Benchmark
+    public int paramsIntoBuffer() {
+        return params.encodeTo(buffer, 0);
+    }
+
+    @Benchmark
+    public String paramsCached() {
+        return cached.toQueryString();
+    }
+}
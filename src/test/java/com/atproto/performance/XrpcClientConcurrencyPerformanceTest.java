@@ -0,0 +1,108 @@
+package com.atproto.performance;
+
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.XrpcRequest;
+import com.atproto.api.xrpc.XrpcResponse;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans out a batch of calls to a stub server with fixed latency and waits for all of them,
+ * comparing {@link XrpcClient#sendAsync} on {@link java.net.http.HttpClient#sendAsync}
+ * ({@code ASYNC}), blocking exchanges on a bounded platform-thread pool ({@code PLATFORM}) and
+ * blocking exchanges on virtual threads ({@code VIRTUAL}).
+ * <p>
+ * The platform pool caps in-flight calls at its size, so its time per batch grows with
+ * {@code calls / POOL_SIZE} round trips; the other two modes overlap the whole batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class XrpcClientConcurrencyPerformanceTest {
+
+    private static final int POOL_SIZE = 200;
+    private static final long LATENCY_MILLIS = 20;
+
+    @Param({"ASYNC", "PLATFORM", "VIRTUAL"})
+    public String mode;
+
+    @Param({"1000", "5000"})
+    public int calls;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService platformPool;
+    private XrpcClient client;
+    private XrpcRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] body = "{\"did\":\"did:plc:abc\"}".getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(serverExecutor);
+        server.createContext("/xrpc/", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        XrpcClient.Builder builder = new XrpcClient.Builder()
+            .withServiceUri(URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+        switch (mode) {
+            case "PLATFORM" -> {
+                platformPool = Executors.newFixedThreadPool(POOL_SIZE);
+                builder.withExecutor(platformPool);
+            }
+            case "VIRTUAL" -> builder.withVirtualThreads();
+            default -> { }
+        }
+        client = builder.build();
+        request = new XrpcRequest.Builder()
+            .withMethod("com.atproto.identity.resolveHandle")
+            .withParam("handle", "alice.test")
+            .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        if (platformPool != null) {
+            platformPool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public int fanOut() {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<XrpcResponse>[] pending = new CompletableFuture[calls];
+        for (int i = 0; i < calls; i++) {
+            pending[i] = client.sendAsync(request);
+        }
+        CompletableFuture.allOf(pending).join();
+        return pending.length;
+    }
+}
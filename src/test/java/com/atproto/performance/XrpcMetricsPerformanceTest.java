@@ -0,0 +1,68 @@
+package com.atproto.performance;
+
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.XrpcRequest;
+import com.atproto.api.xrpc.XrpcResponse;
+import com.atproto.api.xrpc.XrpcServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording call metrics, measured on response cache hits so the network does not hide
+ * it. Compares a client without metrics against one recording into an {@code XrpcMetrics}, with
+ * several threads calling the same method to show the counters do not contend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Threads(4)
+@Fork(1)
+public class XrpcMetricsPerformanceTest {
+
+    private XrpcServer server;
+    private XrpcClient plain;
+    private XrpcClient measured;
+    private XrpcRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new XrpcServer.Builder()
+            .withQuery("app.bsky.actor.getProfile", call -> {
+                call.setHeader("Cache-Control", "max-age=3600");
+                call.respond(Map.of("did", "did:plc:abc"));
+            })
+            .build()
+            .start();
+        plain = new XrpcClient.Builder().withServiceUri(server.getUri()).withResponseCache(1 << 20).build();
+        measured = new XrpcClient.Builder().withServiceUri(server.getUri()).withResponseCache(1 << 20)
+            .withMetrics()
+            .build();
+        request = new XrpcRequest.Builder()
+            .withMethod("app.bsky.actor.getProfile")
+            .withType(XrpcRequest.Type.QUERY)
+            .withParams(Map.of("actor", "alice.test"))
+            .build();
+        plain.send(request);
+        measured.send(request);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public XrpcResponse withoutMetrics() {
+        return plain.send(request);
+    }
+
+    @Benchmark
+    public XrpcResponse withMetrics() {
+        return measured.send(request);
+    }
+}
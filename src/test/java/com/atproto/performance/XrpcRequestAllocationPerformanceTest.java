@@ -0,0 +1,116 @@
+package com.atproto.performance;
+
+import com.atproto.api.xrpc.XrpcRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation cost of building an {@link XrpcRequest} and passing it through an interceptor-style
+ * chain, compared with the previous copy-on-every-access request ({@link CopyingRequest}).
+ * <p>
+ * Run with {@code -prof gc} to report {@code gc.alloc.rate.norm} (bytes allocated per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class XrpcRequestAllocationPerformanceTest {
+
+    private static final int CHAIN_LENGTH = 12;
+    private static final String METHOD = "app.bsky.feed.getPosts";
+
+    private Map<String, Object> params;
+    private XrpcRequest request;
+    private CopyingRequest copyingRequest;
+
+    @Setup
+    public void setUp() {
+        params = Map.of(
+            "uris", List.of("at://did:plc:abc/app.bsky.feed.post/1", "at://did:plc:abc/app.bsky.feed.post/2"),
+            "limit", 25);
+        request = new XrpcRequest.Builder()
+            .withMethod(METHOD)
+            .withParams(params)
+            .withHeader("Accept", "application/json")
+            .withHeader("Atproto-Accept-Labelers", "did:plc:labeler")
+            .build();
+        copyingRequest = new CopyingRequest(METHOD, params, request.getHeaders());
+    }
+
+    @Benchmark
+    public XrpcRequest buildWithBuilder() {
+        return new XrpcRequest.Builder()
+            .withMethod(METHOD)
+            .withParams(params)
+            .withHeader("Accept", "application/json")
+            .build();
+    }
+
+    @Benchmark
+    public void interceptorChain(Blackhole blackhole) {
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            blackhole.consume(request.getParams());
+            blackhole.consume(request.getHeaders());
+            blackhole.consume(request.getQueryParams());
+            blackhole.consume(request.getBody());
+            blackhole.consume(request.hashCode());
+        }
+    }
+
+    @Benchmark
+    public void legacyInterceptorChain(Blackhole blackhole) {
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            blackhole.consume(copyingRequest.getParams());
+            blackhole.consume(copyingRequest.getHeaders());
+            blackhole.consume(copyingRequest.getQueryParams());
+            blackhole.consume(copyingRequest.getBody());
+            blackhole.consume(copyingRequest.hashCode());
+        }
+    }
+
+    /**
+     * The previous request semantics: defensive copies on construction and on every getter.
+     */
+    private static final class CopyingRequest {
+        private final String method;
+        private final Map<String, Object> params;
+        private final Map<String, String> headers;
+        private final Map<String, String> queryParams = new HashMap<>();
+        private final Map<String, Object> body = new HashMap<>();
+
+        CopyingRequest(String method, Map<String, Object> params, Map<String, String> headers) {
+            this.method = method;
+            this.params = new HashMap<>(params);
+            this.headers = new HashMap<>(headers);
+        }
+
+        Map<String, Object> getParams() {
+            return new HashMap<>(params);
+        }
+
+        Map<String, String> getHeaders() {
+            return new HashMap<>(headers);
+        }
+
+        Map<String, String> getQueryParams() {
+            return new HashMap<>(queryParams);
+        }
+
+        Map<String, Object> getBody() {
+            return new HashMap<>(body);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, params, headers, queryParams, body);
+        }
+    }
+}
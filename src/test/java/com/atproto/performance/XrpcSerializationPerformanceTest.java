@@ -0,0 +1,125 @@
+package com.atproto.performance;
+
+import com.atproto.api.xrpc.XrpcRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link XrpcRequest#serialize(OutputStream)} path with the previous
+ * StringBuilder based serializer, kept here as {@link #legacySerialize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class XrpcSerializationPerformanceTest {
+
+    private XrpcRequest request;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("root", Map.of("uri", "at://did:plc:abc/app.bsky.feed.post/3k2a", "cid", "bafyreib2rxk3rh6kzwq"));
+        reply.put("parent", Map.of("uri", "at://did:plc:abc/app.bsky.feed.post/3k2b", "cid", "bafyreic7yq3h4z2m"));
+
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("$type", "app.bsky.feed.post");
+        record.put("text", "Benchmarking the XRPC serializer, with \"quotes\" and unicode ✓");
+        record.put("createdAt", "2024-03-25T00:41:23.000Z");
+        record.put("langs", List.of("en", "de"));
+        record.put("reply", reply);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("repo", "did:plc:1234567890abcdef");
+        body.put("collection", "app.bsky.feed.post");
+        body.put("record", record);
+
+        request = new XrpcRequest.Builder()
+            .withMethod("com.atproto.repo.createRecord")
+            .withAuth("did:plc:1234567890abcdef")
+            .withHeader("Content-Type", "application/json")
+            .withBody(body)
+            .build();
+        buffer = ByteBuffer.allocate(4096);
+    }
+
+    @Benchmark
+    public void streamingToBuffer(Blackhole blackhole) throws IOException {
+        buffer.clear();
+        request.serialize(buffer);
+        blackhole.consume(buffer.position());
+    }
+
+    @Benchmark
+    public void streamingToOutputStream(Blackhole blackhole) throws IOException {
+        request.serialize(new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blackhole.consume(len);
+            }
+        });
+    }
+
+    @Benchmark
+    public byte[] legacyStringBuilder() {
+        return legacySerialize(request).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    private static String legacySerialize(XrpcRequest request) {
+        StringBuilder json = new StringBuilder();
+        json.append("{");
+        appendField(json, "method", request.getMethod());
+        appendField(json, "params", request.getParams());
+        appendField(json, "auth", request.getAuth());
+        appendField(json, "headers", request.getHeaders());
+        appendField(json, "queryParams", request.getQueryParams());
+        appendField(json, "body", request.getBody());
+        json.append("}");
+        return json.toString();
+    }
+
+    private static void appendField(StringBuilder json, String fieldName, Object value) {
+        if (value != null) {
+            json.append(json.length() > 1 ? "," : "");
+            json.append('"').append(fieldName).append('"').append(":");
+            appendValue(json, value);
+        }
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value instanceof String str) {
+            json.append('"').append(str).append('"');
+        } else if (value instanceof Map<?, ?> map) {
+            json.append('{');
+            map.forEach((k, v) -> {
+                if (v != null) {
+                    if (json.charAt(json.length() - 1) != '{') {
+                        json.append(',');
+                    }
+                    appendValue(json, String.valueOf(k));
+                    json.append(':');
+                    appendValue(json, v);
+                }
+            });
+            json.append('}');
+        } else {
+            json.append(String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.atproto.performance;
+
+import com.atproto.api.xrpc.XrpcClient;
+import com.atproto.api.xrpc.XrpcRequest;
+import com.atproto.api.xrpc.XrpcResponse;
+import com.atproto.api.xrpc.XrpcServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second through {@link XrpcServer}, driven by {@link XrpcClient} over loopback.
+ * Each invocation sends a batch of concurrent queries and waits for all of them. The
+ * {@code profile} method returns a small document sent with a length; {@code feed} returns
+ * about 40 KB, which the server streams chunked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class XrpcServerThroughputPerformanceTest {
+
+    private static final int BATCH = 256;
+
+    @Param({"app.bsky.actor.getProfile", "app.bsky.feed.getTimeline"})
+    public String method;
+
+    private XrpcServer server;
+    private XrpcClient client;
+    private XrpcRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Object> profile = Map.of("did", "did:plc:abc", "handle", "alice.test", "followersCount", 42L);
+        List<Object> feed = Collections.nCopies(200, Map.of("post", profile, "uri", "at://did:plc:abc/post"));
+        server = new XrpcServer.Builder()
+            .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .withBacklog(4096)
+            .withQuery("app.bsky.actor.getProfile", call -> call.respond(profile))
+            .withQuery("app.bsky.feed.getTimeline", call -> call.respond(Map.of("feed", feed, "cursor", "next")))
+            .build()
+            .start();
+        client = new XrpcClient.Builder().withServiceUri(server.getUri()).build();
+        request = new XrpcRequest.Builder().withMethod(method).withParam("actor", "alice.test").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int batch() {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<XrpcResponse>[] pending = new CompletableFuture[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            pending[i] = client.sendAsync(request);
+        }
+        CompletableFuture.allOf(pending).join();
+        return pending.length;
+    }
+}
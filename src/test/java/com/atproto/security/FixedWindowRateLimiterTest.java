@@ -0,0 +1,130 @@
+package com.atproto.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FixedWindowRateLimiterTest {
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private final MutableClock clock = new MutableClock();
+    private final FixedWindowRateLimiter limiter = new FixedWindowRateLimiter(3, Duration.ofMinutes(1), clock);
+
+    @Test
+    public void testLimitsEachClientPerWindow() {
+        assertThat(limiter.tryAcquire("alice")).isTrue();
+        assertThat(limiter.tryAcquire("alice")).isTrue();
+        limiter.recordRequest("alice");
+
+        assertThat(limiter.canMakeRequest("alice")).isFalse();
+        assertThat(limiter.tryAcquire("alice")).isFalse();
+        assertThat(limiter.getRequestCount("alice")).isEqualTo(3);
+        assertThat(limiter.getLastRequestTime("alice")).isEqualTo(clock.now);
+        assertThat(limiter.getWindowReset("alice")).isEqualTo(clock.now.plusSeconds(60));
+        assertThat(limiter.canMakeRequest("bob")).isTrue();
+        assertThat(limiter.getLastRequestTime("bob")).isNull();
+    }
+
+    @Test
+    public void testResetsAfterTheWindow() {
+        for (int i = 0; i < 3; i++) {
+            limiter.recordRequest("alice");
+        }
+        clock.now = clock.now.plusSeconds(59);
+        assertThat(limiter.canMakeRequest("alice")).isFalse();
+
+        clock.now = clock.now.plusSeconds(1);
+        assertThat(limiter.getRequestCount("alice")).isZero();
+        assertThat(limiter.tryAcquire("alice")).isTrue();
+        assertThat(limiter.getWindowReset("alice")).isEqualTo(clock.now.plusSeconds(60));
+    }
+
+    @Test
+    public void testRejectsBlankClientIds() {
+        assertThat(limiter.canMakeRequest("")).isFalse();
+        assertThat(limiter.canMakeRequest(" ")).isFalse();
+        assertThat(limiter.tryAcquire(null)).isFalse();
+    }
+
+    @Test
+    public void testAdmitsExactlyTheLimitUnderContention() throws Exception {
+        FixedWindowRateLimiter shared = new FixedWindowRateLimiter(100, Duration.ofMinutes(1));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                results.add(executor.submit(() -> shared.tryAcquire("alice")));
+            }
+            int admitted = 0;
+            for (Future<Boolean> result : results) {
+                admitted += result.get() ? 1 : 0;
+            }
+            assertThat(admitted).isEqualTo(100);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSweepingDoesNotLetCallsEscapeTheLimit() throws Exception {
+        FixedWindowRateLimiter shared = new FixedWindowRateLimiter(10, Duration.ofMinutes(1), clock);
+        // A sweep that removes alice's expired window must not race a call already holding it
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 100; round++) {
+                // Enough idle clients that every new one triggers a sweep
+                for (int i = 0; i < 1_100; i++) {
+                    shared.recordRequest("idle-" + round + "-" + i);
+                }
+                clock.now = clock.now.plusSeconds(120);
+                int fresh = round * 1_000;
+                List<Future<Boolean>> hotResults = new ArrayList<>();
+                List<Future<Boolean>> freshResults = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    hotResults.add(executor.submit(() -> shared.tryAcquire("alice")));
+                    String id = "fresh-" + (fresh + i);
+                    freshResults.add(executor.submit(() -> shared.tryAcquire(id)));
+                }
+                int admitted = 0;
+                for (Future<Boolean> result : hotResults) {
+                    admitted += result.get() ? 1 : 0;
+                }
+                for (Future<Boolean> result : freshResults) {
+                    assertThat(result.get()).isTrue();
+                }
+                assertThat(admitted).isEqualTo(10);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}